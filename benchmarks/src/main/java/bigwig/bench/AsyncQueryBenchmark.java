@@ -0,0 +1,89 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.AsyncBigwig;
+import bigwig.Bigwig;
+import bigwig.BigwigOptions;
+import bigwig.Intervals;
+
+/**
+ * Query latency under load: many callers (the benchmark threads) each issue one 
+ * region query at a time, as requests to a gateway would.  blocking hands each query 
+ * to a fixed pool of poolSize threads running the ordinary Bigwig, the way a 
+ * non-blocking server has to today; async calls AsyncBigwig directly and waits on its 
+ * future.  Sample mode reports the percentiles; compare the p0.99 rows, e.g. with: 
+ * 
+ *   java -jar benchmarks.jar AsyncQuery -t 64
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class AsyncQueryBenchmark { 
+	
+	@Param({ "4" })
+	public int poolSize;
+	
+	@Param({ "10000" })
+	public int regionWidth;
+	
+	private Bigwig bigwig;
+	private AsyncBigwig async;
+	private ExecutorService pool, decoder;
+	private int chromId;
+	private int first, last;
+	
+	@State(Scope.Thread)
+	public static class Regions { 
+		public Random rand = new Random(Thread.currentThread().getId());
+	}
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		bigwig = new Bigwig(BenchmarkFiles.input(), new BigwigOptions());
+		pool = Executors.newFixedThreadPool(poolSize);
+		decoder = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		async = new AsyncBigwig(BenchmarkFiles.input(), new BigwigOptions(), decoder);
+		
+		chromId = bigwig.getIndexHeader().startChromIdx;
+		first = bigwig.getIndexHeader().startBase;
+		last = bigwig.getIndexHeader().endChromIdx == chromId ? 
+				bigwig.getIndexHeader().endBase : first + 50000000;
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		pool.shutdown();
+		decoder.shutdown();
+		async.close();
+		bigwig.close();
+	}
+	
+	private int start(Regions regions) { 
+		return first + regions.rand.nextInt(Math.max(1, last - first - regionWidth));
+	}
+	
+	@Benchmark
+	public int blocking(Regions regions) throws Exception { 
+		final int start = start(regions);
+		return pool.submit(new Callable<Intervals>() { 
+			public Intervals call() throws IOException { 
+				return bigwig.extract(chromId, start, start + regionWidth);
+			}
+		}).get().size;
+	}
+	
+	@Benchmark
+	public int async(Regions regions) throws Exception { 
+		int start = start(regions);
+		return async.query(chromId, start, start + regionWidth).get().size;
+	}
+}
@@ -0,0 +1,29 @@
+package bigwig.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The benchmarks' input: the bigWig named by -Dbigwig.file if there is one, and 
+ * otherwise a SyntheticBigwig generated from the -Dbigwig.synthetic.* settings.
+ */
+public class BenchmarkFiles {
+	
+	public static final String FILE_PROPERTY = "bigwig.file";
+	
+	public static File input() { 
+		String path = System.getProperty(FILE_PROPERTY);
+		if(path == null) { 
+			try { 
+				return SyntheticBigwig.fromProperties().file();
+			} catch(IOException e) { 
+				throw new IllegalStateException("Can't generate the synthetic input file", e);
+			}
+		}
+		File f = new File(path);
+		if(!f.exists()) { 
+			throw new IllegalStateException(String.format("No such file %s", f.getAbsolutePath()));
+		}
+		return f;
+	}
+}
@@ -0,0 +1,37 @@
+package bigwig.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The benchmarks jar's entry point: org.openjdk.jmh.Main, but profiling allocation 
+ * (-prof gc) and writing JSON results (-rf json -rff jmh-result.json) unless told 
+ * otherwise.  -noprof turns the profiler off.  Runs to compare between releases: 
+ * 
+ *   java -jar benchmarks.jar -rff before.json
+ *   ... build the other release ...
+ *   java -jar benchmarks.jar -rff after.json
+ */
+public class BenchmarkMain {
+	
+	public static final String RESULT_FILE = "jmh-result.json";
+	
+	public static void main(String[] args) throws Exception { 
+		List<String> options = new ArrayList<String>(Arrays.asList(args));
+		boolean profile = !options.remove("-noprof");
+		if(profile && !options.contains("-prof")) { 
+			options.add("-prof");
+			options.add("gc");
+		}
+		if(!options.contains("-rf")) { 
+			options.add("-rf");
+			options.add("json");
+		}
+		if(!options.contains("-rff")) { 
+			options.add("-rff");
+			options.add(RESULT_FILE);
+		}
+		org.openjdk.jmh.Main.main(options.toArray(new String[options.size()]));
+	}
+}
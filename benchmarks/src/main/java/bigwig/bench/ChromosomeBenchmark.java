@@ -0,0 +1,122 @@
+package bigwig.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.BPlusTree;
+import bigwig.Bigwig;
+import bigwig.BigwigOptions;
+import bigwig.BigwigWriter;
+import bigwig.ChromosomeDictionary;
+
+/**
+ * Chromosome tables for a generated file of contigs scaffold_0 .. scaffold_{contigs-1}:
+ * 
+ *   loadTreeMap / loadDictionary  - reading every name, as getChromIdMap() and 
+ *                                   ChromosomeDictionary.load() do
+ *   lookupTreeMap / lookupDictionary / lookupLazy - one id lookup by name
+ * 
+ * The heap retained by each loaded table is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChromosomeBenchmark {
+	
+	@Param({ "500000" })
+	public int contigs;
+	
+	private File file;
+	private Bigwig bigwig;
+	private Map<String,Integer> treeMap;
+	private ChromosomeDictionary dictionary, lazy;
+	private String[] names;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException { 
+		Map<String,Integer> sizes = new HashMap<String,Integer>();
+		for(int c = 0; c < contigs; c++) { 
+			sizes.put(String.format("scaffold_%d", c), 1000 + c % 5000);
+		}
+		file = File.createTempFile("contigs", ".bw");
+		file.deleteOnExit();
+		new BigwigWriter(file, sizes).close();
+		
+		BigwigOptions options = new BigwigOptions();
+		options.lazy = true;
+		bigwig = new Bigwig(file, options);
+		
+		long before = usedHeap();
+		treeMap = loadTreeMap();
+		long afterTreeMap = usedHeap();
+		dictionary = loadDictionary();
+		long afterDictionary = usedHeap();
+		System.out.println(String.format("%d contigs: TreeMap %.1f MB, ChromosomeDictionary %.1f MB", 
+				contigs, (afterTreeMap - before) / 1e6, (afterDictionary - afterTreeMap) / 1e6));
+		lazy = ChromosomeDictionary.lazy(new BPlusTree(bigwig, bigwig.header.chromosomeTreeOffset));
+		
+		Random rand = new Random(42L);
+		names = new String[4096];
+		for(int i = 0; i < names.length; i++) { 
+			names[i] = String.format("scaffold_%d", rand.nextInt(contigs));
+		}
+		next = 0;
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		bigwig.close();
+		file.delete();
+	}
+	
+	private static long usedHeap() { 
+		for(int i = 0; i < 3; i++) { System.gc(); }
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private String nextName() { 
+		next = (next + 1) & (names.length - 1);
+		return names[next];
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Map<String,Integer> loadTreeMap() throws IOException { 
+		Bigwig.ChromosomeBTreeHeader btree = bigwig.getBTreeHeader();
+		return bigwig.getChromIdMap(bigwig.new ChromosomeBTreeNode(bigwig.header.chromosomeTreeOffset + Bigwig.ChromosomeBTreeHeader.SIZE, btree.keySize, btree._flipped));
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public ChromosomeDictionary loadDictionary() throws IOException { 
+		return ChromosomeDictionary.load(new BPlusTree(bigwig, bigwig.header.chromosomeTreeOffset));
+	}
+	
+	@Benchmark
+	public Integer lookupTreeMap() { 
+		return treeMap.get(nextName());
+	}
+	
+	@Benchmark
+	public int lookupDictionary() throws IOException { 
+		return dictionary.id(nextName());
+	}
+	
+	@Benchmark
+	public int lookupLazy() throws IOException { 
+		return lazy.id(nextName());
+	}
+}
@@ -0,0 +1,150 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.io.OutputStreamDeflater;
+import bigwig.io.ParallelBlockCompressor;
+
+/**
+ * Compression throughput, in MB/s of input (the "megabytes" secondary score), and the
+ * compression ratio (uncompressed over compressed, printed after each iteration) of
+ * each way of deflating the same bedGraph-style sections: 
+ * 
+ *   finishPerKilobyte - a Deflater finished every 1KB, as OutputStreamDeflater used to
+ *   streamDeflater    - the current OutputStreamDeflater, one stream for all the input
+ *   parallelBlocks    - ParallelBlockCompressor, one stream per section, on threads workers
+ * 
+ * The sections are generated from a fixed seed, so runs are comparable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressBenchmark {
+	
+	@Param({ "1", "4" })
+	public int threads;
+	
+	@Param({ "1024" })
+	public int itemsPerSlot;
+	
+	private static final int SECTIONS = 64;
+	
+	private byte[][] sections;
+	private int sectionBytes;
+	
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Bytes { 
+		public double megabytes;
+		private long in, out;
+		
+		@Setup(Level.Iteration)
+		public void reset() { 
+			megabytes = 0.0;
+			in = out = 0L;
+		}
+		
+		/*
+		 * The ratio isn't a rate, so it's printed rather than reported as a counter.
+		 */
+		@TearDown(Level.Iteration)
+		public void report() { 
+			System.out.println(String.format("compression ratio %.3f", out == 0L ? 0.0 : (double)in / (double)out));
+		}
+		
+		public void add(long uncompressed, long compressed) { 
+			megabytes += uncompressed / 1e6;
+			in += uncompressed;
+			out += compressed;
+		}
+	}
+	
+	/*
+	 * Counts what's written to it.
+	 */
+	private static class CountingStream extends OutputStream { 
+		public long count = 0L;
+		public void write(int b) { count += 1; }
+		public void write(byte[] b, int off, int len) { count += len; }
+	}
+	
+	@Setup(Level.Trial)
+	public void generate() { 
+		Random rand = new Random(42L);
+		sections = new byte[SECTIONS][];
+		sectionBytes = 24 + itemsPerSlot * 12;
+		int start = 0;
+		for(int s = 0; s < SECTIONS; s++) { 
+			ByteBuffer section = ByteBuffer.allocate(sectionBytes).order(ByteOrder.LITTLE_ENDIAN);
+			section.putInt(0).putInt(start).putInt(0).putInt(0).putInt(0).put((byte)1).put((byte)0).putShort((short)itemsPerSlot);
+			for(int i = 0; i < itemsPerSlot; i++) { 
+				start += rand.nextInt(20);
+				int end = start + 1 + rand.nextInt(50);
+				section.putInt(start).putInt(end).putFloat(rand.nextInt(200) * 0.125f);
+				start = end;
+			}
+			sections[s] = section.array();
+		}
+	}
+	
+	@Benchmark
+	public long finishPerKilobyte(Bytes bytes) throws IOException { 
+		Deflater deflater = new Deflater();
+		byte[] output = new byte[2048];
+		long size = 0L;
+		for(byte[] section : sections) { 
+			for(int off = 0; off < section.length; off += 1024) { 
+				deflater.reset();
+				deflater.setInput(section, off, Math.min(1024, section.length - off));
+				deflater.finish();
+				while(!deflater.finished()) { 
+					size += deflater.deflate(output);
+				}
+			}
+		}
+		deflater.end();
+		bytes.add((long)SECTIONS * sectionBytes, size);
+		return size;
+	}
+	
+	@Benchmark
+	public long streamDeflater(Bytes bytes) throws IOException { 
+		CountingStream counter = new CountingStream();
+		OutputStreamDeflater deflater = new OutputStreamDeflater(counter);
+		for(byte[] section : sections) { 
+			deflater.write(section, 0, section.length);
+		}
+		deflater.close();
+		bytes.add((long)SECTIONS * sectionBytes, counter.count);
+		return counter.count;
+	}
+	
+	@Benchmark
+	public long parallelBlocks(Bytes bytes) throws IOException { 
+		final CountingStream counter = new CountingStream();
+		ParallelBlockCompressor compressor = new ParallelBlockCompressor(threads, Deflater.DEFAULT_COMPRESSION);
+		ParallelBlockCompressor.Listener listener = new ParallelBlockCompressor.Listener() { 
+			public void compressed(byte[] block) throws IOException { 
+				counter.write(block, 0, block.length);
+			}
+		};
+		for(byte[] section : sections) { 
+			compressor.submit(Arrays.copyOf(section, section.length), section.length, listener);
+		}
+		compressor.close();
+		bytes.add((long)SECTIONS * sectionBytes, counter.count);
+		return counter.count;
+	}
+}
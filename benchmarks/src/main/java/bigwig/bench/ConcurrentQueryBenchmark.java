@@ -0,0 +1,69 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.BigwigOptions;
+
+/**
+ * Query throughput with every benchmark thread sharing one open Bigwig.  Run it at 
+ * several thread counts to see how it scales with cores, e.g.: 
+ * 
+ *   for t in 1 2 4 8 16; do java -jar benchmarks.jar ConcurrentQuery -t $t; done
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ConcurrentQueryBenchmark {
+	
+	@Param({ "file", "mapped" })
+	public String mode;
+	
+	@Param({ "10000" })
+	public int regionWidth;
+	
+	private Bigwig bigwig;
+	private int chromId;
+	private int first, last;
+	
+	@State(Scope.Thread)
+	public static class Regions { 
+		public Random rand = new Random(Thread.currentThread().getId());
+	}
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		BigwigOptions options = new BigwigOptions();
+		options.memoryMapped = mode.equals("mapped");
+		bigwig = new Bigwig(BenchmarkFiles.input(), options);
+		
+		chromId = bigwig.getIndexHeader().startChromIdx;
+		first = bigwig.getIndexHeader().startBase;
+		last = bigwig.getIndexHeader().endChromIdx == chromId ? 
+				bigwig.getIndexHeader().endBase : first + 50000000;
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		bigwig.close();
+	}
+	
+	@Benchmark
+	public long query(Regions regions) throws IOException, DataFormatException { 
+		int start = first + regions.rand.nextInt(Math.max(1, last - first - regionWidth));
+		long total = 0L;
+		for(Bigwig.DataBlock block : bigwig.getIndexRoot().findOverlappingBlocks(chromId, start, start + regionWidth)) { 
+			total += block.inflate().length;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,92 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.BigwigOptions;
+import bigwig.FlatRTreeIndex;
+
+/**
+ * Point and small-region block lookups: the on-disk R-tree (as findOverlappingBlocks and 
+ * as the lazy RTreeWalker) against the in-memory FlatRTreeIndex.  The flat index's 
+ * footprint is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexLookupBenchmark {
+	
+	@Param({ "1", "1000" })
+	public int regionWidth;
+	
+	private Bigwig bigwig;
+	private FlatRTreeIndex index;
+	private int chromId;
+	private int[] starts;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		BigwigOptions options = BigwigOptions.mapped();
+		options.flatIndex = true;
+		bigwig = new Bigwig(BenchmarkFiles.input(), options);
+		index = bigwig.getFlatIndex();
+		System.out.println(String.format("%s: %s", bigwig.getName(), index));
+		
+		chromId = index.startChromIx[0];
+		int first = index.startBase[0];
+		int last = first;
+		for(int i = 0; i < index.size && index.endChromIx[i] == chromId; i++) { 
+			last = Math.max(last, index.endBase[i]);
+		}
+		
+		Random rand = new Random(42L);
+		starts = new int[4096];
+		for(int i = 0; i < starts.length; i++) { 
+			starts[i] = first + rand.nextInt(Math.max(1, last - first - regionWidth));
+		}
+		next = 0;
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		bigwig.close();
+	}
+	
+	private int nextStart() { 
+		next = (next + 1) % starts.length;
+		return starts[next];
+	}
+	
+	@Benchmark
+	public int rtreeBlocks() throws IOException { 
+		int start = nextStart();
+		return bigwig.getIndexRoot().findOverlappingBlocks(chromId, start, start + regionWidth).size();
+	}
+	
+	@Benchmark
+	public int rtreeWalker() throws IOException { 
+		int start = nextStart();
+		Bigwig.RTreeWalker walker = bigwig.new RTreeWalker(bigwig.getIndexRoot(), chromId, start, start + regionWidth);
+		int count = 0;
+		while(walker.next() != null) { count++; }
+		return count;
+	}
+	
+	@Benchmark
+	public int flatIndex() { 
+		int start = nextStart(), end = start + regionWidth;
+		int count = 0;
+		for(int i = index.search(chromId, start, end); i != -1; i = index.next(i, chromId, start, end)) { 
+			count++;
+		}
+		return count;
+	}
+}
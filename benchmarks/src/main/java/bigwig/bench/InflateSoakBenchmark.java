@@ -0,0 +1,115 @@
+package bigwig.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.io.Inflaters;
+
+/**
+ * A long-running soak of block decompression: a new Inflater per block (never ended, 
+ * as the reader used to do) against the per-thread Inflaters with a reused output 
+ * buffer.  Run with -prof gc for allocation per block; the process's resident set 
+ * size (from /proc, on Linux) and the Inflaters created are printed after each 
+ * iteration, so native memory growth shows up as a climbing RSS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 20, time = 10)
+@Fork(1)
+public class InflateSoakBenchmark {
+	
+	@Param({ "256" })
+	public int blockCount;
+	
+	private Bigwig bigwig;
+	private List<byte[]> blocks;
+	private int uncompressBufSize;
+	
+	@State(Scope.Thread)
+	public static class Output { 
+		public byte[] buffer;
+		public int next = 0;
+		
+		@Setup(Level.Trial)
+		public void allocate(InflateSoakBenchmark benchmark) { 
+			buffer = new byte[benchmark.uncompressBufSize];
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException { 
+		bigwig = new Bigwig(BenchmarkFiles.input());
+		uncompressBufSize = bigwig.header.uncompressBufSize;
+		Bigwig.RTreeIndexHeader index = bigwig.getIndexHeader();
+		
+		blocks = new ArrayList<byte[]>();
+		for(Bigwig.DataBlock block : bigwig.getIndexRoot().findOverlappingBlocks(index.startChromIdx, 0, Integer.MAX_VALUE)) { 
+			blocks.add(block.data());
+			if(blocks.size() >= blockCount) { break; }
+		}
+	}
+	
+	@TearDown(Level.Iteration)
+	public void report() throws IOException { 
+		System.out.println(String.format("  rss=%s inflaters=%d", residentSetSize(), Inflaters.createdCount()));
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		bigwig.close();
+	}
+	
+	private static String residentSetSize() throws IOException { 
+		try { 
+			BufferedReader br = new BufferedReader(new FileReader("/proc/self/status"));
+			try { 
+				String line;
+				while((line = br.readLine()) != null) { 
+					if(line.startsWith("VmRSS:")) { 
+						return line.substring(6).trim();
+					}
+				}
+			} finally { 
+				br.close();
+			}
+		} catch(IOException e) { 
+			// not Linux.
+		}
+		return "?";
+	}
+	
+	private byte[] nextBlock(Output output) { 
+		output.next = (output.next + 1) % blocks.size();
+		return blocks.get(output.next);
+	}
+	
+	@Benchmark
+	public int freshInflater(Output output) throws DataFormatException { 
+		byte[] uncompressed = new byte[uncompressBufSize];
+		Inflater inflater = new Inflater();
+		inflater.setInput(nextBlock(output));
+		return inflater.inflate(uncompressed);
+	}
+	
+	@Benchmark
+	public int pooledInflater(Output output) throws DataFormatException { 
+		return Inflaters.inflate(ByteBuffer.wrap(nextBlock(output)), output.buffer);
+	}
+	
+	@Benchmark
+	public int pooledExactLength(Output output) throws DataFormatException { 
+		return Inflaters.inflate(ByteBuffer.wrap(nextBlock(output)), uncompressBufSize).length;
+	}
+}
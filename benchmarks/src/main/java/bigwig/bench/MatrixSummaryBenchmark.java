@@ -0,0 +1,87 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.MatrixSummary;
+import bigwig.Region;
+import bigwig.SummaryStat;
+
+/**
+ * The mean of fileCount files over regionCount regions: a loop of Bigwig.summary() 
+ * calls per file and region, against one MatrixSummary.  The input file is opened 
+ * fileCount times to stand in for that many files.  Regions are a mix of widths, so 
+ * both raw data and zoom levels are used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatrixSummaryBenchmark { 
+	
+	@Param({ "8" })
+	public int fileCount;
+	
+	@Param({ "5000" })
+	public int regionCount;
+	
+	private List<Bigwig> files;
+	private List<Region> regions;
+	private MatrixSummary matrix;
+	private ForkJoinPool pool;
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		files = new ArrayList<Bigwig>();
+		for(int i = 0; i < fileCount; i++) { 
+			files.add(new Bigwig(BenchmarkFiles.input()));
+		}
+		Bigwig first = files.get(0);
+		int chromId = first.getIndexHeader().startChromIdx;
+		String chrom = first.getChromosomes().name(chromId);
+		int from = first.getIndexHeader().startBase;
+		int to = first.getIndexHeader().endChromIdx == chromId ? 
+				first.getIndexHeader().endBase : from + 50000000;
+		
+		Random rand = new Random(31L);
+		regions = new ArrayList<Region>();
+		for(int r = 0; r < regionCount; r++) { 
+			int width = r % 10 == 0 ? 100000 : 1000;
+			int start = from + rand.nextInt(Math.max(1, to - from - width));
+			regions.add(new Region(chrom, start, start + width));
+		}
+		matrix = new MatrixSummary(regions);
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		pool.shutdown();
+		for(Bigwig bigwig : files) { 
+			bigwig.close();
+		}
+	}
+	
+	@Benchmark
+	public double summaryLoop() throws IOException { 
+		double total = 0.0;
+		for(Bigwig bigwig : files) { 
+			for(Region region : regions) { 
+				total += bigwig.summary(region.chrom, region.start, region.end, 1, SummaryStat.MEAN)[0];
+			}
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public double[] matrix() throws IOException { 
+		return matrix.summarize(files, SummaryStat.MEAN, pool);
+	}
+}
@@ -0,0 +1,47 @@
+package bigwig.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.BigwigOptions;
+
+/**
+ * Time to open (and close) a file, eagerly and lazily.  Run with "-prof gc" for the 
+ * allocation per open (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenBenchmark {
+	
+	@Param({ "true", "false" })
+	public boolean lazy;
+	
+	@Param({ "file", "mapped" })
+	public String mode;
+	
+	private File file;
+	private BigwigOptions options;
+	
+	@Setup(Level.Trial)
+	public void setup() { 
+		file = BenchmarkFiles.input();
+		options = new BigwigOptions();
+		options.lazy = lazy;
+		options.memoryMapped = mode.equals("mapped");
+	}
+	
+	@Benchmark
+	public Bigwig open() throws IOException { 
+		Bigwig bigwig = new Bigwig(file, options);
+		bigwig.close();
+		return bigwig;
+	}
+}
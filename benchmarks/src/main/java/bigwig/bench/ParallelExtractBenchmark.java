@@ -0,0 +1,53 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.BigwigOptions;
+
+/**
+ * Whole-chromosome extraction (the first chromosome in the file) at increasing 
+ * Bigwig.extract() parallelism.  Compare the scores against the parallelism=1 row for 
+ * the speedup; parallelism beyond the machine's core count should flatten out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelExtractBenchmark { 
+	
+	@Param({ "1", "2", "4", "8", "16" })
+	public int parallelism;
+	
+	@Param({ "mapped" })
+	public String mode;
+	
+	private Bigwig bigwig;
+	private int chromId;
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		BigwigOptions options = new BigwigOptions();
+		options.memoryMapped = mode.equals("mapped");
+		options.flatIndex = true;
+		options.parallelism = parallelism;
+		bigwig = new Bigwig(BenchmarkFiles.input(), options);
+		chromId = bigwig.getIndexHeader().startChromIdx;
+		System.out.println(String.format("%d cores available", Runtime.getRuntime().availableProcessors()));
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		bigwig.close();
+	}
+	
+	@Benchmark
+	public int extractChromosome() throws IOException { 
+		return bigwig.extract(chromId, 0, Integer.MAX_VALUE).size;
+	}
+}
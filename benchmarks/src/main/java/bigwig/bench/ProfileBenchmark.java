@@ -0,0 +1,80 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.ProfileMatrix;
+import bigwig.SummaryStat;
+
+/**
+ * Binned profiles of anchorCount anchors, +/- flank bases split into binCount bins: 
+ * a loop of Bigwig.summary() calls per anchor, against one ProfileMatrix.  Anchors 
+ * are spread over the indexed span of the input's first chromosome, on both strands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileBenchmark { 
+	
+	@Param({ "20000" })
+	public int anchorCount;
+	
+	@Param({ "1000", "50000" })
+	public int flank;
+	
+	@Param({ "100" })
+	public int binCount;
+	
+	private Bigwig bigwig;
+	private List<ProfileMatrix.Anchor> anchors;
+	private ProfileMatrix profile;
+	private ForkJoinPool pool;
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		bigwig = new Bigwig(BenchmarkFiles.input());
+		int chromId = bigwig.getIndexHeader().startChromIdx;
+		String chrom = bigwig.getChromosomes().name(chromId);
+		int from = bigwig.getIndexHeader().startBase;
+		int to = bigwig.getIndexHeader().endChromIdx == chromId ? 
+				bigwig.getIndexHeader().endBase : from + 50000000;
+		
+		Random rand = new Random(37L);
+		anchors = new ArrayList<ProfileMatrix.Anchor>();
+		for(int a = 0; a < anchorCount; a++) { 
+			int position = from + rand.nextInt(Math.max(1, to - from));
+			anchors.add(new ProfileMatrix.Anchor(chrom, position, rand.nextBoolean() ? '+' : '-'));
+		}
+		profile = new ProfileMatrix(anchors, flank, flank, binCount, true);
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		pool.shutdown();
+		bigwig.close();
+	}
+	
+	@Benchmark
+	public double summaryLoop() throws IOException { 
+		double total = 0.0;
+		for(ProfileMatrix.Anchor anchor : anchors) { 
+			double[] bins = bigwig.summary(anchor.chrom, anchor.position - flank, anchor.position + flank, binCount, SummaryStat.MEAN);
+			total += bins[0];
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public float[] profile() throws IOException { 
+		return profile.compute(bigwig, SummaryStat.MEAN, pool);
+	}
+}
@@ -0,0 +1,80 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.BigwigOptions;
+
+/**
+ * Compares the RandomAccessFile reader against the memory-mapped reader for index
+ * traversal and block reads over random regions of the input file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+	
+	@Param({ "file", "mapped" })
+	public String mode;
+	
+	@Param({ "10000" })
+	public int regionWidth;
+	
+	private Bigwig bigwig;
+	private int chromId;
+	private int[] starts;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		BigwigOptions options = new BigwigOptions();
+		options.memoryMapped = mode.equals("mapped");
+		bigwig = new Bigwig(BenchmarkFiles.input(), options);
+		
+		chromId = bigwig.getIndexHeader().startChromIdx;
+		int first = bigwig.getIndexHeader().startBase;
+		int last = bigwig.getIndexHeader().endChromIdx == chromId ? 
+				bigwig.getIndexHeader().endBase : first + 50000000;
+		
+		Random rand = new Random(42L);
+		starts = new int[1024];
+		for(int i = 0; i < starts.length; i++) { 
+			starts[i] = first + rand.nextInt(Math.max(1, last - first - regionWidth));
+		}
+		next = 0;
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		bigwig.close();
+	}
+	
+	private int nextStart() { 
+		next = (next + 1) % starts.length;
+		return starts[next];
+	}
+	
+	@Benchmark
+	public int overlappingBlocks() throws IOException { 
+		int start = nextStart();
+		return bigwig.getIndexRoot().findOverlappingBlocks(chromId, start, start + regionWidth).size();
+	}
+	
+	@Benchmark
+	public long inflateBlocks() throws IOException, DataFormatException { 
+		int start = nextStart();
+		long total = 0L;
+		for(Bigwig.DataBlock block : bigwig.getIndexRoot().findOverlappingBlocks(chromId, start, start + regionWidth)) { 
+			total += block.inflate().length;
+		}
+		return total;
+	}
+}
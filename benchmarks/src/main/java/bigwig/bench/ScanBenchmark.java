@@ -0,0 +1,88 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.ChromosomeDictionary;
+import bigwig.FileScan;
+import bigwig.IntervalCursor;
+
+/**
+ * Reading every item of the input file: one whole-chromosome query() per chromosome, 
+ * against a FileScan with its read-ahead thread, in passes per second.  The "megabytes"
+ * and "blocks" secondary scores are the compressed MB read and blocks decoded per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark { 
+	
+	@Param({ "8388608" })
+	public int chunkSize;
+	
+	@Param({ "64" })
+	public int queueBlocks;
+	
+	private Bigwig bigwig;
+	
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Progress { 
+		public double megabytes;
+		public long blocks;
+		
+		@Setup(Level.Iteration)
+		public void reset() { 
+			megabytes = 0.0;
+			blocks = 0L;
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		bigwig = new Bigwig(BenchmarkFiles.input());
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		bigwig.close();
+	}
+	
+	@Benchmark
+	public double queryPerChrom(Progress progress) throws IOException { 
+		ChromosomeDictionary chromosomes = bigwig.getChromosomes();
+		long bytes = bigwig.getReadStats().bytesRead(), blocks = bigwig.getReadStats().blockCount();
+		double total = 0.0;
+		for(int chromId = 0; chromId < chromosomes.count(); chromId++) { 
+			IntervalCursor cursor = bigwig.query(chromId, 0, Integer.MAX_VALUE);
+			while(cursor.next()) { 
+				total += cursor.value();
+			}
+		}
+		progress.megabytes += (bigwig.getReadStats().bytesRead() - bytes) / 1e6;
+		progress.blocks += bigwig.getReadStats().blockCount() - blocks;
+		return total;
+	}
+	
+	@Benchmark
+	public double scan(Progress progress) throws IOException { 
+		FileScan scan = new FileScan(bigwig, chunkSize, queueBlocks);
+		double total = 0.0;
+		try { 
+			while(scan.next()) { 
+				total += scan.value();
+			}
+		} finally { 
+			scan.close();
+		}
+		progress.megabytes += scan.bytesRead() / 1e6;
+		progress.blocks += scan.blocksDecoded();
+		return total;
+	}
+}
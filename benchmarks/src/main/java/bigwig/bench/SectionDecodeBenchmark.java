@@ -0,0 +1,98 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.WigSection;
+
+/**
+ * Section decoding throughput in items/sec: the boxed BinaryWIGSectionHeader against the 
+ * primitive WigSection, over the first blocks of the input file.  Both decode from 
+ * already-inflated blocks, so only decoding is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SectionDecodeBenchmark {
+	
+	@Param({ "256" })
+	public int blockCount;
+	
+	private Bigwig bigwig;
+	private List<ByteBuffer> blocks;
+	private List<byte[]> arrays;
+	
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Items { 
+		public long items;
+		
+		@Setup(Level.Iteration)
+		public void reset() { items = 0L; }
+	}
+	
+	@State(Scope.Thread)
+	public static class Decoder { 
+		public WigSection section = new WigSection();
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException { 
+		bigwig = new Bigwig(BenchmarkFiles.input());
+		Bigwig.RTreeIndexHeader index = bigwig.getIndexHeader();
+		
+		blocks = new ArrayList<ByteBuffer>();
+		arrays = new ArrayList<byte[]>();
+		for(Bigwig.DataBlock block : bigwig.getIndexRoot().findOverlappingBlocks(index.startChromIdx, 0, Integer.MAX_VALUE)) { 
+			ByteBuffer buffer = block.decompress(index._flipped);
+			blocks.add(buffer);
+			
+			byte[] array = new byte[buffer.remaining()];
+			buffer.duplicate().get(array);
+			arrays.add(array);
+			
+			if(blocks.size() >= blockCount) { break; }
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		bigwig.close();
+	}
+	
+	@Benchmark
+	public float boxed(Items items) throws IOException { 
+		float sum = 0f;
+		for(byte[] array : arrays) { 
+			Bigwig.BinaryWIGSectionHeader section = bigwig.new BinaryWIGSectionHeader(array, true);
+			for(int i = 0; i < section.itemCount; i++) { 
+				sum += section.values.get(i);
+			}
+			items.items += section.itemCount;
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	public float primitive(Items items, Decoder decoder) { 
+		float sum = 0f;
+		WigSection section = decoder.section;
+		for(ByteBuffer buffer : blocks) { 
+			section.decode(buffer.duplicate().order(buffer.order()));
+			for(int i = 0; i < section.itemCount; i++) { 
+				sum += section.values[i];
+			}
+			items.items += section.itemCount;
+		}
+		return sum;
+	}
+}
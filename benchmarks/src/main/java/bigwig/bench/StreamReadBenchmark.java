@@ -0,0 +1,132 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.io.PagedFileInput;
+import bigwig.io.RandomAccessFileInput;
+import bigwig.io.RandomInputStream;
+
+/**
+ * Sequential read throughput of the bigwig.io sources, in MB/s (the "megabytes" 
+ * secondary score).  Each operation reads chunkSize bytes from a random offset: 
+ * 
+ *   byteAtATime  - RandomAccessFile.readByte() per byte, as RandomInputStream used to
+ *   streamBulk   - RandomInputStream.read(byte[]) over a PagedFileInput
+ *   rafInts      - readInt() on a RandomAccessFileInput (a read(2) per byte)
+ *   pagedInts    - readInt() on a PagedFileInput
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamReadBenchmark {
+	
+	@Param({ "65536" })
+	public int chunkSize;
+	
+	private RandomAccessFile raf;
+	private RandomAccessFileInput rafInput;
+	private PagedFileInput paged, streamInput;
+	private RandomInputStream stream;
+	private byte[] buffer;
+	private long[] offsets;
+	private int next;
+	
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Bytes { 
+		public double megabytes;
+		
+		@Setup(Level.Iteration)
+		public void reset() { megabytes = 0.0; }
+		
+		public void add(long n) { megabytes += n / 1e6; }
+	}
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		raf = new RandomAccessFile(BenchmarkFiles.input(), "r");
+		rafInput = new RandomAccessFileInput(BenchmarkFiles.input());
+		paged = new PagedFileInput(BenchmarkFiles.input());
+		streamInput = new PagedFileInput(BenchmarkFiles.input());
+		stream = new RandomInputStream(streamInput);
+		buffer = new byte[8192];
+		
+		long length = raf.length();
+		if(length < chunkSize) { 
+			throw new IllegalStateException(String.format("Input is shorter than %d bytes", chunkSize));
+		}
+		Random rand = new Random(42L);
+		offsets = new long[1024];
+		for(int i = 0; i < offsets.length; i++) { 
+			offsets[i] = (long)(rand.nextDouble() * (length - chunkSize)) & ~3L;
+		}
+		next = 0;
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		raf.close();
+		rafInput.close();
+		paged.close();
+		stream.close();
+	}
+	
+	private long nextOffset() { 
+		next = (next + 1) % offsets.length;
+		return offsets[next];
+	}
+	
+	@Benchmark
+	public int byteAtATime(Bytes bytes) throws IOException { 
+		raf.seek(nextOffset());
+		int sum = 0;
+		for(int i = 0; i < chunkSize; i++) { 
+			sum += raf.readByte();
+		}
+		bytes.add(chunkSize);
+		return sum;
+	}
+	
+	@Benchmark
+	public int streamBulk(Bytes bytes) throws IOException { 
+		streamInput.seek(nextOffset());
+		int sum = 0, remaining = chunkSize;
+		while(remaining > 0) { 
+			int n = stream.read(buffer, 0, Math.min(buffer.length, remaining));
+			sum += buffer[0];
+			remaining -= n;
+		}
+		bytes.add(chunkSize);
+		return sum;
+	}
+	
+	@Benchmark
+	public int rafInts(Bytes bytes) throws IOException { 
+		rafInput.seek(nextOffset());
+		int sum = 0;
+		for(int i = 0; i < chunkSize; i += 4) { 
+			sum += rafInput.readInt();
+		}
+		bytes.add(chunkSize);
+		return sum;
+	}
+	
+	@Benchmark
+	public int pagedInts(Bytes bytes) throws IOException { 
+		paged.seek(nextOffset());
+		int sum = 0;
+		for(int i = 0; i < chunkSize; i += 4) { 
+			sum += paged.readInt();
+		}
+		bytes.add(chunkSize);
+		return sum;
+	}
+}
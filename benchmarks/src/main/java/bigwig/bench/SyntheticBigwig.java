@@ -0,0 +1,155 @@
+package bigwig.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import bigwig.Bigwig;
+import bigwig.BigwigWriter;
+
+/**
+ * Deterministic bigWig files for the benchmarks, so they run offline and at any scale.
+ * The same settings always give the same bytes, so results from different releases
+ * are comparable.  Settings are read from system properties:
+ *
+ *   bigwig.synthetic.chroms    - chromosomes chr1 .. chrN (4)
+ *   bigwig.synthetic.items     - items per chromosome (500000)
+ *   bigwig.synthetic.sections  - bedgraph, varstep or fixedstep (bedgraph)
+ *   bigwig.synthetic.zooms     - the most zoom levels to write (6)
+ *   bigwig.synthetic.slot      - items per section (1024)
+ *   bigwig.synthetic.seed      - seed of the values and gaps (42)
+ *
+ * Values are a random walk, so blocks compress about as well as real coverage does.
+ * Files are written once to bigwig.dir (java.io.tmpdir/bigwig4j-bench by default),
+ * named after their settings, and reused by later runs.  To write one elsewhere:
+ *
+ *   java -Dbigwig.synthetic.items=2000000 -cp benchmarks.jar bigwig.bench.SyntheticBigwig out.bw
+ */
+public class SyntheticBigwig {
+
+	public static final String PREFIX = "bigwig.synthetic.";
+	public static final String DIR_PROPERTY = "bigwig.dir";
+
+	public int chroms = 4;
+	public int itemsPerChrom = 500000;
+	public byte sectionType = Bigwig.WIGTYPE_BEDGRAPH;
+	public int zoomLevels = 6;
+	public int itemsPerSlot = 1024;
+	public long seed = 42L;
+
+	public static SyntheticBigwig fromProperties() { 
+		SyntheticBigwig spec = new SyntheticBigwig();
+		spec.chroms = Integer.getInteger(PREFIX + "chroms", spec.chroms);
+		spec.itemsPerChrom = Integer.getInteger(PREFIX + "items", spec.itemsPerChrom);
+		spec.sectionType = sectionType(System.getProperty(PREFIX + "sections", "bedgraph"));
+		spec.zoomLevels = Integer.getInteger(PREFIX + "zooms", spec.zoomLevels);
+		spec.itemsPerSlot = Integer.getInteger(PREFIX + "slot", spec.itemsPerSlot);
+		spec.seed = Long.getLong(PREFIX + "seed", spec.seed);
+		return spec;
+	}
+
+	public static byte sectionType(String name) { 
+		if(name.equalsIgnoreCase("bedgraph")) { return Bigwig.WIGTYPE_BEDGRAPH; }
+		if(name.equalsIgnoreCase("varstep")) { return Bigwig.WIGTYPE_VARSTEP; }
+		if(name.equalsIgnoreCase("fixedstep")) { return Bigwig.WIGTYPE_FIXEDSTEP; }
+		throw new IllegalArgumentException(String.format("Unknown section type %s", name));
+	}
+
+	public static String sectionName(byte type) { 
+		return type == Bigwig.WIGTYPE_BEDGRAPH ? "bedgraph" : type == Bigwig.WIGTYPE_VARSTEP ? "varstep" : "fixedstep";
+	}
+
+	public String name() { 
+		return String.format("synthetic-%dx%d-%s-z%d-s%d-%d.bw",
+				chroms, itemsPerChrom, sectionName(sectionType), zoomLevels, itemsPerSlot, seed);
+	}
+
+	/*
+	 * The file for these settings in bigwig.dir, written first if it isn't there.
+	 */
+	public synchronized File file() throws IOException { 
+		File dir = new File(System.getProperty(DIR_PROPERTY,
+				new File(System.getProperty("java.io.tmpdir"), "bigwig4j-bench").getPath()));
+		if(!dir.isDirectory() && !dir.mkdirs()) { 
+			throw new IOException(String.format("Can't create %s", dir));
+		}
+		File f = new File(dir, name());
+		if(!f.exists()) { 
+			File partial = File.createTempFile("partial", ".bw", dir);
+			write(partial);
+			if(!partial.renameTo(f)) { 
+				partial.delete();
+				throw new IOException(String.format("Can't rename %s to %s", partial, f));
+			}
+		}
+		return f;
+	}
+
+	/*
+	 * fixedstep items are 25 bases, back to back; varstep items are 25 bases with
+	 * gaps of up to 50; bedgraph items are 1-100 bases, with gaps of up to 50.
+	 */
+	public void write(File f) throws IOException { 
+		Map<String,Integer> sizes = new LinkedHashMap<String,Integer>();
+		for(int c = 0; c < chroms; c++) { 
+			sizes.put(chromName(c), (int)Math.min(Integer.MAX_VALUE, itemsPerChrom * 150L + 1000L));
+		}
+		BigwigWriter writer = new BigwigWriter(f, sizes);
+		writer.zoomLevels = zoomLevels;
+		writer.itemsPerSlot = itemsPerSlot;
+		try { 
+			// the writer wants chromosomes in its (name) order.
+			String[] order = new String[chroms];
+			for(Map.Entry<String,Integer> e : writer.getChromIds().entrySet()) { 
+				order[e.getValue()] = e.getKey();
+			}
+			for(String chrom : order) { 
+				writeChrom(writer, chrom);
+			}
+		} finally { 
+			writer.close();
+		}
+	}
+
+	private void writeChrom(BigwigWriter writer, String chrom) throws IOException { 
+		Random rand = new Random(seed * 31L + chrom.hashCode());
+		double level = 10.0;
+		int position = 0;
+		for(int i = 0; i < itemsPerChrom; i++) { 
+			int start, end;
+			if(sectionType == Bigwig.WIGTYPE_FIXEDSTEP) { 
+				start = position;
+				end = start + 25;
+			} else if(sectionType == Bigwig.WIGTYPE_VARSTEP) { 
+				start = position + (i > 0 ? 1 + rand.nextInt(50) : 0);
+				end = start + 25;
+			} else { 
+				start = position + rand.nextInt(50);
+				end = start + 1 + rand.nextInt(100);
+			}
+			level = Math.max(0.0, level + rand.nextGaussian());
+			writer.add(chrom, start, end, Math.round(level * 10.0) / 10.0f);
+			position = end;
+		}
+	}
+
+	public static String chromName(int c) { 
+		return "chr" + (c + 1);
+	}
+
+	public String toString() { 
+		return name();
+	}
+
+	public static void main(String[] args) throws IOException { 
+		if(args.length != 1) { 
+			System.err.println("Usage: SyntheticBigwig <out.bw>  (settings from -Dbigwig.synthetic.*)");
+			System.exit(1);
+		}
+		SyntheticBigwig spec = fromProperties();
+		spec.write(new File(args[0]));
+		System.out.println(String.format("Wrote %s as %s", args[0], spec.name()));
+	}
+}
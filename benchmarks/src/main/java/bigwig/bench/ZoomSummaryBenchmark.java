@@ -0,0 +1,75 @@
+package bigwig.bench;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.SummaryBins;
+import bigwig.SummaryStat;
+
+/**
+ * A binCount-bin summary of a regionWidth-wide region at a random place in the 
+ * input's first chromosome: from the zoom level Bigwig.summary() picks for the bin 
+ * size, against from the raw items.  The level used is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZoomSummaryBenchmark {
+	
+	@Param({ "100000", "10000000" })
+	public int regionWidth;
+	
+	@Param({ "100" })
+	public int binCount;
+	
+	private Bigwig bigwig;
+	private int chromId, level;
+	private int[] starts;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void open() throws IOException { 
+		bigwig = new Bigwig(BenchmarkFiles.input());
+		chromId = bigwig.getIndexHeader().startChromIdx;
+		int from = bigwig.getIndexHeader().startBase;
+		int to = bigwig.getIndexHeader().endChromIdx == chromId ? 
+				bigwig.getIndexHeader().endBase : bigwig.getChromosomes().size(chromId);
+		level = bigwig.bestZoomLevel(regionWidth / binCount);
+		System.out.println(String.format("%d bins over %d bases: zoom level %d of %d", 
+				binCount, regionWidth, level, bigwig.getZoomHeaders().length));
+		
+		Random rand = new Random(53L);
+		starts = new int[1024];
+		for(int i = 0; i < starts.length; i++) { 
+			starts[i] = from + rand.nextInt(Math.max(1, to - from - regionWidth));
+		}
+		next = 0;
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() throws IOException { 
+		bigwig.close();
+	}
+	
+	private SummaryBins nextBins() { 
+		next = (next + 1) & (starts.length - 1);
+		return new SummaryBins(starts[next], starts[next] + regionWidth, binCount);
+	}
+	
+	@Benchmark
+	public double[] zoom() throws IOException { 
+		return bigwig.summarize(chromId, nextBins(), level).values(SummaryStat.MEAN);
+	}
+	
+	@Benchmark
+	public double[] raw() throws IOException { 
+		return bigwig.summarize(chromId, nextBins(), -1).values(SummaryStat.MEAN);
+	}
+}
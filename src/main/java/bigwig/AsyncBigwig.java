@@ -0,0 +1,233 @@
+package bigwig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import bigwig.io.AsyncFileInput;
+import bigwig.io.AsyncInput;
+
+/**
+ * Region queries that never block the calling thread, for callers (event loops,
+ * non-blocking servers) that can't wait on a read.
+ *
+ * query() returns at once.  The R-tree is walked with asynchronous reads from an
+ * AsyncInput, and the children of a node are all read at the same time.  The data
+ * blocks found are then fetched in coalesced runs, as Bigwig does, all at once too.
+ * Each run is inflated and decoded on the decoder executor, so I/O threads never do
+ * CPU work.  Many outstanding queries therefore overlap their reads, where the
+ * blocking API would tie up one thread for each.
+ *
+ * The header, zoom headers, index header and chromosomes come from an ordinary Bigwig
+ * and are read when this is opened.  With options.lazyChromosomes, a name's first
+ * lookup still reads the B+ tree on the calling thread.
+ */
+public class AsyncBigwig { 
+
+	private Bigwig bigwig;
+	private AsyncInput input;
+	private Executor decoder;
+
+	private long length;
+	private boolean flip;
+	private long rootOffset;
+	private int nodeSize;
+	private FlatRTreeIndex flatIndex;
+
+	public AsyncBigwig(File f) throws IOException { 
+		this(f, new BigwigOptions(), ForkJoinPool.commonPool());
+	}
+
+	public AsyncBigwig(File f, BigwigOptions options, Executor decoder) throws IOException { 
+		this(new Bigwig(f, options), new AsyncFileInput(f.getAbsoluteFile()), decoder);
+	}
+
+	/*
+	 * bigwig and input must be the same file.  Closing this closes both.
+	 */
+	public AsyncBigwig(Bigwig bigwig, AsyncInput input, Executor decoder) throws IOException { 
+		this.bigwig = bigwig;
+		this.input = input;
+		this.decoder = decoder;
+		length = input.length();
+
+		Bigwig.RTreeIndexHeader index = bigwig.getIndexHeader();
+		flip = index._flipped;
+		rootOffset = index._rootOffset;
+		// a full leaf node: leaf items are bigger than non-leaf ones.
+		nodeSize = 4 + index.blockSize * Bigwig.RTreeLeaf.SIZE;
+		flatIndex = bigwig.isFlatIndexed() ? bigwig.getFlatIndex() : null;
+		bigwig.getChromosomes();
+	}
+
+	public Bigwig getBigwig() { 
+		return bigwig;
+	}
+
+	/*
+	 * The items overlapping [start, end) on chrom, in genomic order; empty for an
+	 * unknown chromosome.
+	 */
+	public CompletableFuture<Intervals> query(String chrom, int start, int end) { 
+		int chromId;
+		try { 
+			chromId = bigwig.getChromosomes().id(chrom);
+		} catch(IOException e) { 
+			return failed(e);
+		}
+		if(chromId == -1) { 
+			return CompletableFuture.completedFuture(new Intervals(0));
+		}
+		return query(chromId, start, end);
+	}
+
+	public CompletableFuture<Intervals> query(final int chromId, final int start, final int end) { 
+		return findBlocks(chromId, start, end).thenCompose(new Function<List<Bigwig.DataBlock>,CompletionStage<Intervals>>() { 
+			public CompletionStage<Intervals> apply(List<Bigwig.DataBlock> blocks) { 
+				return decode(blocks, chromId, start, end);
+			}
+		});
+	}
+
+	/*
+	 * The data blocks overlapping a region, in genomic order.
+	 */
+	public CompletableFuture<List<Bigwig.DataBlock>> findBlocks(int chromId, int start, int end) { 
+		if(flatIndex != null) { 
+			List<Bigwig.DataBlock> blocks = new ArrayList<Bigwig.DataBlock>();
+			for(int i = flatIndex.search(chromId, start, end); i != -1; i = flatIndex.next(i, chromId, start, end)) { 
+				blocks.add(bigwig.new DataBlock(flatIndex, i));
+			}
+			return CompletableFuture.completedFuture(blocks);
+		}
+		return walk(rootOffset, chromId, start, end);
+	}
+
+	/*
+	 * The overlapping blocks under the node at offset.  The node is read whole, as one
+	 * full node's worth of bytes, and its overlapping children are then read together.
+	 */
+	private CompletableFuture<List<Bigwig.DataBlock>> walk(long offset, final int chromId, final int start, final int end) { 
+		int size = (int)Math.min((long)nodeSize, length - offset);
+		return input.read(offset, size).thenCompose(new Function<ByteBuffer,CompletionStage<List<Bigwig.DataBlock>>>() { 
+			public CompletionStage<List<Bigwig.DataBlock>> apply(ByteBuffer node) { 
+				node.order(flip ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+				boolean leaf = node.get() != 0;
+				node.get();
+				int count = node.getShort() & 0xffff;
+
+				if(leaf) { 
+					List<Bigwig.DataBlock> blocks = new ArrayList<Bigwig.DataBlock>();
+					for(int i = 0; i < count; i++) { 
+						Bigwig.RTreeLeaf item = bigwig.new RTreeLeaf(node, flip);
+						if(item.overlaps(chromId, start, end)) { 
+							blocks.add(bigwig.new DataBlock(item));
+						}
+					}
+					return CompletableFuture.completedFuture(blocks);
+				}
+
+				final List<CompletableFuture<List<Bigwig.DataBlock>>> children = new ArrayList<CompletableFuture<List<Bigwig.DataBlock>>>();
+				for(int i = 0; i < count; i++) { 
+					Bigwig.RTreeNonLeaf item = bigwig.new RTreeNonLeaf(node, flip);
+					if(item.overlaps(chromId, start, end)) { 
+						children.add(walk(item.dataOffset, chromId, start, end));
+					}
+				}
+				return CompletableFuture.allOf(children.toArray(new CompletableFuture<?>[children.size()])).thenApply(new Function<Void,List<Bigwig.DataBlock>>() { 
+					public List<Bigwig.DataBlock> apply(Void done) { 
+						List<Bigwig.DataBlock> blocks = new ArrayList<Bigwig.DataBlock>();
+						for(CompletableFuture<List<Bigwig.DataBlock>> child : children) { 
+							blocks.addAll(child.join());
+						}
+						return blocks;
+					}
+				});
+			}
+		});
+	}
+
+	/*
+	 * Reads the blocks in coalesced runs, all at once, and decodes each run on the
+	 * decoder as it arrives; the runs' items are joined in order at the end.
+	 */
+	private CompletableFuture<Intervals> decode(List<Bigwig.DataBlock> blocks, final int chromId, final int start, final int end) { 
+		final List<CompletableFuture<Intervals>> runs = new ArrayList<CompletableFuture<Intervals>>();
+		int first = 0;
+		while(first < blocks.size()) { 
+			Bigwig.DataBlock block = blocks.get(first);
+			long runEnd = block.offset + block.size;
+			int last = first;
+			while(last + 1 < blocks.size() && bigwig.joins(block.offset, runEnd, blocks.get(last + 1))) { 
+				last += 1;
+				runEnd = blocks.get(last).offset + blocks.get(last).size;
+			}
+			final List<Bigwig.DataBlock> run = blocks.subList(first, last + 1);
+			runs.add(input.read(block.offset, (int)(runEnd - block.offset)).thenApplyAsync(new Function<ByteBuffer,Intervals>() { 
+				public Intervals apply(ByteBuffer buffer) { 
+					return decodeRun(run, buffer, chromId, start, end);
+				}
+			}, decoder));
+			first = last + 1;
+		}
+
+		if(runs.isEmpty()) { 
+			return CompletableFuture.completedFuture(new Intervals(0));
+		}
+		return CompletableFuture.allOf(runs.toArray(new CompletableFuture<?>[runs.size()])).thenApply(new Function<Void,Intervals>() { 
+			public Intervals apply(Void done) { 
+				if(runs.size() == 1) { 
+					return runs.get(0).join();
+				}
+				Intervals result = new Intervals(0);
+				for(CompletableFuture<Intervals> run : runs) { 
+					result.addAll(run.join());
+				}
+				return result;
+			}
+		});
+	}
+
+	private Intervals decodeRun(List<Bigwig.DataBlock> run, ByteBuffer buffer, int chromId, int start, int end) { 
+		long runStart = run.get(0).offset, used = 0L;
+		Intervals items = new Intervals();
+		WigSection section = new WigSection();
+		try { 
+			for(Bigwig.DataBlock block : run) { 
+				ByteBuffer slice = buffer.duplicate();
+				slice.position((int)(block.offset - runStart));
+				slice.limit((int)(block.offset - runStart + block.size));
+				block._data = slice.slice();
+				block.decode(flip, section, chromId, start, end, items);
+				block._data = null;
+				used += block.size;
+			}
+		} catch(IOException e) { 
+			throw new CompletionException(e);
+		}
+		bigwig.getReadStats().record(buffer.limit(), run.size(), buffer.limit() - used);
+		return items;
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable error) { 
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(error);
+		return future;
+	}
+
+	public void close() throws IOException { 
+		try { 
+			input.close();
+		} finally { 
+			bigwig.close();
+		}
+	}
+}
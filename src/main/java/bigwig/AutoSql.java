@@ -0,0 +1,185 @@
+package bigwig;
+
+import java.util.*;
+
+/**
+ * A parsed autoSql table declaration, as stored in BigBed files to describe their
+ * columns:
+ *
+ *   table bed6
+ *   "Browser extensible data"
+ *       (
+ *       string chrom;      "Reference sequence chromosome or scaffold"
+ *       uint   chromStart; "Start position in chromosome"
+ *       ...
+ *       )
+ *
+ * Array (int[blockCount]), enum and set types are kept as written; their values are
+ * not checked against the data.
+ */
+public class AutoSql { 
+
+	public static class Field { 
+		public String type;
+		public String name;
+		public String comment;
+
+		/*
+		 * The array size (a number or the name of another field) for array types, and
+		 * the allowed values for enum and set types; otherwise null.
+		 */
+		public String size;
+		public List<String> values;
+
+		public String toString() { 
+			return String.format("%s %s", type, name);
+		}
+	}
+
+	public String kind;
+	public String name;
+	public String comment;
+	public List<Field> fields;
+
+	public AutoSql() { 
+		fields = new ArrayList<Field>();
+	}
+
+	/*
+	 * The position of the named field (0 for chrom, 3 for the first field after
+	 * chromEnd), or -1.
+	 */
+	public int indexOf(String field) { 
+		for(int i = 0; i < fields.size(); i++) { 
+			if(fields.get(i).name.equals(field)) { 
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public String toString() { 
+		return String.format("%s %s %s", kind, name, fields);
+	}
+
+	/*
+	 * Throws IllegalArgumentException if text isn't a table, simple or object
+	 * declaration.
+	 */
+	public static AutoSql parse(String text) { 
+		Tokens tokens = new Tokens(text);
+		AutoSql sql = new AutoSql();
+		sql.kind = tokens.word();
+		if(!sql.kind.equals("table") && !sql.kind.equals("simple") && !sql.kind.equals("object")) { 
+			throw new IllegalArgumentException(String.format("Expected a table declaration, not \"%s\"", sql.kind));
+		}
+		sql.name = tokens.word();
+		sql.comment = tokens.peekQuoted() ? tokens.quoted() : null;
+		tokens.expect("(");
+		while(!tokens.peek(")")) { 
+			sql.fields.add(parseField(tokens));
+		}
+		tokens.expect(")");
+		return sql;
+	}
+
+	private static Field parseField(Tokens tokens) { 
+		Field field = new Field();
+		field.type = tokens.word();
+		if(field.type.equals("simple") || field.type.equals("object")) { 
+			field.type = field.type + " " + tokens.word();
+		}
+		if(tokens.peek("[")) { 
+			tokens.expect("[");
+			field.size = tokens.word();
+			tokens.expect("]");
+		} else if(tokens.peek("(")) { 
+			tokens.expect("(");
+			field.values = new ArrayList<String>();
+			while(!tokens.peek(")")) { 
+				field.values.add(tokens.word());
+				if(tokens.peek(",")) { tokens.expect(","); }
+			}
+			tokens.expect(")");
+		}
+		field.name = tokens.word();
+		if(field.size == null && tokens.peek("[")) { 
+			tokens.expect("[");
+			field.size = tokens.word();
+			tokens.expect("]");
+		}
+		tokens.expect(";");
+		field.comment = tokens.peekQuoted() ? tokens.quoted() : null;
+		return field;
+	}
+
+	/*
+	 * Splits the text into words, quoted strings and the punctuation ( ) [ ] , ;
+	 */
+	private static class Tokens { 
+
+		private String text;
+		private int pos;
+
+		public Tokens(String text) { 
+			this.text = text;
+			pos = 0;
+		}
+
+		private void skipSpace() { 
+			while(pos < text.length() && (Character.isWhitespace(text.charAt(pos)) || text.charAt(pos) == 0)) { 
+				pos++;
+			}
+		}
+
+		private static boolean isPunctuation(char c) { 
+			return "()[],;\"".indexOf(c) != -1;
+		}
+
+		public boolean peek(String punctuation) { 
+			skipSpace();
+			return text.startsWith(punctuation, pos);
+		}
+
+		public boolean peekQuoted() { 
+			return peek("\"");
+		}
+
+		public void expect(String punctuation) { 
+			if(!peek(punctuation)) { 
+				throw error(String.format("\"%s\"", punctuation));
+			}
+			pos += punctuation.length();
+		}
+
+		public String word() { 
+			skipSpace();
+			int start = pos;
+			while(pos < text.length() && !Character.isWhitespace(text.charAt(pos)) && !isPunctuation(text.charAt(pos))) { 
+				pos++;
+			}
+			if(pos == start) { 
+				throw error("a name");
+			}
+			return text.substring(start, pos);
+		}
+
+		public String quoted() { 
+			expect("\"");
+			StringBuilder sb = new StringBuilder();
+			while(pos < text.length() && text.charAt(pos) != '"') { 
+				if(text.charAt(pos) == '\\' && pos + 1 < text.length()) { 
+					pos++;
+				}
+				sb.append(text.charAt(pos++));
+			}
+			expect("\"");
+			return sb.toString();
+		}
+
+		private IllegalArgumentException error(String expected) { 
+			String found = pos < text.length() ? text.substring(pos, Math.min(text.length(), pos + 20)) : "the end";
+			return new IllegalArgumentException(String.format("autoSql: expected %s at offset %d, found \"%s\"", expected, pos, found));
+		}
+	}
+}
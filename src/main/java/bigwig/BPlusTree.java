@@ -0,0 +1,240 @@
+package bigwig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import bigwig.io.ByteBufferDataInput;
+
+/**
+ * Key lookups in one of a file's on-disk B+ trees (the chromosome tree, or a BigBed
+ * extra index), reading only the nodes along each search path.
+ *
+ * Keys are byte strings of at most keySize bytes, zero-padded in the file and compared
+ * as unsigned bytes.  A key may be stored more than once (a BigBed extra index holds
+ * one item per record), so lookups return every value under it.  Each node is one
+ * read of its header and items.  find() costs one read per level, plus one per node
+ * that a run of equal keys spills over into.  findAll() sorts its keys and descends
+ * once for all of them, so each node on any of their paths is read just once,
+ * however many keys pass through it.
+ */
+public class BPlusTree { 
+
+	private Bigwig bigwig;
+	private long rootOffset;
+
+	public Bigwig.ChromosomeBTreeHeader header;
+
+	public BPlusTree(Bigwig bigwig, long offset) throws IOException { 
+		this.bigwig = bigwig;
+		header = bigwig.new ChromosomeBTreeHeader(new ByteBufferDataInput(bigwig.readBuffer(offset, Bigwig.ChromosomeBTreeHeader.SIZE, false)));
+		if(header.magic != Bigwig.BTREE_MAGIC && header.magic != Bigwig.BTREE_MAGIC_FLIPPED) { 
+			throw new IllegalArgumentException(String.format("No B+ tree at %d (magic %s)", offset, Integer.toHexString(header.magic)));
+		}
+		rootOffset = offset + Bigwig.ChromosomeBTreeHeader.SIZE;
+	}
+
+	/*
+	 * Handed every item of the tree, in key order, by scan().  key is zero-padded to
+	 * keySize, and both arrays are only good until the call returns.
+	 */
+	public static interface Visitor { 
+		public void item(byte[] key, ByteBuffer value) throws IOException;
+	}
+
+	public int keySize() { return header.keySize; }
+	public int valSize() { return header.valSize; }
+	public long itemCount() { return header.itemCount; }
+
+	/*
+	 * A node's items: keys[i] with, for a leaf, the value at values[i] or, above the
+	 * leaves, the child node at children[i].
+	 */
+	private class Node { 
+		public boolean leaf;
+		public int count;
+		public byte[][] keys;
+		public ByteBuffer values;
+		public long[] children;
+
+		public Node(long offset) throws IOException { 
+			// a full node's worth, which is all of this one whatever its count.
+			long length = 4L + (long)header.blockSize * (header.keySize + Math.max(header.valSize, 8));
+			ByteBuffer items = bigwig.readBuffer(offset, (int)Math.min(length, bigwig.getLength() - offset), header._flipped);
+			leaf = items.get() != 0;
+			items.get();
+			count = items.getShort() & 0xffff;
+
+			int valueSize = leaf ? header.valSize : 8;
+			keys = new byte[count][header.keySize];
+			if(leaf) { 
+				values = ByteBuffer.allocate(count * valueSize).order(items.order());
+			} else { 
+				children = new long[count];
+			}
+			for(int i = 0; i < count; i++) { 
+				items.get(keys[i]);
+				if(leaf) { 
+					for(int k = 0; k < valueSize; k++) { values.put(items.get()); }
+				} else { 
+					children[i] = items.getLong();
+				}
+			}
+		}
+
+		public byte[] value(int i) { 
+			byte[] value = new byte[header.valSize];
+			ByteBuffer view = values.duplicate();
+			view.position(i * header.valSize);
+			view.get(value);
+			return value;
+		}
+
+		/*
+		 * The first item whose key is >= key (or > key, if strict), or count.
+		 */
+		public int ceiling(byte[] key, boolean strict) { 
+			int lo = 0, hi = count;
+			while(lo < hi) { 
+				int mid = (lo + hi) >>> 1;
+				int c = compare(keys[mid], key);
+				if(c < 0 || (strict && c == 0)) { 
+					lo = mid + 1;
+				} else { 
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}
+
+	/*
+	 * Compares two zero-padded keys as unsigned bytes; a missing byte counts as zero.
+	 */
+	public static int compare(byte[] a, byte[] b) { 
+		for(int i = 0; i < a.length || i < b.length; i++) { 
+			int x = i < a.length ? a[i] & 0xff : 0, y = i < b.length ? b[i] & 0xff : 0;
+			if(x != y) { return x - y; }
+		}
+		return 0;
+	}
+
+	/*
+	 * The key padded to keySize, or null if it can't be in the tree.
+	 */
+	private byte[] pad(byte[] key) { 
+		return key.length <= header.keySize ? Arrays.copyOf(key, header.keySize) : null;
+	}
+
+	public List<byte[]> find(String key) throws IOException { 
+		return find(key.getBytes(Bigwig.UTF8));
+	}
+
+	/*
+	 * Every value stored under key, in tree order; empty if there are none.
+	 */
+	public List<byte[]> find(byte[] key) throws IOException { 
+		byte[][] padded = new byte[][] { pad(key) };
+		List<List<byte[]>> values = new ArrayList<List<byte[]>>();
+		values.add(new ArrayList<byte[]>());
+		if(padded[0] != null && header.itemCount > 0L) { 
+			findAll(new Node(rootOffset), padded, new Integer[] { 0 }, 0, 1, values);
+		}
+		return values.get(0);
+	}
+
+	/*
+	 * Visits every item, reading each node once.
+	 */
+	public void scan(Visitor visitor) throws IOException { 
+		if(header.itemCount > 0L) { 
+			scan(new Node(rootOffset), visitor);
+		}
+	}
+
+	private void scan(Node node, Visitor visitor) throws IOException { 
+		for(int i = 0; i < node.count; i++) { 
+			if(node.leaf) { 
+				ByteBuffer value = node.values.duplicate().order(node.values.order());
+				value.position(i * header.valSize);
+				value.limit((i + 1) * header.valSize);
+				visitor.item(node.keys[i], value);
+			} else { 
+				scan(new Node(node.children[i]), visitor);
+			}
+		}
+	}
+
+	/*
+	 * Every value stored under each of keys (empty where a key isn't in the tree), in
+	 * the order given.
+	 */
+	public List<List<byte[]>> findAll(List<String> keys) throws IOException { 
+		final byte[][] padded = new byte[keys.size()][];
+		Integer[] order = new Integer[keys.size()];
+		int n = 0;
+		List<List<byte[]>> values = new ArrayList<List<byte[]>>();
+		for(int i = 0; i < padded.length; i++) { 
+			padded[i] = pad(keys.get(i).getBytes(Bigwig.UTF8));
+			if(padded[i] != null) { order[n++] = i; }
+			values.add(new ArrayList<byte[]>());
+		}
+		order = Arrays.copyOf(order, n);
+		Arrays.sort(order, new Comparator<Integer>() { 
+			public int compare(Integer a, Integer b) { 
+				return BPlusTree.compare(padded[a], padded[b]);
+			}
+		});
+
+		if(n > 0 && header.itemCount > 0L) { 
+			findAll(new Node(rootOffset), padded, order, 0, n, values);
+		}
+		return values;
+	}
+
+	/*
+	 * Collects the values of the sorted keys padded[order[from..to)] under node.
+	 *
+	 * A key may be stored many times (a BigBed name on many records), and its items can
+	 * run across leaves, so a child whose first key equals the key isn't necessarily the
+	 * first to hold it.  Child c can hold key k if it's the first child or its first key
+	 * is <= k, and it's the last child or the next child's first key is >= k.  Each child
+	 * is searched, once, for the run of keys it can hold.
+	 */
+	private void findAll(Node node, byte[][] padded, Integer[] order, int from, int to, List<List<byte[]>> values) throws IOException { 
+		if(node.leaf) { 
+			for(int k = from; k < to; k++) { 
+				byte[] key = padded[order[k]];
+				for(int i = node.ceiling(key, false); i < node.count && compare(node.keys[i], key) == 0; i++) { 
+					values.get(order[k]).add(node.value(i));
+				}
+			}
+			return;
+		}
+		for(int c = 0; c < node.count; c++) { 
+			int lo = c == 0 ? from : first(node.keys[c], false, padded, order, from, to);
+			int hi = c + 1 == node.count ? to : first(node.keys[c + 1], true, padded, order, from, to);
+			if(lo < hi) { 
+				findAll(new Node(node.children[c]), padded, order, lo, hi, values);
+			}
+		}
+	}
+
+	/*
+	 * The first of the sorted keys padded[order[from..to)] that is >= key (or > key, if
+	 * strict), or to.
+	 */
+	private static int first(byte[] key, boolean strict, byte[][] padded, Integer[] order, int from, int to) { 
+		int lo = from, hi = to;
+		while(lo < hi) { 
+			int mid = (lo + hi) >>> 1;
+			int c = compare(padded[order[mid]], key);
+			if(c < 0 || (strict && c == 0)) { 
+				lo = mid + 1;
+			} else { 
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,194 @@
+package bigwig;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Answers many region queries against one file in a single pass.
+ *
+ * The regions are sorted by (chrom, start) and the blocks they need are looked up in
+ * the flat index (or, if the file has none, found in one pruned walk of the R-tree),
+ * then read in file order, with nearby blocks coalesced into one read.  A decoded
+ * block is kept only until the sweep passes its end, so a block shared by many
+ * (overlapping or nearby) regions is still read and inflated just once.  With a block cache the blocks are decompressed through it instead, and
+ * only read on a miss.
+ */
+public class BatchQuery { 
+
+	private Bigwig bigwig;
+
+	public BatchQuery(Bigwig bigwig) { 
+		this.bigwig = bigwig;
+	}
+
+	/*
+	 * The items overlapping each region, in the order the regions were given.  Regions
+	 * on chromosomes the file doesn't have get an empty result.
+	 */
+	public Intervals[] query(List<Region> regions) throws IOException { 
+		int n = regions.size();
+		Intervals[] results = new Intervals[n];
+		final int[] chromIds = new int[n];
+		ChromosomeDictionary chromosomes = bigwig.getChromosomes();
+
+		List<Integer> order = new ArrayList<Integer>();
+		for(int r = 0; r < n; r++) { 
+			results[r] = new Intervals();
+			chromIds[r] = chromosomes.id(regions.get(r).chrom);
+			if(chromIds[r] != -1) { 
+				order.add(r);
+			}
+		}
+
+		final List<Region> rs = regions;
+		Collections.sort(order, new Comparator<Integer>() { 
+			public int compare(Integer a, Integer b) { 
+				long ka = FlatRTreeIndex.key(chromIds[a], rs.get(a).start);
+				long kb = FlatRTreeIndex.key(chromIds[b], rs.get(b).start);
+				return ka < kb ? -1 : ka > kb ? 1 : 0;
+			}
+		});
+
+		FlatRTreeIndex index = bigwig.isFlatIndexed() ? bigwig.getFlatIndex() : neededLeaves(order, chromIds, regions);
+
+		/*
+		 * Every leaf any region needs, fetched in file order.
+		 */
+		BitSet needed = new BitSet(index.size);
+		for(int r : order) { 
+			Region region = regions.get(r);
+			for(int i = index.search(chromIds[r], region.start, region.end); i != -1; i = index.next(i, chromIds[r], region.start, region.end)) { 
+				needed.set(i);
+			}
+		}
+
+		List<Integer> leaves = new ArrayList<Integer>();
+		for(int i = needed.nextSetBit(0); i >= 0; i = needed.nextSetBit(i + 1)) { 
+			leaves.add(i);
+		}
+		final FlatRTreeIndex fi = index;
+		Collections.sort(leaves, new Comparator<Integer>() { 
+			public int compare(Integer a, Integer b) { 
+				long oa = fi.dataOffset[a], ob = fi.dataOffset[b];
+				return oa < ob ? -1 : oa > ob ? 1 : 0;
+			}
+		});
+
+		List<Bigwig.DataBlock> blocks = new ArrayList<Bigwig.DataBlock>();
+		Map<Integer,Integer> fetchIndex = new HashMap<Integer,Integer>();
+		for(int i : leaves) { 
+			fetchIndex.put(i, blocks.size());
+			blocks.add(bigwig.new DataBlock(index, i));
+		}
+		Bigwig.BlockFetcher fetcher = bigwig.new BlockFetcher(blocks);
+
+		boolean flip = bigwig.getIndexHeader()._flipped;
+		WigSection section = new WigSection();
+		Map<Integer,Intervals> decoded = new HashMap<Integer,Intervals>();
+
+		for(int r : order) { 
+			Region region = regions.get(r);
+			int chromId = chromIds[r];
+
+			// regions are sorted by start, so blocks ending before this one are done.
+			long startKey = FlatRTreeIndex.key(chromId, region.start);
+			Iterator<Integer> itr = decoded.keySet().iterator();
+			while(itr.hasNext()) { 
+				if(index.endKey(itr.next()) <= startKey) { 
+					itr.remove();
+				}
+			}
+
+			for(int i = index.search(chromId, region.start, region.end); i != -1; i = index.next(i, chromId, region.start, region.end)) { 
+				Intervals items = decoded.get(i);
+				if(items == null) { 
+					Bigwig.DataBlock block = fetcher.get(fetchIndex.get(i));
+					items = block.decode(flip, section, new Intervals());
+					block._data = null;
+					decoded.put(i, items);
+				}
+				collect(items, chromId, region.start, region.end, results[r]);
+			}
+		}
+
+		return results;
+	}
+
+	/*
+	 * The leaves overlapping any of the regions, in order of start key, found in one
+	 * walk of the R-tree that descends only into nodes some region overlaps.  The index
+	 * is the call's own, so a file opened without options.flatIndex keeps no index.
+	 */
+	private FlatRTreeIndex neededLeaves(List<Integer> order, int[] chromIds, List<Region> regions) throws IOException { 
+		// starts[k] and ends[k] are the keys of the k'th region in start order; maxEnd[k]
+		// is the largest end among regions 0..k.
+		int n = order.size();
+		long[] starts = new long[n], maxEnd = new long[n];
+		for(int k = 0; k < n; k++) { 
+			int r = order.get(k);
+			starts[k] = FlatRTreeIndex.key(chromIds[r], regions.get(r).start);
+			long end = FlatRTreeIndex.key(chromIds[r], regions.get(r).end);
+			maxEnd[k] = k > 0 ? Math.max(maxEnd[k - 1], end) : end;
+		}
+		FlatRTreeIndex index = new FlatRTreeIndex(16);
+		if(n > 0) { 
+			collect(bigwig.getIndexRoot(), starts, maxEnd, index);
+		}
+		return index.seal();
+	}
+
+	private static void collect(Bigwig.RTreeNode node, long[] starts, long[] maxEnd, FlatRTreeIndex index) throws IOException { 
+		if(node.isLeaf()) { 
+			for(Bigwig.RTreeLeaf leaf : node.getChildLeaves()) { 
+				if(needed(leaf.startChromIx, leaf.startBase, leaf.endChromIx, leaf.endBase, starts, maxEnd)) { 
+					index.add(leaf);
+				}
+			}
+		} else { 
+			for(Bigwig.RTreeNonLeaf child : node.getChildNonLeaves()) { 
+				if(needed(child.startChromIx, child.startBase, child.endChromIx, child.endBase, starts, maxEnd)) { 
+					collect(child.getNode(), starts, maxEnd, index);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Whether some region overlaps (startChrom, startBase) .. (endChrom, endBase): the
+	 * last region starting before its end has to reach past its start.
+	 */
+	private static boolean needed(int startChrom, int startBase, int endChrom, int endBase, long[] starts, long[] maxEnd) { 
+		long from = FlatRTreeIndex.key(startChrom, startBase), to = FlatRTreeIndex.key(endChrom, endBase);
+		int lo = 0, hi = starts.length - 1, last = -1;
+		while(lo <= hi) { 
+			int mid = (lo + hi) >>> 1;
+			if(starts[mid] < to) { 
+				last = mid;
+				lo = mid + 1;
+			} else { 
+				hi = mid - 1;
+			}
+		}
+		return last >= 0 && maxEnd[last] > from;
+	}
+
+	/*
+	 * Appends the items of a decoded block that overlap [start, end) on chromId.  A
+	 * block's items are sorted, and don't overlap, so this begins at the first one
+	 * ending after start and stops at the first starting at or after end.
+	 */
+	private static void collect(Intervals items, int chromId, int start, int end, Intervals out) { 
+		int lo = 0, hi = items.size;
+		while(lo < hi) { 
+			int mid = (lo + hi) >>> 1;
+			if(items.chromIds[mid] < chromId || (items.chromIds[mid] == chromId && items.ends[mid] <= start)) { 
+				lo = mid + 1;
+			} else { 
+				hi = mid;
+			}
+		}
+		for(int k = lo; k < items.size && items.chromIds[k] == chromId && items.starts[k] < end; k++) { 
+			out.add(chromId, items.starts[k], items.ends[k], items.values[k]);
+		}
+	}
+}
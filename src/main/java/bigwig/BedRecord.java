@@ -0,0 +1,192 @@
+package bigwig;
+
+import java.util.Arrays;
+
+/**
+ * One BigBed record, as a view over the bytes of its decompressed block: chromId,
+ * start and end are decoded, but the rest of the line (the tab-separated fields after
+ * chromEnd) is left as bytes until a field is asked for.
+ *
+ * Fields are numbered as BED columns, so field(3) is the name and field(5) the strand;
+ * columns 0-2 aren't part of the rest and can't be asked for.  A cursor's record is
+ * re-pointed by every next(), so copy() anything that has to outlive it.
+ */
+public class BedRecord { 
+
+	public static final int FIRST_FIELD = 3;
+
+	public int chromId, start, end;
+
+	private byte[] data;
+	private int restOffset, restLength;
+
+	/*
+	 * fieldStarts[k] is the offset in data of column FIRST_FIELD + k; fieldStarts[fields]
+	 * is one past the end of the rest (as if followed by a tab).  fields is -1 until
+	 * the rest has been split.
+	 */
+	private int[] fieldStarts;
+	private int fields;
+
+	public BedRecord() { 
+		fieldStarts = new int[16];
+		fields = -1;
+	}
+
+	/*
+	 * Points the record at restLength bytes of data, from restOffset.
+	 */
+	public BedRecord wrap(int chromId, int start, int end, byte[] data, int restOffset, int restLength) { 
+		this.chromId = chromId;
+		this.start = start;
+		this.end = end;
+		this.data = data;
+		this.restOffset = restOffset;
+		this.restLength = restLength;
+		fields = -1;
+		return this;
+	}
+
+	/*
+	 * A record holding its own copy of the rest, unaffected by later wraps of this one.
+	 */
+	public BedRecord copy() { 
+		byte[] rest = Arrays.copyOfRange(data, restOffset, restOffset + restLength);
+		return new BedRecord().wrap(chromId, start, end, rest, 0, rest.length);
+	}
+
+	private void split() { 
+		if(fields >= 0) { return; }
+		int n = 0;
+		if(restLength > 0) { 
+			fieldStarts[n++] = restOffset;
+			for(int i = restOffset, limit = restOffset + restLength; i < limit; i++) { 
+				if(data[i] == '\t') { 
+					if(n + 1 >= fieldStarts.length) { 
+						fieldStarts = Arrays.copyOf(fieldStarts, fieldStarts.length * 2);
+					}
+					fieldStarts[n++] = i + 1;
+				}
+			}
+		}
+		if(n + 1 > fieldStarts.length) { 
+			fieldStarts = Arrays.copyOf(fieldStarts, n + 1);
+		}
+		fieldStarts[n] = restOffset + restLength + 1;
+		fields = n;
+	}
+
+	/*
+	 * The number of columns, counting chrom, start and end.
+	 */
+	public int columnCount() { 
+		split();
+		return FIRST_FIELD + fields;
+	}
+
+	private int index(int column) { 
+		split();
+		int k = column - FIRST_FIELD;
+		if(k < 0 || k >= fields) { 
+			throw new IndexOutOfBoundsException(String.format("column %d of %d", column, FIRST_FIELD + fields));
+		}
+		return k;
+	}
+
+	public int fieldOffset(int column) { 
+		return fieldStarts[index(column)];
+	}
+
+	public int fieldLength(int column) { 
+		int k = index(column);
+		return fieldStarts[k + 1] - 1 - fieldStarts[k];
+	}
+
+	/*
+	 * The array fieldOffset() and fieldLength() refer to; only good until the next wrap().
+	 */
+	public byte[] bytes() { 
+		return data;
+	}
+
+	public String field(int column) { 
+		int k = index(column);
+		return new String(data, fieldStarts[k], fieldStarts[k + 1] - 1 - fieldStarts[k], Bigwig.UTF8);
+	}
+
+	/*
+	 * Everything after chromEnd, tabs included.
+	 */
+	public String rest() { 
+		return new String(data, restOffset, restLength, Bigwig.UTF8);
+	}
+
+	/*
+	 * Whether the column holds exactly the (ASCII) string value, without decoding it.
+	 */
+	public boolean fieldEquals(int column, String value) { 
+		int k = index(column);
+		int offset = fieldStarts[k], length = fieldStarts[k + 1] - 1 - offset;
+		if(length != value.length()) { return false; }
+		for(int i = 0; i < length; i++) { 
+			if((data[offset + i] & 0xff) != value.charAt(i)) { return false; }
+		}
+		return true;
+	}
+
+	public boolean fieldEquals(int column, byte[] value) { 
+		int k = index(column);
+		int offset = fieldStarts[k], length = fieldStarts[k + 1] - 1 - offset;
+		if(length != value.length) { return false; }
+		for(int i = 0; i < length; i++) { 
+			if(data[offset + i] != value[i]) { return false; }
+		}
+		return true;
+	}
+
+	/*
+	 * Parses the column as a decimal integer, in place.
+	 */
+	public long longField(int column) { 
+		int k = index(column);
+		int i = fieldStarts[k], limit = fieldStarts[k + 1] - 1;
+		boolean negative = i < limit && data[i] == '-';
+		if(negative || (i < limit && data[i] == '+')) { i++; }
+		if(i == limit) { 
+			throw new NumberFormatException(String.format("column %d: \"%s\"", column, field(column)));
+		}
+		long value = 0L;
+		for(; i < limit; i++) { 
+			int digit = data[i] - '0';
+			if(digit < 0 || digit > 9) { 
+				throw new NumberFormatException(String.format("column %d: \"%s\"", column, field(column)));
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	public int intField(int column) { 
+		return (int)longField(column);
+	}
+
+	public double doubleField(int column) { 
+		return Double.parseDouble(field(column));
+	}
+
+	public char charField(int column) { 
+		int k = index(column);
+		return fieldStarts[k + 1] - 1 > fieldStarts[k] ? (char)(data[fieldStarts[k]] & 0xff) : 0;
+	}
+
+	/*
+	 * The standard BED6 columns, for files that have them.
+	 */
+	public String name() { return field(3); }
+	public int score() { return intField(4); }
+	public char strand() { return charField(5); }
+
+	public String toString() { 
+		return String.format("%d:%d-%d %s", chromId, start, end, rest());
+	}
+}
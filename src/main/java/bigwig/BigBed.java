@@ -0,0 +1,407 @@
+package bigwig;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+import bigwig.io.SeekableInput;
+
+/**
+ * A BigBed file, read through the same header, chromosome B+ tree, R-tree, zoom
+ * levels, coalesced reads and block cache as a Bigwig.
+ *
+ * Data blocks hold packed records (chromId, chromStart, chromEnd, then the rest of
+ * the BED line as a zero-terminated string).  query() streams the records overlapping
+ * a region as BedRecord views over the decompressed block, so a scan allocates
+ * nothing per record and no String until a field is asked for.  As an
+ * IntervalCursor, the value of a record is its score (or 0 if the file has no score
+ * column), which is what summaries and extract() see.
+ *
+ * Files with extra indexes (e.g. on the name field) can also be searched by a field's
+ * value with find(), through the index's B+ tree rather than a scan of the data.
+ */
+public class BigBed extends Bigwig { 
+
+	private AutoSql autoSql;
+
+	/*
+	 * Extra index B+ trees by the column they index, loaded with the extension header.
+	 */
+	private Map<Integer,Long> extraIndexOffsets;
+	private Map<Integer,BPlusTree> extraIndexes;
+
+	public BigBed(String filename) throws IOException { 
+		this(new File(filename));
+	}
+
+	public BigBed(File f) throws IOException { 
+		this(f, new BigwigOptions());
+	}
+
+	public BigBed(File f, BigwigOptions options) throws IOException { 
+		super(openInput(f, options), options, f.getAbsolutePath());
+	}
+
+	public BigBed(URL url) throws IOException { 
+		this(url, new BigwigOptions());
+	}
+
+	public BigBed(URL url, BigwigOptions options) throws IOException { 
+		super(openInput(url, options), options, url.toString());
+	}
+
+	public BigBed(SeekableInput in, BigwigOptions options, String name) throws IOException { 
+		super(in, options, name);
+	}
+
+	protected int magic() { 
+		return BIGBED_MAGIC;
+	}
+
+	/*
+	 * The number of columns in each record, and how many of them are standard BED.
+	 */
+	public int getFieldCount() { 
+		return header.fieldCount;
+	}
+
+	public int getDefinedFieldCount() { 
+		return header.definedFieldCount;
+	}
+
+	/*
+	 * A record's value as an interval: its score, if the file's fifth column is the
+	 * standard BED score, or 0.  (In a bed3+N or bed4+N file that column is a custom
+	 * field, whatever its type.)
+	 */
+	float score(BedRecord record) { 
+		return header.definedFieldCount >= 5 ? (float)record.longField(4) : 0.0f;
+	}
+
+	/*
+	 * The file's column declarations, or null if it has none.
+	 */
+	public synchronized AutoSql getAutoSql() throws IOException { 
+		if(autoSql == null && header.autoSqlOffset != 0L) { 
+			autoSql = AutoSql.parse(readString(header.autoSqlOffset));
+		}
+		return autoSql;
+	}
+
+	/*
+	 * The zero-terminated string at offset.
+	 */
+	private String readString(long offset) throws IOException { 
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		long length = getLength();
+		for(long position = offset; position < length; position += 4096) { 
+			ByteBuffer chunk = readBuffer(position, (int)Math.min(4096L, length - position), true);
+			while(chunk.hasRemaining()) { 
+				byte b = chunk.get();
+				if(b == 0) { 
+					return new String(bytes.toByteArray(), UTF8);
+				}
+				bytes.write(b);
+			}
+		}
+		throw new EOFException(String.format("Unterminated string at %d", offset));
+	}
+
+	/*
+	 * The offsets of the extra indexes' B+ trees, by column, from the extension header
+	 * (which the header's reserved field points to in version 4 files).
+	 */
+	private synchronized Map<Integer,Long> getExtraIndexOffsets() throws IOException { 
+		if(extraIndexOffsets == null) { 
+			Map<Integer,Long> offsets = new TreeMap<Integer,Long>();
+			if(header.reserved != 0L) { 
+				ByteBuffer extension = readBuffer(header.reserved, 12, true);
+				extension.getShort();
+				int count = extension.getShort() & 0xffff;
+				long listOffset = extension.getLong();
+
+				long offset = listOffset;
+				for(int i = 0; i < count; i++) { 
+					ByteBuffer entry = readBuffer(offset, 16, true);
+					int type = entry.getShort() & 0xffff;
+					int fields = entry.getShort() & 0xffff;
+					long treeOffset = entry.getLong();
+					ByteBuffer ids = readBuffer(offset + 16, fields * 4, true);
+					// only single-field B+ tree indexes (type 0) exist so far.
+					if(type == 0 && fields == 1) { 
+						offsets.put(ids.getShort() & 0xffff, treeOffset);
+					}
+					offset += 16 + fields * 4;
+				}
+			}
+			extraIndexOffsets = offsets;
+		}
+		return extraIndexOffsets;
+	}
+
+	/*
+	 * The names of the indexed fields, as given by the autoSql.
+	 */
+	public List<String> getExtraIndexFields() throws IOException { 
+		List<String> names = new ArrayList<String>();
+		AutoSql sql = getAutoSql();
+		for(int column : getExtraIndexOffsets().keySet()) { 
+			names.add(sql != null && column < sql.fields.size() ? sql.fields.get(column).name : String.valueOf(column));
+		}
+		return names;
+	}
+
+	private synchronized BPlusTree getExtraIndex(String field) throws IOException { 
+		AutoSql sql = getAutoSql();
+		int column = sql != null ? sql.indexOf(field) : -1;
+		Long offset = getExtraIndexOffsets().get(column);
+		if(offset == null) { 
+			throw new IllegalArgumentException(String.format("%s has no index on field \"%s\"", getName(), field));
+		}
+		if(extraIndexes == null) { 
+			extraIndexes = new HashMap<Integer,BPlusTree>();
+		}
+		if(!extraIndexes.containsKey(column)) { 
+			extraIndexes.put(column, new BPlusTree(this, offset));
+		}
+		return extraIndexes.get(column);
+	}
+
+	/*
+	 * The records whose field holds exactly value.  Throws IllegalArgumentException if
+	 * the field isn't indexed.
+	 */
+	public List<BedRecord> find(String field, String value) throws IOException { 
+		return find(field, Collections.singletonList(value)).get(0);
+	}
+
+	/*
+	 * The records matching each of values, in the order given.  The index is searched
+	 * in one sorted sweep, and each data block holding a match is read and inflated
+	 * once, however many values it matches.
+	 */
+	public List<List<BedRecord>> find(String field, List<String> values) throws IOException { 
+		BPlusTree index = getExtraIndex(field);
+		int column = getAutoSql().indexOf(field);
+		List<List<byte[]>> found = index.findAll(values);
+
+		List<List<BedRecord>> results = new ArrayList<List<BedRecord>>();
+		// the values to look for in each block, by (offset, size).
+		TreeMap<Long,List<Integer>> byBlock = new TreeMap<Long,List<Integer>>();
+		Map<Long,Long> blockSizes = new HashMap<Long,Long>();
+		for(int i = 0; i < values.size(); i++) { 
+			results.add(new ArrayList<BedRecord>());
+			// one index item per record, so a value may point at many blocks, or at
+			// one block many times.
+			for(byte[] item : found.get(i)) { 
+				ByteBuffer value = ByteBuffer.wrap(item).order(index.header._flipped ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+				long offset = value.getLong(), size = value.getLong();
+				List<Integer> wanted = byBlock.get(offset);
+				if(wanted == null) { 
+					wanted = new ArrayList<Integer>();
+					byBlock.put(offset, wanted);
+					blockSizes.put(offset, size);
+				}
+				if(wanted.isEmpty() || wanted.get(wanted.size() - 1) != i) { 
+					wanted.add(i);
+				}
+			}
+		}
+
+		boolean flip = getIndexHeader()._flipped;
+		byte[] buffer = new byte[header.uncompressBufSize];
+		BedRecord record = new BedRecord();
+		for(Map.Entry<Long,List<Integer>> e : byBlock.entrySet()) { 
+			byte[][] keys = new byte[e.getValue().size()][];
+			for(int k = 0; k < keys.length; k++) { 
+				keys[k] = values.get(e.getValue().get(k)).getBytes(UTF8);
+			}
+			ByteBuffer block = new DataBlock(e.getKey(), blockSizes.get(e.getKey())).decompress(flip, buffer);
+			while(nextRecord(block, record)) { 
+				if(record.columnCount() <= column) { continue; }
+				for(int k = 0; k < keys.length; k++) { 
+					if(record.fieldEquals(column, keys[k])) { 
+						results.get(e.getValue().get(k)).add(record.copy());
+					}
+				}
+			}
+		}
+		return results;
+	}
+
+	/*
+	 * Points record at the next record in block, advancing past it; false at the end
+	 * of the block.
+	 */
+	private static boolean nextRecord(ByteBuffer block, BedRecord record) { 
+		if(block.remaining() < 12) { 
+			return false;
+		}
+		int chromId = block.getInt(), start = block.getInt(), end = block.getInt();
+
+		byte[] data = block.array();
+		int restOffset = block.arrayOffset() + block.position(), restEnd = restOffset;
+		int limit = block.arrayOffset() + block.limit();
+		while(restEnd < limit && data[restEnd] != 0) { 
+			restEnd++;
+		}
+		block.position(Math.min(block.limit(), restEnd + 1 - block.arrayOffset()));
+		record.wrap(chromId, start, end, data, restOffset, restEnd - restOffset);
+		return true;
+	}
+
+	/*
+	 * Whole blocks' records, for RegionSweep; the value is the score, as in BedCursor.
+	 */
+	protected BlockItems blockItems() { 
+		return new RecordItems();
+	}
+
+	private class RecordItems extends BlockItems { 
+
+		private ByteBuffer block;
+		private BedRecord record = new BedRecord();
+
+		public void reset(ByteBuffer block) { 
+			this.block = block;
+		}
+
+		public int chromId() { return record.chromId; }
+		public int start() { return record.start; }
+		public int end() { return record.end; }
+		public float value() { return score(record); }
+
+		public boolean next() { 
+			return block != null && nextRecord(block, record);
+		}
+	}
+
+	public BedCursor query(String chrom, int start, int end) throws IOException { 
+		return query(getChromosomes().id(chrom), start, end);
+	}
+
+	public BedCursor query(int chromId, int start, int end) throws IOException { 
+		return new BedCursor(chromId, start, end);
+	}
+
+	/*
+	 * Records' scores, collected from a cursor rather than decoded in parallel: the
+	 * wig section decoders don't apply to BED blocks.
+	 */
+	public Intervals extract(int chromId, int start, int end) throws IOException { 
+		Intervals items = new Intervals();
+		BedCursor cursor = query(chromId, start, end);
+		while(cursor.next()) { 
+			items.add(chromId, cursor.start(), cursor.end(), cursor.value());
+		}
+		return items;
+	}
+
+	public Intervals[] query(List<Region> regions) throws IOException { 
+		Intervals[] results = new Intervals[regions.size()];
+		for(int i = 0; i < results.length; i++) { 
+			Region region = regions.get(i);
+			results[i] = extract(region.chrom, region.start, region.end);
+		}
+		return results;
+	}
+
+	/*
+	 * Every record in the file, in file order, read ahead on a background thread as
+	 * Bigwig.scan() does; close the scan when done with it.
+	 */
+	public BedScan scan() throws IOException { 
+		return new BedScan(FileScan.DEFAULT_CHUNK_SIZE, FileScan.DEFAULT_QUEUE_BLOCKS);
+	}
+
+	/*
+	 * A FileScan over records rather than wig sections.  record() is re-pointed at each
+	 * record in turn, and is only good until the next call to next().
+	 */
+	public class BedScan extends FileScan { 
+
+		private ByteBuffer block;
+		private BedRecord record;
+
+		public BedScan(int chunkSize, int queueBlocks) throws IOException { 
+			super(BigBed.this, chunkSize, queueBlocks);
+			block = null;
+			record = new BedRecord();
+		}
+
+		public BedRecord record() { return record; }
+
+		public int chromId() { return record.chromId; }
+		public int start() { return record.start; }
+		public int end() { return record.end; }
+		public float value() { return score(record); }
+
+		public boolean next() throws IOException { 
+			while(true) { 
+				if(block != null && nextRecord(block, record)) { 
+					return true;
+				}
+				block = nextBlock();
+				if(block == null) { 
+					return false;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Streams the records overlapping a region, one decompressed block at a time.
+	 * record() is re-pointed at each record in turn.
+	 */
+	public class BedCursor implements IntervalCursor { 
+
+		private int queryChrom, queryStart, queryEnd;
+		private boolean flip;
+		private BlockStream blocks;
+
+		private ByteBuffer block;
+		private byte[] buffer;
+		private BedRecord record;
+
+		public BedCursor(int chromId, int start, int end) throws IOException { 
+			queryChrom = chromId;
+			queryStart = start;
+			queryEnd = end;
+			flip = getIndexHeader()._flipped;
+			blocks = new BlockStream(chromId, start, end);
+
+			block = null;
+			buffer = new byte[header.uncompressBufSize];
+			record = new BedRecord();
+		}
+
+		public BedRecord record() { return record; }
+
+		public int chromId() { return record.chromId; }
+		public int start() { return record.start; }
+		public int end() { return record.end; }
+		public float value() { return score(record); }
+
+		public boolean next() throws IOException { 
+			while(true) { 
+				while(block != null && nextRecord(block, record)) { 
+					if(record.chromId > queryChrom || (record.chromId == queryChrom && record.start >= queryEnd)) { 
+						// records are sorted, so nothing else in this block can overlap.
+						block.position(block.limit());
+					} else if(record.chromId == queryChrom && record.end > queryStart) { 
+						return true;
+					}
+				}
+
+				DataBlock next = blocks.next();
+				if(next == null) { 
+					block = null;
+					return false;
+				}
+				block = next.decompress(flip, buffer);
+			}
+		}
+	}
+}
@@ -2,13 +2,23 @@ package bigwig;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.*;
 
+import bigwig.io.ByteBufferDataInput;
+import bigwig.io.HttpRangeInput;
+import bigwig.io.Inflaters;
+import bigwig.io.MappedFileInput;
+import bigwig.io.PagedFileInput;
+import bigwig.io.SeekableInput;
+
 /*
  * Structure: 
     bbiHeader   64  
@@ -110,7 +120,8 @@ public class Bigwig {
     public static void main(String[] args) throws IOException { 
         Bigwig bw = null;
         try { 
-            bw = new Bigwig(testFilename);
+            bw = new Bigwig(args.length > 0 ? args[0] : testFilename);
+            bw.dump();
         } catch(Exception e) { 
             System.err.println(String.format("\"%s\"", e.getMessage()));
             e.printStackTrace(System.err);
@@ -123,6 +134,8 @@ public class Bigwig {
 
 	public class RTreeIndexHeader {
 		
+		public static final int SIZE = 48;
+		
 		public boolean _flipped;
 		
 		public int magic;
@@ -136,8 +149,15 @@ public class Bigwig {
 		public int itemsPerSlot;
 		public int reserved;
 		
+		public long _rootOffset = -1L;
+		
 		public RTreeIndexHeader() throws IOException { 
-			this(file);
+			this(file.getFilePointer());
+		}
+		
+		public RTreeIndexHeader(long position) throws IOException { 
+			this(new ByteBufferDataInput(file.readBuffer(position, SIZE)));
+			_rootOffset = position + SIZE;
 		}
 		
 		public RTreeIndexHeader(DataInput dis) throws IOException { 
@@ -158,7 +178,8 @@ public class Bigwig {
 		}
 
 		public RTreeNode readNode() throws IOException {
-			return new RTreeNode(_flipped);
+			if(_rootOffset < 0L) { throw new IllegalStateException("index position unknown"); }
+			return new RTreeNode(_rootOffset, _flipped);
 		}		
 	}
 	
@@ -195,41 +216,40 @@ public class Bigwig {
 		public byte reserved;
 		public short count;
 		
-		public RTreeNode(boolean flipped) throws IOException {
+		public RTreeNode(long position, boolean flipped) throws IOException {
 			_flipped = flipped;
 			
-			isLeaf = readByte(file, flipped);
-			reserved = readByte(file, flipped);
-			count = readShort(file, flipped);
-			_position = file.getFilePointer();
+			ByteBuffer buffer = readBuffer(position, 4, flipped);
+			isLeaf = buffer.get();
+			reserved = buffer.get();
+			count = buffer.getShort();
+			_position = position + 4;
 		}
 		
 		public RTreeLeaf[] getChildLeaves() throws IOException { 
-			file.seek(_position);
+			ByteBuffer buffer = readBuffer(_position, count * RTreeLeaf.SIZE, _flipped);
 			RTreeLeaf[] array = new RTreeLeaf[count];
 			for(int i = 0; i < array.length; i++) { 
-				array[i] = new RTreeLeaf(_flipped);
+				array[i] = new RTreeLeaf(buffer, _flipped);
 			}
 			return array;
 		}
 		
 		public RTreeNonLeaf[] getChildNonLeaves() throws IOException { 
-			file.seek(_position);
+			ByteBuffer buffer = readBuffer(_position, count * RTreeNonLeaf.SIZE, _flipped);
 			RTreeNonLeaf[] array = new RTreeNonLeaf[count];
 			for(int i = 0; i < array.length; i++) { 
-				array[i] = new RTreeNonLeaf(_flipped);
+				array[i] = new RTreeNonLeaf(buffer, _flipped);
 			}
 			return array;			
 		}
 		
 		public RTreeLeaf getChildLeaf(int i) throws IOException { 
-			file.seek(_position + i * RTreeLeaf.SIZE);
-			return new RTreeLeaf(_flipped);
+			return new RTreeLeaf(readBuffer(_position + i * RTreeLeaf.SIZE, RTreeLeaf.SIZE, _flipped), _flipped);
 		}
 		
 		public RTreeNonLeaf getChildNonLeaf(int i) throws IOException { 
-			file.seek(_position + i * RTreeNonLeaf.SIZE);
-			return new RTreeNonLeaf(_flipped);
+			return new RTreeNonLeaf(readBuffer(_position + i * RTreeNonLeaf.SIZE, RTreeNonLeaf.SIZE, _flipped), _flipped);
 		}
 		
 		public boolean isLeaf() { 
@@ -287,15 +307,15 @@ public class Bigwig {
 		public long dataOffset;
 		public long dataSize;
 		
-		public RTreeLeaf(boolean flipped) throws IOException {
+		public RTreeLeaf(ByteBuffer buffer, boolean flipped) {
 			_flipped = flipped;
 			
-			startChromIx = readInt(file, flipped);
-			startBase = readInt(file, flipped);
-			endChromIx = readInt(file, flipped);
-			endBase = readInt(file, flipped);
-			dataOffset = readLong(file, flipped);
-			dataSize = readLong(file, flipped);
+			startChromIx = buffer.getInt();
+			startBase = buffer.getInt();
+			endChromIx = buffer.getInt();
+			endBase = buffer.getInt();
+			dataOffset = buffer.getLong();
+			dataSize = buffer.getLong();
 		}
 		
 		public boolean overlaps(int chromId, int start, int end) { 
@@ -352,6 +372,11 @@ public class Bigwig {
 		
 		public long offset, size;
 		
+		/*
+		 * Compressed bytes fetched ahead of time (as part of a coalesced read), if any.
+		 */
+		public ByteBuffer _data;
+		
 		public DataBlock(RTreeLeaf leaf) { 
 			offset = leaf.dataOffset;
 			size = leaf.dataSize;
@@ -361,26 +386,121 @@ public class Bigwig {
 			endBase = leaf.endBase;
 		}
 		
+		/*
+		 * A block known only by where it is (e.g. from a BigBed extra index), with no 
+		 * genomic bounds.
+		 */
+		public DataBlock(long offset, long size) { 
+			this.offset = offset;
+			this.size = size;
+		}
+		
+		public DataBlock(FlatRTreeIndex index, int i) { 
+			offset = index.dataOffset[i];
+			size = index.dataSize[i];
+			startChromIx = index.startChromIx[i];
+			endChromIx = index.endChromIx[i];
+			startBase = index.startBase[i];
+			endBase = index.endBase[i];
+		}
+		
 		public byte[] data() throws IOException { 
 			byte[] b = new byte[(int)size];
-			file.seek(offset);
-			file.read(b);
+			compressed().get(b);
 			return b;
 		}
 		
+		private ByteBuffer compressed() throws IOException { 
+			if(_data != null) { 
+				return _data.duplicate();
+			}
+			ByteBuffer buffer = file.readBuffer(offset, (int)size);
+			readStats.record(size, 1, 0L);
+			return buffer;
+		}
+		
+		/*
+		 * Decodes every section in the block, appending the items to out.
+		 */
+		public Intervals decode(boolean flip, WigSection section, Intervals out) throws IOException { 
+			ByteBuffer buffer = decompress(flip, Inflaters.scratch(header.uncompressBufSize));
+			while(buffer.remaining() >= WigSection.HEADER_SIZE) { 
+				section.decode(buffer);
+				for(int i = 0; i < section.itemCount; i++) { 
+					out.add(section.chromId, section.starts[i], section.ends[i], section.values[i]);
+				}
+			}
+			return out;
+		}
+		
+		/*
+		 * Decodes the block, appending only the items overlapping [start, end) on chromId.
+		 */
+		public Intervals decode(boolean flip, WigSection section, int chromId, int start, int end, Intervals out) throws IOException { 
+			ByteBuffer buffer = decompress(flip, Inflaters.scratch(header.uncompressBufSize));
+			while(buffer.remaining() >= WigSection.HEADER_SIZE) { 
+				section.decode(buffer);
+				if(section.chromId != chromId) { 
+					continue;
+				}
+				for(int i = section.firstEndingAfter(start); i < section.itemCount && section.starts[i] < end; i++) { 
+					out.add(chromId, section.starts[i], section.ends[i], section.values[i]);
+				}
+			}
+			return out;
+		}
+		
 		public String toString() { 
 			return String.format("%d:%d-%d:%d", startChromIx, startBase, endBase, endChromIx);
 		}
 		
-		public byte[] inflate() throws IOException, DataFormatException { 
-			byte[] compressed = data();
-			byte[] uncompressed = new byte[header.uncompressBufSize];
-			Inflater inflater = new Inflater(false);
-
-			inflater.setInput(compressed);
-			inflater.inflate(uncompressed);
+		/*
+		 * The block's uncompressed contents, exactly as long as the inflated data and in 
+		 * the file's byte order.
+		 */
+		public ByteBuffer decompress(boolean flip) throws IOException { 
+			return decompress(flip, null);
+		}
 		
-			return uncompressed;
+		/*
+		 * As decompress(flip), but inflating into buffer (when it's big enough and there's 
+		 * no block cache) rather than a new array.  buffer must then stay untouched for as 
+		 * long as the result is in use.
+		 */
+		public ByteBuffer decompress(boolean flip, byte[] buffer) throws IOException { 
+			ByteBuffer result;
+			if(blockCache != null) { 
+				result = ByteBuffer.wrap(blockCache.get(new BlockCache.Key(name, offset), new BlockCache.Loader() { 
+					public byte[] load() throws IOException { 
+						return uncompressed();
+					}
+				}));
+			} else if(buffer != null && header.uncompressBufSize > 0 && buffer.length >= header.uncompressBufSize) { 
+				try { 
+					result = ByteBuffer.wrap(buffer, 0, Inflaters.inflate(compressed(), buffer));
+				} catch(DataFormatException e) { 
+					throw new IOException(String.format("Corrupt data block at %d", offset), e);
+				}
+			} else { 
+				result = ByteBuffer.wrap(uncompressed());
+			}
+			result.order(flip ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			return result;
+		}
+		
+		private byte[] uncompressed() throws IOException { 
+			if(header.uncompressBufSize == 0) { 
+				return data();
+			}
+			try { 
+				return Inflaters.inflate(compressed(), header.uncompressBufSize);
+			} catch(DataFormatException e) { 
+				throw new IOException(String.format("Corrupt data block at %d", offset), e);
+			}
+		}
+		
+		public byte[] inflate() throws IOException, DataFormatException { 
+			return Inflaters.inflate(compressed(), header.uncompressBufSize);
 		}
 		
 		public int hashCode() { 
@@ -425,18 +545,17 @@ public class Bigwig {
 		public int endBase;
 		public long dataOffset;
 		
-		public RTreeNonLeaf(boolean flipped) throws IOException {
+		public RTreeNonLeaf(ByteBuffer buffer, boolean flipped) {
 			_flipped = flipped;
-			startChromIx = readInt(file, flipped);
-			startBase = readInt(file, flipped);
-			endChromIx = readInt(file, flipped);
-			endBase = readInt(file, flipped);
-			dataOffset = readLong(file, flipped);
+			startChromIx = buffer.getInt();
+			startBase = buffer.getInt();
+			endChromIx = buffer.getInt();
+			endBase = buffer.getInt();
+			dataOffset = buffer.getLong();
 		}
 		
 		public RTreeNode getNode() throws IOException { 
-			file.seek(dataOffset);
-			return new RTreeNode(_flipped);
+			return new RTreeNode(dataOffset, _flipped);
 		}
 
 		public boolean overlaps(int chromId, int start, int end) { 
@@ -445,6 +564,127 @@ public class Bigwig {
 		}
 	}
 	
+	/*
+	 * Depth-first walk over the R-tree, yielding the leaves that overlap a region in 
+	 * genomic order.  Only the nodes on the current path are held in memory.
+	 */
+	public class RTreeWalker { 
+		
+		private int chromId, start, end;
+		
+		private LinkedList<RTreeNonLeaf> pending;
+		private RTreeLeaf[] leaves;
+		private int leafIndex;
+		
+		public RTreeWalker(RTreeNode root, int chromId, int start, int end) throws IOException { 
+			this.chromId = chromId;
+			this.start = start;
+			this.end = end;
+			
+			pending = new LinkedList<RTreeNonLeaf>();
+			leaves = new RTreeLeaf[0];
+			leafIndex = 0;
+			expand(root);
+		}
+		
+		private void expand(RTreeNode node) throws IOException { 
+			if(node.isLeaf()) { 
+				leaves = node.getChildLeaves();
+				leafIndex = 0;
+			} else { 
+				RTreeNonLeaf[] children = node.getChildNonLeaves();
+				for(int i = children.length-1; i >= 0; i--) { 
+					if(children[i].overlaps(chromId, start, end)) { 
+						pending.addFirst(children[i]);
+					}
+				}
+			}
+		}
+		
+		public RTreeLeaf next() throws IOException { 
+			while(true) { 
+				while(leafIndex < leaves.length) { 
+					RTreeLeaf leaf = leaves[leafIndex++];
+					if(leaf.overlaps(chromId, start, end)) { 
+						return leaf;
+					}
+				}
+				if(pending.isEmpty()) { 
+					return null;
+				}
+				expand(pending.removeFirst().getNode());
+			}
+		}
+	}
+	
+	/*
+	 * Reads the compressed bytes of a list of blocks, sorted by offset.  Each run of 
+	 * blocks that can be coalesced (see joins) is fetched with a single read.
+	 */
+	public class BlockFetcher { 
+		
+		private List<DataBlock> blocks;
+		
+		public BlockFetcher(List<DataBlock> blocks) { 
+			this.blocks = blocks;
+		}
+		
+		public int size() { 
+			return blocks.size();
+		}
+		
+		/*
+		 * The i'th block, with its data loaded.  Blocks are cheapest to fetch in order, 
+		 * since then every run is read only once.  With a block cache nothing is read 
+		 * ahead: decompress() looks the block up first, and reads it alone on a miss.
+		 */
+		public DataBlock get(int i) throws IOException { 
+			DataBlock block = blocks.get(i);
+			if(block._data == null && blockCache == null) { 
+				int last = i;
+				long end = block.offset + block.size;
+				while(last + 1 < blocks.size() && blocks.get(last+1)._data == null && 
+						joins(block.offset, end, blocks.get(last+1))) { 
+					last += 1;
+					end = blocks.get(last).offset + blocks.get(last).size;
+				}
+				readRun(blocks.subList(i, last + 1));
+			}
+			return block;
+		}
+	}
+	
+	/*
+	 * Whether next can be added to a run of blocks covering [runStart, runEnd): it has 
+	 * to come after the run, within coalesceGap bytes of its end, without taking the 
+	 * run past maxReadSize.
+	 */
+	public boolean joins(long runStart, long runEnd, DataBlock next) { 
+		return next.offset >= runEnd && next.offset - runEnd <= coalesceGap && 
+				next.offset + next.size - runStart <= maxReadSize;
+	}
+	
+	/*
+	 * Fetches a run of blocks, in offset order, with one read and slices it into each 
+	 * block's _data.  Any gaps between the blocks are read and thrown away.
+	 */
+	public void readRun(List<DataBlock> run) throws IOException { 
+		long start = run.get(0).offset;
+		DataBlock last = run.get(run.size() - 1);
+		int length = (int)(last.offset + last.size - start);
+		
+		ByteBuffer buffer = file.readBuffer(start, length);
+		long used = 0L;
+		for(DataBlock block : run) { 
+			ByteBuffer slice = buffer.duplicate();
+			slice.position((int)(block.offset - start));
+			slice.limit((int)(block.offset - start + block.size));
+			block._data = slice.slice();
+			used += block.size;
+		}
+		readStats.record(length, run.size(), length - used);
+	}
+	
 	public class BigBedSection { 
 		
 		public int chromId;
@@ -512,6 +752,269 @@ public class Bigwig {
     	}
     }
     
+    /*
+     * The data blocks overlapping a region, in genomic order, found lazily through the 
+     * flat index or an RTreeWalker (over the data's R-tree, or a zoom level's).  Unless 
+     * there is a block cache, blocks lying close together are fetched with one 
+     * coalesced read.
+     */
+    public class BlockStream { 
+    	
+    	private int queryChrom, queryStart, queryEnd;
+    	private RTreeWalker walker;
+    	
+    	private FlatRTreeIndex flatIndex;
+    	private int flatPosition;
+    	
+    	/*
+    	 * Blocks already fetched by the last coalesced read, and the first block that 
+    	 * didn't fit in it.
+    	 */
+    	private boolean coalesce;
+    	private LinkedList<DataBlock> pending;
+    	private DataBlock lookahead;
+    	
+    	public BlockStream(int chromId, int start, int end) throws IOException { 
+    		queryChrom = chromId;
+    		queryStart = start;
+    		queryEnd = end;
+    		
+    		flatIndex = useFlatIndex ? getFlatIndex() : null;
+    		if(flatIndex != null) { 
+    			flatPosition = flatIndex.search(chromId, start, end);
+    		} else { 
+    			walker = new RTreeWalker(getIndexRoot(), chromId, start, end);
+    		}
+    		// with a cache, most blocks shouldn't be read at all.
+    		coalesce = blockCache == null;
+    		pending = new LinkedList<DataBlock>();
+    		lookahead = null;
+    	}
+    	
+    	/*
+    	 * The blocks of the R-tree under root, e.g. a zoom level's.
+    	 */
+    	public BlockStream(RTreeNode root, int chromId, int start, int end) throws IOException { 
+    		queryChrom = chromId;
+    		queryStart = start;
+    		queryEnd = end;
+    		flatIndex = null;
+    		walker = new RTreeWalker(root, chromId, start, end);
+    		coalesce = blockCache == null;
+    		pending = new LinkedList<DataBlock>();
+    		lookahead = null;
+    	}
+    	
+    	public DataBlock next() throws IOException { 
+    		if(pending.isEmpty()) { 
+    			DataBlock first = lookahead != null ? lookahead : nextLeaf();
+    			lookahead = null;
+    			if(first == null) { 
+    				return null;
+    			}
+    			pending.add(first);
+    			
+    			long end = first.offset + first.size;
+    			while(coalesce) { 
+    				DataBlock next = nextLeaf();
+    				if(next == null) { 
+    					break;
+    				}
+    				if(!joins(first.offset, end, next)) { 
+    					lookahead = next;
+    					break;
+    				}
+    				pending.add(next);
+    				end = next.offset + next.size;
+    			}
+    			if(pending.size() > 1) { 
+    				readRun(pending);
+    			}
+    		}
+    		return pending.removeFirst();
+    	}
+    	
+    	private DataBlock nextLeaf() throws IOException { 
+    		if(flatIndex == null) { 
+    			RTreeLeaf leaf = walker.next();
+    			return leaf != null ? new DataBlock(leaf) : null;
+    		}
+    		if(flatPosition == -1) { 
+    			return null;
+    		}
+    		DataBlock next = new DataBlock(flatIndex, flatPosition);
+    		flatPosition = flatIndex.next(flatPosition, queryChrom, queryStart, queryEnd);
+    		return next;
+    	}
+    }
+    
+    /*
+     * Streams the items of a region, decompressing one data block at a time and 
+     * decoding its sections into a reused WigSection as it goes.
+     */
+    public class QueryCursor implements IntervalCursor { 
+    	
+    	private int queryChrom, queryStart, queryEnd;
+    	private boolean flip;
+    	private BlockStream blocks;
+    	
+    	private ByteBuffer block;
+    	private byte[] buffer;
+    	private WigSection section;
+    	private int itemIndex;
+    	
+    	private int start, end;
+    	private float value;
+    	
+    	public QueryCursor(int chromId, int start, int end) throws IOException { 
+    		queryChrom = chromId;
+    		queryStart = start;
+    		queryEnd = end;
+    		flip = getIndexHeader()._flipped;
+    		blocks = new BlockStream(chromId, start, end);
+    		
+    		block = null;
+    		buffer = new byte[header.uncompressBufSize];
+    		section = new WigSection();
+    		itemIndex = 0;
+    	}
+    	
+    	public int chromId() { return section.chromId; }
+    	public int start() { return start; }
+    	public int end() { return end; }
+    	public float value() { return value; }
+    	
+    	public boolean next() throws IOException { 
+    		while(true) { 
+    			if(itemIndex < section.itemCount) { 
+    				start = section.starts[itemIndex];
+    				if(start < queryEnd) { 
+    					end = section.ends[itemIndex];
+    					value = section.values[itemIndex];
+    					itemIndex += 1;
+    					return true;
+    				}
+    				// items are sorted, so nothing else in this block can overlap.
+    				block.position(block.limit());
+    			}
+    			
+    			section.itemCount = itemIndex = 0;
+    			if(block != null && block.remaining() >= WigSection.HEADER_SIZE) { 
+    				section.decode(block);
+    				itemIndex = section.chromId == queryChrom ? section.firstEndingAfter(queryStart) : section.itemCount;
+    			} else { 
+    				DataBlock next = blocks.next();
+    				if(next == null) { 
+    					block = null;
+    					return false;
+    				}
+    				block = next.decompress(flip, buffer);
+    			}
+    		}
+    	}
+    }
+    
+    /*
+     * Decodes the raw items of whole decompressed data blocks, for passes that read the 
+     * blocks themselves (RegionSweep).  reset() starts on a block; the decoder is reused 
+     * from block to block.  BigBed's decodes records rather than wig sections.
+     */
+    public static abstract class BlockItems implements IntervalCursor { 
+    	public abstract void reset(ByteBuffer block);
+    	public abstract boolean next();
+    }
+    
+    protected BlockItems blockItems() { 
+    	return new SectionItems();
+    }
+    
+    private static class SectionItems extends BlockItems { 
+    	
+    	private ByteBuffer block;
+    	private WigSection section = new WigSection();
+    	private int itemIndex;
+    	
+    	public void reset(ByteBuffer block) { 
+    		this.block = block;
+    		section.itemCount = itemIndex = 0;
+    	}
+    	
+    	public int chromId() { return section.chromId; }
+    	public int start() { return section.starts[itemIndex - 1]; }
+    	public int end() { return section.ends[itemIndex - 1]; }
+    	public float value() { return section.values[itemIndex - 1]; }
+    	
+    	public boolean next() { 
+    		while(itemIndex == section.itemCount) { 
+    			if(block == null || block.remaining() < WigSection.HEADER_SIZE) { 
+    				return false;
+    			}
+    			section.decode(block);
+    			itemIndex = 0;
+    		}
+    		itemIndex += 1;
+    		return true;
+    	}
+    }
+    
+    /*
+     * Streams the zoom records of one zoom level that overlap a region, decoding them in 
+     * place from each decompressed block.  The blocks come from a BlockStream, so nearby 
+     * ones are read together as the data's are.
+     */
+    public class ZoomCursor { 
+    	
+    	public static final int RECORD_SIZE = 32;
+    	
+    	private int queryChrom, queryStart, queryEnd;
+    	private boolean flip;
+    	private BlockStream blocks;
+    	private ByteBuffer block;
+    	private byte[] buffer;
+    	
+    	public int chromId, chromStart, chromEnd;
+    	public int validCount;
+    	public float minVal, maxVal, sumData, sumSquares;
+    	
+    	public ZoomCursor(int level, int chromId, int start, int end) throws IOException { 
+    		queryChrom = chromId;
+    		queryStart = start;
+    		queryEnd = end;
+    		
+    		RTreeIndexHeader index = getZoomIndexHeader(level);
+    		flip = index._flipped;
+    		blocks = new BlockStream(rootNode(index), chromId, start, end);
+    		block = null;
+    		buffer = new byte[header.uncompressBufSize];
+    	}
+    	
+    	public boolean next() throws IOException { 
+    		while(true) { 
+    			while(block != null && block.remaining() >= RECORD_SIZE) { 
+    				chromId = block.getInt();
+    				chromStart = block.getInt();
+    				chromEnd = block.getInt();
+    				validCount = block.getInt();
+    				minVal = block.getFloat();
+    				maxVal = block.getFloat();
+    				sumData = block.getFloat();
+    				sumSquares = block.getFloat();
+    				
+    				if(chromId == queryChrom && chromStart < queryEnd && chromEnd > queryStart) { 
+    					return true;
+    				}
+    			}
+    			
+    			DataBlock next = blocks.next();
+    			if(next == null) { 
+    				block = null;
+    				return false;
+    			}
+    			block = next.decompress(flip, buffer);
+    		}
+    	}
+    }
+    
     public class ChromosomeBTreeHeader { 
     	
     	public int magic;
@@ -523,15 +1026,21 @@ public class Bigwig {
     	public long itemCount;
     	public long reserved;
     	
+    	public static final int SIZE = 32;
+    	
     	public ChromosomeBTreeHeader() throws IOException { 
-    		magic = readInt(file, false);
+    		this(file);
+    	}
+    	
+    	public ChromosomeBTreeHeader(DataInput dis) throws IOException { 
+    		magic = readInt(dis, false);
     		_flipped = magic == BTREE_MAGIC_FLIPPED;
     		
-    		blockSize = readInt(file, _flipped);
-    		keySize = readInt(file, _flipped);
-    		valSize = readInt(file, _flipped);
-    		itemCount = readLong(file, _flipped);
-    		reserved = readLong(file, _flipped);
+    		blockSize = readInt(dis, _flipped);
+    		keySize = readInt(dis, _flipped);
+    		valSize = readInt(dis, _flipped);
+    		itemCount = readLong(dis, _flipped);
+    		reserved = readLong(dis, _flipped);
     	}
     }
     
@@ -546,15 +1055,16 @@ public class Bigwig {
     	
     	public long _position;
     	
-    	public ChromosomeBTreeNode(int keySize, boolean flipped) throws IOException {
+    	public ChromosomeBTreeNode(long position, int keySize, boolean flipped) throws IOException {
     		_flipped = flipped;
     		_keySize = keySize;
     		
-    		isLeaf = readByte(file, _flipped);
-    		reserved = readByte(file, _flipped);
-    		count = readShort(file, _flipped);
+    		ByteBuffer buffer = readBuffer(position, 4, flipped);
+    		isLeaf = buffer.get();
+    		reserved = buffer.get();
+    		count = buffer.getShort();
     		
-    		_position = file.getFilePointer();
+    		_position = position + 4;
     	}
     	
     	public boolean isLeaf() { 
@@ -563,32 +1073,30 @@ public class Bigwig {
     	
     	public ChromosomeBTreeLeaf[] leaves() throws IOException { 
     		ChromosomeBTreeLeaf[] array = new ChromosomeBTreeLeaf[count];
-    		file.seek(_position);
+    		ByteBuffer buffer = readBuffer(_position, count * (_keySize + 8), _flipped);
     		for(int i = 0; i < array.length; i++) {
-    			array[i] = new ChromosomeBTreeLeaf(_keySize, _flipped);
+    			array[i] = new ChromosomeBTreeLeaf(buffer, _keySize, _flipped);
     		}
     		return array;
     	}
     	
     	public ChromosomeBTreeNonLeaf[] nonLeaves() throws IOException { 
     		ChromosomeBTreeNonLeaf[] array = new ChromosomeBTreeNonLeaf[count];
-    		file.seek(_position);
+    		ByteBuffer buffer = readBuffer(_position, count * (_keySize + 8), _flipped);
     		for(int i = 0; i < array.length; i++) {
-    			array[i] = new ChromosomeBTreeNonLeaf(_keySize, _flipped);
+    			array[i] = new ChromosomeBTreeNonLeaf(buffer, _keySize, _flipped);
     		}
     		return array;
     	}
     	
     	public ChromosomeBTreeLeaf getLeaf(int i) throws IOException { 
     		long offset = _position + i * (_keySize + 8);
-    		file.seek(offset);
-    		return new ChromosomeBTreeLeaf(_keySize, _flipped);
+    		return new ChromosomeBTreeLeaf(readBuffer(offset, _keySize + 8, _flipped), _keySize, _flipped);
     	}
 
     	public ChromosomeBTreeNonLeaf getNonLeaf(int i) throws IOException { 
     		long offset = _position + i * (_keySize + 8);
-    		file.seek(offset);
-    		return new ChromosomeBTreeNonLeaf(_keySize, _flipped);
+    		return new ChromosomeBTreeNonLeaf(readBuffer(offset, _keySize + 8, _flipped), _keySize, _flipped);
     	}
     }
     
@@ -600,11 +1108,12 @@ public class Bigwig {
     	public int chromId;
     	public int chromSize;
     	
-    	public ChromosomeBTreeLeaf(int keySize, boolean flip) throws IOException {
+    	public ChromosomeBTreeLeaf(ByteBuffer buffer, int keySize, boolean flip) {
     		_flipped = flip;
-    		key = readBytes(keySize, file, _flipped);
-    		chromId = readInt(file, _flipped);
-    		chromSize = readInt(file, _flipped);
+    		key = new byte[keySize];
+    		buffer.get(key);
+    		chromId = buffer.getInt();
+    		chromSize = buffer.getInt();
     	}
     }
     
@@ -616,7 +1125,10 @@ public class Bigwig {
     	if(top.isLeaf()) { 
     		ChromosomeBTreeLeaf[] leaves = top.leaves();
     		for(ChromosomeBTreeLeaf leaf : leaves) { 
-    			ByteBuffer buffer = ByteBuffer.wrap(leaf.key);
+    			// keys shorter than keySize are padded with zeros.
+    			int length = 0;
+    			while(length < leaf.key.length && leaf.key[length] != 0) { length++; }
+    			ByteBuffer buffer = ByteBuffer.wrap(leaf.key, 0, length);
     			String strKey = UTF8.decode(buffer).toString();
     			int chromId = leaf.chromId;
     			map.put(strKey, chromId);
@@ -639,17 +1151,17 @@ public class Bigwig {
     	public byte[] key;
     	public long childOffset;
     	
-    	public ChromosomeBTreeNonLeaf(int keySize, boolean flip) throws IOException {
+    	public ChromosomeBTreeNonLeaf(ByteBuffer buffer, int keySize, boolean flip) {
     		_flipped = flip;
     		_keySize = keySize;
     		
-    		key = readBytes(keySize, file, _flipped);
-    		childOffset = readLong(_flipped);
+    		key = new byte[keySize];
+    		buffer.get(key);
+    		childOffset = buffer.getLong();
     	}
     	
     	public ChromosomeBTreeNode getNode() throws IOException { 
-    		file.seek(childOffset);
-    		return new ChromosomeBTreeNode(_keySize, _flipped);
+    		return new ChromosomeBTreeNode(childOffset, _keySize, _flipped);
     	}
     }
 
@@ -660,17 +1172,25 @@ public class Bigwig {
     	public double sumData;
     	public double sumSquares;
     	
+    	public static final int SIZE = 40;
+    	
     	public TotalSummaryBlock() throws IOException { 
-    		basesCovered = readLittleLong();
-    		minVal = readLittleDouble();
-    		maxVal = readLittleDouble();
-    		sumData = readLittleDouble();
-    		sumSquares = readLittleDouble();
+    		this(file);
+    	}
+    	
+    	public TotalSummaryBlock(DataInput dis) throws IOException { 
+    		basesCovered = readLong(dis, true);
+    		minVal = Double.longBitsToDouble(readLong(dis, true));
+    		maxVal = Double.longBitsToDouble(readLong(dis, true));
+    		sumData = Double.longBitsToDouble(readLong(dis, true));
+    		sumSquares = Double.longBitsToDouble(readLong(dis, true));
     	}
     }
     
     public class ZoomHeader { 
     	
+    	public static final int SIZE = 24;
+    	
     	public int reductionLevel;
     	public int reserved;
     	public long dataOffset;
@@ -728,26 +1248,33 @@ public class Bigwig {
         public int uncompressBufSize;
         public long reserved;
 
+        public static final int SIZE = 64;
+
         public Header() throws IOException { 
-            magic = readLittleInt();
-            if(magic != BIGWIG_MAGIC) { throw new IllegalArgumentException(Integer.toHexString(magic)); }
+            this(file);
+        }
+        
+        public Header(DataInput dis) throws IOException { 
+            magic = readInt(dis, true);
+            if(magic != BIGWIG_MAGIC && magic != BIGBED_MAGIC) { throw new IllegalArgumentException(Integer.toHexString(magic)); }
             
     
-            version = readLittleShort();
-            zoomLevels = readLittleShort();
-            chromosomeTreeOffset = readLittleLong();
-            fullDataOffset = readLittleLong();
-            fullIndexOffset = readLittleLong();
-            fieldCount = readLittleShort();
-            definedFieldCount = readLittleShort();
-            autoSqlOffset = readLittleLong();
-            totalSummaryOffset = readLittleLong();
-            uncompressBufSize = readLittleInt();
-            reserved = readLittleLong();
+            version = readShort(dis, true);
+            zoomLevels = readShort(dis, true);
+            chromosomeTreeOffset = readLong(dis, true);
+            fullDataOffset = readLong(dis, true);
+            fullIndexOffset = readLong(dis, true);
+            fieldCount = readShort(dis, true);
+            definedFieldCount = readShort(dis, true);
+            autoSqlOffset = readLong(dis, true);
+            totalSummaryOffset = readLong(dis, true);
+            uncompressBufSize = readInt(dis, true);
+            reserved = readLong(dis, true);
         }
     }
     
     public static final int BIGWIG_MAGIC = Long.decode("0x888FFC26").intValue();
+    public static final int BIGBED_MAGIC = Long.decode("0x8789F2EB").intValue();
 
     public static final int BTREE_MAGIC = Long.decode("0x78CA8C91").intValue();
     public static final int BTREE_MAGIC_FLIPPED = Integer.reverseBytes(BTREE_MAGIC);
@@ -759,109 +1286,508 @@ public class Bigwig {
     public static final byte WIGTYPE_VARSTEP = 2;
     public static final byte WIGTYPE_FIXEDSTEP = 3;
 
-    private RandomAccessFile file;
+    private static AtomicLong openCount = new AtomicLong(0L);
+
+    private SeekableInput file;
+    private String name;
+    private BlockCache blockCache;
     
     public Header header;
     public ZoomHeader[] zoomHeaders;
     public int[] zoomCounts;
     
     public TotalSummaryBlock totalSummary;
-    public int dataCount;
+    public int dataCount = -1;
     
     public ChromosomeBTreeHeader bTreeHeader;
     public Map<String,Integer> chromIds;
+    private ChromosomeDictionary chromosomes;
+    private boolean lazyChromosomes;
     
     public RTreeIndexHeader indexHeader;
+    private RTreeNode indexRoot;
+    private FlatRTreeIndex flatIndex;
+    private RTreeIndexHeader[] zoomIndexHeaders;
+    private boolean useFlatIndex;
+    
+    private int coalesceGap, maxReadSize;
+    private ReadStats readStats;
+    private ForkJoinPool pool;
+    private boolean ownPool;
 
     public Bigwig(String filename) throws IOException {
         this(new File(filename));
     }
 
     public Bigwig(File f) throws IOException {
-        file = new RandomAccessFile(f.getAbsolutePath(), "r");
-        header = new Header();
-        
-        printObject("Header", header);
-        
-        zoomHeaders = new ZoomHeader[header.zoomLevels];
-        zoomCounts = new int[zoomHeaders.length];
+        this(f, new BigwigOptions());
+    }
+
+    public Bigwig(File f, BigwigOptions options) throws IOException {
+        this(openInput(f, options), options, f.getAbsolutePath());
+    }
+
+    /*
+     * A file served over HTTP, read with Range requests; see HttpRangeInput.
+     */
+    public Bigwig(URL url) throws IOException {
+        this(url, new BigwigOptions());
+    }
+
+    public Bigwig(URL url, BigwigOptions options) throws IOException {
+        this(openInput(url, options), options, url.toString());
+    }
+
+    public Bigwig(SeekableInput in) throws IOException {
+        this(in, new BigwigOptions());
+    }
+
+    public Bigwig(SeekableInput in, BigwigOptions options) throws IOException {
+        this(in, options, String.format("input-%d", openCount.incrementAndGet()));
+    }
+
+    /*
+     * Only the 64-byte header is read here.  Unless options.lazy is set, the zoom headers, 
+     * total summary, chromosome tree and R-tree index header are then loaded too; in lazy 
+     * mode each is loaded by its getter on first use instead.
+     * 
+     * name identifies the file in a shared BlockCache, so it must differ between files 
+     * that are open at the same time.
+     */
+    public Bigwig(SeekableInput in, BigwigOptions options, String name) throws IOException {
+        this(in, options, name, null);
+    }
+    
+    /*
+     * With metadata (from getMetadata() on an earlier open of the same, unchanged file) 
+     * nothing at all is read here, however options.lazy is set.
+     * 
+     * If the open fails, in is closed before the exception is thrown.
+     */
+    public Bigwig(SeekableInput in, BigwigOptions options, String name, BigwigMetadata metadata) throws IOException {
+        file = in;
+        this.name = name;
+        blockCache = options.blockCache;
+        useFlatIndex = options.flatIndex;
+        lazyChromosomes = options.lazyChromosomes;
+        coalesceGap = options.coalesceGap;
+        maxReadSize = options.maxReadSize;
+        readStats = new ReadStats();
+        ownPool = options.pool == null && options.parallelism > 1;
+        pool = options.pool != null ? options.pool : ownPool ? new ForkJoinPool(options.parallelism) : null;
+        boolean opened = false;
+        try { 
+            open(options, metadata);
+            opened = true;
+        } finally { 
+            if(!opened) { 
+                try { 
+                    close();
+                } catch(IOException e) { 
+                    // the open's own exception is the one to report.
+                }
+            }
+        }
+    }
+    
+    private void open(BigwigOptions options, BigwigMetadata metadata) throws IOException { 
+        if(metadata != null) { 
+            adopt(metadata);
+            return;
+        }
+        header = new Header(new ByteBufferDataInput(file.readBuffer(0L, Header.SIZE)));
+        if(header.magic != magic()) { 
+            throw new IllegalArgumentException(String.format("%s has magic %s, not %s: open it as a %s", 
+                    name, Integer.toHexString(header.magic), Integer.toHexString(magic()), 
+                    header.magic == BIGBED_MAGIC ? "BigBed" : "Bigwig"));
+        }
         
+        if(!options.lazy) { 
+            getZoomHeaders();
+            getTotalSummary();
+            getDataCount();
+            getIndexRoot();
+            getChromosomes();
+            if(!lazyChromosomes) { 
+                // the chromIds field has always been filled in by an eager open.
+                getChromIds();
+            }
+            if(useFlatIndex) { 
+                getFlatIndex();
+            }
+        }
+    }
+    
+    /*
+     * Everything an eager open reads, for handing to later opens of the same file.
+     */
+    public synchronized BigwigMetadata getMetadata() throws IOException { 
+        BigwigMetadata metadata = new BigwigMetadata();
+        metadata.header = header;
+        metadata.zoomHeaders = getZoomHeaders();
+        metadata.zoomIndexHeaders = new RTreeIndexHeader[zoomHeaders.length];
         for(int i = 0; i < zoomHeaders.length; i++) { 
-        	zoomHeaders[i] = new ZoomHeader();
-        	long pos = file.getFilePointer();
-        	
-            printObject("ZoomHeader " + i, zoomHeaders[i]);
-            
-            file.seek(zoomHeaders[i].dataOffset);
-            zoomCounts[i] = readInt(file, true);
-            System.out.println(String.format("Zoom Count: %d", zoomCounts[i]));
-            
-            file.seek(pos);
+            metadata.zoomIndexHeaders[i] = getZoomIndexHeader(i);
         }
+        metadata.totalSummary = getTotalSummary();
+        metadata.dataCount = getDataCount();
+        metadata.indexHeader = getIndexHeader();
+        metadata.bTreeHeader = getBTreeHeader();
+        if(!lazyChromosomes) { 
+            // a lazy dictionary reads through this file, so each open needs its own.
+            metadata.chromosomes = getChromosomes();
+            metadata.chromIds = getChromIds();
+        }
+        if(useFlatIndex) { 
+            metadata.flatIndex = getFlatIndex();
+        }
+        return metadata;
+    }
+    
+    private void adopt(BigwigMetadata metadata) { 
+        if(metadata.header.magic != magic()) { 
+            throw new IllegalArgumentException(String.format("%s: metadata has magic %s, not %s", 
+                    name, Integer.toHexString(metadata.header.magic), Integer.toHexString(magic())));
+        }
+        header = metadata.header;
+        zoomHeaders = metadata.zoomHeaders;
+        zoomIndexHeaders = metadata.zoomIndexHeaders != null ? metadata.zoomIndexHeaders.clone() : null;
+        totalSummary = metadata.totalSummary;
+        dataCount = metadata.dataCount;
+        indexHeader = metadata.indexHeader;
+        bTreeHeader = metadata.bTreeHeader;
+        if(!lazyChromosomes) { 
+            chromosomes = metadata.chromosomes;
+            chromIds = metadata.chromIds;
+        }
+        if(useFlatIndex) { 
+            flatIndex = metadata.flatIndex;
+        }
+    }
+    
+    /*
+     * The header magic this class reads; BigBed overrides it.
+     */
+    protected int magic() { 
+        return BIGWIG_MAGIC;
+    }
+    
+    public synchronized ZoomHeader[] getZoomHeaders() throws IOException { 
+        if(zoomHeaders == null) { 
+            ZoomHeader[] array = new ZoomHeader[header.zoomLevels];
+            DataInput input = new ByteBufferDataInput(file.readBuffer(Header.SIZE, array.length * ZoomHeader.SIZE));
+            for(int i = 0; i < array.length; i++) { 
+                array[i] = new ZoomHeader(input, true);
+            }
+            zoomHeaders = array;
+        }
+        return zoomHeaders;
+    }
+    
+    public synchronized int[] getZoomCounts() throws IOException { 
+        if(zoomCounts == null) { 
+            ZoomHeader[] zooms = getZoomHeaders();
+            int[] counts = new int[zooms.length];
+            for(int i = 0; i < zooms.length; i++) { 
+                counts[i] = readBuffer(zooms[i].dataOffset, 4, true).getInt();
+            }
+            zoomCounts = counts;
+        }
+        return zoomCounts;
+    }
+    
+    public synchronized TotalSummaryBlock getTotalSummary() throws IOException { 
+        if(totalSummary == null && header.totalSummaryOffset != 0L) { 
+            totalSummary = new TotalSummaryBlock(new ByteBufferDataInput(file.readBuffer(header.totalSummaryOffset, TotalSummaryBlock.SIZE)));
+        }
+        return totalSummary;
+    }
+    
+    public synchronized int getDataCount() throws IOException { 
+        if(dataCount < 0) { 
+            dataCount = readBuffer(header.fullDataOffset, 4, true).getInt();
+        }
+        return dataCount;
+    }
+    
+    public synchronized RTreeIndexHeader getZoomIndexHeader(int level) throws IOException { 
+        if(zoomIndexHeaders == null) { 
+            zoomIndexHeaders = new RTreeIndexHeader[getZoomHeaders().length];
+        }
+        if(zoomIndexHeaders[level] == null) { 
+            zoomIndexHeaders[level] = new RTreeIndexHeader(zoomHeaders[level].indexOffset);
+        }
+        return zoomIndexHeaders[level];
+    }
+    
+    public synchronized RTreeIndexHeader getIndexHeader() throws IOException { 
+        if(indexHeader == null) { 
+            indexHeader = new RTreeIndexHeader(header.fullIndexOffset);
+        }
+        return indexHeader;
+    }
+    
+    public synchronized RTreeNode getIndexRoot() throws IOException { 
+        if(indexRoot == null) { 
+            indexRoot = rootNode(getIndexHeader());
+        }
+        return indexRoot;
+    }
+    
+    /*
+     * The root of index's tree, read through this file (index may have been parsed by 
+     * another Bigwig; see BigwigMetadata).
+     */
+    public RTreeNode rootNode(RTreeIndexHeader index) throws IOException { 
+        return new RTreeNode(index._rootOffset, index._flipped);
+    }
+    
+    /*
+     * Loads every R-tree leaf into a FlatRTreeIndex, once; queries then use it instead 
+     * of walking the on-disk tree when the file was opened with options.flatIndex.
+     */
+    public synchronized FlatRTreeIndex getFlatIndex() throws IOException { 
+        if(flatIndex == null) { 
+            flatIndex = buildFlatIndex();
+        }
+        return flatIndex;
+    }
+    
+    /*
+     * Every leaf, as a new index that isn't kept: for one-off passes over the whole 
+     * file (FileScan) when the file wasn't opened with options.flatIndex.
+     */
+    public FlatRTreeIndex buildFlatIndex() throws IOException { 
+        FlatRTreeIndex index = new FlatRTreeIndex((int)Math.min(getIndexHeader().itemCount, 1 << 20));
+        addLeaves(getIndexRoot(), index);
+        return index.seal();
+    }
+    
+    /*
+     * Whether the file was opened with options.flatIndex.
+     */
+    public boolean isFlatIndexed() { 
+        return useFlatIndex;
+    }
+    
+    private void addLeaves(RTreeNode node, FlatRTreeIndex index) throws IOException { 
+        if(node.isLeaf()) { 
+            for(RTreeLeaf leaf : node.getChildLeaves()) { 
+                index.add(leaf);
+            }
+        } else { 
+            for(RTreeNonLeaf child : node.getChildNonLeaves()) { 
+                addLeaves(child.getNode(), index);
+            }
+        }
+    }
+    
+    public synchronized ChromosomeBTreeHeader getBTreeHeader() throws IOException { 
+        if(bTreeHeader == null) { 
+            bTreeHeader = new ChromosomeBTreeHeader(new ByteBufferDataInput(file.readBuffer(header.chromosomeTreeOffset, ChromosomeBTreeHeader.SIZE)));
+        }
+        return bTreeHeader;
+    }
+    
+    /*
+     * Chromosome names and sizes by id, and ids by name.  With options.lazyChromosomes 
+     * names are looked up in the file's B+ tree as they're asked for, instead of the 
+     * whole tree being read at once.
+     */
+    public synchronized ChromosomeDictionary getChromosomes() throws IOException { 
+        if(chromosomes == null) { 
+            BPlusTree tree = new BPlusTree(this, header.chromosomeTreeOffset);
+            chromosomes = lazyChromosomes ? ChromosomeDictionary.lazy(tree) : ChromosomeDictionary.load(tree);
+        }
+        return chromosomes;
+    }
+    
+    public synchronized Map<String,Integer> getChromIds() throws IOException { 
+        if(chromIds == null) { 
+            chromIds = getChromosomes().toMap();
+        }
+        return chromIds;
+    }
+    
+    /*
+     * A lazy cursor over the items overlapping [start, end) on chrom; memory use is 
+     * bounded by a single decompressed block however large the region.  Unknown 
+     * chromosomes give an empty cursor.
+     */
+    public IntervalCursor query(String chrom, int start, int end) throws IOException { 
+        return query(getChromosomes().id(chrom), start, end);
+    }
+    
+    public IntervalCursor query(int chromId, int start, int end) throws IOException { 
+        return new QueryCursor(chromId, start, end);
+    }
+    
+    /*
+     * Every item in the file, in file order, read ahead on a background thread; close 
+     * the scan when done with it.  (BigBed's gives its records.)
+     */
+    public FileScan scan() throws IOException { 
+        return new FileScan(this);
+    }
+    
+    /*
+     * Every item overlapping a region, collected in one Intervals.  When the file was 
+     * opened with options.parallelism > 1 (or an options.pool) the blocks are read and 
+     * decoded in parallel, which pays off for whole-chromosome and other wide regions.
+     */
+    public Intervals extract(String chrom, int start, int end) throws IOException { 
+        int chromId = getChromosomes().id(chrom);
+        return chromId != -1 ? extract(chromId, start, end) : new Intervals(0);
+    }
+    
+    public Intervals extract(int chromId, int start, int end) throws IOException { 
+        return new ParallelQuery(this, pool).query(chromId, start, end);
+    }
+    
+    /*
+     * The pool extract() decodes on: options.pool, or this file's own; null when it 
+     * decodes on the calling thread.
+     */
+    public ForkJoinPool getPool() { 
+        return pool;
+    }
+    
+    /*
+     * The data blocks overlapping a region, in genomic order, from the flat index if 
+     * there is one and the R-tree otherwise.
+     */
+    public List<DataBlock> findBlocks(int chromId, int start, int end) throws IOException { 
+        List<DataBlock> blocks = new ArrayList<DataBlock>();
+        if(useFlatIndex) { 
+            FlatRTreeIndex index = getFlatIndex();
+            for(int i = index.search(chromId, start, end); i != -1; i = index.next(i, chromId, start, end)) { 
+                blocks.add(new DataBlock(index, i));
+            }
+        } else { 
+            blocks.addAll(getIndexRoot().findOverlappingBlocks(chromId, start, end));
+        }
+        return blocks;
+    }
+    
+    /*
+     * The items overlapping each of many regions, returned in the order given.  See 
+     * BatchQuery: every block needed is read and inflated once, whatever the number of 
+     * regions touching it.
+     */
+    public Intervals[] query(List<Region> regions) throws IOException { 
+        return new BatchQuery(this).query(regions);
+    }
+    
+    /*
+     * The coarsest zoom level whose reductionLevel is at most half of binSize, so that 
+     * each bin is still built from two or more zoom records; -1 if no level is fine 
+     * enough and raw data must be used.
+     */
+    public int bestZoomLevel(int binSize) throws IOException { 
+        int desired = binSize / 2;
+        int best = -1;
+        ZoomHeader[] zooms = getZoomHeaders();
+        for(int i = 0; i < zooms.length; i++) { 
+            int reduction = zooms[i].reductionLevel;
+            if(reduction <= desired && (best == -1 || reduction > zooms[best].reductionLevel)) { 
+                best = i;
+            }
+        }
+        return best;
+    }
+    
+    /*
+     * The statistic over nBins equal bins of [start, end) on chrom.  Bins are filled from 
+     * the best zoom level for their size, falling back to the raw sections when no level 
+     * is fine enough.  Bins without data are NaN.
+     */
+    public double[] summary(String chrom, int start, int end, int nBins, SummaryStat stat) throws IOException { 
+        int chromId = getChromosomes().id(chrom);
+        SummaryBins bins = new SummaryBins(start, end, nBins);
+        if(chromId != -1) { 
+            summarize(chromId, bins);
+        }
+        return bins.values(stat);
+    }
+    
+    public SummaryBins summarize(int chromId, SummaryBins bins) throws IOException { 
+        int level = bestZoomLevel((bins.end - bins.start) / bins.nBins);
+        return summarize(chromId, bins, level);
+    }
+    
+    public SummaryBins summarize(int chromId, SummaryBins bins, int level) throws IOException { 
+        if(level >= 0) { 
+            ZoomCursor cursor = new ZoomCursor(level, chromId, bins.start, bins.end);
+            while(cursor.next()) { 
+                bins.addSummary(cursor.chromStart, cursor.chromEnd, cursor.validCount, 
+                        cursor.minVal, cursor.maxVal, cursor.sumData, cursor.sumSquares);
+            }
+        } else { 
+            IntervalCursor cursor = query(chromId, bins.start, bins.end);
+            while(cursor.next()) { 
+                bins.addValue(cursor.start(), cursor.end(), cursor.value());
+            }
+        }
+        return bins;
+    }
+    
+    /*
+     * Counts of the reads issued for data blocks since the file was opened.
+     */
+    public ReadStats getReadStats() { 
+        return readStats;
+    }
+    
+    public String getName() { 
+        return name;
+    }
+    
+    public long getLength() throws IOException { 
+        return file.length();
+    }
+    
+    public void dump() throws IOException { 
+        printObject("Header", header);
         
-        file.seek(header.totalSummaryOffset);
-        totalSummary = new TotalSummaryBlock();
-        printObject("Total Summary", totalSummary);
-        
-        file.seek(header.fullDataOffset);
-        dataCount = readLittleInt();
-        System.out.println(String.format("dataCount: %d", dataCount));
-        System.out.println(String.format("file position: %d / %d", file.getFilePointer(), file.length()));
-        
-        file.seek(header.fullIndexOffset);
-        indexHeader = new RTreeIndexHeader();
-        printObject("RTree Index Header", indexHeader);
-        
-        file.seek(header.chromosomeTreeOffset);
-        bTreeHeader = new ChromosomeBTreeHeader();
-        ChromosomeBTreeNode topBTreeNode = new ChromosomeBTreeNode(bTreeHeader.keySize, bTreeHeader._flipped);
-        
-        printObject("BTree Header", bTreeHeader);
-        chromIds = getChromIdMap(topBTreeNode);
-        System.out.println(chromIds.toString());
-        
-        //RTreeNode topNode = new RTreeNode(indexHeader._flipped);
-        //printObject("Top Node", topNode);
-        
-        file.seek(zoomHeaders[3].indexOffset);
-        RTreeIndexHeader zoomIndexHeader = new RTreeIndexHeader();
-        RTreeNode topNode = zoomIndexHeader.readNode();
-
-        int chr1Id = 0;
-        int start = 1000000;
-        int end = 3000000;
-        Set<RTreeLeaf> leaves = topNode.findOverlappingLeaves(chr1Id, start, end);
+        ZoomHeader[] zooms = getZoomHeaders();
+        int[] counts = getZoomCounts();
+        for(int i = 0; i < zooms.length; i++) { 
+            printObject("ZoomHeader " + i, zooms[i]);
+            System.out.println(String.format("Zoom Count: %d", counts[i]));
+        }
         
-        for(RTreeLeaf leaf : leaves) {
-        	System.out.println();
-        	System.out.println(leaf.toString());
-        	
-        	DataBlock block = new DataBlock(leaf);
-        	try {
-				byte[] uncompressed = block.inflate();
-				DataInput input = new DataInputStream(new ByteArrayInputStream(uncompressed));
-
-				for(int i = 0; i < zoomIndexHeader.itemsPerSlot; i++) { 
-					ZoomData zoomData = new ZoomData(input, true);
-					printObject("zoomData", zoomData);
-				}
-				
-			} catch (DataFormatException e) {
-				e.printStackTrace();
-			}
-        	
-        	/*
-        	try {
-				byte[] bytes = block.inflate();
-				BinaryWIGSectionHeader wig = new BinaryWIGSectionHeader(bytes, true);
-				printObject("WIG", wig);
-				
-			} catch (DataFormatException e) {
-				e.printStackTrace();
-			}
-			*/
+        if(getTotalSummary() != null) { 
+            printObject("Total Summary", getTotalSummary());
         }
+        System.out.println(String.format("dataCount: %d", getDataCount()));
+        System.out.println(String.format("file length: %d", file.length()));
         
+        printObject("RTree Index Header", getIndexHeader());
+        printObject("BTree Header", getBTreeHeader());
+        System.out.println(getChromIds().toString());
+    }
+    
+    public static SeekableInput openInput(File f, BigwigOptions options) throws IOException { 
+        if(options.memoryMapped) { 
+            return new MappedFileInput(f.getAbsoluteFile());
+        } else { 
+            return new PagedFileInput(f.getAbsoluteFile());
+        }
+    }
+    
+    public static SeekableInput openInput(URL url, BigwigOptions options) throws IOException { 
+        return new HttpRangeInput(url, options.remoteBlockSize, options.remoteCacheBlocks);
+    }
+    
+    /*
+     * Positional reads: these never touch the shared file pointer, so every query path 
+     * built on them (R-tree and B+ tree traversal, data block reads) is safe to run from 
+     * many threads against one open Bigwig.
+     */
+    public ByteBuffer readBuffer(long position, int length, boolean flip) throws IOException { 
+        ByteBuffer buffer = file.readBuffer(position, length);
+        buffer.order(flip ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        return buffer;
     }
     
     public int convertInt(byte[] bs, int offset) { 
@@ -883,6 +1809,8 @@ public class Bigwig {
 
     public void close() throws IOException { 
         if(file != null) { file.close(); }
+        // a pool from options belongs to whoever supplied it.
+        if(ownPool) { pool.shutdown(); }
     }
     
     public static void printObject(String key, Object obj) { 
@@ -891,22 +1819,13 @@ public class Bigwig {
     }
    
     public byte[] inflate(long offset, int len) throws DataFormatException, IOException { 
-    	file.seek(offset);
     	byte[] input = new byte[len];
-    	file.read(input);
+    	file.readBuffer(offset, len).get(input);
     	return inflate(input);
     }
     
     public static byte[] inflate(byte[] input) throws DataFormatException { 
-    	Inflater inflater = new Inflater();
-    	inflater.setInput(input);
-    	ByteArrayOutputStream outs = new ByteArrayOutputStream();
-    	byte[] buffer = new byte[Math.max(1024, input.length)];
-    	while(!inflater.finished()) { 
-    		int inflated = inflater.inflate(buffer);
-    		outs.write(buffer, 0, inflated);
-    	}
-    	return outs.toByteArray();
+    	return Inflaters.inflate(ByteBuffer.wrap(input), Math.max(1024, input.length * 4));
     }
     
     public static void printObject(Object obj) { 
@@ -1003,7 +1922,7 @@ public class Bigwig {
     
     public byte[] readLittleBytes(int size) throws IOException { 
     	byte[] array = new byte[size];
-    	file.read(array);
+    	file.readFully(array);
     	return array;
     }
 }
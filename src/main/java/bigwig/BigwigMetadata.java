@@ -0,0 +1,39 @@
+package bigwig;
+
+import java.util.Map;
+
+/**
+ * The parsed header, zoom headers, index headers and chromosomes of one file, as 
+ * taken from an open Bigwig by getMetadata().  Handed to a later open of the same 
+ * file, they save it from reading and parsing them again.
+ * 
+ * Nothing here is modified after it's taken, so one BigwigMetadata can be shared by 
+ * any number of open Bigwigs.  It describes the file as it was, so it mustn't be used 
+ * once the file has changed; BigwigRepository keys it on the file's modification 
+ * time and size for that reason.
+ */
+public class BigwigMetadata { 
+	
+	public Bigwig.Header header;
+	public Bigwig.ZoomHeader[] zoomHeaders;
+	public Bigwig.RTreeIndexHeader[] zoomIndexHeaders;
+	public Bigwig.TotalSummaryBlock totalSummary;
+	public int dataCount;
+	public Bigwig.RTreeIndexHeader indexHeader;
+	public Bigwig.ChromosomeBTreeHeader bTreeHeader;
+	
+	/*
+	 * Null when the file was opened with options.lazyChromosomes, or without 
+	 * options.flatIndex, respectively.
+	 */
+	public ChromosomeDictionary chromosomes;
+	public Map<String,Integer> chromIds;
+	public FlatRTreeIndex flatIndex;
+	
+	public BigwigMetadata() {}
+	
+	public String toString() { 
+		return String.format("BigwigMetadata(%d zoom levels, %d items)", 
+				zoomHeaders != null ? zoomHeaders.length : 0, dataCount);
+	}
+}
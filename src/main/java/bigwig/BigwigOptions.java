@@ -0,0 +1,95 @@
+package bigwig;
+
+import java.util.concurrent.ForkJoinPool;
+
+import bigwig.io.HttpRangeInput;
+
+/**
+ * Settings controlling how a Bigwig reader opens and accesses its file.
+ */
+public class BigwigOptions {
+	
+	/*
+	 * Map the whole file into memory (in <=1GB segments) instead of reading 
+	 * through a page-buffered PagedFileInput.
+	 */
+	public boolean memoryMapped = false;
+	
+	/*
+	 * Read only the 64-byte header when opening; zoom headers, the total summary, 
+	 * the chromosome tree and the R-tree root are loaded on first use.
+	 */
+	public boolean lazy = false;
+	
+	/*
+	 * Look chromosomes up in the file's B+ tree as they're asked for, rather than 
+	 * reading every name when the file is opened; see ChromosomeDictionary.  Worth it 
+	 * for assemblies with very many contigs when only a few are queried.
+	 */
+	public boolean lazyChromosomes = false;
+	
+	/*
+	 * Decompressed blocks are looked up in (and added to) this cache when set.  One 
+	 * cache can be shared by any number of open files.
+	 */
+	public BlockCache blockCache = null;
+	
+	/*
+	 * Load the R-tree's leaves into an in-memory FlatRTreeIndex and answer block 
+	 * lookups from it, rather than walking the on-disk tree for each query.
+	 */
+	public boolean flatIndex = false;
+	
+	/*
+	 * Data blocks that sit within coalesceGap bytes of each other are fetched with one 
+	 * read of up to maxReadSize bytes, the gap being read and discarded.  Raise the gap 
+	 * where per-read latency is high (NFS, Lustre); see Bigwig.getReadStats().
+	 */
+	public int coalesceGap = 0;
+	public int maxReadSize = 8 << 20;
+	
+	/*
+	 * Threads used by Bigwig.extract() to read and inflate a wide region's blocks; 1 
+	 * decodes them on the calling thread.
+	 */
+	public int parallelism = 1;
+	
+	/*
+	 * A pool for extract() to use instead of one of its own, so that many open files 
+	 * can share one set of threads (BigwigRepository's readers do).  parallelism is then 
+	 * ignored, and closing the file leaves the pool running.
+	 */
+	public ForkJoinPool pool = null;
+	
+	/*
+	 * For files opened by URL: Range requests fetch whole blocks of remoteBlockSize 
+	 * bytes, and the last remoteCacheBlocks of them are kept.  Bigger blocks mean fewer 
+	 * round trips for the index and neighbouring data, at the cost of reading more.
+	 */
+	public int remoteBlockSize = HttpRangeInput.DEFAULT_BLOCK_SIZE;
+	public int remoteCacheBlocks = HttpRangeInput.DEFAULT_MAX_BLOCKS;
+	
+	public BigwigOptions() {}
+	
+	public BigwigOptions copy() { 
+		BigwigOptions options = new BigwigOptions();
+		options.memoryMapped = memoryMapped;
+		options.lazy = lazy;
+		options.lazyChromosomes = lazyChromosomes;
+		options.blockCache = blockCache;
+		options.flatIndex = flatIndex;
+		options.coalesceGap = coalesceGap;
+		options.maxReadSize = maxReadSize;
+		options.parallelism = parallelism;
+		options.pool = pool;
+		options.remoteBlockSize = remoteBlockSize;
+		options.remoteCacheBlocks = remoteCacheBlocks;
+		return options;
+	}
+	
+	public static BigwigOptions mapped() { 
+		BigwigOptions options = new BigwigOptions();
+		options.memoryMapped = true;
+		return options;
+	}
+}
@@ -0,0 +1,373 @@
+package bigwig;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open Bigwigs for a large set of files, shared by every thread of a server, with
+ * bounded file handles and memory.
+ *
+ * acquire() hands out a reference-counted Handle on an open reader.  Readers are
+ * pooled by file, and the pool holds at most maxOpen of them.  When it's full, the
+ * least recently used idle reader is closed.  A reader is never closed while a
+ * Handle on it is still open.  If every reader is in use, the pool grows past
+ * maxOpen until some are released.
+ *
+ * Readers are keyed on the file's canonical path, modification time and size, so a
+ * rewritten file gets a new reader.  The stale one is retired and closed once it's
+ * released.  Each file's parsed metadata (see BigwigMetadata) is kept in its own LRU
+ * of up to maxMetadata files, so reopening a file whose reader was closed reads
+ * nothing before its first query.  All the readers share one LruBlockCache of
+ * decompressed blocks with a single memory budget, and (with parallelism > 1) one
+ * ForkJoinPool for extract().
+ *
+ *   BigwigRepository.Handle handle = repository.acquire(file);
+ *   try {
+ *       Intervals items = handle.bigwig().extract(chrom, start, end);
+ *   } finally {
+ *       handle.close();
+ *   }
+ */
+public class BigwigRepository implements Closeable { 
+
+	/*
+	 * A version of a file: its canonical path, modification time and size.
+	 */
+	public static class Key { 
+
+		public final String path;
+		public final long modified, length;
+
+		public Key(String path, long modified, long length) { 
+			this.path = path;
+			this.modified = modified;
+			this.length = length;
+		}
+
+		public static Key of(File f) throws IOException { 
+			File canonical = f.getCanonicalFile();
+			if(!canonical.isFile()) { 
+				throw new FileNotFoundException(canonical.getPath());
+			}
+			return new Key(canonical.getPath(), canonical.lastModified(), canonical.length());
+		}
+
+		public int hashCode() { 
+			int code = 17;
+			code += path.hashCode(); code *= 37;
+			code += (int)(modified ^ (modified >>> 32)); code *= 37;
+			code += (int)(length ^ (length >>> 32)); code *= 37;
+			return code;
+		}
+
+		public boolean equals(Object o) { 
+			if(!(o instanceof Key)) { return false; }
+			Key k = (Key)o;
+			return modified == k.modified && length == k.length && path.equals(k.path);
+		}
+
+		public String toString() { 
+			return String.format("%s@%d:%d", path, modified, length);
+		}
+	}
+
+	/*
+	 * A reference to a pooled reader; close it when done.
+	 */
+	public class Handle implements Closeable { 
+
+		private Key key;
+		private Bigwig bigwig;
+		private int refs;
+		private boolean retired;
+
+		private Handle(Key key, Bigwig bigwig) { 
+			this.key = key;
+			this.bigwig = bigwig;
+			refs = 0;
+			retired = false;
+		}
+
+		public Key key() { 
+			return key;
+		}
+
+		public Bigwig bigwig() { 
+			return bigwig;
+		}
+
+		/*
+		 * Gives this reference back.  Every acquire() must be matched by one close(), on
+		 * whichever Handle it returned.
+		 */
+		public void close() throws IOException { 
+			release(this);
+		}
+
+		public String toString() { 
+			return String.format("Handle(%s, refs=%d)", key, refs);
+		}
+	}
+
+	private int maxOpen;
+	private BigwigOptions options;
+	private LruBlockCache blockCache;
+	private ForkJoinPool pool;
+	private boolean closed;
+
+	private LinkedHashMap<Key,Handle> handles;
+	private LinkedHashMap<Key,BigwigMetadata> metadata;
+
+	private AtomicLong hits, misses, opens, closes, metadataHits;
+
+	public BigwigRepository(int maxOpen, long blockCacheBytes) { 
+		this(maxOpen, maxOpen * 8, blockCacheBytes, new BigwigOptions());
+	}
+
+	/*
+	 * Readers are opened with a copy of options whose blockCache is the shared cache.
+	 * With options.parallelism > 1 they share one pool of that many threads too (or
+	 * options.pool, if set, which closing the repository leaves running).
+	 */
+	public BigwigRepository(int maxOpen, final int maxMetadata, long blockCacheBytes, BigwigOptions options) { 
+		if(maxOpen < 1 || maxMetadata < 0) { 
+			throw new IllegalArgumentException(String.format("maxOpen %d, maxMetadata %d", maxOpen, maxMetadata));
+		}
+		this.maxOpen = maxOpen;
+		blockCache = new LruBlockCache(blockCacheBytes);
+		this.options = options.copy();
+		this.options.blockCache = blockCache;
+		pool = options.pool == null && options.parallelism > 1 ? new ForkJoinPool(options.parallelism) : null;
+		if(pool != null) { 
+			this.options.pool = pool;
+		}
+		closed = false;
+
+		handles = new LinkedHashMap<Key,Handle>(16, 0.75f, true);
+		metadata = new LinkedHashMap<Key,BigwigMetadata>(16, 0.75f, true) { 
+			protected boolean removeEldestEntry(Map.Entry<Key,BigwigMetadata> eldest) { 
+				return size() > maxMetadata;
+			}
+		};
+
+		hits = new AtomicLong(0L);
+		misses = new AtomicLong(0L);
+		opens = new AtomicLong(0L);
+		closes = new AtomicLong(0L);
+		metadataHits = new AtomicLong(0L);
+	}
+
+	/*
+	 * A Handle on an open reader for f as it is now, opening one if there isn't one
+	 * already.  The file is opened outside the pool's lock, so a slow open doesn't hold
+	 * up other files.
+	 */
+	public Handle acquire(File f) throws IOException { 
+		Key key = Key.of(f);
+		BigwigMetadata known;
+		synchronized(this) { 
+			checkOpen();
+			Handle handle = handles.get(key);
+			if(handle != null) { 
+				handle.refs += 1;
+				hits.incrementAndGet();
+				return handle;
+			}
+			misses.incrementAndGet();
+			known = metadata.get(key);
+		}
+
+		if(known != null) { 
+			metadataHits.incrementAndGet();
+		}
+		Bigwig bigwig = new Bigwig(Bigwig.openInput(new File(key.path), options), options, key.toString(), known);
+		opens.incrementAndGet();
+		if(known == null) { 
+			try { 
+				known = bigwig.getMetadata();
+			} catch(IOException e) { 
+				closeQuietly(bigwig);
+				throw e;
+			}
+		}
+
+		List<Handle> unused = new ArrayList<Handle>();
+		Handle handle;
+		synchronized(this) { 
+			if(closed) { 
+				closeQuietly(bigwig);
+				checkOpen();
+			}
+			metadata.put(key, known);
+			handle = handles.get(key);
+			if(handle != null) { 
+				// another thread opened the same file meanwhile.
+				unused.add(new Handle(key, bigwig));
+			} else { 
+				handle = new Handle(key, bigwig);
+				handles.put(key, handle);
+				retireOtherVersions(key, unused);
+			}
+			handle.refs += 1;
+			evict(unused);
+		}
+		closeAll(unused);
+		return handle;
+	}
+
+	private void checkOpen() { 
+		if(closed) { throw new IllegalStateException("BigwigRepository is closed"); }
+	}
+
+	private void release(Handle handle) throws IOException { 
+		List<Handle> unused = new ArrayList<Handle>();
+		synchronized(this) { 
+			if(handle.refs <= 0) { 
+				throw new IllegalStateException(String.format("%s released too often", handle));
+			}
+			handle.refs -= 1;
+			if(handle.refs == 0 && handle.retired) { 
+				unused.add(handle);
+			} else { 
+				evict(unused);
+			}
+		}
+		closeAll(unused);
+	}
+
+	/*
+	 * Takes the readers of key's file's earlier versions out of the pool.
+	 */
+	private void retireOtherVersions(Key key, List<Handle> unused) { 
+		Iterator<Map.Entry<Key,Handle>> itr = handles.entrySet().iterator();
+		while(itr.hasNext()) { 
+			Handle handle = itr.next().getValue();
+			if(handle.key.path.equals(key.path) && !handle.key.equals(key)) { 
+				itr.remove();
+				metadata.remove(handle.key);
+				retire(handle, unused);
+			}
+		}
+	}
+
+	/*
+	 * Closes idle readers, least recently used first, until at most maxOpen are open.
+	 */
+	private void evict(List<Handle> unused) { 
+		Iterator<Map.Entry<Key,Handle>> itr = handles.entrySet().iterator();
+		while(handles.size() > maxOpen && itr.hasNext()) { 
+			Handle handle = itr.next().getValue();
+			if(handle.refs == 0) { 
+				itr.remove();
+				retire(handle, unused);
+			}
+		}
+	}
+
+	private void retire(Handle handle, List<Handle> unused) { 
+		handle.retired = true;
+		if(handle.refs == 0) { 
+			unused.add(handle);
+		}
+	}
+
+	private void closeAll(List<Handle> unused) throws IOException { 
+		IOException error = null;
+		for(Handle handle : unused) { 
+			try { 
+				handle.bigwig.close();
+			} catch(IOException e) { 
+				error = e;
+			}
+			closes.incrementAndGet();
+		}
+		if(error != null) { throw error; }
+	}
+
+	private static void closeQuietly(Bigwig bigwig) { 
+		try { 
+			bigwig.close();
+		} catch(IOException e) { 
+			// the open has already failed; that's the error that matters.
+		}
+	}
+
+	/*
+	 * Forgets f's metadata and retires its reader, so the next acquire() opens it
+	 * afresh.  Its cached blocks stay, since they're keyed on the file's version.
+	 */
+	public void invalidate(File f) throws IOException { 
+		String path = f.getCanonicalPath();
+		List<Handle> unused = new ArrayList<Handle>();
+		synchronized(this) { 
+			Iterator<Map.Entry<Key,Handle>> itr = handles.entrySet().iterator();
+			while(itr.hasNext()) { 
+				Handle handle = itr.next().getValue();
+				if(handle.key.path.equals(path)) { 
+					itr.remove();
+					retire(handle, unused);
+				}
+			}
+			Iterator<Key> keys = metadata.keySet().iterator();
+			while(keys.hasNext()) { 
+				if(keys.next().path.equals(path)) { keys.remove(); }
+			}
+		}
+		closeAll(unused);
+	}
+
+	/*
+	 * Closes every reader, including any still in use.
+	 */
+	public void close() throws IOException { 
+		List<Handle> unused = new ArrayList<Handle>();
+		synchronized(this) { 
+			closed = true;
+			unused.addAll(handles.values());
+			handles.clear();
+			metadata.clear();
+		}
+		closeAll(unused);
+		blockCache.clear();
+		if(pool != null) { 
+			pool.shutdown();
+		}
+	}
+
+	public LruBlockCache getBlockCache() { 
+		return blockCache;
+	}
+
+	public synchronized int openReaders() { return handles.size(); }
+	public synchronized int metadataCount() { return metadata.size(); }
+
+	/*
+	 * acquire() calls answered from the pool, and those that had to open the file (of
+	 * which metadataHits found its metadata cached); readers opened and closed.
+	 */
+	public long hitCount() { return hits.get(); }
+	public long missCount() { return misses.get(); }
+	public long metadataHitCount() { return metadataHits.get(); }
+	public long opensTotal() { return opens.get(); }
+	public long closesTotal() { return closes.get(); }
+
+	public double hitRate() { 
+		long h = hits.get(), total = h + misses.get();
+		return total == 0L ? 0.0 : (double)h / (double)total;
+	}
+
+	public void resetCounters() { 
+		hits.set(0L);
+		misses.set(0L);
+		metadataHits.set(0L);
+		opens.set(0L);
+		closes.set(0L);
+	}
+
+	public String toString() { 
+		return String.format("BigwigRepository(%d/%d open, hits=%d misses=%d metadataHits=%d opened=%d closed=%d, %s)",
+				openReaders(), maxOpen, hitCount(), missCount(), metadataHitCount(), opensTotal(), closesTotal(), blockCache);
+	}
+}
@@ -0,0 +1,616 @@
+package bigwig;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.zip.Deflater;
+
+import bigwig.io.ParallelBlockCompressor;
+
+/**
+ * Writes a bigWig file in one pass over sorted (chrom, start, end, value) items.
+ *
+ *   BigwigWriter writer = new BigwigWriter(file, chromSizes);
+ *   writer.add("chr1", 0, 100, 1.5f);
+ *   ...
+ *   writer.close();
+ *
+ * Chromosome ids are assigned in name order, as the UCSC tools do, and the items must
+ * come in that order: by chromosome name, then by start, without overlaps.
+ *
+ * Up to itemsPerSlot items of one chromosome go into each section, written as
+ * fixedStep, varStep or bedGraph (whichever is the most compact for the items) and
+ * compressed into its own block.  Zoom records are accumulated for every level while
+ * the items stream past and spilled to temporary files, which are compressed and
+ * indexed when the file is closed; only the block index entries are kept in memory.
+ * The settings below have to be changed before the first add().
+ */
+public class BigwigWriter implements Closeable { 
+
+	public static final int ZOOM_INCREMENT = 4;
+
+	/*
+	 * Without explicit zoomReductions, the first reduction is ten times the average
+	 * span of the first ZOOM_SAMPLE_SIZE items (which are held until it is chosen).
+	 */
+	public static final int ZOOM_SAMPLE_SIZE = 10000;
+
+	/*
+	 * R-tree (and chromosome B+ tree) fan-out, and items per section; at most 65535.
+	 */
+	public int blockSize = 256;
+	public int itemsPerSlot = 1024;
+
+	/*
+	 * The maximum number of zoom levels, each ZOOM_INCREMENT times coarser than the
+	 * last; levels that don't at least halve the number of records are left out.
+	 * zoomReductions, when set, gives the levels explicitly instead.
+	 */
+	public int zoomLevels = 10;
+	public int[] zoomReductions = null;
+
+	public int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+	/*
+	 * Threads compressing blocks while the caller goes on adding items; 1 compresses
+	 * each block on the caller's thread as it is finished.
+	 */
+	public int compressionThreads = 1;
+
+	private File file;
+	private OutputStream out;
+	private long position;
+
+	private String[] chromNames;
+	private int[] chromSizes;
+	private Map<String,Integer> chromIds;
+
+	private boolean started, closed;
+	private long chromTreeOffset, dataOffset, indexOffset, totalSummaryOffset;
+	private int maxZoomLevels;
+	private int uncompressBufSize;
+	private long sectionCount;
+
+	private int lastChrom, lastEnd;
+	private long itemCount, basesCovered;
+	private double minVal, maxVal, sumData, sumSquares;
+
+	/*
+	 * The current section's items.
+	 */
+	private int sectionChrom, sectionItems;
+	private int[] starts, ends;
+	private float[] values;
+
+	private FlatRTreeIndex blocks;
+	private ParallelBlockCompressor compressor;
+
+	private ZoomLevel[] levels;
+	private Intervals sample;
+
+	public BigwigWriter(File f, Map<String,Integer> chromSizes) throws IOException { 
+		file = f;
+		List<String> names = new ArrayList<String>(chromSizes.keySet());
+		Collections.sort(names, new Comparator<String>() { 
+			public int compare(String a, String b) { 
+				return compareKeys(a.getBytes(Bigwig.UTF8), b.getBytes(Bigwig.UTF8));
+			}
+		});
+		chromNames = names.toArray(new String[names.size()]);
+		this.chromSizes = new int[chromNames.length];
+		chromIds = new HashMap<String,Integer>();
+		for(int i = 0; i < chromNames.length; i++) { 
+			this.chromSizes[i] = chromSizes.get(chromNames[i]);
+			chromIds.put(chromNames[i], i);
+		}
+
+		out = new BufferedOutputStream(new FileOutputStream(f), 1 << 16);
+		position = 0L;
+		started = closed = false;
+		lastChrom = -1;
+		lastEnd = 0;
+		minVal = Double.POSITIVE_INFINITY;
+		maxVal = Double.NEGATIVE_INFINITY;
+	}
+
+	private static int compareKeys(byte[] a, byte[] b) { 
+		for(int i = 0; i < a.length && i < b.length; i++) { 
+			int c = (a[i] & 0xff) - (b[i] & 0xff);
+			if(c != 0) { return c; }
+		}
+		return a.length - b.length;
+	}
+
+	/*
+	 * Chromosome ids, as they'll be in the file.
+	 */
+	public Map<String,Integer> getChromIds() { 
+		return Collections.unmodifiableMap(chromIds);
+	}
+
+	private static ByteBuffer little(int size) { 
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private void write(byte[] b, int off, int len) throws IOException { 
+		out.write(b, off, len);
+		position += len;
+	}
+
+	private void write(ByteBuffer buffer) throws IOException { 
+		write(buffer.array(), 0, buffer.position());
+	}
+
+	/*
+	 * Writes everything before the data: space for the header, zoom headers and total
+	 * summary (filled in by close()), the chromosome tree and the section count.
+	 */
+	private void start() throws IOException { 
+		// both are written as 16-bit counts (R-tree and zoom nodes, sections).
+		if(blockSize < 2 || itemsPerSlot < 1 || blockSize > 0xffff || itemsPerSlot > 0xffff) { 
+			throw new IllegalArgumentException(String.format("blockSize %d, itemsPerSlot %d", blockSize, itemsPerSlot));
+		}
+		started = true;
+		maxZoomLevels = zoomReductions != null ? zoomReductions.length : zoomLevels;
+		totalSummaryOffset = Bigwig.Header.SIZE + maxZoomLevels * Bigwig.ZoomHeader.SIZE;
+		write(new byte[(int)totalSummaryOffset + Bigwig.TotalSummaryBlock.SIZE], 0, (int)totalSummaryOffset + Bigwig.TotalSummaryBlock.SIZE);
+
+		chromTreeOffset = position;
+		writeChromTree();
+
+		dataOffset = position;
+		write(new byte[8], 0, 8);
+
+		starts = new int[itemsPerSlot];
+		ends = new int[itemsPerSlot];
+		values = new float[itemsPerSlot];
+		sectionItems = 0;
+		blocks = new FlatRTreeIndex(1024);
+		compressor = new ParallelBlockCompressor(compressionThreads, compressionLevel);
+
+		if(zoomReductions != null) { 
+			startZoomLevels(zoomReductions);
+		} else { 
+			sample = new Intervals(1024);
+		}
+	}
+
+	public void add(String chrom, int start, int end, float value) throws IOException { 
+		if(!started) { start(); }
+		if(closed) { throw new IOException("Writer is closed"); }
+
+		Integer id = chromIds.get(chrom);
+		if(id == null) { 
+			throw new IllegalArgumentException(String.format("Unknown chromosome %s", chrom));
+		}
+		int chromId = id;
+		if(start < 0 || end <= start || end > chromSizes[chromId]) { 
+			throw new IllegalArgumentException(String.format("Bad interval %s:%d-%d", chrom, start, end));
+		}
+		if(chromId < lastChrom || (chromId == lastChrom && start < lastEnd)) { 
+			throw new IllegalArgumentException(String.format(
+					"%s:%d-%d is out of order: items must be sorted by chromosome name and start, and not overlap", chrom, start, end));
+		}
+		lastChrom = chromId;
+		lastEnd = end;
+
+		if(sectionItems > 0 && (chromId != sectionChrom || sectionItems == itemsPerSlot)) { 
+			writeSection();
+		}
+		sectionChrom = chromId;
+		starts[sectionItems] = start;
+		ends[sectionItems] = end;
+		values[sectionItems] = value;
+		sectionItems += 1;
+
+		long span = end - start;
+		itemCount += 1;
+		basesCovered += span;
+		minVal = Math.min(minVal, value);
+		maxVal = Math.max(maxVal, value);
+		sumData += (double)value * span;
+		sumSquares += (double)value * value * span;
+
+		if(levels != null) { 
+			addToZoomLevels(chromId, start, end, value);
+		} else { 
+			sample.add(chromId, start, end, value);
+			if(sample.size >= ZOOM_SAMPLE_SIZE) { 
+				chooseZoomLevels();
+			}
+		}
+	}
+
+	/*
+	 * fixedStep if the items share a span and are evenly spaced, varStep if they only
+	 * share a span, bedGraph otherwise.
+	 */
+	private void writeSection() throws IOException { 
+		int n = sectionItems;
+		int span = ends[0] - starts[0];
+		int step = n > 1 ? starts[1] - starts[0] : span;
+		boolean sameSpan = true, sameStep = step > 0;
+		int end = ends[0];
+		for(int i = 1; i < n; i++) { 
+			sameSpan = sameSpan && ends[i] - starts[i] == span;
+			sameStep = sameStep && starts[i] - starts[i-1] == step;
+			end = Math.max(end, ends[i]);
+		}
+
+		byte type = !sameSpan ? Bigwig.WIGTYPE_BEDGRAPH : sameStep ? Bigwig.WIGTYPE_FIXEDSTEP : Bigwig.WIGTYPE_VARSTEP;
+		int itemSize = type == Bigwig.WIGTYPE_BEDGRAPH ? 12 : type == Bigwig.WIGTYPE_VARSTEP ? 8 : 4;
+
+		ByteBuffer section = little(WigSection.HEADER_SIZE + n * itemSize);
+		section.putInt(sectionChrom).putInt(starts[0]).putInt(end);
+		section.putInt(type == Bigwig.WIGTYPE_FIXEDSTEP ? step : 0).putInt(sameSpan ? span : 0);
+		section.put(type).put((byte)0).putShort((short)n);
+		for(int i = 0; i < n; i++) { 
+			if(type < Bigwig.WIGTYPE_FIXEDSTEP) { section.putInt(starts[i]); }
+			if(type < Bigwig.WIGTYPE_VARSTEP) { section.putInt(ends[i]); }
+			section.putFloat(values[i]);
+		}
+
+		blocks.add(sectionChrom, starts[0], sectionChrom, end, 0L, 0L);
+		writeBlock(section.array(), section.position(), blocks);
+		sectionCount += 1;
+		sectionItems = 0;
+	}
+
+	/*
+	 * Hands bytes (which mustn't change afterwards) to the compressor; once compressed,
+	 * the block is written and the offset and size of index's last entry filled in.
+	 * Blocks may still be in flight on return, so drain the compressor before writing
+	 * anything else.
+	 */
+	private void writeBlock(byte[] bytes, int length, final FlatRTreeIndex index) throws IOException { 
+		uncompressBufSize = Math.max(uncompressBufSize, length);
+		final int entry = index.size - 1;
+		compressor.submit(bytes, length, new ParallelBlockCompressor.Listener() { 
+			public void compressed(byte[] block) throws IOException { 
+				index.dataOffset[entry] = position;
+				index.dataSize[entry] = block.length;
+				write(block, 0, block.length);
+			}
+		});
+	}
+
+	/*
+	 * One zoom level's bin in progress, and the temporary file its finished records
+	 * are spilled to.
+	 */
+	private class ZoomLevel { 
+
+		public int reduction;
+		public File spill;
+		public DataOutputStream records;
+		public long count;
+
+		private int chromId, binStart, start, end;
+		private long validCount;
+		private float min, max;
+		private double sum, squares;
+		private ByteBuffer record;
+
+		public ZoomLevel(int reduction) throws IOException { 
+			this.reduction = reduction;
+			spill = File.createTempFile("zoom", ".tmp", file.getAbsoluteFile().getParentFile());
+			spill.deleteOnExit();
+			records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spill), 1 << 16));
+			count = 0L;
+			chromId = -1;
+			record = little(Bigwig.ZoomCursor.RECORD_SIZE);
+		}
+
+		public void add(int chrom, int s, int e, float value) throws IOException { 
+			while(s < e) { 
+				int bin = (int)((long)s / reduction * reduction);
+				if(chromId != chrom || bin != binStart) { 
+					flush();
+					chromId = chrom;
+					binStart = bin;
+					start = s;
+					validCount = 0L;
+					min = max = value;
+					sum = squares = 0.0;
+				}
+				int overlapEnd = (int)Math.min((long)e, (long)bin + reduction);
+				long n = overlapEnd - s;
+				validCount += n;
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+				sum += (double)value * n;
+				squares += (double)value * value * n;
+				end = overlapEnd;
+				s = overlapEnd;
+			}
+		}
+
+		public void flush() throws IOException { 
+			if(chromId == -1) { return; }
+			record.clear();
+			record.putInt(chromId).putInt(start).putInt(end).putInt((int)validCount);
+			record.putFloat(min).putFloat(max).putFloat((float)sum).putFloat((float)squares);
+			records.write(record.array());
+			count += 1;
+			chromId = -1;
+		}
+	}
+
+	private void startZoomLevels(int[] reductions) throws IOException { 
+		levels = new ZoomLevel[reductions.length];
+		for(int i = 0; i < reductions.length; i++) { 
+			levels[i] = new ZoomLevel(reductions[i]);
+		}
+	}
+
+	private void addToZoomLevels(int chromId, int start, int end, float value) throws IOException { 
+		for(ZoomLevel level : levels) { 
+			level.add(chromId, start, end, value);
+		}
+	}
+
+	/*
+	 * Picks the reductions from the sampled items, then replays them into the levels.
+	 */
+	private void chooseZoomLevels() throws IOException { 
+		long bases = 0L;
+		for(int i = 0; i < sample.size; i++) { 
+			bases += sample.ends[i] - sample.starts[i];
+		}
+		long maxChromSize = 0L;
+		for(int size : chromSizes) { 
+			maxChromSize = Math.max(maxChromSize, size);
+		}
+
+		List<Integer> reductions = new ArrayList<Integer>();
+		long reduction = Math.max(10L, 10L * (sample.size > 0 ? bases / sample.size : 1L));
+		while(reductions.size() < zoomLevels && reduction < maxChromSize && reduction <= Integer.MAX_VALUE) { 
+			reductions.add((int)reduction);
+			reduction *= ZOOM_INCREMENT;
+		}
+		int[] array = new int[reductions.size()];
+		for(int i = 0; i < array.length; i++) { 
+			array[i] = reductions.get(i);
+		}
+		startZoomLevels(array);
+
+		for(int i = 0; i < sample.size; i++) { 
+			addToZoomLevels(sample.chromIds[i], sample.starts[i], sample.ends[i], sample.values[i]);
+		}
+		sample = null;
+	}
+
+	public void close() throws IOException { 
+		if(closed) { return; }
+		if(!started) { start(); }
+		if(levels == null) { chooseZoomLevels(); }
+		if(sectionItems > 0) { writeSection(); }
+		closed = true;
+		compressor.drain();
+
+		indexOffset = position;
+		writeRTree(blocks, itemsPerSlot);
+
+		List<long[]> zooms = new ArrayList<long[]>();
+		long previousCount = itemCount;
+		for(ZoomLevel level : levels) { 
+			level.flush();
+			level.records.close();
+			boolean keep = level.count > 0 && (zoomReductions != null || level.count * 2 <= previousCount);
+			if(keep) { 
+				zooms.add(writeZoomLevel(level));
+				previousCount = level.count;
+			}
+			level.spill.delete();
+		}
+
+		compressor.close();
+		out.close();
+		writeHeaders(zooms);
+	}
+
+	/*
+	 * Compresses a level's spilled records, itemsPerSlot to a block, and indexes them.
+	 * Returns { reduction, dataOffset, indexOffset }.
+	 */
+	private long[] writeZoomLevel(ZoomLevel level) throws IOException { 
+		long zoomDataOffset = position;
+		write(little(4).putInt((int)level.count));
+
+		FlatRTreeIndex zoomBlocks = new FlatRTreeIndex(1024);
+		DataInputStream records = new DataInputStream(new BufferedInputStream(new FileInputStream(level.spill), 1 << 16));
+		try { 
+			byte[] block = new byte[itemsPerSlot * Bigwig.ZoomCursor.RECORD_SIZE];
+			ByteBuffer view = ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN);
+			for(long first = 0L; first < level.count; first += itemsPerSlot) { 
+				int n = (int)Math.min((long)itemsPerSlot, level.count - first);
+				int length = n * Bigwig.ZoomCursor.RECORD_SIZE;
+				records.readFully(block, 0, length);
+
+				int lastRecord = length - Bigwig.ZoomCursor.RECORD_SIZE;
+				zoomBlocks.add(view.getInt(0), view.getInt(4), view.getInt(lastRecord), view.getInt(lastRecord + 8), 0L, 0L);
+				writeBlock(Arrays.copyOf(block, length), length, zoomBlocks);
+			}
+			compressor.drain();
+		} finally { 
+			records.close();
+		}
+
+		long zoomIndexOffset = position;
+		writeRTree(zoomBlocks, itemsPerSlot);
+		return new long[] { level.reduction, zoomDataOffset, zoomIndexOffset };
+	}
+
+	/*
+	 * The chromosome B+ tree, all keys padded to the longest name.  Nodes hold up to
+	 * blockSize items and are written root first.
+	 */
+	private void writeChromTree() throws IOException { 
+		int count = chromNames.length;
+		int keySize = 1;
+		byte[][] keys = new byte[count][];
+		for(int i = 0; i < count; i++) { 
+			keys[i] = chromNames[i].getBytes(Bigwig.UTF8);
+			keySize = Math.max(keySize, keys[i].length);
+		}
+		int fanout = Math.max(2, Math.min(blockSize, count));
+
+		ByteBuffer header = little(Bigwig.ChromosomeBTreeHeader.SIZE);
+		header.putInt(Bigwig.BTREE_MAGIC).putInt(fanout).putInt(keySize).putInt(8);
+		header.putLong(count).putLong(0L);
+		write(header);
+
+		// levels.get(l) holds the number of items at level l, leaves first.
+		List<Integer> levelItems = new ArrayList<Integer>();
+		levelItems.add(count);
+		while(levelItems.get(levelItems.size() - 1) > fanout) { 
+			levelItems.add((levelItems.get(levelItems.size() - 1) + fanout - 1) / fanout);
+		}
+
+		int itemSize = keySize + 8;
+		long offset = position;
+		long[] levelOffsets = new long[levelItems.size()];
+		for(int l = levelItems.size() - 1; l >= 0; l--) { 
+			levelOffsets[l] = offset;
+			int items = levelItems.get(l);
+			int nodes = Math.max(1, (items + fanout - 1) / fanout);
+			offset += nodes * 4L + (long)items * itemSize;
+		}
+
+		for(int l = levelItems.size() - 1; l >= 0; l--) { 
+			int items = levelItems.get(l);
+			// each item at level l covers span chromosomes, and (above the leaves) one node below.
+			int span = 1;
+			for(int k = 0; k < l; k++) { span *= fanout; }
+			int nodes = Math.max(1, (items + fanout - 1) / fanout);
+			for(int node = 0; node < nodes; node++) { 
+				int first = node * fanout, n = Math.min(fanout, items - first);
+				ByteBuffer buffer = little(4 + n * itemSize);
+				buffer.put((byte)(l == 0 ? 1 : 0)).put((byte)0).putShort((short)n);
+				for(int i = first; i < first + n; i++) { 
+					int chrom = i * span;
+					buffer.put(Arrays.copyOf(keys[chrom], keySize));
+					if(l == 0) { 
+						buffer.putInt(chrom).putInt(chromSizes[chrom]);
+					} else { 
+						int child = i;
+						int childLevelItems = levelItems.get(l - 1);
+						long childOffset = levelOffsets[l - 1];
+						for(int c = 0; c < child; c++) { 
+							childOffset += 4 + Math.min(fanout, childLevelItems - c * fanout) * itemSize;
+						}
+						buffer.putLong(childOffset);
+					}
+				}
+				write(buffer);
+			}
+		}
+	}
+
+	/*
+	 * Bottom-up R-tree over the leaves: each level groups the entries below it into
+	 * nodes of at most blockSize children, until a single root node remains.  Nodes
+	 * are written root first.
+	 */
+	private void writeRTree(FlatRTreeIndex leaves, int itemsPerSlot) throws IOException { 
+		long rtreeOffset = position;
+
+		List<FlatRTreeIndex> levels = new ArrayList<FlatRTreeIndex>();
+		levels.add(leaves);
+		while(levels.get(levels.size() - 1).size > blockSize) { 
+			FlatRTreeIndex below = levels.get(levels.size() - 1);
+			FlatRTreeIndex above = new FlatRTreeIndex((below.size + blockSize - 1) / blockSize);
+			for(int i = 0; i < below.size; i += blockSize) { 
+				int last = Math.min(i + blockSize, below.size) - 1;
+				int end = i;
+				for(int k = i + 1; k <= last; k++) { 
+					if(below.endKey(k) > below.endKey(end)) { end = k; }
+				}
+				above.add(below.startChromIx[i], below.startBase[i], below.endChromIx[end], below.endBase[end], 0L, 0L);
+			}
+			levels.add(above);
+		}
+
+		// node offsets, root level first
+		long offset = rtreeOffset + Bigwig.RTreeIndexHeader.SIZE;
+		long[][] nodeOffsets = new long[levels.size()][];
+		for(int l = levels.size() - 1; l >= 0; l--) { 
+			int entries = levels.get(l).size;
+			int nodes = Math.max(1, (entries + blockSize - 1) / blockSize);
+			nodeOffsets[l] = new long[nodes];
+			for(int k = 0; k < nodes; k++) { 
+				nodeOffsets[l][k] = offset;
+				int count = Math.min(blockSize, entries - k * blockSize);
+				offset += 4 + count * (l == 0 ? 32 : 24);
+			}
+		}
+		for(int l = 1; l < levels.size(); l++) { 
+			FlatRTreeIndex entries = levels.get(l);
+			for(int k = 0; k < entries.size; k++) { 
+				entries.dataOffset[k] = nodeOffsets[l - 1][k];
+			}
+		}
+
+		FlatRTreeIndex top = levels.get(levels.size() - 1);
+		ByteBuffer header = little(Bigwig.RTreeIndexHeader.SIZE);
+		header.putInt(Bigwig.RTREE_MAGIC).putInt(blockSize).putLong(leaves.size);
+		if(top.size > 0) { 
+			int end = 0;
+			for(int k = 1; k < top.size; k++) { 
+				if(top.endKey(k) > top.endKey(end)) { end = k; }
+			}
+			header.putInt(top.startChromIx[0]).putInt(top.startBase[0]).putInt(top.endChromIx[end]).putInt(top.endBase[end]);
+		} else { 
+			header.putInt(0).putInt(0).putInt(0).putInt(0);
+		}
+		header.putLong(rtreeOffset).putInt(itemsPerSlot).putInt(0);
+		write(header);
+
+		for(int l = levels.size() - 1; l >= 0; l--) { 
+			FlatRTreeIndex entries = levels.get(l);
+			for(int i = 0; i < Math.max(1, entries.size); i += blockSize) { 
+				int count = Math.min(blockSize, entries.size - i);
+				ByteBuffer node = little(4 + count * (l == 0 ? 32 : 24));
+				node.put((byte)(l == 0 ? 1 : 0)).put((byte)0).putShort((short)count);
+				for(int k = i; k < i + count; k++) { 
+					node.putInt(entries.startChromIx[k]).putInt(entries.startBase[k]);
+					node.putInt(entries.endChromIx[k]).putInt(entries.endBase[k]);
+					node.putLong(entries.dataOffset[k]);
+					if(l == 0) { node.putLong(entries.dataSize[k]); }
+				}
+				write(node);
+			}
+		}
+	}
+
+	/*
+	 * Fills in the header, zoom headers, total summary and section count.
+	 */
+	private void writeHeaders(List<long[]> zooms) throws IOException { 
+		ByteBuffer head = little((int)totalSummaryOffset + Bigwig.TotalSummaryBlock.SIZE);
+		head.putInt(Bigwig.BIGWIG_MAGIC).putShort((short)4).putShort((short)zooms.size());
+		head.putLong(chromTreeOffset).putLong(dataOffset).putLong(indexOffset);
+		head.putShort((short)0).putShort((short)0).putLong(0L);
+		head.putLong(totalSummaryOffset);
+		head.putInt(Math.max(uncompressBufSize, 1));
+		head.putLong(0L);
+		for(long[] zoom : zooms) { 
+			head.putInt((int)zoom[0]).putInt(0).putLong(zoom[1]).putLong(zoom[2]);
+		}
+
+		head.position((int)totalSummaryOffset);
+		head.putLong(basesCovered);
+		head.putDouble(itemCount > 0 ? minVal : 0.0).putDouble(itemCount > 0 ? maxVal : 0.0);
+		head.putDouble(sumData).putDouble(sumSquares);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try { 
+			raf.write(head.array());
+			raf.seek(dataOffset);
+			raf.write(little(8).putLong(sectionCount).array());
+		} finally { 
+			raf.close();
+		}
+	}
+}
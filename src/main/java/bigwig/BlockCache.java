@@ -0,0 +1,48 @@
+package bigwig;
+
+import java.io.IOException;
+
+/**
+ * A cache of decompressed data blocks, keyed by (file, block offset).  Implementations 
+ * must be safe to share between threads and between open files.
+ */
+public interface BlockCache {
+	
+	public interface Loader { 
+		public byte[] load() throws IOException;
+	}
+	
+	/*
+	 * Returns the cached block for key, calling loader to produce it on a miss.  The 
+	 * returned array must not be modified.
+	 */
+	public byte[] get(Key key, Loader loader) throws IOException;
+	
+	public static class Key { 
+		
+		public final String file;
+		public final long offset;
+		
+		public Key(String file, long offset) { 
+			this.file = file;
+			this.offset = offset;
+		}
+		
+		public int hashCode() { 
+			int code = 17;
+			code += file.hashCode(); code *= 37;
+			code += (int)(offset ^ (offset >>> 32)); code *= 37;
+			return code;
+		}
+		
+		public boolean equals(Object o) { 
+			if(!(o instanceof Key)) { return false; }
+			Key k = (Key)o;
+			return offset == k.offset && file.equals(k.file);
+		}
+		
+		public String toString() { 
+			return String.format("%s@%d", file, offset);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package bigwig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A file's chromosomes: names and sizes indexed by id, and id lookups by name.
+ *
+ * Loaded, the dictionary is a handful of primitive arrays.  The names' UTF-8 bytes
+ * are packed end to end, and an open-addressed hash table of ids is keyed on those
+ * bytes.  A lookup by byte key hashes and compares bytes.  A lookup by an ASCII name
+ * hashes its chars directly, so neither side is decoded or encoded.  Strings are only
+ * made when name() is called.
+ *
+ * A lazy dictionary reads nothing up front.  id() and size() then search the file's
+ * B+ tree for each new name, and the answers are remembered.  The first call that
+ * needs every chromosome (name(), count(), toMap()) loads the lot.
+ */
+public class ChromosomeDictionary { 
+
+	private BPlusTree tree;
+	private volatile boolean loaded;
+
+	/*
+	 * Name id's bytes are names[nameStarts[id] .. nameStarts[id+1]); an id missing from
+	 * the file has an empty name and size -1.
+	 */
+	private byte[] names;
+	private int[] nameStarts;
+	private int[] sizes;
+	private int count;
+
+	/*
+	 * Open addressing with linear probing: each slot holds an id, or -1.
+	 */
+	private int[] slots;
+
+	/*
+	 * Lazy lookups so far, by name: { id, size }, or { -1, -1 } if not in the file.
+	 * Threads look names up without a lock; two may search the tree for the same new
+	 * name, and the first answer stored is kept.
+	 */
+	private ConcurrentHashMap<String,int[]> found;
+
+	private ChromosomeDictionary(BPlusTree tree) { 
+		this.tree = tree;
+		loaded = false;
+		found = new ConcurrentHashMap<String,int[]>();
+	}
+
+	public static ChromosomeDictionary load(BPlusTree tree) throws IOException { 
+		ChromosomeDictionary dictionary = new ChromosomeDictionary(tree);
+		dictionary.loadAll();
+		return dictionary;
+	}
+
+	public static ChromosomeDictionary lazy(BPlusTree tree) { 
+		return new ChromosomeDictionary(tree);
+	}
+
+	public boolean isLoaded() { 
+		return loaded;
+	}
+
+	private synchronized void loadAll() throws IOException { 
+		if(loaded) { return; }
+		final int n = (int)tree.itemCount();
+		final byte[][] keys = new byte[n][];
+		final int[] ids = new int[n], chromSizes = new int[n];
+		final int[] next = new int[] { 0 };
+		tree.scan(new BPlusTree.Visitor() { 
+			public void item(byte[] key, ByteBuffer value) { 
+				int length = 0;
+				while(length < key.length && key[length] != 0) { length++; }
+				int i = next[0]++;
+				keys[i] = Arrays.copyOf(key, length);
+				ids[i] = value.getInt();
+				chromSizes[i] = value.getInt();
+			}
+		});
+
+		int maxId = -1, nameBytes = 0;
+		for(int i = 0; i < next[0]; i++) { 
+			maxId = Math.max(maxId, ids[i]);
+			nameBytes += keys[i].length;
+		}
+		count = maxId + 1;
+		byte[][] byId = new byte[count][];
+		sizes = new int[count];
+		Arrays.fill(sizes, -1);
+		for(int i = 0; i < next[0]; i++) { 
+			byId[ids[i]] = keys[i];
+			sizes[ids[i]] = chromSizes[i];
+		}
+
+		names = new byte[nameBytes];
+		nameStarts = new int[count + 1];
+		int offset = 0;
+		for(int id = 0; id < count; id++) { 
+			nameStarts[id] = offset;
+			if(byId[id] != null) { 
+				System.arraycopy(byId[id], 0, names, offset, byId[id].length);
+				offset += byId[id].length;
+			}
+		}
+		nameStarts[count] = offset;
+
+		int capacity = Integer.highestOneBit(Math.max(4, count * 2 - 1)) << 1;
+		slots = new int[capacity];
+		Arrays.fill(slots, -1);
+		for(int id = 0; id < count; id++) { 
+			if(sizes[id] < 0) { continue; }
+			int slot = hash(names, nameStarts[id], nameStarts[id + 1] - nameStarts[id]) & (capacity - 1);
+			while(slots[slot] != -1) { 
+				slot = (slot + 1) & (capacity - 1);
+			}
+			slots[slot] = id;
+		}
+		loaded = true;
+		found.clear();
+	}
+
+	/*
+	 * FNV-1a; hash(CharSequence) must agree with it for ASCII names.
+	 */
+	private static int hash(byte[] b, int off, int len) { 
+		int h = 0x811c9dc5;
+		for(int i = off; i < off + len; i++) { 
+			h = (h ^ (b[i] & 0xff)) * 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(CharSequence s) { 
+		int h = 0x811c9dc5;
+		for(int i = 0; i < s.length(); i++) { 
+			h = (h ^ s.charAt(i)) * 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean isAscii(CharSequence s) { 
+		for(int i = 0; i < s.length(); i++) { 
+			if(s.charAt(i) >= 0x80) { return false; }
+		}
+		return true;
+	}
+
+	/*
+	 * The id of the chromosome whose name is the len bytes of key from off, or -1.
+	 */
+	public int id(byte[] key, int off, int len) throws IOException { 
+		if(!loaded) { 
+			return lookup(new String(key, off, len, Bigwig.UTF8))[0];
+		}
+		for(int slot = hash(key, off, len) & (slots.length - 1); slots[slot] != -1; slot = (slot + 1) & (slots.length - 1)) { 
+			int id = slots[slot], start = nameStarts[id];
+			if(nameStarts[id + 1] - start == len && equal(names, start, key, off, len)) { 
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean equal(byte[] a, int aOff, byte[] b, int bOff, int len) { 
+		for(int i = 0; i < len; i++) { 
+			if(a[aOff + i] != b[bOff + i]) { return false; }
+		}
+		return true;
+	}
+
+	/*
+	 * The id of the named chromosome, or -1.
+	 */
+	public int id(CharSequence name) throws IOException { 
+		if(!loaded) { 
+			return lookup(name.toString())[0];
+		}
+		if(!isAscii(name)) { 
+			byte[] key = name.toString().getBytes(Bigwig.UTF8);
+			return id(key, 0, key.length);
+		}
+		int len = name.length();
+		for(int slot = hash(name) & (slots.length - 1); slots[slot] != -1; slot = (slot + 1) & (slots.length - 1)) { 
+			int id = slots[slot], start = nameStarts[id];
+			if(nameStarts[id + 1] - start == len && equal(names, start, name)) { 
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean equal(byte[] a, int off, CharSequence s) { 
+		for(int i = 0; i < s.length(); i++) { 
+			if(a[off + i] != (byte)s.charAt(i)) { return false; }
+		}
+		return true;
+	}
+
+	/*
+	 * The size of the named chromosome, or -1.
+	 */
+	public int size(CharSequence name) throws IOException { 
+		if(!loaded) { 
+			return lookup(name.toString())[1];
+		}
+		int id = id(name);
+		return id == -1 ? -1 : sizes[id];
+	}
+
+	private int[] lookup(String name) throws IOException { 
+		if(loaded) { 
+			int id = id(name);
+			return new int[] { id, id == -1 ? -1 : sizes[id] };
+		}
+		int[] chrom = found.get(name);
+		if(chrom == null) { 
+			List<byte[]> values = tree.find(name);
+			if(values.isEmpty()) { 
+				chrom = new int[] { -1, -1 };
+			} else { 
+				ByteBuffer buffer = ByteBuffer.wrap(values.get(0)).order(tree.header._flipped ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+				chrom = new int[] { buffer.getInt(), buffer.getInt() };
+			}
+			int[] earlier = found.putIfAbsent(name, chrom);
+			if(earlier != null) { 
+				chrom = earlier;
+			}
+		}
+		return chrom;
+	}
+
+	/*
+	 * One more than the largest id.
+	 */
+	public int count() throws IOException { 
+		if(!loaded) { loadAll(); }
+		return count;
+	}
+
+	/*
+	 * The name of chromosome id, or null if there's no such id.
+	 */
+	public String name(int id) throws IOException { 
+		if(!loaded) { loadAll(); }
+		if(id < 0 || id >= count || sizes[id] < 0) { return null; }
+		return new String(names, nameStarts[id], nameStarts[id + 1] - nameStarts[id], Bigwig.UTF8);
+	}
+
+	/*
+	 * The size of chromosome id, or -1 if there's no such id.
+	 */
+	public int size(int id) throws IOException { 
+		if(!loaded) { loadAll(); }
+		return id >= 0 && id < count ? sizes[id] : -1;
+	}
+
+	/*
+	 * Every chromosome, name to id, sorted by name.
+	 */
+	public Map<String,Integer> toMap() throws IOException { 
+		if(!loaded) { loadAll(); }
+		Map<String,Integer> map = new TreeMap<String,Integer>();
+		for(int id = 0; id < count; id++) { 
+			if(sizes[id] >= 0) { 
+				map.put(name(id), id);
+			}
+		}
+		return map;
+	}
+}
@@ -0,0 +1,323 @@
+package bigwig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import bigwig.io.Inflaters;
+
+/**
+ * Every item in a bigWig, in file order (which is genomic order), for genome-wide jobs
+ * where a lookup per region would be wasted.  (BigBed.scan() gives a BedScan, which
+ * reads the same way but decodes BED records.)
+ *
+ * The blocks are taken from the R-tree's leaves once, sorted by offset, and read front
+ * to back, chunkSize bytes at a time (any gaps between blocks are read and dropped).
+ * A background thread does the reading and the inflating, handing inflated blocks over
+ * through a queue of at most queueBlocks.  The consumer decodes sections meanwhile, so
+ * with a fast enough consumer the scan runs at the speed of the disk (or of zlib).
+ * Inflated blocks' arrays go back to the reader thread for reuse, and the block cache
+ * is bypassed, so a scan doesn't evict what region queries have cached.
+ *
+ *   FileScan scan = bigwig.scan();
+ *   try {
+ *       while(scan.next()) { ... scan.chromId(), scan.start(), scan.end(), scan.value() ... }
+ *   } finally { 
+ *       scan.close();
+ *   }
+ *   System.out.println(scan);   // MB/s and blocks/s
+ */
+public class FileScan implements IntervalCursor, Closeable { 
+
+	public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+	public static final int DEFAULT_QUEUE_BLOCKS = 64;
+
+	/*
+	 * An inflated block; recycle is its array if it came from the free list's pool.
+	 */
+	private static class Inflated { 
+		public ByteBuffer data;
+		public byte[] recycle;
+
+		public Inflated(ByteBuffer data, byte[] recycle) { 
+			this.data = data;
+			this.recycle = recycle;
+		}
+	}
+
+	private static final Inflated END = new Inflated(null, null);
+
+	private Bigwig bigwig;
+	private int chunkSize;
+	private boolean flip;
+
+	/*
+	 * The blocks, in offset order.
+	 */
+	private long[] offsets, sizes;
+
+	private BlockingQueue<Inflated> queue;
+	private BlockingQueue<byte[]> free;
+	private Thread reader;
+	private volatile IOException error;
+	private volatile boolean closed;
+
+	private Inflated current;
+	private WigSection section;
+	private int itemIndex;
+	private boolean done;
+
+	private volatile long bytesRead, bytesInflated;
+	private long blocksDecoded;
+	private long startNanos, endNanos;
+
+	public FileScan(Bigwig bigwig) throws IOException { 
+		this(bigwig, DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_BLOCKS);
+	}
+
+	public FileScan(Bigwig bigwig, int chunkSize, int queueBlocks) throws IOException { 
+		if(chunkSize <= 0 || queueBlocks <= 0) { 
+			throw new IllegalArgumentException(String.format("chunkSize %d, queueBlocks %d", chunkSize, queueBlocks));
+		}
+		this.bigwig = bigwig;
+		this.chunkSize = chunkSize;
+		flip = bigwig.getIndexHeader()._flipped;
+
+		// a flat index built here is dropped once the offsets are taken from it.
+		FlatRTreeIndex index = bigwig.isFlatIndexed() ? bigwig.getFlatIndex() : bigwig.buildFlatIndex();
+		Integer[] order = new Integer[index.size];
+		for(int i = 0; i < order.length; i++) { order[i] = i; }
+		final long[] o = index.dataOffset;
+		Arrays.sort(order, new Comparator<Integer>() { 
+			public int compare(Integer a, Integer b) { 
+				return o[a] < o[b] ? -1 : o[a] > o[b] ? 1 : 0;
+			}
+		});
+		offsets = new long[order.length];
+		sizes = new long[order.length];
+		for(int i = 0; i < order.length; i++) { 
+			offsets[i] = index.dataOffset[order[i]];
+			sizes[i] = index.dataSize[order[i]];
+		}
+
+		queue = new ArrayBlockingQueue<Inflated>(queueBlocks);
+		free = new ArrayBlockingQueue<byte[]>(queueBlocks + 2);
+		section = new WigSection();
+		current = null;
+		itemIndex = 0;
+		done = closed = false;
+		bytesRead = bytesInflated = 0L;
+		blocksDecoded = 0L;
+
+		startNanos = System.nanoTime();
+		endNanos = -1L;
+		reader = new Thread(new Runnable() { 
+			public void run() { 
+				readAhead();
+			}
+		}, String.format("FileScan(%s)", bigwig.getName()));
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/*
+	 * The reader thread: reads the blocks a chunk at a time and queues them inflated.
+	 */
+	private void readAhead() { 
+		int bufSize = bigwig.header.uncompressBufSize;
+		try { 
+			int i = 0;
+			while(i < offsets.length && !closed) { 
+				// as many of the following blocks as fit in one chunk (at least one).
+				int last = i;
+				long start = offsets[i], end = offsets[i] + sizes[i], used = sizes[i];
+				while(last + 1 < offsets.length && offsets[last + 1] >= end &&
+						offsets[last + 1] + sizes[last + 1] - start <= chunkSize) { 
+					last += 1;
+					end = offsets[last] + sizes[last];
+					used += sizes[last];
+				}
+				ByteBuffer chunk = bigwig.readBuffer(start, (int)(end - start), flip);
+				bytesRead += end - start;
+				bigwig.getReadStats().record(end - start, last - i + 1, end - start - used);
+
+				for(; i <= last; i++) { 
+					ByteBuffer compressed = chunk.duplicate();
+					compressed.position((int)(offsets[i] - start));
+					compressed.limit((int)(offsets[i] - start + sizes[i]));
+					Inflated block;
+					if(bufSize == 0) { 
+						// copied out of a mapped or direct chunk, since BED decoding needs an array.
+						ByteBuffer data = compressed.slice();
+						if(!data.hasArray()) { 
+							data = ByteBuffer.wrap(new byte[data.remaining()]);
+							data.put(compressed.slice()).flip();
+						}
+						block = new Inflated(data, null);
+					} else { 
+						byte[] buffer = free.poll();
+						if(buffer == null) { buffer = new byte[bufSize]; }
+						int length;
+						try { 
+							length = Inflaters.inflate(compressed, buffer);
+						} catch(DataFormatException e) { 
+							throw new IOException(String.format("Corrupt data block at %d", offsets[i]), e);
+						}
+						block = new Inflated(ByteBuffer.wrap(buffer, 0, length), buffer);
+					}
+					block.data.order(flip ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+					bytesInflated += block.data.remaining();
+					if(!put(block)) { 
+						return;
+					}
+				}
+			}
+		} catch(IOException e) { 
+			error = e;
+		} catch(Throwable e) { 
+			// Errors as well (an OutOfMemoryError inflating, say): the consumer rethrows it.
+			error = new IOException(e);
+		} finally { 
+			Inflaters.release();
+			// always, or the consumer would wait in nextBlock() forever.
+			put(END);
+		}
+	}
+
+	/*
+	 * Queues block, waiting for room; false if the scan was closed meanwhile.  The wait
+	 * is polled rather than interrupted, since interrupting a thread in a FileChannel
+	 * read would close the channel under every other user of the Bigwig.
+	 */
+	private boolean put(Inflated block) { 
+		try { 
+			while(!closed) { 
+				if(queue.offer(block, 50L, TimeUnit.MILLISECONDS)) { 
+					return true;
+				}
+			}
+		} catch(InterruptedException e) { 
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	public int chromId() { return section.chromId; }
+	public int start() { return section.starts[itemIndex - 1]; }
+	public int end() { return section.ends[itemIndex - 1]; }
+	public float value() { return section.values[itemIndex - 1]; }
+
+	public boolean next() throws IOException { 
+		while(true) { 
+			if(itemIndex < section.itemCount) { 
+				itemIndex += 1;
+				return true;
+			}
+			section.itemCount = itemIndex = 0;
+			ByteBuffer block = current != null ? current.data : null;
+			if(block != null && block.remaining() >= WigSection.HEADER_SIZE) { 
+				section.decode(block);
+				continue;
+			}
+			if(nextBlock() == null) { 
+				return false;
+			}
+		}
+	}
+
+	/*
+	 * Moves on to the next inflated block, in the file's byte order, giving the last
+	 * one's buffer back; null at the end of the file.  The block is only good until the
+	 * next call.  Subclasses decoding other kinds of block (BigBed.BedScan) read them
+	 * through this.
+	 */
+	protected ByteBuffer nextBlock() throws IOException { 
+		if(current != null && current.recycle != null) { 
+			free.offer(current.recycle);
+		}
+		current = null;
+		if(done) { 
+			return null;
+		}
+		if(closed) { 
+			throw new IOException("FileScan is closed");
+		}
+		Inflated block;
+		try { 
+			block = queue.take();
+		} catch(InterruptedException e) { 
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		if(block == END) { 
+			done = true;
+			endNanos = System.nanoTime();
+			if(error != null) { throw error; }
+			return null;
+		}
+		current = block;
+		blocksDecoded += 1;
+		return block.data;
+	}
+
+	/*
+	 * Stops the reader thread, if it's still going.
+	 */
+	public void close() throws IOException { 
+		if(closed) { 
+			return;
+		}
+		closed = true;
+		queue.clear();
+		try { 
+			reader.join();
+		} catch(InterruptedException e) { 
+			Thread.currentThread().interrupt();
+		}
+		if(endNanos == -1L) { 
+			endNanos = System.nanoTime();
+		}
+	}
+
+	public int blockCount() { 
+		return offsets.length;
+	}
+
+	/*
+	 * Progress so far: compressed bytes read from the file, bytes inflated, and blocks
+	 * decoded; and the time since the scan began, until it finished or was closed.
+	 */
+	public long bytesRead() { return bytesRead; }
+	public long bytesInflated() { return bytesInflated; }
+	public long blocksDecoded() { return blocksDecoded; }
+
+	public double elapsedSeconds() { 
+		long end = endNanos == -1L ? System.nanoTime() : endNanos;
+		return (end - startNanos) / 1e9;
+	}
+
+	/*
+	 * File throughput, in MB (10^6 bytes) read per second.
+	 */
+	public double megabytesPerSecond() { 
+		double seconds = elapsedSeconds();
+		return seconds > 0.0 ? bytesRead / 1e6 / seconds : 0.0;
+	}
+
+	public double blocksPerSecond() { 
+		double seconds = elapsedSeconds();
+		return seconds > 0.0 ? blocksDecoded / seconds : 0.0;
+	}
+
+	public String toString() { 
+		return String.format("FileScan(%s: %d/%d blocks, %.1f MB read, %.1f MB inflated in %.3fs; %.1f MB/s, %.0f blocks/s)",
+				bigwig.getName(), blocksDecoded, offsets.length, bytesRead / 1e6, bytesInflated / 1e6,
+				elapsedSeconds(), megabytesPerSecond(), blocksPerSecond());
+	}
+}
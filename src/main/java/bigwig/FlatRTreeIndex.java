@@ -0,0 +1,172 @@
+package bigwig;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The leaf level of a file's R-tree held in memory as primitive columns, sorted by 
+ * (chrom, start).
+ * 
+ * An overlap lookup is a binary search over the running maximum of the leaf ends, 
+ * followed by a linear scan until leaves start past the query, so it does no I/O and 
+ * allocates nothing: 
+ * 
+ *   for(int i = index.search(chrom, start, end); i != -1; i = index.next(i, chrom, start, end)) { ... }
+ */
+public class FlatRTreeIndex {
+	
+	public int size;
+	
+	public int[] startChromIx, startBase;
+	public int[] endChromIx, endBase;
+	public long[] dataOffset, dataSize;
+	
+	/*
+	 * maxEnd[i] is the largest (endChromIx, endBase) key among leaves 0..i; it is 
+	 * non-decreasing even if the leaves themselves overlap.
+	 */
+	private long[] maxEnd;
+	
+	public FlatRTreeIndex(int capacity) { 
+		size = 0;
+		startChromIx = new int[capacity];
+		startBase = new int[capacity];
+		endChromIx = new int[capacity];
+		endBase = new int[capacity];
+		dataOffset = new long[capacity];
+		dataSize = new long[capacity];
+	}
+	
+	public static long key(int chromId, int base) { 
+		return ((long)chromId << 32) | (base & 0xffffffffL);
+	}
+	
+	public void add(Bigwig.RTreeLeaf leaf) { 
+		add(leaf.startChromIx, leaf.startBase, leaf.endChromIx, leaf.endBase, leaf.dataOffset, leaf.dataSize);
+	}
+	
+	public void add(int startChrom, int start, int endChrom, int end, long offset, long length) { 
+		if(size == dataOffset.length) { 
+			int capacity = Math.max(16, size * 2);
+			startChromIx = Arrays.copyOf(startChromIx, capacity);
+			startBase = Arrays.copyOf(startBase, capacity);
+			endChromIx = Arrays.copyOf(endChromIx, capacity);
+			endBase = Arrays.copyOf(endBase, capacity);
+			dataOffset = Arrays.copyOf(dataOffset, capacity);
+			dataSize = Arrays.copyOf(dataSize, capacity);
+		}
+		startChromIx[size] = startChrom;
+		startBase[size] = start;
+		endChromIx[size] = endChrom;
+		endBase[size] = end;
+		dataOffset[size] = offset;
+		dataSize[size] = length;
+		size += 1;
+	}
+	
+	/*
+	 * Sorts the leaves (if the file didn't already have them in order), trims the 
+	 * columns and builds the search column.  Call once, after the last add().
+	 */
+	public FlatRTreeIndex seal() { 
+		boolean sorted = true;
+		for(int i = 1; i < size && sorted; i++) { 
+			sorted = startKey(i-1) <= startKey(i);
+		}
+		if(!sorted) { 
+			sort();
+		}
+		
+		startChromIx = Arrays.copyOf(startChromIx, size);
+		startBase = Arrays.copyOf(startBase, size);
+		endChromIx = Arrays.copyOf(endChromIx, size);
+		endBase = Arrays.copyOf(endBase, size);
+		dataOffset = Arrays.copyOf(dataOffset, size);
+		dataSize = Arrays.copyOf(dataSize, size);
+		
+		maxEnd = new long[size];
+		long max = Long.MIN_VALUE;
+		for(int i = 0; i < size; i++) { 
+			max = Math.max(max, endKey(i));
+			maxEnd[i] = max;
+		}
+		return this;
+	}
+	
+	private void sort() { 
+		Integer[] order = new Integer[size];
+		for(int i = 0; i < size; i++) { order[i] = i; }
+		Arrays.sort(order, new Comparator<Integer>() { 
+			public int compare(Integer a, Integer b) { 
+				long ka = startKey(a), kb = startKey(b);
+				return ka < kb ? -1 : ka > kb ? 1 : 0;
+			}
+		});
+		
+		int[] sc = new int[size], sb = new int[size], ec = new int[size], eb = new int[size];
+		long[] off = new long[size], sz = new long[size];
+		for(int i = 0; i < size; i++) { 
+			int j = order[i];
+			sc[i] = startChromIx[j]; sb[i] = startBase[j];
+			ec[i] = endChromIx[j]; eb[i] = endBase[j];
+			off[i] = dataOffset[j]; sz[i] = dataSize[j];
+		}
+		startChromIx = sc; startBase = sb; endChromIx = ec; endBase = eb;
+		dataOffset = off; dataSize = sz;
+	}
+	
+	public long startKey(int i) { 
+		return key(startChromIx[i], startBase[i]);
+	}
+	
+	public long endKey(int i) { 
+		return key(endChromIx[i], endBase[i]);
+	}
+	
+	public boolean overlaps(int i, int chromId, int start, int end) { 
+		return startKey(i) < key(chromId, end) && endKey(i) > key(chromId, start);
+	}
+	
+	/*
+	 * Index of the first leaf overlapping [start, end) on chromId, or -1.
+	 */
+	public int search(int chromId, int start, int end) { 
+		long startKey = key(chromId, start);
+		int lo = 0, hi = size;
+		while(lo < hi) { 
+			int mid = (lo + hi) >>> 1;
+			if(maxEnd[mid] <= startKey) { 
+				lo = mid + 1;
+			} else { 
+				hi = mid;
+			}
+		}
+		return scan(lo, chromId, start, end);
+	}
+	
+	/*
+	 * Index of the next leaf after i overlapping [start, end) on chromId, or -1.
+	 */
+	public int next(int i, int chromId, int start, int end) { 
+		return scan(i + 1, chromId, start, end);
+	}
+	
+	private int scan(int i, int chromId, int start, int end) { 
+		long endKey = key(chromId, end);
+		for(; i < size && startKey(i) < endKey; i++) { 
+			if(overlaps(i, chromId, start, end)) { 
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	public long memoryBytes() { 
+		long columns = 4L * 4L + 3L * 8L;
+		return 16L + size * columns + 7L * 16L;
+	}
+	
+	public String toString() { 
+		return String.format("FlatRTreeIndex(%d leaves, %d bytes)", size, memoryBytes());
+	}
+}
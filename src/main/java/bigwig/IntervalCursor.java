@@ -0,0 +1,20 @@
+package bigwig;
+
+import java.io.IOException;
+
+/**
+ * A forward-only cursor over (chromId, start, end, value) intervals.  The accessors
+ * describe the interval most recently returned by a successful next().
+ */
+public interface IntervalCursor {
+	
+	public boolean next() throws IOException;
+	
+	public int chromId();
+	
+	public int start();
+	
+	public int end();
+	
+	public float value();
+}
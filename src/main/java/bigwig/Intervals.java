@@ -0,0 +1,71 @@
+package bigwig;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of (chromId, start, end, value) intervals in primitive columns.
+ */
+public class Intervals {
+	
+	public int size;
+	
+	public int[] chromIds, starts, ends;
+	public float[] values;
+	
+	public Intervals() { 
+		this(16);
+	}
+	
+	public Intervals(int capacity) { 
+		size = 0;
+		chromIds = new int[capacity];
+		starts = new int[capacity];
+		ends = new int[capacity];
+		values = new float[capacity];
+	}
+	
+	public void add(int chromId, int start, int end, float value) { 
+		if(size == values.length) { 
+			int capacity = Math.max(16, size * 2);
+			chromIds = Arrays.copyOf(chromIds, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		chromIds[size] = chromId;
+		starts[size] = start;
+		ends[size] = end;
+		values[size] = value;
+		size += 1;
+	}
+	
+	public void addAll(Intervals other) { 
+		for(int i = 0; i < other.size; i++) { 
+			add(other.chromIds[i], other.starts[i], other.ends[i], other.values[i]);
+		}
+	}
+	
+	public void clear() { 
+		size = 0;
+	}
+	
+	public IntervalCursor cursor() { 
+		return new IntervalCursor() { 
+			private int i = -1;
+			
+			public boolean next() { 
+				if(i < size) { i++; }
+				return i < size;
+			}
+			
+			public int chromId() { return chromIds[i]; }
+			public int start() { return starts[i]; }
+			public int end() { return ends[i]; }
+			public float value() { return values[i]; }
+		};
+	}
+	
+	public String toString() { 
+		return String.format("Intervals(%d)", size);
+	}
+}
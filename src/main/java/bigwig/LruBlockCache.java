@@ -0,0 +1,136 @@
+package bigwig;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A BlockCache holding at most maxBytes of decompressed blocks, evicting the least 
+ * recently used.
+ * 
+ * Loads are single-flight: when several threads miss on the same key at once, the first 
+ * one runs the loader and the rest wait for its result, so a block is read and inflated 
+ * only once.
+ */
+public class LruBlockCache implements BlockCache {
+	
+	private long maxBytes;
+	private long bytes;
+	private LinkedHashMap<Key,byte[]> blocks;
+	private ConcurrentHashMap<Key,FutureTask<byte[]>> loading;
+	
+	private AtomicLong hits, misses, evictions;
+	
+	public LruBlockCache(long maxBytes) { 
+		this.maxBytes = maxBytes;
+		bytes = 0L;
+		blocks = new LinkedHashMap<Key,byte[]>(16, 0.75f, true);
+		loading = new ConcurrentHashMap<Key,FutureTask<byte[]>>();
+		
+		hits = new AtomicLong(0L);
+		misses = new AtomicLong(0L);
+		evictions = new AtomicLong(0L);
+	}
+	
+	public byte[] get(Key key, final Loader loader) throws IOException {
+		byte[] block = lookup(key);
+		if(block != null) { 
+			hits.incrementAndGet();
+			return block;
+		}
+		
+		FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() { 
+			public byte[] call() throws IOException { 
+				return loader.load();
+			}
+		});
+		FutureTask<byte[]> existing = loading.putIfAbsent(key, task);
+		
+		if(existing != null) {
+			// another thread is already loading this block.
+			hits.incrementAndGet();
+			return await(existing);
+		}
+		
+		try { 
+			// the block may have been loaded and published since our lookup.
+			block = lookup(key);
+			if(block != null) { 
+				hits.incrementAndGet();
+				task.cancel(false);
+				return block;
+			}
+			
+			misses.incrementAndGet();
+			task.run();
+			block = await(task);
+			put(key, block);
+			return block;
+			
+		} finally { 
+			loading.remove(key, task);
+		}
+	}
+	
+	private static byte[] await(FutureTask<byte[]> task) throws IOException { 
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) { throw (IOException)cause; }
+			if(cause instanceof RuntimeException) { throw (RuntimeException)cause; }
+			throw new IOException(cause);
+		}
+	}
+	
+	private synchronized byte[] lookup(Key key) { 
+		return blocks.get(key);
+	}
+	
+	private synchronized void put(Key key, byte[] block) { 
+		if(block.length > maxBytes) { return; }
+		
+		byte[] previous = blocks.put(key, block);
+		bytes += block.length - (previous != null ? previous.length : 0);
+		
+		Iterator<Map.Entry<Key,byte[]>> itr = blocks.entrySet().iterator();
+		while(bytes > maxBytes && itr.hasNext()) { 
+			Map.Entry<Key,byte[]> eldest = itr.next();
+			bytes -= eldest.getValue().length;
+			itr.remove();
+			evictions.incrementAndGet();
+		}
+	}
+	
+	public synchronized void clear() { 
+		blocks.clear();
+		bytes = 0L;
+	}
+	
+	public long maxBytes() { return maxBytes; }
+	public synchronized long bytes() { return bytes; }
+	public synchronized int size() { return blocks.size(); }
+	
+	public long hitCount() { return hits.get(); }
+	public long missCount() { return misses.get(); }
+	public long evictionCount() { return evictions.get(); }
+	
+	public double hitRate() { 
+		long h = hits.get(), total = h + misses.get();
+		return total == 0L ? 0.0 : (double)h / (double)total;
+	}
+	
+	public String toString() { 
+		return String.format("LruBlockCache(%d/%d bytes, %d blocks, hits=%d misses=%d evictions=%d)", 
+				bytes(), maxBytes, size(), hitCount(), missCount(), evictionCount());
+	}
+}
@@ -0,0 +1,279 @@
+package bigwig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * One summary statistic of each of N files over each of M regions, as an N x M matrix
+ * (like deepTools' multiBigwigSummary).
+ *
+ * The regions are sorted once, into a plan grouped by chromosome and ordered by start.
+ * Every file is then summarized by one sweep over that plan, for each chromosome:
+ *
+ * - Each region gets the zoom level that Bigwig.summary() would use for it, and the
+ *   regions of each level (or raw data) are swept together.
+ * - The R-tree is walked once for all of them, descending only into nodes that
+ *   overlap some region.
+ * - The blocks found are read in order with coalesced reads.  Each item or zoom
+ *   record is added to the regions it overlaps as it's decoded.
+ *
+ * Nothing is kept per item.  Besides the matrix, a file being summarized needs five
+ * doubles per region, so memory scales with the output whatever the number of items.
+ * Files are summarized in parallel, one task per file.
+ */
+public class MatrixSummary { 
+
+	private List<Region> regions;
+
+	/*
+	 * The plan: the distinct chromosome names, and for each the indexes of its regions
+	 * sorted by start.
+	 */
+	private String[] chroms;
+	private int[][] byChrom;
+
+	public MatrixSummary(List<Region> regions) { 
+		this.regions = new ArrayList<Region>(regions);
+
+		Map<String,List<Integer>> groups = new TreeMap<String,List<Integer>>();
+		for(int r = 0; r < regions.size(); r++) { 
+			Region region = regions.get(r);
+			if(region.end <= region.start) { 
+				throw new IllegalArgumentException(String.format("Empty region %s", region));
+			}
+			List<Integer> group = groups.get(region.chrom);
+			if(group == null) { 
+				group = new ArrayList<Integer>();
+				groups.put(region.chrom, group);
+			}
+			group.add(r);
+		}
+
+		chroms = groups.keySet().toArray(new String[groups.size()]);
+		byChrom = new int[chroms.length][];
+		final List<Region> rs = this.regions;
+		for(int c = 0; c < chroms.length; c++) { 
+			List<Integer> group = groups.get(chroms[c]);
+			Collections.sort(group, new Comparator<Integer>() { 
+				public int compare(Integer a, Integer b) { 
+					int sa = rs.get(a).start, sb = rs.get(b).start;
+					return sa < sb ? -1 : sa > sb ? 1 : 0;
+				}
+			});
+			byChrom[c] = new int[group.size()];
+			for(int i = 0; i < byChrom[c].length; i++) { 
+				byChrom[c][i] = group.get(i);
+			}
+		}
+	}
+
+	public int regionCount() { 
+		return regions.size();
+	}
+
+	/*
+	 * The matrix, row-major: file i's value for region j is at [i * regionCount() + j].
+	 * Regions on chromosomes a file doesn't have, or without data, are NaN (0 for
+	 * COVERAGE).  With a pool the files are summarized in parallel on it.
+	 */
+	public double[] summarize(List<Bigwig> files, SummaryStat stat, ForkJoinPool pool) throws IOException { 
+		double[] matrix = new double[files.size() * regions.size()];
+		summarize(files, stat, pool, DoubleBuffer.wrap(matrix));
+		return matrix;
+	}
+
+	/*
+	 * As above, into out from its index 0, which may be a view of a direct (off-heap)
+	 * buffer.
+	 */
+	public void summarize(final List<Bigwig> files, final SummaryStat stat, ForkJoinPool pool, final DoubleBuffer out) throws IOException { 
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int i = 0; i < files.size(); i++) { 
+			final int row = i;
+			tasks.add(new Callable<Void>() { 
+				public Void call() throws IOException { 
+					write(out, row, summarize(files.get(row), stat));
+					return null;
+				}
+			});
+		}
+		run(tasks, pool);
+	}
+
+	/*
+	 * As summarize(files, ...), with each file acquired from repository only for as long
+	 * as it's being summarized, so that N may be far larger than the handle pool.
+	 */
+	public double[] summarize(final BigwigRepository repository, final List<File> files, final SummaryStat stat, ForkJoinPool pool) throws IOException { 
+		double[] matrix = new double[files.size() * regions.size()];
+		final DoubleBuffer out = DoubleBuffer.wrap(matrix);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int i = 0; i < files.size(); i++) { 
+			final int row = i;
+			tasks.add(new Callable<Void>() { 
+				public Void call() throws IOException { 
+					BigwigRepository.Handle handle = repository.acquire(files.get(row));
+					try { 
+						write(out, row, summarize(handle.bigwig(), stat));
+					} finally { 
+						handle.close();
+					}
+					return null;
+				}
+			});
+		}
+		run(tasks, pool);
+		return matrix;
+	}
+
+	private void write(DoubleBuffer out, int row, double[] values) { 
+		DoubleBuffer view = out.duplicate();
+		view.position(row * regions.size());
+		view.put(values);
+	}
+
+	static void run(List<Callable<Void>> tasks, ForkJoinPool pool) throws IOException { 
+		if(pool == null) { 
+			for(Callable<Void> task : tasks) { 
+				try { 
+					task.call();
+				} catch(IOException e) { 
+					throw e;
+				} catch(Exception e) { 
+					throw new IOException(e);
+				}
+			}
+			return;
+		}
+		for(Future<Void> future : pool.invokeAll(tasks)) { 
+			try { 
+				future.get();
+			} catch(InterruptedException e) { 
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} catch(ExecutionException e) { 
+				Throwable cause = e.getCause();
+				if(cause instanceof IOException) { throw (IOException)cause; }
+				if(cause instanceof RuntimeException) { throw (RuntimeException)cause; }
+				throw new IOException(cause);
+			}
+		}
+	}
+
+	/*
+	 * One file's row of the matrix.
+	 */
+	public double[] summarize(Bigwig bigwig, SummaryStat stat) throws IOException { 
+		Accumulator sums = new Accumulator(regions.size());
+		ChromosomeDictionary chromosomes = bigwig.getChromosomes();
+		int levels = bigwig.getZoomHeaders().length;
+		int[] levelOf = new int[regions.size()];
+
+		for(int c = 0; c < chroms.length; c++) { 
+			int chromId = chromosomes.id(chroms[c]);
+			if(chromId == -1) { 
+				continue;
+			}
+			// the regions of each level (raw data being level -1), still sorted by start.
+			int[] counts = new int[levels + 1];
+			for(int r : byChrom[c]) { 
+				levelOf[r] = bigwig.bestZoomLevel(regions.get(r).width());
+				counts[levelOf[r] + 1]++;
+			}
+			for(int level = -1; level < levels; level++) { 
+				if(counts[level + 1] == 0) { 
+					continue;
+				}
+				int[] subset = new int[counts[level + 1]];
+				int n = 0;
+				for(int r : byChrom[c]) { 
+					if(levelOf[r] == level) { subset[n++] = r; }
+				}
+				new Sweep(bigwig, chromId, level, subset, sums).run();
+			}
+		}
+
+		double[] values = new double[regions.size()];
+		for(int r = 0; r < values.length; r++) { 
+			values[r] = SummaryBins.value(stat, regions.get(r).width(), sums.validCount[r], sums.minVal[r], sums.maxVal[r], sums.sumData[r], sums.sumSquares[r]);
+		}
+		return values;
+	}
+
+	/*
+	 * Per-region sums, apportioned as SummaryBins does for a single bin.
+	 */
+	private static class Accumulator { 
+
+		public double[] validCount, minVal, maxVal, sumData, sumSquares;
+
+		public Accumulator(int n) { 
+			validCount = new double[n];
+			minVal = new double[n];
+			maxVal = new double[n];
+			sumData = new double[n];
+			sumSquares = new double[n];
+			Arrays.fill(minVal, Double.POSITIVE_INFINITY);
+			Arrays.fill(maxVal, Double.NEGATIVE_INFINITY);
+		}
+
+		public void addValue(int r, int overlap, double v) { 
+			validCount[r] += overlap;
+			sumData[r] += v * overlap;
+			sumSquares[r] += v * v * overlap;
+			if(v < minVal[r]) { minVal[r] = v; }
+			if(v > maxVal[r]) { maxVal[r] = v; }
+		}
+
+		public void addSummary(int r, double fraction, double valid, double min, double max, double sum, double squares) { 
+			validCount[r] += valid * fraction;
+			sumData[r] += sum * fraction;
+			sumSquares[r] += squares * fraction;
+			if(min < minVal[r]) { minVal[r] = min; }
+			if(max > maxVal[r]) { maxVal[r] = max; }
+		}
+	}
+
+	/*
+	 * Adds the items of one level to the regions subset (sorted by start) they overlap.
+	 */
+	private class Sweep extends RegionSweep { 
+
+		private int[] subset;
+		private Accumulator sums;
+
+		public Sweep(Bigwig bigwig, int chromId, int level, int[] subset, Accumulator sums) { 
+			super(bigwig, chromId, level, startsOf(subset), endsOf(subset));
+			this.subset = subset;
+			this.sums = sums;
+		}
+
+		protected void value(int k, int s, int e, float value) { 
+			int overlap = Math.min(e, ends[k]) - Math.max(s, starts[k]);
+			sums.addValue(subset[k], overlap, value);
+		}
+
+		protected void summary(int k, int s, int e, double valid, double min, double max, double sum, double squares) { 
+			int overlap = Math.min(e, ends[k]) - Math.max(s, starts[k]);
+			sums.addSummary(subset[k], overlap / (double)(e - s), valid, min, max, sum, squares);
+		}
+	}
+
+	private int[] startsOf(int[] subset) { 
+		int[] starts = new int[subset.length];
+		for(int k = 0; k < subset.length; k++) { starts[k] = regions.get(subset[k]).start; }
+		return starts;
+	}
+
+	private int[] endsOf(int[] subset) { 
+		int[] ends = new int[subset.length];
+		for(int k = 0; k < subset.length; k++) { ends[k] = regions.get(subset[k]).end; }
+		return ends;
+	}
+}
@@ -0,0 +1,117 @@
+package bigwig;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Extracts every item in a (typically wide) region, reading, inflating and decoding
+ * the region's blocks in parallel on a ForkJoinPool.
+ *
+ * The blocks are split into contiguous chunks, each decoded into its own Intervals by
+ * one task (with coalesced reads inside the chunk), and the chunks are concatenated
+ * in genomic order at the end.  Without a pool the chunks are simply run in turn.
+ */
+public class ParallelQuery { 
+
+	/*
+	 * Blocks per task are chosen so that each worker gets a few tasks to balance
+	 * uneven blocks, but no fewer than this.
+	 */
+	public static final int MIN_BLOCKS_PER_TASK = 4;
+
+	private Bigwig bigwig;
+	private ForkJoinPool pool;
+
+	public ParallelQuery(Bigwig bigwig, ForkJoinPool pool) { 
+		this.bigwig = bigwig;
+		this.pool = pool;
+	}
+
+	public Intervals query(int chromId, int start, int end) throws IOException { 
+		List<Bigwig.DataBlock> blocks = bigwig.findBlocks(chromId, start, end);
+		int parallelism = pool != null ? pool.getParallelism() : 1;
+		int perTask = Math.max(MIN_BLOCKS_PER_TASK, blocks.size() / (parallelism * 4) + 1);
+
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		for(int i = 0; i < blocks.size(); i += perTask) { 
+			chunks.add(new Chunk(blocks.subList(i, Math.min(blocks.size(), i + perTask)), chromId, start, end));
+		}
+
+		if(pool != null && chunks.size() > 1) { 
+			pool.invoke(new ChunkTask(chunks, 0, chunks.size()));
+		} else { 
+			for(Chunk chunk : chunks) { 
+				chunk.compute();
+			}
+		}
+
+		Intervals result = new Intervals(0);
+		for(Chunk chunk : chunks) { 
+			if(chunk.error != null) { 
+				throw chunk.error;
+			}
+			result.addAll(chunk.items);
+		}
+		return result;
+	}
+
+	private class Chunk { 
+
+		private List<Bigwig.DataBlock> blocks;
+		private int chromId, start, end;
+
+		public Intervals items;
+		public IOException error;
+
+		public Chunk(List<Bigwig.DataBlock> blocks, int chromId, int start, int end) { 
+			this.blocks = blocks;
+			this.chromId = chromId;
+			this.start = start;
+			this.end = end;
+		}
+
+		public void compute() { 
+			try { 
+				boolean flip = bigwig.getIndexHeader()._flipped;
+				Bigwig.BlockFetcher fetcher = bigwig.new BlockFetcher(blocks);
+				WigSection section = new WigSection();
+				items = new Intervals();
+				for(int i = 0; i < fetcher.size(); i++) { 
+					Bigwig.DataBlock block = fetcher.get(i);
+					block.decode(flip, section, chromId, start, end, items);
+					block._data = null;
+				}
+			} catch(IOException e) { 
+				error = e;
+			}
+		}
+	}
+
+	/*
+	 * Splits a range of chunks in half until a single chunk is left.
+	 */
+	private static class ChunkTask extends RecursiveAction { 
+
+		private static final long serialVersionUID = 1L;
+
+		private List<Chunk> chunks;
+		private int from, to;
+
+		public ChunkTask(List<Chunk> chunks, int from, int to) { 
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() { 
+			if(to - from == 1) { 
+				chunks.get(from).compute();
+			} else { 
+				int mid = (from + to) >>> 1;
+				invokeAll(new ChunkTask(chunks, from, mid), new ChunkTask(chunks, mid, to));
+			}
+		}
+	}
+}
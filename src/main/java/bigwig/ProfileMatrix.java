@@ -0,0 +1,207 @@
+package bigwig;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Binned profiles around many anchor points (TSSs, peak summits), as an anchors x bins
+ * matrix of floats (like deepTools' computeMatrix in reference-point mode).
+ *
+ * Each anchor's window runs from upstream bases before it to downstream bases after
+ * it, and is split into nBins equal bins.  With strandAware, the window of an anchor
+ * on the '-' strand is mirrored, and its row reversed, so that every row reads 5' to
+ * 3'.
+ *
+ * The windows are sorted once, by chromosome and start.  A file's matrix is then
+ * computed by one RegionSweep per chromosome, at the zoom level Bigwig.summary() would
+ * use for the bin size: the R-tree is walked once for all the chromosome's windows, and
+ * each block is read and decoded once however many windows overlap it.  Only the
+ * windows overlapping the current item hold a SummaryBins; a finished window's row is
+ * written and its bins reused.  Chromosomes are computed in parallel, one task each.
+ *
+ *   ProfileMatrix profile = new ProfileMatrix(anchors, 5000, 5000, 100, true);
+ *   float[] matrix = profile.compute(bigwig, SummaryStat.MEAN, pool);
+ *   // anchor a's bin b is matrix[a * 100 + b].
+ */
+public class ProfileMatrix { 
+
+	public static class Anchor { 
+
+		public String chrom;
+		public int position;
+		public char strand;
+
+		public Anchor(String chrom, int position) { 
+			this(chrom, position, '.');
+		}
+
+		public Anchor(String chrom, int position, char strand) { 
+			this.chrom = chrom;
+			this.position = position;
+			this.strand = strand;
+		}
+
+		public String toString() { 
+			return String.format("%s:%d(%c)", chrom, position, strand);
+		}
+	}
+
+	private int anchorCount, nBins, width;
+
+	/*
+	 * The windows, [starts[a], ends[a]) for anchor a, and whether a's row is reversed.
+	 */
+	private int[] starts, ends;
+	private boolean[] reversed;
+
+	/*
+	 * The plan: the distinct chromosome names, and for each the anchors on it sorted by
+	 * window start.
+	 */
+	private String[] chroms;
+	private int[][] byChrom;
+
+	public ProfileMatrix(List<Anchor> anchors, int upstream, int downstream, int nBins, boolean strandAware) { 
+		if(upstream < 0 || downstream < 0 || upstream + downstream <= 0 || nBins <= 0) { 
+			throw new IllegalArgumentException(String.format("%d bins over -%d..+%d", nBins, upstream, downstream));
+		}
+		this.anchorCount = anchors.size();
+		this.nBins = nBins;
+		this.width = upstream + downstream;
+
+		starts = new int[anchorCount];
+		ends = new int[anchorCount];
+		reversed = new boolean[anchorCount];
+		Map<String,List<Integer>> groups = new TreeMap<String,List<Integer>>();
+		for(int a = 0; a < anchorCount; a++) { 
+			Anchor anchor = anchors.get(a);
+			reversed[a] = strandAware && anchor.strand == '-';
+			starts[a] = anchor.position - (reversed[a] ? downstream : upstream);
+			ends[a] = starts[a] + width;
+
+			List<Integer> group = groups.get(anchor.chrom);
+			if(group == null) { 
+				group = new ArrayList<Integer>();
+				groups.put(anchor.chrom, group);
+			}
+			group.add(a);
+		}
+
+		chroms = groups.keySet().toArray(new String[groups.size()]);
+		byChrom = new int[chroms.length][];
+		final int[] s = starts;
+		for(int c = 0; c < chroms.length; c++) { 
+			List<Integer> group = groups.get(chroms[c]);
+			Collections.sort(group, new Comparator<Integer>() { 
+				public int compare(Integer a, Integer b) { 
+					return s[a] < s[b] ? -1 : s[a] > s[b] ? 1 : 0;
+				}
+			});
+			byChrom[c] = new int[group.size()];
+			for(int i = 0; i < byChrom[c].length; i++) { 
+				byChrom[c][i] = group.get(i);
+			}
+		}
+	}
+
+	public int anchorCount() { 
+		return anchorCount;
+	}
+
+	public int binCount() { 
+		return nBins;
+	}
+
+	/*
+	 * The matrix, row-major, with the anchors in the order given: anchor a's bin b is at
+	 * [a * binCount() + b].  Bins without data, and anchors on chromosomes the file
+	 * doesn't have, are NaN (0 for COVERAGE).  With a pool the chromosomes are computed
+	 * in parallel on it.
+	 */
+	public float[] compute(final Bigwig bigwig, final SummaryStat stat, ForkJoinPool pool) throws IOException { 
+		final float[] matrix = new float[anchorCount * nBins];
+		Arrays.fill(matrix, (float)SummaryBins.value(stat, 1, 0.0, 0.0, 0.0, 0.0, 0.0));
+
+		ChromosomeDictionary chromosomes = bigwig.getChromosomes();
+		final int level = bigwig.bestZoomLevel(width / nBins);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int c = 0; c < chroms.length; c++) { 
+			final int chromId = chromosomes.id(chroms[c]);
+			if(chromId == -1) { 
+				continue;
+			}
+			final int[] order = byChrom[c];
+			tasks.add(new Callable<Void>() { 
+				public Void call() throws IOException { 
+					new Sweep(bigwig, chromId, level, order, stat, matrix).run();
+					return null;
+				}
+			});
+		}
+		MatrixSummary.run(tasks, pool);
+		return matrix;
+	}
+
+	/*
+	 * Bins the items of one chromosome into the windows order (sorted by start) they
+	 * overlap, writing each window's row of matrix as it finishes.
+	 */
+	private class Sweep extends RegionSweep { 
+
+		private int[] order;
+		private SummaryStat stat;
+		private float[] matrix;
+
+		/*
+		 * bins[k] is window order[k]'s while it's active; free holds bins to reuse.
+		 */
+		private SummaryBins[] bins;
+		private ArrayDeque<SummaryBins> free;
+
+		public Sweep(Bigwig bigwig, int chromId, int level, int[] order, SummaryStat stat, float[] matrix) { 
+			super(bigwig, chromId, level, select(ProfileMatrix.this.starts, order), select(ProfileMatrix.this.ends, order));
+			this.order = order;
+			this.stat = stat;
+			this.matrix = matrix;
+			bins = new SummaryBins[order.length];
+			free = new ArrayDeque<SummaryBins>();
+		}
+
+		protected void started(int k) { 
+			SummaryBins b = free.poll();
+			if(b == null) { 
+				b = new SummaryBins(starts[k], ends[k], nBins);
+			} else { 
+				b.reset(starts[k], ends[k]);
+			}
+			bins[k] = b;
+		}
+
+		protected void value(int k, int s, int e, float value) { 
+			bins[k].addValue(s, e, value);
+		}
+
+		protected void summary(int k, int s, int e, double valid, double min, double max, double sum, double squares) { 
+			bins[k].addSummary(s, e, valid, min, max, sum, squares);
+		}
+
+		protected void finished(int k) { 
+			SummaryBins b = bins[k];
+			int a = order[k], row = a * nBins;
+			for(int i = 0; i < nBins; i++) { 
+				int bin = reversed[a] ? nBins - 1 - i : i;
+				matrix[row + i] = (float)b.value(stat, bin);
+			}
+			bins[k] = null;
+			free.push(b);
+		}
+	}
+
+	private static int[] select(int[] values, int[] order) { 
+		int[] selected = new int[order.length];
+		for(int k = 0; k < order.length; k++) { selected[k] = values[order[k]]; }
+		return selected;
+	}
+}
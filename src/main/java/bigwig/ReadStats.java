@@ -0,0 +1,52 @@
+package bigwig;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the reads issued to fetch data blocks, for tuning the coalescing gap:
+ * fewer, larger reads are better on high-latency filesystems, as long as the bytes
+ * read to bridge gaps between blocks stay small.
+ */
+public class ReadStats { 
+
+	private AtomicLong reads, bytes, blocks, gapBytes;
+
+	public ReadStats() { 
+		reads = new AtomicLong(0L);
+		bytes = new AtomicLong(0L);
+		blocks = new AtomicLong(0L);
+		gapBytes = new AtomicLong(0L);
+	}
+
+	/*
+	 * One read of length bytes, covering blockCount blocks and gap bytes between them.
+	 */
+	public void record(long length, int blockCount, long gap) { 
+		reads.incrementAndGet();
+		bytes.addAndGet(length);
+		blocks.addAndGet(blockCount);
+		gapBytes.addAndGet(gap);
+	}
+
+	public long readCount() { return reads.get(); }
+	public long bytesRead() { return bytes.get(); }
+	public long blockCount() { return blocks.get(); }
+	public long gapBytes() { return gapBytes.get(); }
+
+	public double averageReadSize() { 
+		long n = reads.get();
+		return n == 0L ? 0.0 : (double)bytes.get() / (double)n;
+	}
+
+	public void reset() { 
+		reads.set(0L);
+		bytes.set(0L);
+		blocks.set(0L);
+		gapBytes.set(0L);
+	}
+
+	public String toString() { 
+		return String.format("ReadStats(reads=%d, bytes=%d, blocks=%d, gapBytes=%d, avg=%.1f)",
+				readCount(), bytesRead(), blockCount(), gapBytes(), averageReadSize());
+	}
+}
@@ -0,0 +1,21 @@
+package bigwig;
+
+public class Region {
+	
+	public String chrom;
+	public int start, end;
+	
+	public Region(String chrom, int start, int end) { 
+		this.chrom = chrom;
+		this.start = start;
+		this.end = end;
+	}
+	
+	public int width() { 
+		return end - start;
+	}
+	
+	public String toString() { 
+		return String.format("%s:%d-%d", chrom, start, end);
+	}
+}
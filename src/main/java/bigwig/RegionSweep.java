@@ -0,0 +1,190 @@
+package bigwig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * One pass over the data (raw items, or one zoom level's records) of many regions on
+ * one chromosome, handing each item to the regions it overlaps.
+ *
+ * The regions must be sorted by start.  The R-tree is walked once for all of them,
+ * descending only into nodes that overlap some region.  The blocks found are read in
+ * order, with coalesced reads, and each is decoded once however many regions it
+ * serves.  Items arrive in order of start, so a region ending at or before an item's
+ * start will get nothing more and is finished.  Only the regions overlapping the
+ * current item are active at any time.
+ */
+abstract class RegionSweep { 
+
+	protected Bigwig bigwig;
+	protected int chromId, level;
+
+	/*
+	 * starts[k] and ends[k] are region k's; maxEnd[k] is the largest end among regions
+	 * 0..k.
+	 */
+	protected int[] starts, ends;
+	private int[] maxEnd;
+
+	/*
+	 * Regions begun but not yet finished, and the next to begin.
+	 */
+	private int[] active;
+	private int activeCount, next;
+
+	/*
+	 * level is a zoom level, or -1 for raw data.
+	 */
+	protected RegionSweep(Bigwig bigwig, int chromId, int level, int[] starts, int[] ends) { 
+		this.bigwig = bigwig;
+		this.chromId = chromId;
+		this.level = level;
+		this.starts = starts;
+		this.ends = ends;
+
+		maxEnd = new int[starts.length];
+		for(int k = 0; k < starts.length; k++) { 
+			maxEnd[k] = k > 0 ? Math.max(maxEnd[k - 1], ends[k]) : ends[k];
+		}
+		active = new int[16];
+		activeCount = next = 0;
+	}
+
+	/*
+	 * Region k is about to get its first item, if it gets any.
+	 */
+	protected void started(int k) {}
+
+	/*
+	 * Region k overlaps the raw item value over [s, e).
+	 */
+	protected abstract void value(int k, int s, int e, float value);
+
+	/*
+	 * Region k overlaps the zoom record summarizing [s, e).
+	 */
+	protected abstract void summary(int k, int s, int e, double valid, double min, double max, double sum, double squares);
+
+	/*
+	 * Region k, begun earlier, will get nothing more.
+	 */
+	protected void finished(int k) {}
+
+	/*
+	 * Whether anything in (startChrom, startBase) .. (endChrom, endBase) overlaps a
+	 * region.
+	 */
+	private boolean needed(int startChrom, int startBase, int endChrom, int endBase) { 
+		if(startChrom > chromId || endChrom < chromId) { 
+			return false;
+		}
+		int from = startChrom < chromId ? Integer.MIN_VALUE : startBase;
+		int to = endChrom > chromId ? Integer.MAX_VALUE : endBase;
+		// the last region starting before to.
+		int lo = 0, hi = starts.length - 1, last = -1;
+		while(lo <= hi) { 
+			int mid = (lo + hi) >>> 1;
+			if(starts[mid] < to) { 
+				last = mid;
+				lo = mid + 1;
+			} else { 
+				hi = mid - 1;
+			}
+		}
+		return last >= 0 && maxEnd[last] > from;
+	}
+
+	private void collect(Bigwig.RTreeNode node, List<Bigwig.DataBlock> blocks) throws IOException { 
+		if(node.isLeaf()) { 
+			for(Bigwig.RTreeLeaf leaf : node.getChildLeaves()) { 
+				if(needed(leaf.startChromIx, leaf.startBase, leaf.endChromIx, leaf.endBase)) { 
+					blocks.add(bigwig.new DataBlock(leaf));
+				}
+			}
+		} else { 
+			for(Bigwig.RTreeNonLeaf child : node.getChildNonLeaves()) { 
+				if(needed(child.startChromIx, child.startBase, child.endChromIx, child.endBase)) { 
+					collect(child.getNode(), blocks);
+				}
+			}
+		}
+	}
+
+	public void run() throws IOException { 
+		if(starts.length == 0) { 
+			return;
+		}
+		Bigwig.RTreeIndexHeader index = level < 0 ? bigwig.getIndexHeader() : bigwig.getZoomIndexHeader(level);
+		boolean flip = index._flipped;
+		List<Bigwig.DataBlock> blocks = new ArrayList<Bigwig.DataBlock>();
+		collect(bigwig.rootNode(index), blocks);
+
+		Bigwig.BlockFetcher fetcher = bigwig.new BlockFetcher(blocks);
+		Bigwig.BlockItems items = bigwig.blockItems();
+		byte[] buffer = new byte[bigwig.header.uncompressBufSize];
+		for(int b = 0; b < fetcher.size(); b++) { 
+			Bigwig.DataBlock block = fetcher.get(b);
+			ByteBuffer data = block.decompress(flip, buffer);
+			block._data = null;
+			if(level < 0) { 
+				// wig sections, or a BigBed's records.
+				items.reset(data);
+				while(items.next()) { 
+					if(items.chromId() != chromId) { 
+						continue;
+					}
+					int s = items.start(), e = items.end();
+					advance(s, e);
+					for(int a = 0; a < activeCount; a++) { 
+						int k = active[a];
+						if(starts[k] < e && ends[k] > s) { 
+							value(k, s, e, items.value());
+						}
+					}
+				}
+			} else { 
+				while(data.remaining() >= Bigwig.ZoomCursor.RECORD_SIZE) { 
+					int recordChrom = data.getInt(), s = data.getInt(), e = data.getInt();
+					int valid = data.getInt();
+					float min = data.getFloat(), max = data.getFloat(), sum = data.getFloat(), squares = data.getFloat();
+					if(recordChrom != chromId) { 
+						continue;
+					}
+					advance(s, e);
+					for(int a = 0; a < activeCount; a++) { 
+						int k = active[a];
+						if(starts[k] < e && ends[k] > s) { 
+							summary(k, s, e, valid, min, max, sum, squares);
+						}
+					}
+				}
+			}
+		}
+		for(int a = 0; a < activeCount; a++) { 
+			finished(active[a]);
+		}
+		activeCount = 0;
+	}
+
+	/*
+	 * Begins the regions starting before e and finishes those ending by s.
+	 */
+	private void advance(int s, int e) { 
+		while(next < starts.length && starts[next] < e) { 
+			if(activeCount == active.length) { 
+				active = Arrays.copyOf(active, active.length * 2);
+			}
+			started(next);
+			active[activeCount++] = next++;
+		}
+		for(int a = 0; a < activeCount; ) { 
+			if(ends[active[a]] <= s) { 
+				finished(active[a]);
+				active[a] = active[--activeCount];
+			} else { 
+				a++;
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package bigwig;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates summary statistics over nBins equal-width bins of [start, end).
+ * 
+ * Raw items and zoom records are both added as (bases covered, min, max, sum, sum of 
+ * squares) over an interval; an interval straddling several bins contributes to each in 
+ * proportion to its overlap, except for min and max which apply whole.  This is the same 
+ * apportioning the UCSC tools use for zoom records.
+ */
+public class SummaryBins {
+	
+	public int start, end, nBins;
+	
+	public double[] validCount;
+	public double[] minVal, maxVal;
+	public double[] sumData, sumSquares;
+	
+	public SummaryBins(int start, int end, int nBins) { 
+		if(nBins <= 0 || end <= start) { 
+			throw new IllegalArgumentException(String.format("%d bins over %d-%d", nBins, start, end));
+		}
+		this.start = start;
+		this.end = end;
+		this.nBins = nBins;
+		
+		validCount = new double[nBins];
+		minVal = new double[nBins];
+		maxVal = new double[nBins];
+		sumData = new double[nBins];
+		sumSquares = new double[nBins];
+		clear();
+	}
+	
+	public void clear() { 
+		Arrays.fill(validCount, 0.0);
+		Arrays.fill(minVal, Double.POSITIVE_INFINITY);
+		Arrays.fill(maxVal, Double.NEGATIVE_INFINITY);
+		Arrays.fill(sumData, 0.0);
+		Arrays.fill(sumSquares, 0.0);
+	}
+	
+	/*
+	 * Empties the bins and moves them to [start, end), for reuse.
+	 */
+	public void reset(int start, int end) { 
+		if(end <= start) { 
+			throw new IllegalArgumentException(String.format("%d bins over %d-%d", nBins, start, end));
+		}
+		this.start = start;
+		this.end = end;
+		clear();
+	}
+	
+	public int binStart(int bin) { 
+		return start + (int)((long)bin * (end - start) / nBins);
+	}
+	
+	public int binEnd(int bin) { 
+		return binStart(bin + 1);
+	}
+	
+	/*
+	 * A raw item: value over [s, e).
+	 */
+	public void addValue(int s, int e, float value) { 
+		double v = value;
+		int bin = firstBin(s);
+		for(; bin < nBins && binStart(bin) < e; bin++) { 
+			int overlap = Math.min(e, binEnd(bin)) - Math.max(s, binStart(bin));
+			if(overlap > 0) { 
+				validCount[bin] += overlap;
+				sumData[bin] += v * overlap;
+				sumSquares[bin] += v * v * overlap;
+				if(v < minVal[bin]) { minVal[bin] = v; }
+				if(v > maxVal[bin]) { maxVal[bin] = v; }
+			}
+		}
+	}
+	
+	/*
+	 * A zoom record summarizing [s, e).
+	 */
+	public void addSummary(int s, int e, double valid, double min, double max, double sum, double squares) { 
+		int bin = firstBin(s);
+		double width = e - s;
+		for(; bin < nBins && binStart(bin) < e; bin++) { 
+			int overlap = Math.min(e, binEnd(bin)) - Math.max(s, binStart(bin));
+			if(overlap > 0) { 
+				double fraction = overlap / width;
+				validCount[bin] += valid * fraction;
+				sumData[bin] += sum * fraction;
+				sumSquares[bin] += squares * fraction;
+				if(min < minVal[bin]) { minVal[bin] = min; }
+				if(max > maxVal[bin]) { maxVal[bin] = max; }
+			}
+		}
+	}
+	
+	private int firstBin(int s) { 
+		if(s <= start) { return 0; }
+		return (int)Math.min((long)nBins, (long)(s - start) * nBins / (end - start));
+	}
+	
+	/*
+	 * The statistic for every bin; bins without data are NaN (COVERAGE is 0 for them).
+	 */
+	public double[] values(SummaryStat stat) { 
+		double[] values = new double[nBins];
+		fill(stat, values, 0);
+		return values;
+	}
+	
+	public void fill(SummaryStat stat, double[] values, int offset) { 
+		for(int i = 0; i < nBins; i++) { 
+			values[offset + i] = value(stat, i);
+		}
+	}
+	
+	public double value(SummaryStat stat, int bin) { 
+		return value(stat, binEnd(bin) - binStart(bin), validCount[bin], minVal[bin], maxVal[bin], sumData[bin], sumSquares[bin]);
+	}
+	
+	/*
+	 * The statistic of an interval width bases wide from its accumulated summary.
+	 */
+	public static double value(SummaryStat stat, int width, double n, double min, double max, double sum, double squares) { 
+		if(stat == SummaryStat.COVERAGE) { 
+			return n / width;
+		}
+		if(n <= 0.0) { 
+			return Double.NaN;
+		}
+		switch(stat) { 
+		case MEAN: 
+			return sum / n;
+		case MIN: 
+			return min;
+		case MAX: 
+			return max;
+		case STD: 
+			if(n <= 1.0) { return 0.0; }
+			double var = (squares - sum * sum / n) / (n - 1.0);
+			return var > 0.0 ? Math.sqrt(var) : 0.0;
+		default: 
+			throw new IllegalArgumentException(stat.toString());
+		}
+	}
+}
@@ -0,0 +1,9 @@
+package bigwig;
+
+public enum SummaryStat {
+	MEAN, 
+	MIN, 
+	MAX, 
+	COVERAGE, 
+	STD
+}
@@ -0,0 +1,110 @@
+package bigwig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable, primitive-array decoder for binary WIG sections.  
+ * 
+ * Unlike Bigwig.BinaryWIGSectionHeader, which boxes every item into ArrayLists, decode() 
+ * writes starts, ends and values straight into int[] and float[] arrays that are kept 
+ * and reused across sections; they only grow when a section holds more items than any 
+ * seen before.  The buffer is read in its own byte order, so it should already be 
+ * ordered to match the file.
+ */
+public class WigSection {
+	
+	public static final int HEADER_SIZE = 24;
+	
+	public int chromId;
+	public int chromStart;
+	public int chromEnd;
+	public int itemStep;
+	public int itemSpan;
+	public byte type;
+	public int itemCount;
+	
+	public int[] starts, ends;
+	public float[] values;
+	
+	public WigSection() { 
+		this(1024);
+	}
+	
+	public WigSection(int capacity) { 
+		starts = new int[capacity];
+		ends = new int[capacity];
+		values = new float[capacity];
+		itemCount = 0;
+	}
+	
+	private void ensureCapacity(int n) { 
+		if(n > values.length) { 
+			int capacity = Math.max(n, values.length * 2);
+			starts = new int[capacity];
+			ends = new int[capacity];
+			values = new float[capacity];
+		}
+	}
+	
+	/*
+	 * Decodes the section starting at the buffer's position, leaving the position just 
+	 * past its last item.
+	 */
+	public WigSection decode(ByteBuffer buffer) { 
+		chromId = buffer.getInt();
+		chromStart = buffer.getInt();
+		chromEnd = buffer.getInt();
+		itemStep = buffer.getInt();
+		itemSpan = buffer.getInt();
+		type = buffer.get();
+		buffer.get();
+		itemCount = buffer.getShort() & 0xffff;
+		
+		ensureCapacity(itemCount);
+		
+		switch(type) { 
+		case Bigwig.WIGTYPE_BEDGRAPH:
+			for(int i = 0; i < itemCount; i++) { 
+				starts[i] = buffer.getInt();
+				ends[i] = buffer.getInt();
+				values[i] = buffer.getFloat();
+			}
+			break;
+		case Bigwig.WIGTYPE_VARSTEP:
+			for(int i = 0; i < itemCount; i++) { 
+				starts[i] = buffer.getInt();
+				ends[i] = starts[i] + itemSpan;
+				values[i] = buffer.getFloat();
+			}
+			break;
+		case Bigwig.WIGTYPE_FIXEDSTEP:
+			for(int i = 0, s = chromStart; i < itemCount; i++, s += itemStep) { 
+				starts[i] = s;
+				ends[i] = s + itemSpan;
+				values[i] = buffer.getFloat();
+			}
+			break;
+		default:
+			throw new IllegalArgumentException(String.format("Unknown section type %d", type));
+		}
+		
+		return this;
+	}
+	
+	/*
+	 * Index of the first item ending after pos (itemCount if there is none); items in a 
+	 * section are sorted and non-overlapping, so this is a binary search.
+	 */
+	public int firstEndingAfter(int pos) { 
+		int lo = 0, hi = itemCount;
+		while(lo < hi) { 
+			int mid = (lo + hi) >>> 1;
+			if(ends[mid] <= pos) { 
+				lo = mid + 1;
+			} else { 
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,90 @@
+package bigwig.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An AsyncInput over a local file, read through an AsynchronousFileChannel.  Any
+ * number of reads may be outstanding at once; a short read is continued from where
+ * it stopped, so each future completes with the whole range or not at all.
+ */
+public class AsyncFileInput implements AsyncInput {
+
+	private File file;
+	private AsynchronousFileChannel channel;
+
+	public AsyncFileInput(File f) throws IOException {
+		file = f;
+		channel = AsynchronousFileChannel.open(f.toPath(), StandardOpenOption.READ);
+	}
+
+	/*
+	 * Reads complete on the threads of completions instead of the channel's default pool.
+	 */
+	public AsyncFileInput(File f, ExecutorService completions) throws IOException {
+		file = f;
+		channel = AsynchronousFileChannel.open(f.toPath(), Collections.singleton(StandardOpenOption.READ), completions);
+	}
+
+	public long length() throws IOException {
+		return channel.size();
+	}
+
+	public CompletableFuture<ByteBuffer> read(long position, int length) {
+		Read read = new Read(position, length);
+		if(length == 0) {
+			read.future.complete(read.buffer);
+		} else {
+			channel.read(read.buffer, position, null, read);
+		}
+		return read.future;
+	}
+
+	private class Read implements CompletionHandler<Integer,Void> {
+
+		public long position;
+		public ByteBuffer buffer;
+		public CompletableFuture<ByteBuffer> future;
+
+		public Read(long position, int length) {
+			this.position = position;
+			buffer = ByteBuffer.allocate(length);
+			future = new CompletableFuture<ByteBuffer>();
+		}
+
+		public void completed(Integer count, Void attachment) {
+			if(count < 0) {
+				future.completeExceptionally(new EOFException(String.format("%s: %d bytes at %d run past the end", file, buffer.capacity(), position)));
+			} else if(buffer.hasRemaining()) {
+				try {
+					channel.read(buffer, position + buffer.position(), null, this);
+				} catch(RuntimeException e) {
+					future.completeExceptionally(e);
+				}
+			} else {
+				buffer.flip();
+				future.complete(buffer);
+			}
+		}
+
+		public void failed(Throwable error, Void attachment) {
+			future.completeExceptionally(error);
+		}
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public String toString() {
+		return file.toString();
+	}
+}
@@ -0,0 +1,22 @@
+package bigwig.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A source of positional reads that don't block the caller: each read returns at once,
+ * and its future completes (usually on an I/O thread) when the bytes are in.  The
+ * asynchronous counterpart of SeekableInput.readBuffer(), for AsyncBigwig.
+ */
+public interface AsyncInput extends Closeable {
+
+	public long length() throws IOException;
+
+	/**
+	 * Exactly length bytes starting at position, in a big-endian buffer positioned at
+	 * zero.  A read past the end completes exceptionally with an EOFException.
+	 */
+	public CompletableFuture<ByteBuffer> read(long position, int length);
+}
@@ -0,0 +1,112 @@
+package bigwig.io;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A DataInput reading sequentially from a ByteBuffer, in the buffer's byte order.
+ */
+public class ByteBufferDataInput implements DataInput {
+
+	private ByteBuffer buffer;
+
+	public ByteBufferDataInput(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public ByteBuffer buffer() {
+		return buffer;
+	}
+
+	private void require(int n) throws EOFException {
+		if(buffer.remaining() < n) { throw new EOFException(); }
+	}
+
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		try {
+			buffer.get(b, off, len);
+		} catch(BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	public int skipBytes(int n) {
+		int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public byte readByte() throws IOException {
+		require(1);
+		return buffer.get();
+	}
+
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xff;
+	}
+
+	public short readShort() throws IOException {
+		require(2);
+		return buffer.getShort();
+	}
+
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xffff;
+	}
+
+	public char readChar() throws IOException {
+		require(2);
+		return buffer.getChar();
+	}
+
+	public int readInt() throws IOException {
+		require(4);
+		return buffer.getInt();
+	}
+
+	public long readLong() throws IOException {
+		require(8);
+		return buffer.getLong();
+	}
+
+	public float readFloat() throws IOException {
+		require(4);
+		return buffer.getFloat();
+	}
+
+	public double readDouble() throws IOException {
+		require(8);
+		return buffer.getDouble();
+	}
+
+	public String readLine() throws IOException {
+		if(!buffer.hasRemaining()) { return null; }
+		StringBuilder sb = new StringBuilder();
+		while(buffer.hasRemaining()) {
+			int c = buffer.get() & 0xff;
+			if(c == '\n') { break; }
+			if(c == '\r') {
+				if(buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') { buffer.get(); }
+				break;
+			}
+			sb.append((char)c);
+		}
+		return sb.toString();
+	}
+
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+}
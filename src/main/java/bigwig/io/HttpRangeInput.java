@@ -0,0 +1,330 @@
+package bigwig.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A SeekableInput over a file served by HTTP, fetched with Range requests as it's read.
+ *
+ * The file is read in aligned blocks of blockSize bytes.  The most recently used
+ * maxBlocks of them are kept in an LRU cache.  A read fetches only the blocks it's
+ * missing, and each run of adjacent missing blocks is fetched with one request.  So a
+ * coalesced read of many data blocks is one round trip, and the header, index and
+ * B+ tree nodes read by later queries mostly come from the cache.
+ *
+ * readBuffer() is safe to call from several threads.  The cache is locked only for
+ * lookups and inserts, never during a request, so two threads may now and then fetch
+ * the same block.  The DataInput methods share one file pointer, as with
+ * RandomAccessFile.
+ */
+public class HttpRangeInput implements SeekableInput {
+
+	public static final int DEFAULT_BLOCK_SIZE = 64 << 10;
+	public static final int DEFAULT_MAX_BLOCKS = 256;
+
+	private URL url;
+	private int blockSize;
+	private int maxBlocks;
+	private int timeout;
+
+	private long length;
+	private long position;
+
+	private LinkedHashMap<Long,byte[]> blocks;
+
+	private AtomicLong requests, bytesFetched, blockHits, blockMisses;
+
+	public HttpRangeInput(URL url) throws IOException {
+		this(url, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_BLOCKS);
+	}
+
+	public HttpRangeInput(URL url, int blockSize, final int maxBlocks) throws IOException {
+		if(blockSize < 8 || maxBlocks < 1) {
+			throw new IllegalArgumentException(String.format("blockSize %d, maxBlocks %d", blockSize, maxBlocks));
+		}
+		this.url = url;
+		this.blockSize = blockSize;
+		this.maxBlocks = maxBlocks;
+		timeout = 30000;
+		position = 0L;
+		blocks = new LinkedHashMap<Long,byte[]>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Long,byte[]> eldest) {
+				return size() > maxBlocks;
+			}
+		};
+		requests = new AtomicLong(0L);
+		bytesFetched = new AtomicLong(0L);
+		blockHits = new AtomicLong(0L);
+		blockMisses = new AtomicLong(0L);
+		length = fetchLength();
+	}
+
+	public URL getURL() {
+		return url;
+	}
+
+	/*
+	 * Connect and read timeout for each request, in milliseconds.
+	 */
+	public void setTimeout(int millis) {
+		timeout = millis;
+	}
+
+	/*
+	 * The first byte of the file, asked for with a Range header so that the answer's
+	 * Content-Range gives the length (HEAD isn't always allowed on signed URLs).
+	 */
+	private long fetchLength() throws IOException {
+		HttpURLConnection cxn = open(0L, 0L);
+		try {
+			int status = cxn.getResponseCode();
+			if(status != HttpURLConnection.HTTP_PARTIAL) {
+				throw new IOException(String.format("%s: expected 206 Partial Content, got %d (does the server support Range?)", url, status));
+			}
+			String range = cxn.getHeaderField("Content-Range");
+			int slash = range != null ? range.lastIndexOf('/') : -1;
+			if(slash == -1 || range.endsWith("*")) {
+				throw new IOException(String.format("%s: no length in Content-Range \"%s\"", url, range));
+			}
+			drain(cxn.getInputStream());
+			return Long.parseLong(range.substring(slash + 1).trim());
+		} finally {
+			cxn.disconnect();
+		}
+	}
+
+	private HttpURLConnection open(long first, long last) throws IOException {
+		requests.incrementAndGet();
+		HttpURLConnection cxn = (HttpURLConnection)url.openConnection();
+		cxn.setConnectTimeout(timeout);
+		cxn.setReadTimeout(timeout);
+		cxn.setRequestProperty("Range", String.format("bytes=%d-%d", first, last));
+		cxn.setRequestProperty("Accept-Encoding", "identity");
+		return cxn;
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[256];
+		while(in.read(buffer) != -1) {}
+		in.close();
+	}
+
+	/*
+	 * Fetches the count blocks from index first with one request, and caches them.
+	 */
+	private byte[][] fetch(long first, int count) throws IOException {
+		long start = first * blockSize;
+		long end = Math.min(length, (first + count) * blockSize);
+		HttpURLConnection cxn = open(start, end - 1L);
+		byte[][] fetched = new byte[count][];
+		try {
+			int status = cxn.getResponseCode();
+			if(status != HttpURLConnection.HTTP_PARTIAL) {
+				throw new IOException(String.format("%s: bytes %d-%d: expected 206 Partial Content, got %d", url, start, end - 1L, status));
+			}
+			InputStream in = cxn.getInputStream();
+			try {
+				for(int i = 0; i < count; i++) {
+					long blockStart = start + (long)i * blockSize;
+					fetched[i] = new byte[(int)Math.min(blockSize, end - blockStart)];
+					int n = 0;
+					while(n < fetched[i].length) {
+						int read = in.read(fetched[i], n, fetched[i].length - n);
+						if(read == -1) {
+							throw new EOFException(String.format("%s: bytes %d-%d: response ended early", url, start, end - 1L));
+						}
+						n += read;
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} finally {
+			cxn.disconnect();
+		}
+		bytesFetched.addAndGet(end - start);
+		synchronized(blocks) {
+			for(int i = 0; i < count; i++) {
+				blocks.put(first + i, fetched[i]);
+			}
+		}
+		return fetched;
+	}
+
+	public ByteBuffer readBuffer(long pos, int len) throws IOException {
+		if(pos < 0L || pos + len > length) { throw new EOFException(); }
+		ByteBuffer buffer = ByteBuffer.allocate(len);
+		if(len == 0) { return buffer; }
+
+		long firstBlock = pos / blockSize, lastBlock = (pos + len - 1L) / blockSize;
+		int count = (int)(lastBlock - firstBlock + 1L);
+		byte[][] found = new byte[count][];
+		synchronized(blocks) {
+			for(int i = 0; i < count; i++) {
+				found[i] = blocks.get(firstBlock + i);
+			}
+		}
+
+		// one request per run of missing blocks.
+		for(int i = 0; i < count; ) {
+			if(found[i] != null) {
+				blockHits.incrementAndGet();
+				i++;
+				continue;
+			}
+			int j = i;
+			while(j < count && found[j] == null) { j++; }
+			blockMisses.addAndGet(j - i);
+			byte[][] fetched = fetch(firstBlock + i, j - i);
+			System.arraycopy(fetched, 0, found, i, j - i);
+			i = j;
+		}
+
+		for(int i = 0; i < count; i++) {
+			long blockStart = (firstBlock + i) * blockSize;
+			int from = (int)Math.max(0L, pos - blockStart);
+			int to = (int)Math.min((long)found[i].length, pos + len - blockStart);
+			buffer.put(found[i], from, to - from);
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/*
+	 * HTTP requests made (including the one made on opening), bytes they fetched, and
+	 * blocks found in and missing from the cache.
+	 */
+	public long requestCount() { return requests.get(); }
+	public long bytesFetched() { return bytesFetched.get(); }
+	public long blockHits() { return blockHits.get(); }
+	public long blockMisses() { return blockMisses.get(); }
+
+	public void resetCounters() {
+		requests.set(0L);
+		bytesFetched.set(0L);
+		blockHits.set(0L);
+		blockMisses.set(0L);
+	}
+
+	public String toString() {
+		return String.format("%s: %d requests, %d bytes, %d/%d blocks cached", url, requestCount(), bytesFetched(), blockHits(), blockHits() + blockMisses());
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public long getFilePointer() {
+		return position;
+	}
+
+	public void seek(long pos) throws IOException {
+		if(pos < 0L) { throw new IOException(String.format("Negative seek offset %d", pos)); }
+		position = pos;
+	}
+
+	public void close() {
+		synchronized(blocks) {
+			blocks.clear();
+		}
+	}
+
+	private ByteBuffer next(int n) throws IOException {
+		ByteBuffer buffer = readBuffer(position, n);
+		position += n;
+		return buffer;
+	}
+
+	public int read() throws IOException {
+		if(position >= length) { return -1; }
+		return readUnsignedByte();
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) { return 0; }
+		if(position >= length) { return -1; }
+		int n = (int)Math.min((long)len, length - position);
+		readFully(b, off, n);
+		return n;
+	}
+
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		next(len).get(b, off, len);
+	}
+
+	public int skipBytes(int n) throws IOException {
+		int skipped = (int)Math.max(0L, Math.min((long)n, length - position));
+		position += skipped;
+		return skipped;
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public byte readByte() throws IOException {
+		return next(1).get();
+	}
+
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xff;
+	}
+
+	public short readShort() throws IOException {
+		return next(2).getShort();
+	}
+
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xffff;
+	}
+
+	public char readChar() throws IOException {
+		return (char)readShort();
+	}
+
+	public int readInt() throws IOException {
+		return next(4).getInt();
+	}
+
+	public long readLong() throws IOException {
+		return next(8).getLong();
+	}
+
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	public String readLine() throws IOException {
+		if(position >= length) { return null; }
+		StringBuilder sb = new StringBuilder();
+		while(position < length) {
+			int c = readUnsignedByte();
+			if(c == '\n') { break; }
+			if(c == '\r') {
+				if(position < length && readUnsignedByte() != '\n') { position -= 1; }
+				break;
+			}
+			sb.append((char)c);
+		}
+		return sb.toString();
+	}
+
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+}
@@ -0,0 +1,132 @@
+package bigwig.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Block decompression with one Inflater per thread, reset() between blocks, instead of
+ * a new Inflater (and its native zlib state) per block.
+ *
+ * Each thread also keeps a scratch input array, used when the compressed bytes aren't
+ * in a heap buffer (e.g. a mapped file), and a scratch output array for results that
+ * are consumed before the thread's next call.  A thread's Inflater is freed when
+ * release() is called or, failing that, when the thread's state is collected.
+ */
+public class Inflaters { 
+
+	private static AtomicLong created = new AtomicLong(0L);
+
+	private static class State { 
+		public Inflater inflater;
+		public byte[] input, output;
+
+		public State() { 
+			inflater = new Inflater();
+			input = new byte[0];
+			output = new byte[0];
+			created.incrementAndGet();
+		}
+	}
+
+	private static ThreadLocal<State> states = new ThreadLocal<State>() { 
+		protected State initialValue() { 
+			return new State();
+		}
+	};
+
+	private static State state(ByteBuffer input) { 
+		State state = states.get();
+		state.inflater.reset();
+		if(input.hasArray()) { 
+			state.inflater.setInput(input.array(), input.arrayOffset() + input.position(), input.remaining());
+		} else { 
+			if(state.input.length < input.remaining()) { 
+				state.input = new byte[input.remaining()];
+			}
+			int length = input.remaining();
+			input.duplicate().get(state.input, 0, length);
+			state.inflater.setInput(state.input, 0, length);
+		}
+		return state;
+	}
+
+	/*
+	 * Inflates input (from its position to its limit) into output, returning the number
+	 * of bytes written.  Throws DataFormatException if output is too small.
+	 */
+	public static int inflate(ByteBuffer input, byte[] output) throws DataFormatException { 
+		Inflater inflater = state(input).inflater;
+		int length = 0;
+		while(!inflater.finished() && length < output.length) { 
+			int n = inflater.inflate(output, length, output.length - length);
+			if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())) { 
+				break;
+			}
+			length += n;
+		}
+		if(!inflater.finished() && length == output.length) { 
+			// an exact fit may leave the end of the stream unread.
+			inflater.inflate(new byte[1]);
+		}
+		if(!inflater.finished()) { 
+			throw new DataFormatException(String.format("Block doesn't inflate into %d bytes", output.length));
+		}
+		return length;
+	}
+
+	/*
+	 * Inflates input into a new array of exactly the inflated length.  sizeHint is the
+	 * expected length (e.g. the header's uncompressBufSize); more room is made if needed.
+	 */
+	public static byte[] inflate(ByteBuffer input, int sizeHint) throws DataFormatException { 
+		State state = state(input);
+		Inflater inflater = state.inflater;
+		if(state.output.length < sizeHint) { 
+			state.output = new byte[sizeHint];
+		}
+
+		int length = 0;
+		while(!inflater.finished()) { 
+			if(length == state.output.length) { 
+				state.output = Arrays.copyOf(state.output, Math.max(1024, length * 2));
+			}
+			int n = inflater.inflate(state.output, length, state.output.length - length);
+			if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())) { 
+				throw new DataFormatException("Truncated block");
+			}
+			length += n;
+		}
+		return Arrays.copyOf(state.output, length);
+	}
+
+	/*
+	 * This thread's scratch output array, at least size bytes long.  Its contents are
+	 * only good until the thread's next call into Inflaters.
+	 */
+	public static byte[] scratch(int size) { 
+		State state = states.get();
+		if(state.output.length < size) { 
+			state.output = new byte[size];
+		}
+		return state.output;
+	}
+
+	/*
+	 * Ends this thread's Inflater and drops its buffers; the next call starts afresh.
+	 */
+	public static void release() { 
+		states.get().inflater.end();
+		states.remove();
+	}
+
+	/*
+	 * The number of Inflaters created so far, which should stay at about the number
+	 * of threads that have decompressed blocks.
+	 */
+	public static long createdCount() { 
+		return created.get();
+	}
+}
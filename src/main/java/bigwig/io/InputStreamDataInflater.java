@@ -4,79 +4,38 @@ import java.io.DataInput;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
-public class InputStreamDataInflater extends InputStream {
+/**
+ * An InputStreamInflater reading its compressed input from a DataInput.  Inputs that 
+ * can do bulk reads (a SeekableInput, or a DataInputStream) are read a buffer at a 
+ * time; any other DataInput falls back to readByte().  Closing the stream doesn't 
+ * close the DataInput.
+ */
+public class InputStreamDataInflater extends InputStreamInflater {
 	
 	private DataInput inner;
-	private Inflater inflater;
-	
-	private byte[] buffer;
-	private int bufferStart, bufferEnd;
-	
-	private byte[] input;
 	
 	public InputStreamDataInflater(DataInput is) { 
+		super(null);
 		inner = is;
-		inflater = new Inflater();
-		
-		buffer = new byte[1024];
-		bufferStart = bufferEnd = 0;
-		
-		input = new byte[1024];
 	}
-
-	public int read() throws IOException {
-		if(bufferStart >= bufferEnd) { 
-			try {
-				refillBuffer();
-			} catch (DataFormatException e) {
-				e.printStackTrace(System.err);
-				throw new IOException(e);
-			}
+	
+	protected int readInput(byte[] b, int off, int len) throws IOException { 
+		if(inner instanceof SeekableInput) { 
+			return ((SeekableInput)inner).read(b, off, len);
 		}
-		
-		if(bufferStart >= bufferEnd) { 
-			return -1;
+		if(inner instanceof InputStream) { 
+			return ((InputStream)inner).read(b, off, len);
 		}
 		
-		return (int)(buffer[bufferStart++]);
-	}
-	
-	private int readBuffer() throws IOException { 
 		int read = 0;
 		try { 
-			for(int i = 0; i < input.length; i++) { 
-				input[i] = inner.readByte();
-				read += 1;
+			for(; read < len; read++) { 
+				b[off + read] = inner.readByte();
 			}
 		} catch(EOFException e) { 
-			return -1;
+			return read == 0 ? -1 : read;
 		}
 		return read;
 	}
-	
-	private void refillBuffer() throws IOException, DataFormatException {
-		bufferEnd = inflater.inflate(buffer, 0, buffer.length);
-		bufferStart = 0;
-		
-		if(bufferEnd == 0) { 
-			if(inflater.needsInput()) {
-				int inputLength = readBuffer();
-				
-				if(inputLength == -1) {
-					throw new IOException("unexpected input end.");
-				} else if(inflater.needsInput()) { 
-					inflater.setInput(input, 0, inputLength);
-					refillBuffer();
-				} else { 
-					throw new IllegalStateException();
-				}
-				
-			} else if(inflater.needsDictionary()) {  
-				throw new IOException("needs dictionary");
-			}
-		}
-	}
 }
@@ -5,6 +5,11 @@ import java.io.InputStream;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+/**
+ * An InputStream inflating a zlib stream read from another InputStream.  Bulk reads 
+ * inflate straight into the caller's array, and the compressed input is pulled in 
+ * with bulk reads too (see readInput).
+ */
 public class InputStreamInflater extends InputStream {
 	
 	private InputStream inner;
@@ -22,43 +27,73 @@ public class InputStreamInflater extends InputStream {
 		buffer = new byte[1024];
 		bufferStart = bufferEnd = 0;
 		
-		input = new byte[1024];
+		input = new byte[8192];
 	}
 
 	public int read() throws IOException {
 		if(bufferStart >= bufferEnd) { 
-			try {
-				refillBuffer();
-			} catch (DataFormatException e) {
-				throw new IOException(e);
-			}
+			bufferStart = 0;
+			bufferEnd = Math.max(0, inflate(buffer, 0, buffer.length));
 		}
 		
 		if(bufferStart >= bufferEnd) { 
 			return -1;
 		}
 		
-		return (int)(buffer[bufferStart++]);
+		return buffer[bufferStart++] & 0xff;
 	}
 	
-	private void refillBuffer() throws IOException, DataFormatException {
-		bufferEnd = inflater.inflate(buffer, 0, buffer.length);
-		bufferStart = 0;
-		
-		if(bufferEnd == 0) { 
-			if(inflater.needsInput()) { 
-				int inputLength = inner.read(input, 0, input.length);
-				
-				if(inputLength == -1) {
-					throw new IOException("unexpected input end.");
-				} else { 
+	public int read(byte[] b, int off, int len) throws IOException { 
+		if(len == 0) { return 0; }
+		if(bufferStart < bufferEnd) { 
+			int n = Math.min(len, bufferEnd - bufferStart);
+			System.arraycopy(buffer, bufferStart, b, off, n);
+			bufferStart += n;
+			return n;
+		}
+		return inflate(b, off, len);
+	}
+	
+	public void close() throws IOException { 
+		inflater.end();
+		if(inner != null) { inner.close(); }
+	}
+	
+	/*
+	 * Inflates at least one byte into b, reading more input as needed, or returns -1 
+	 * at the end of the compressed stream.
+	 */
+	private int inflate(byte[] b, int off, int len) throws IOException { 
+		try { 
+			while(true) { 
+				int n = inflater.inflate(b, off, len);
+				if(n > 0) { 
+					return n;
+				}
+				if(inflater.finished()) { 
+					return -1;
+				}
+				if(inflater.needsDictionary()) { 
+					throw new IOException("needs dictionary");
+				}
+				if(inflater.needsInput()) { 
+					int inputLength = readInput(input, 0, input.length);
+					if(inputLength == -1) { 
+						throw new IOException("unexpected input end.");
+					}
 					inflater.setInput(input, 0, inputLength);
-					refillBuffer();
 				}
-				
-			} else if(inflater.needsDictionary()) {  
-				throw new IOException("needs dictionary");
 			}
+		} catch(DataFormatException e) { 
+			throw new IOException(e);
 		}
 	}
+	
+	/*
+	 * Reads up to len bytes of compressed input, returning the count or -1 at the end 
+	 * of the input.
+	 */
+	protected int readInput(byte[] b, int off, int len) throws IOException { 
+		return inner.read(b, off, len);
+	}
 }
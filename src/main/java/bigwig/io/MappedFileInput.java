@@ -0,0 +1,246 @@
+package bigwig.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A SeekableInput over a read-only memory mapping of an entire file.
+ *
+ * A single MappedByteBuffer is limited to 2GB, so the file is mapped as a series of
+ * power-of-two sized segments.  Reads that fall inside one segment are absolute loads
+ * from that segment; the (rare) reads that straddle a segment boundary are assembled
+ * byte by byte.
+ */
+public class MappedFileInput implements SeekableInput {
+
+	public static final int DEFAULT_SEGMENT_BITS = 30;
+
+	private MappedByteBuffer[] segments;
+	private int segmentBits;
+	private long segmentMask;
+
+	private long length;
+	private long position;
+
+	private byte[] scratch;
+
+	public MappedFileInput(File f) throws IOException {
+		this(f, DEFAULT_SEGMENT_BITS);
+	}
+
+	public MappedFileInput(File f, int segmentBits) throws IOException {
+		if(segmentBits < 3 || segmentBits > 30) {
+			throw new IllegalArgumentException(String.format("segmentBits %d", segmentBits));
+		}
+		this.segmentBits = segmentBits;
+		segmentMask = (1L << segmentBits) - 1L;
+		scratch = new byte[8];
+		position = 0L;
+
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			length = channel.size();
+
+			long segmentSize = 1L << segmentBits;
+			int count = (int)((length + segmentSize - 1L) >>> segmentBits);
+			segments = new MappedByteBuffer[count];
+
+			for(int i = 0; i < count; i++) {
+				long start = (long)i << segmentBits;
+				long size = Math.min(segmentSize, length - start);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public long getFilePointer() {
+		return position;
+	}
+
+	public void seek(long pos) throws IOException {
+		if(pos < 0L) { throw new IOException(String.format("Negative seek offset %d", pos)); }
+		position = pos;
+	}
+
+	public void close() throws IOException {
+		// the mappings themselves are released when the buffers are collected.
+		segments = new MappedByteBuffer[0];
+		length = 0L;
+	}
+
+	/*
+	 * Returns the segment holding the next n bytes, or null if those bytes straddle
+	 * a segment boundary.  Throws EOFException if fewer than n bytes remain.
+	 */
+	private ByteBuffer segment(int n) throws EOFException {
+		if(position + n > length) { throw new EOFException(); }
+		ByteBuffer seg = segments[(int)(position >>> segmentBits)];
+		int offset = (int)(position & segmentMask);
+		return offset + n <= seg.limit() ? seg : null;
+	}
+
+	private int offset() {
+		return (int)(position & segmentMask);
+	}
+
+	public int read() throws IOException {
+		if(position >= length) { return -1; }
+		return readUnsignedByte();
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) { return 0; }
+		if(position >= length) { return -1; }
+		int n = (int)Math.min((long)len, length - position);
+		readFully(b, off, n);
+		return n;
+	}
+
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		if(position + len > length) { throw new EOFException(); }
+		while(len > 0) {
+			ByteBuffer seg = segments[(int)(position >>> segmentBits)].duplicate();
+			int offset = offset();
+			int n = Math.min(len, seg.limit() - offset);
+			seg.position(offset);
+			seg.get(b, off, n);
+			position += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	public ByteBuffer readBuffer(long pos, int len) throws IOException {
+		if(pos < 0L || pos + len > length) { throw new EOFException(); }
+		ByteBuffer seg = segments[(int)(pos >>> segmentBits)];
+		int offset = (int)(pos & segmentMask);
+
+		if(offset + len <= seg.limit()) {
+			ByteBuffer view = seg.duplicate();
+			view.position(offset);
+			view.limit(offset + len);
+			return view.slice();
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(len);
+		while(buffer.hasRemaining()) {
+			ByteBuffer view = segments[(int)(pos >>> segmentBits)].duplicate();
+			offset = (int)(pos & segmentMask);
+			int n = Math.min(buffer.remaining(), view.limit() - offset);
+			view.position(offset);
+			view.limit(offset + n);
+			buffer.put(view);
+			pos += n;
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	public int skipBytes(int n) throws IOException {
+		int skipped = (int)Math.max(0L, Math.min((long)n, length - position));
+		position += skipped;
+		return skipped;
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public byte readByte() throws IOException {
+		ByteBuffer seg = segment(1);
+		byte b = seg.get(offset());
+		position += 1;
+		return b;
+	}
+
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xff;
+	}
+
+	public short readShort() throws IOException {
+		ByteBuffer seg = segment(2);
+		if(seg == null) {
+			readFully(scratch, 0, 2);
+			return (short)(((scratch[0] & 0xff) << 8) | (scratch[1] & 0xff));
+		}
+		short v = seg.getShort(offset());
+		position += 2;
+		return v;
+	}
+
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xffff;
+	}
+
+	public char readChar() throws IOException {
+		return (char)readShort();
+	}
+
+	public int readInt() throws IOException {
+		ByteBuffer seg = segment(4);
+		if(seg == null) {
+			readFully(scratch, 0, 4);
+			return ((scratch[0] & 0xff) << 24) | ((scratch[1] & 0xff) << 16) |
+					((scratch[2] & 0xff) << 8) | (scratch[3] & 0xff);
+		}
+		int v = seg.getInt(offset());
+		position += 4;
+		return v;
+	}
+
+	public long readLong() throws IOException {
+		ByteBuffer seg = segment(8);
+		if(seg == null) {
+			long high = readInt() & 0xffffffffL;
+			long low = readInt() & 0xffffffffL;
+			return (high << 32) | low;
+		}
+		long v = seg.getLong(offset());
+		position += 8;
+		return v;
+	}
+
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	public String readLine() throws IOException {
+		if(position >= length) { return null; }
+		StringBuilder sb = new StringBuilder();
+		while(position < length) {
+			int c = readUnsignedByte();
+			if(c == '\n') { break; }
+			if(c == '\r') {
+				if(position < length && readUnsignedByte() != '\n') { position -= 1; }
+				break;
+			}
+			sb.append((char)c);
+		}
+		return sb.toString();
+	}
+
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+}
@@ -3,6 +3,11 @@ package bigwig.io;
 import java.io.*;
 import java.util.zip.*;
 
+/**
+ * An OutputStream writing a single zlib stream to another OutputStream.  flush() does 
+ * a SYNC_FLUSH, so that everything written so far can be inflated, without ending the 
+ * stream; the stream is finished by close().
+ */
 public class OutputStreamDeflater extends OutputStream {
 	
 	private Deflater deflater;
@@ -14,42 +19,72 @@ public class OutputStreamDeflater extends OutputStream {
 	private byte[] deflated;
 	
 	public OutputStreamDeflater(OutputStream inner) { 
+		this(inner, Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	public OutputStreamDeflater(OutputStream inner, int level) { 
 		this.inner = inner;
-		deflater = new Deflater();
+		deflater = new Deflater(level);
 		
-		buffer = new byte[1024];
+		buffer = new byte[8192];
 		bufferLength = 0;
 		
-		deflated = new byte[1024];
+		deflated = new byte[8192];
 	}
 
 	public void write(int b) throws IOException {
 		buffer[bufferLength++] = (byte)b;
 		if(bufferLength >= buffer.length) { 
-			flush();
+			deflateBuffer(Deflater.NO_FLUSH);
 		}		
 	}
 	
-	public void flush() throws IOException { 
+	public void write(byte[] b, int off, int len) throws IOException { 
+		while(len > 0) { 
+			int n = Math.min(len, buffer.length - bufferLength);
+			System.arraycopy(b, off, buffer, bufferLength, n);
+			bufferLength += n;
+			off += n;
+			len -= n;
+			if(bufferLength >= buffer.length) { 
+				deflateBuffer(Deflater.NO_FLUSH);
+			}
+		}
+	}
+	
+	/*
+	 * Deflates the buffered bytes, writing out whatever compressed output the flush 
+	 * mode calls for.
+	 */
+	private void deflateBuffer(int flush) throws IOException { 
 		deflater.setInput(buffer, 0, bufferLength);
-		deflater.finish();
+		bufferLength = 0;
 		
-		while(!deflater.finished()) { 
-			int count = deflater.deflate(deflated);
-			
-			if(count > 0) {
+		while(true) { 
+			int count = deflater.deflate(deflated, 0, deflated.length, flush);
+			if(count > 0) { 
 				inner.write(deflated, 0, count);
-			} else { 
-				throw new IllegalStateException();
+			}
+			// a full output buffer may mean there's more to come.
+			if(count < deflated.length && deflater.needsInput()) { 
+				break;
 			}
 		}
-		bufferLength = 0;
-		
+	}
+	
+	public void flush() throws IOException { 
+		deflateBuffer(Deflater.SYNC_FLUSH);
 		inner.flush();
 	}
 	
 	public void close() throws IOException { 
-		flush();
+		deflateBuffer(Deflater.NO_FLUSH);
+		deflater.finish();
+		while(!deflater.finished()) { 
+			int count = deflater.deflate(deflated);
+			inner.write(deflated, 0, count);
+		}
+		deflater.end();
 		inner.close();
 	}
 }
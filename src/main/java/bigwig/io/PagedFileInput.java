@@ -0,0 +1,258 @@
+package bigwig.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A SeekableInput that reads its file a page at a time into a heap buffer, so the
+ * DataInput methods and small reads are served from memory rather than costing a
+ * system call each (as RandomAccessFile's do).
+ *
+ * Bulk reads larger than a page bypass the buffer and go straight to the channel.
+ * Positional reads (readBuffer, and read with a position) are preads that neither
+ * use nor move the file pointer, and are safe to call from several threads; the rest
+ * of the methods share the one page and file pointer, as with RandomAccessFile.
+ */
+public class PagedFileInput implements SeekableInput { 
+
+	public static final int DEFAULT_PAGE_SIZE = 64 << 10;
+
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private long length;
+
+	/*
+	 * page holds the file's bytes [pageStart, pageStart + pageLength); position is the
+	 * file pointer, which may lie outside the page.
+	 */
+	private byte[] page;
+	private long pageStart;
+	private int pageLength;
+	private long position;
+
+	public PagedFileInput(File f) throws IOException { 
+		this(f, DEFAULT_PAGE_SIZE);
+	}
+
+	public PagedFileInput(File f, int pageSize) throws IOException { 
+		this(new RandomAccessFile(f, "r"), pageSize);
+	}
+
+	/*
+	 * Reads through raf's channel, starting at raf's file pointer.  Closing this closes raf.
+	 */
+	public PagedFileInput(RandomAccessFile raf, int pageSize) throws IOException { 
+		if(pageSize < 8) { 
+			throw new IllegalArgumentException(String.format("pageSize %d", pageSize));
+		}
+		this.raf = raf;
+		channel = raf.getChannel();
+		length = channel.size();
+		page = new byte[pageSize];
+		pageStart = 0L;
+		pageLength = 0;
+		position = raf.getFilePointer();
+	}
+
+	public long length() { 
+		return length;
+	}
+
+	public long getFilePointer() { 
+		return position;
+	}
+
+	public void seek(long pos) throws IOException { 
+		if(pos < 0L) { throw new IOException(String.format("Negative seek offset %d", pos)); }
+		position = pos;
+	}
+
+	public void close() throws IOException { 
+		raf.close();
+		// readers that outlive their file (see BigwigMetadata) shouldn't keep the page.
+		page = new byte[8];
+		pageLength = 0;
+	}
+
+	/*
+	 * Makes sure the page holds the n bytes at the file pointer (n <= page size), and
+	 * returns their offset within the page.
+	 */
+	private int fill(int n) throws IOException { 
+		long offset = position - pageStart;
+		if(offset >= 0L && offset + n <= pageLength) { 
+			return (int)offset;
+		}
+		if(position + n > length) { 
+			throw new EOFException();
+		}
+		pageStart = position;
+		pageLength = (int)Math.min((long)page.length, length - position);
+		RandomAccessFileInput.readFully(channel, pageStart, ByteBuffer.wrap(page, 0, pageLength));
+		return 0;
+	}
+
+	public int read() throws IOException { 
+		if(position >= length) { return -1; }
+		return readUnsignedByte();
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException { 
+		if(len == 0) { return 0; }
+		if(position >= length) { return -1; }
+		int n = (int)Math.min((long)len, length - position);
+		readFully(b, off, n);
+		return n;
+	}
+
+	/*
+	 * Transfers as many bytes as dst has room for (or the file has left) from the file
+	 * pointer into dst, returning the count or -1 at the end of the file.
+	 */
+	public int read(ByteBuffer dst) throws IOException { 
+		if(!dst.hasRemaining()) { return 0; }
+		if(position >= length) { return -1; }
+		int n = (int)Math.min((long)dst.remaining(), length - position);
+		if(dst.hasArray()) { 
+			readFully(dst.array(), dst.arrayOffset() + dst.position(), n);
+			dst.position(dst.position() + n);
+		} else { 
+			ByteBuffer slice = dst.duplicate();
+			slice.limit(slice.position() + n);
+			readFully(slice);
+			dst.position(dst.position() + n);
+		}
+		return n;
+	}
+
+	private void readFully(ByteBuffer dst) throws IOException { 
+		while(dst.hasRemaining()) { 
+			int chunk = Math.min(dst.remaining(), page.length);
+			int offset = fill(chunk);
+			dst.put(page, offset, chunk);
+			position += chunk;
+		}
+	}
+
+	/*
+	 * Positional read of up to len bytes at pos into b, returning the count or -1 if
+	 * pos is at or past the end of the file.
+	 */
+	public int read(long pos, byte[] b, int off, int len) throws IOException { 
+		if(pos >= length) { return -1; }
+		int n = (int)Math.min((long)len, length - pos);
+		RandomAccessFileInput.readFully(channel, pos, ByteBuffer.wrap(b, off, n));
+		return n;
+	}
+
+	public ByteBuffer readBuffer(long pos, int len) throws IOException { 
+		if(pos < 0L || pos + len > length) { throw new EOFException(); }
+		ByteBuffer buffer = ByteBuffer.allocate(len);
+		RandomAccessFileInput.readFully(channel, pos, buffer);
+		buffer.flip();
+		return buffer;
+	}
+
+	public void readFully(byte[] b) throws IOException { 
+		readFully(b, 0, b.length);
+	}
+
+	public void readFully(byte[] b, int off, int len) throws IOException { 
+		if(position + len > length) { throw new EOFException(); }
+
+		long offset = position - pageStart;
+		if(offset >= 0L && offset < pageLength) { 
+			int n = Math.min(len, pageLength - (int)offset);
+			System.arraycopy(page, (int)offset, b, off, n);
+			position += n;
+			off += n;
+			len -= n;
+		}
+		if(len >= page.length) { 
+			RandomAccessFileInput.readFully(channel, position, ByteBuffer.wrap(b, off, len));
+			position += len;
+		} else if(len > 0) { 
+			System.arraycopy(page, fill(len), b, off, len);
+			position += len;
+		}
+	}
+
+	public int skipBytes(int n) throws IOException { 
+		int skipped = (int)Math.max(0L, Math.min((long)n, length - position));
+		position += skipped;
+		return skipped;
+	}
+
+	public boolean readBoolean() throws IOException { 
+		return readByte() != 0;
+	}
+
+	public byte readByte() throws IOException { 
+		byte b = page[fill(1)];
+		position += 1;
+		return b;
+	}
+
+	public int readUnsignedByte() throws IOException { 
+		return readByte() & 0xff;
+	}
+
+	public short readShort() throws IOException { 
+		int i = fill(2);
+		position += 2;
+		return (short)(((page[i] & 0xff) << 8) | (page[i+1] & 0xff));
+	}
+
+	public int readUnsignedShort() throws IOException { 
+		return readShort() & 0xffff;
+	}
+
+	public char readChar() throws IOException { 
+		return (char)readShort();
+	}
+
+	public int readInt() throws IOException { 
+		int i = fill(4);
+		position += 4;
+		return ((page[i] & 0xff) << 24) | ((page[i+1] & 0xff) << 16) |
+				((page[i+2] & 0xff) << 8) | (page[i+3] & 0xff);
+	}
+
+	public long readLong() throws IOException { 
+		long high = readInt() & 0xffffffffL;
+		long low = readInt() & 0xffffffffL;
+		return (high << 32) | low;
+	}
+
+	public float readFloat() throws IOException { 
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public double readDouble() throws IOException { 
+		return Double.longBitsToDouble(readLong());
+	}
+
+	public String readLine() throws IOException { 
+		if(position >= length) { return null; }
+		StringBuilder sb = new StringBuilder();
+		while(position < length) { 
+			int c = readUnsignedByte();
+			if(c == '\n') { break; }
+			if(c == '\r') { 
+				if(position < length && readUnsignedByte() != '\n') { position -= 1; }
+				break;
+			}
+			sb.append((char)c);
+		}
+		return sb.toString();
+	}
+
+	public String readUTF() throws IOException { 
+		return DataInputStream.readUTF(this);
+	}
+}
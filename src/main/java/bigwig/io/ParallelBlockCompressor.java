@@ -0,0 +1,154 @@
+package bigwig.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a sequence of blocks, each into its own zlib stream, on a pool of worker
+ * threads, and hands them back in the order they were submitted.
+ *
+ * Each compressed block goes to its submitter's Listener on the submitting thread,
+ * during a later submit() or drain() call, so listeners can write to a stream (and
+ * note where the block went) without synchronizing.  At most a few blocks per thread
+ * are in flight at once; submit() waits for the oldest when that limit is reached.
+ * With threads <= 1 every block is compressed and handed back inside submit().
+ */
+public class ParallelBlockCompressor implements Closeable { 
+
+	/*
+	 * Given each block once it's compressed, in submission order.
+	 */
+	public static interface Listener { 
+		public void compressed(byte[] block) throws IOException;
+	}
+
+	private int level;
+
+	private ExecutorService pool;
+	private int maxPending;
+	private ArrayDeque<Pending> pending;
+	private ConcurrentLinkedQueue<Deflater> deflaters;
+
+	private AtomicLong bytesIn, bytesOut;
+
+	private static class Pending { 
+		public Future<byte[]> compressed;
+		public Listener listener;
+	}
+
+	public ParallelBlockCompressor(int threads, int level) { 
+		this.level = level;
+		pool = threads > 1 ? Executors.newFixedThreadPool(threads, new ThreadFactory() { 
+			public Thread newThread(Runnable r) { 
+				Thread t = new Thread(r, "bigwig-compressor");
+				t.setDaemon(true);
+				return t;
+			}
+		}) : null;
+		maxPending = Math.max(1, threads) * 4;
+		pending = new ArrayDeque<Pending>();
+		deflaters = new ConcurrentLinkedQueue<Deflater>();
+		bytesIn = new AtomicLong(0L);
+		bytesOut = new AtomicLong(0L);
+	}
+
+	/*
+	 * Queues length bytes of block for compression.  The compressor owns block from
+	 * here on: the caller must not change it.
+	 */
+	public void submit(final byte[] block, final int length, Listener listener) throws IOException { 
+		if(pool == null) { 
+			listener.compressed(compress(block, length));
+			return;
+		}
+		Pending p = new Pending();
+		p.listener = listener;
+		p.compressed = pool.submit(new Callable<byte[]>() { 
+			public byte[] call() { 
+				return compress(block, length);
+			}
+		});
+		pending.add(p);
+
+		while(!pending.isEmpty() && (pending.size() > maxPending || pending.peek().compressed.isDone())) { 
+			handOldest();
+		}
+	}
+
+	/*
+	 * Waits for every submitted block and hands it to its listener.
+	 */
+	public void drain() throws IOException { 
+		while(!pending.isEmpty()) { 
+			handOldest();
+		}
+	}
+
+	private void handOldest() throws IOException { 
+		Pending p = pending.poll();
+		try { 
+			p.listener.compressed(p.compressed.get());
+		} catch(InterruptedException e) { 
+			throw new InterruptedIOException();
+		} catch(ExecutionException e) { 
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private byte[] compress(byte[] block, int length) { 
+		Deflater deflater = deflaters.poll();
+		if(deflater == null) { 
+			deflater = new Deflater(level);
+		}
+		try { 
+			deflater.setInput(block, 0, length);
+			deflater.finish();
+			byte[] output = new byte[Math.max(64, length / 2)];
+			int size = 0;
+			while(!deflater.finished()) { 
+				if(size == output.length) { 
+					output = Arrays.copyOf(output, output.length * 2);
+				}
+				size += deflater.deflate(output, size, output.length - size);
+			}
+			bytesIn.addAndGet(length);
+			bytesOut.addAndGet(size);
+			return size == output.length ? output : Arrays.copyOf(output, size);
+		} finally { 
+			deflater.reset();
+			deflaters.add(deflater);
+		}
+	}
+
+	public long bytesIn() { return bytesIn.get(); }
+	public long bytesOut() { return bytesOut.get(); }
+
+	/*
+	 * Uncompressed over compressed bytes, so far.
+	 */
+	public double compressionRatio() { 
+		long out = bytesOut.get();
+		return out == 0L ? 0.0 : (double)bytesIn.get() / (double)out;
+	}
+
+	/*
+	 * Drains any blocks still in flight and frees the workers and Deflaters.
+	 */
+	public void close() throws IOException { 
+		try { 
+			drain();
+		} finally { 
+			if(pool != null) { pool.shutdown(); }
+			Deflater deflater;
+			while((deflater = deflaters.poll()) != null) { 
+				deflater.end();
+			}
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package bigwig.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class RandomAccessFileInput extends RandomAccessFile implements SeekableInput {
+	
+	private FileChannel channel;
+
+	public RandomAccessFileInput(File f) throws IOException { 
+		super(f, "r");
+		channel = getChannel();
+	}
+
+	public ByteBuffer readBuffer(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		readFully(channel, position, buffer);
+		buffer.flip();
+		return buffer;
+	}
+	
+	/*
+	 * FileChannel's positional read is a pread(2): it doesn't touch the channel's 
+	 * position, so concurrent callers don't interfere with each other or with the 
+	 * RandomAccessFile cursor.
+	 */
+	public static void readFully(FileChannel channel, long position, ByteBuffer dst) throws IOException { 
+		while(dst.hasRemaining()) { 
+			int read = channel.read(dst, position);
+			if(read == -1) { throw new EOFException(); }
+			position += read;
+		}
+	}
+}
@@ -1,39 +1,43 @@
 package bigwig.io;
 
-import java.io.EOFException;
-import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 
+/**
+ * An InputStream reading from a SeekableInput's file pointer onwards.
+ */
 public class RandomInputStream extends InputStream {
 	
-	private RandomAccessFile file;
+	private SeekableInput input;
 
-	protected RandomInputStream(RandomAccessFile ins) {
-		file = ins;
+	protected RandomInputStream(RandomAccessFile ins) throws IOException {
+		this(new PagedFileInput(ins, PagedFileInput.DEFAULT_PAGE_SIZE));
+	}
+	
+	public RandomInputStream(SeekableInput in) { 
+		input = in;
 	}
 	
 	public boolean markSupported() { return false; }
 	
 	public long skip(long n) throws IOException { 
-		long t = file.getFilePointer();
-		long l = file.length();
-		long skippable = Math.min(n, l-t);
-		file.seek(t + skippable);
+		long t = input.getFilePointer();
+		long l = input.length();
+		long skippable = Math.max(0L, Math.min(n, l-t));
+		input.seek(t + skippable);
 		return skippable;
 	}
 	
 	public int available() throws IOException { 
-		return (int)(file.length() - file.getFilePointer());
+		return (int)Math.min((long)Integer.MAX_VALUE, Math.max(0L, input.length() - input.getFilePointer()));
 	}
 
 	public int read() throws IOException {
-		try { 
-			return (int)file.readByte();
-		} catch(EOFException e) { 
+		if(input.getFilePointer() >= input.length()) { 
 			return -1;
 		}
+		return input.readUnsignedByte();
 	}
 	
 	public int read(byte[] buffer) throws IOException { 
@@ -41,19 +45,10 @@ public class RandomInputStream extends InputStream {
 	}
 	
 	public void close() throws IOException { 
-		System.err.println("Closing RandomInputStream...");
-		file.close();
+		input.close();
 	}
 	
 	public int read(byte[] buffer, int offset, int length) throws IOException { 
-		int c = 0;
-		try { 
-			for(int i = 0; i < length; i++) {
-				buffer[offset+i] = file.readByte();
-
-			}
-		} catch(EOFException e) { 
-		}
-		return c;
+		return input.read(buffer, offset, length);
 	}
 }
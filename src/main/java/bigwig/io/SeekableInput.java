@@ -0,0 +1,29 @@
+package bigwig.io;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A big-endian DataInput with a movable file pointer, the subset of RandomAccessFile 
+ * that the Bigwig reader depends on.
+ */
+public interface SeekableInput extends DataInput, Closeable {
+
+	public long length() throws IOException;
+	
+	public long getFilePointer() throws IOException;
+	
+	public void seek(long pos) throws IOException;
+	
+	public int read(byte[] b, int off, int len) throws IOException;
+	
+	/**
+	 * Positional read of exactly length bytes starting at position.  This neither uses 
+	 * nor moves the file pointer, and is safe to call from several threads at once.  
+	 * The returned buffer is positioned at zero, big-endian, and may be a read-only 
+	 * view onto shared storage.
+	 */
+	public ByteBuffer readBuffer(long position, int length) throws IOException;
+}
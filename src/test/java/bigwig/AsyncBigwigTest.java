@@ -0,0 +1,94 @@
+package bigwig;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+import bigwig.io.AsyncFileInput;
+
+public class AsyncBigwigTest {
+
+	private TestBigwigFiles spec;
+	private File file;
+	private ExecutorService decoder;
+
+	@BeforeClass
+	public void writeFile() throws IOException {
+		spec = new TestBigwigFiles();
+		spec.chromCount = 3;
+		spec.itemsPerChrom = 5000;
+		spec.itemsPerBlock = 16;
+		file = TestBigwigFiles.write(spec);
+		decoder = Executors.newFixedThreadPool(2);
+	}
+
+	@AfterClass
+	public void stopDecoder() {
+		decoder.shutdown();
+	}
+
+	@DataProvider(name = "options")
+	public Object[][] options() {
+		BigwigOptions flat = new BigwigOptions();
+		flat.flatIndex = true;
+		BigwigOptions coalesced = new BigwigOptions();
+		coalesced.coalesceGap = 1 << 16;
+		return new Object[][] { { new BigwigOptions() }, { flat }, { coalesced } };
+	}
+
+	@Test(dataProvider = "options")
+	public void testMatchesBlockingQueries(BigwigOptions options) throws Exception {
+		AsyncBigwig async = new AsyncBigwig(file, options, decoder);
+		Bigwig bigwig = new Bigwig(file);
+
+		// every query is outstanding before the first is waited on.
+		Random rand = new Random(17L);
+		List<int[]> regions = new ArrayList<int[]>();
+		List<CompletableFuture<Intervals>> futures = new ArrayList<CompletableFuture<Intervals>>();
+		for(int q = 0; q < 200; q++) {
+			int chrom = rand.nextInt(spec.chromCount);
+			int start = rand.nextInt(spec.chromSize());
+			int end = start + 1 + rand.nextInt(q % 10 == 0 ? spec.chromSize() : 2000);
+			regions.add(new int[] { chrom, start, end });
+			futures.add(async.query(TestBigwigFiles.chromName(chrom), start, end));
+		}
+
+		for(int q = 0; q < regions.size(); q++) {
+			int[] region = regions.get(q);
+			Intervals expected = bigwig.extract(region[0], region[1], region[2]);
+			Intervals actual = futures.get(q).get(10, TimeUnit.SECONDS);
+			assertEquals(actual.size, expected.size);
+			for(int i = 0; i < expected.size; i++) {
+				assertEquals(actual.chromIds[i], expected.chromIds[i]);
+				assertEquals(actual.starts[i], expected.starts[i]);
+				assertEquals(actual.ends[i], expected.ends[i]);
+				assertEquals(actual.values[i], expected.values[i]);
+			}
+		}
+
+		assertEquals(async.query("chr1", 0, spec.chromSize()).get().size, spec.itemsPerChrom);
+		assertEquals(async.query("chrUn", 0, 1000).get().size, 0);
+		assertEquals(async.query("chr1", spec.chromSize() + 1000, spec.chromSize() + 2000).get().size, 0);
+
+		async.close();
+		bigwig.close();
+	}
+
+	@Test
+	public void testReadPastEnd() throws Exception {
+		AsyncFileInput input = new AsyncFileInput(file);
+		ByteBuffer buffer = input.read(input.length() - 4, 4).get();
+		assertEquals(buffer.remaining(), 4);
+		try {
+			input.read(input.length() - 4, 8).get();
+			fail("read past the end");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof EOFException);
+		}
+		input.close();
+	}
+}
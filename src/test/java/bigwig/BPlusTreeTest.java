@@ -0,0 +1,83 @@
+package bigwig;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class BPlusTreeTest {
+
+	private File file;
+	private Map<String,Integer> ids;
+
+	/*
+	 * 50 names with a fan-out of 4 make a three-level chromosome tree.
+	 */
+	@BeforeClass
+	public void writeFile() throws IOException {
+		Map<String,Integer> sizes = new HashMap<String,Integer>();
+		for(int c = 0; c < 50; c++) {
+			sizes.put(String.format("scaffold_%d", c), 1000 + c);
+		}
+		file = File.createTempFile("btree", ".bw");
+		file.deleteOnExit();
+		BigwigWriter writer = new BigwigWriter(file, sizes);
+		writer.blockSize = 4;
+		ids = writer.getChromIds();
+		writer.close();
+	}
+
+	private static int[] chrom(byte[] value) {
+		ByteBuffer buffer = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN);
+		return new int[] { buffer.getInt(), buffer.getInt() };
+	}
+
+	@Test
+	public void testFind() throws IOException {
+		Bigwig bigwig = new Bigwig(file);
+		BPlusTree tree = new BPlusTree(bigwig, bigwig.header.chromosomeTreeOffset);
+		assertEquals(tree.itemCount(), 50L);
+		assertEquals(tree.valSize(), 8);
+		for(Map.Entry<String,Integer> e : ids.entrySet()) {
+			List<byte[]> found = tree.find(e.getKey());
+			assertEquals(found.size(), 1);
+			int[] chrom = chrom(found.get(0));
+			assertEquals(chrom[0], (int)e.getValue());
+			assertEquals(chrom[1], 1000 + Integer.parseInt(e.getKey().substring(9)));
+		}
+		assertTrue(tree.find("scaffold_50").isEmpty());
+		assertTrue(tree.find("scaffold").isEmpty());
+		assertTrue(tree.find("aaa").isEmpty());
+		assertTrue(tree.find("zzz").isEmpty());
+		assertTrue(tree.find("scaffold_1000000").isEmpty());
+		bigwig.close();
+	}
+
+	@Test
+	public void testFindAll() throws IOException {
+		Bigwig bigwig = new Bigwig(file);
+		BPlusTree tree = new BPlusTree(bigwig, bigwig.header.chromosomeTreeOffset);
+		List<String> keys = new ArrayList<String>();
+		for(int c = 60; c >= 0; c -= 3) {
+			keys.add(String.format("scaffold_%d", c));
+		}
+		keys.add("");
+		keys.add("scaffold_7");
+
+		List<List<byte[]>> values = tree.findAll(keys);
+		assertEquals(values.size(), keys.size());
+		for(int i = 0; i < keys.size(); i++) {
+			Integer id = ids.get(keys.get(i));
+			if(id == null) {
+				assertTrue(values.get(i).isEmpty(), keys.get(i));
+			} else {
+				assertEquals(values.get(i).size(), 1, keys.get(i));
+				assertEquals(chrom(values.get(i).get(0))[0], (int)id, keys.get(i));
+			}
+		}
+		bigwig.close();
+	}
+}
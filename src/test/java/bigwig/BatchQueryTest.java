@@ -0,0 +1,87 @@
+package bigwig;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.util.*;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class BatchQueryTest {
+
+	private TestBigwigFiles spec;
+	private File file;
+	private List<Region> regions;
+
+	@BeforeClass
+	public void writeFile() throws IOException {
+		spec = new TestBigwigFiles();
+		spec.chromCount = 3;
+		spec.itemsPerChrom = 3000;
+		spec.itemsPerBlock = 16;
+		file = TestBigwigFiles.write(spec);
+
+		// overlapping regions, some within one block and some across many.
+		Random rand = new Random(29L);
+		regions = new ArrayList<Region>();
+		for(int r = 0; r < 300; r++) {
+			String chrom = TestBigwigFiles.chromName(rand.nextInt(3));
+			int start = rand.nextInt(spec.chromSize());
+			regions.add(new Region(chrom, start, start + 1 + rand.nextInt(r % 5 == 0 ? 5000 : 200)));
+		}
+		regions.add(new Region("chrUn", 0, 1000));
+	}
+
+	private void check(Bigwig bigwig, Intervals[] results) throws IOException {
+		assertEquals(results.length, regions.size());
+		for(int r = 0; r < regions.size(); r++) {
+			Region region = regions.get(r);
+			Intervals expected = bigwig.getChromosomes().id(region.chrom) == -1 ? new Intervals() :
+				bigwig.extract(region.chrom, region.start, region.end);
+			assertEquals(results[r].size, expected.size, region.toString());
+			for(int k = 0; k < expected.size; k++) {
+				assertEquals(results[r].chromIds[k], expected.chromIds[k]);
+				assertEquals(results[r].starts[k], expected.starts[k]);
+				assertEquals(results[r].ends[k], expected.ends[k]);
+				assertEquals(results[r].values[k], expected.values[k]);
+			}
+		}
+	}
+
+	/*
+	 * The flat index the Bigwig keeps, if it has built one.
+	 */
+	static Object keptFlatIndex(Bigwig bigwig) throws Exception {
+		Field field = Bigwig.class.getDeclaredField("flatIndex");
+		field.setAccessible(true);
+		return field.get(bigwig);
+	}
+
+	@Test
+	public void testMatchesExtract() throws Exception {
+		Bigwig bigwig = new Bigwig(file);
+		check(bigwig, new BatchQuery(bigwig).query(regions));
+		// the leaves were found for this query alone.
+		assertNull(keptFlatIndex(bigwig));
+		bigwig.close();
+
+		BigwigOptions options = new BigwigOptions();
+		options.flatIndex = true;
+		bigwig = new Bigwig(file, options);
+		check(bigwig, new BatchQuery(bigwig).query(regions));
+		bigwig.close();
+	}
+
+	@Test
+	public void testCachedBlocksAreNotRead() throws IOException {
+		BigwigOptions options = new BigwigOptions();
+		options.blockCache = new LruBlockCache(1 << 24);
+		Bigwig bigwig = new Bigwig(file, options);
+		check(bigwig, new BatchQuery(bigwig).query(regions));
+
+		bigwig.getReadStats().reset();
+		check(bigwig, new BatchQuery(bigwig).query(regions));
+		assertEquals(bigwig.getReadStats().readCount(), 0L);
+		bigwig.close();
+	}
+}
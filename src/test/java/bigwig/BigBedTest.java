@@ -0,0 +1,223 @@
+package bigwig;
+
+import java.io.*;
+import java.util.*;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class BigBedTest {
+
+	private File file;
+
+	@BeforeClass
+	public void writeFile() throws IOException {
+		file = TestBigBedFiles.write();
+	}
+
+	@Test
+	public void testAutoSql() throws IOException {
+		BigBed bigBed = new BigBed(file);
+		assertEquals(bigBed.getFieldCount(), 6);
+		AutoSql sql = bigBed.getAutoSql();
+		assertEquals(sql.name, "bed6");
+		assertEquals(sql.comment, "Browser extensible data");
+		assertEquals(sql.fields.size(), 6);
+		assertEquals(sql.indexOf("name"), 3);
+		assertEquals(sql.indexOf("strand"), 5);
+		assertEquals(sql.fields.get(5).type, "char");
+		assertEquals(sql.fields.get(5).size, "1");
+		assertEquals(sql.fields.get(1).comment, "Start position in chromosome");
+		bigBed.close();
+	}
+
+	@Test
+	public void testParseAutoSqlTypes() {
+		AutoSql sql = AutoSql.parse("table t \"c\" ( enum(a, b) kind; \"k\" int blockCount; int[blockCount] sizes; lstring note; )");
+		assertEquals(sql.fields.get(0).values, Arrays.asList("a", "b"));
+		assertEquals(sql.fields.get(0).name, "kind");
+		assertEquals(sql.fields.get(2).size, "blockCount");
+		assertEquals(sql.fields.get(3).type, "lstring");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testBadAutoSql() {
+		AutoSql.parse("table t ( int x )");
+	}
+
+	@Test
+	public void testQuery() throws IOException {
+		TestBigBedFiles spec = new TestBigBedFiles();
+		for(BigwigOptions options : new BigwigOptions[] { new BigwigOptions(), BigwigOptions.mapped(), cached(), flat() }) {
+			BigBed bigBed = new BigBed(file, options);
+			int chromId = bigBed.getChromIds().get("chr2");
+
+			// [1003, 2502) overlaps items 100 (ends at 1005) through 250.
+			BigBed.BedCursor cursor = bigBed.query("chr2", 1003, 2502);
+			int i = 100;
+			while(cursor.next()) {
+				BedRecord record = cursor.record();
+				assertEquals(record.chromId, chromId);
+				assertEquals(record.start, spec.start(i));
+				assertEquals(record.end, spec.end(i));
+				assertEquals(record.columnCount(), 6);
+				assertEquals(record.name(), TestBigBedFiles.name(1, i));
+				assertTrue(record.fieldEquals(3, TestBigBedFiles.name(1, i)));
+				assertEquals(record.score(), TestBigBedFiles.score(1, i));
+				assertEquals(cursor.value(), (float)TestBigBedFiles.score(1, i));
+				assertEquals(record.strand(), TestBigBedFiles.strand(i));
+				assertEquals(record.rest(), TestBigBedFiles.rest(1, i));
+				i++;
+			}
+			assertEquals(i, 251);
+			assertFalse(bigBed.query("chrX", 0, 1000).next());
+			bigBed.close();
+		}
+	}
+
+	@Test
+	public void testCopyOutlivesCursor() throws IOException {
+		BigBed bigBed = new BigBed(file);
+		BigBed.BedCursor cursor = bigBed.query("chr1", 0, 10000);
+		List<BedRecord> copies = new ArrayList<BedRecord>();
+		while(cursor.next()) {
+			copies.add(cursor.record().copy());
+		}
+		assertEquals(copies.size(), 1000);
+		for(int i = 0; i < copies.size(); i++) {
+			assertEquals(copies.get(i).name(), TestBigBedFiles.name(0, i));
+		}
+		bigBed.close();
+	}
+
+	@Test
+	public void testExtract() throws IOException {
+		BigBed bigBed = new BigBed(file);
+		Intervals items = bigBed.extract("chr1", 0, 500);
+		assertEquals(items.size, 50);
+		assertEquals(items.values[7], (float)TestBigBedFiles.score(0, 7));
+		bigBed.close();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testBigwigRejectsBigBed() throws IOException {
+		new Bigwig(file);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testBigBedRejectsBigwig() throws IOException {
+		new BigBed(TestBigwigFiles.write());
+	}
+
+	@Test
+	public void testFindByName() throws IOException {
+		BigBed bigBed = new BigBed(file);
+		assertEquals(bigBed.getExtraIndexFields(), Arrays.asList("name"));
+
+		List<BedRecord> found = bigBed.find("name", TestBigBedFiles.name(1, 517));
+		assertEquals(found.size(), 1);
+		assertEquals(found.get(0).start, new TestBigBedFiles().start(517));
+		assertEquals(found.get(0).rest(), TestBigBedFiles.rest(1, 517));
+
+		// unsorted, with repeats and names that aren't there.
+		List<String> names = Arrays.asList(TestBigBedFiles.name(1, 3), "nothing", TestBigBedFiles.name(0, 999),
+				TestBigBedFiles.name(0, 4), TestBigBedFiles.name(1, 3), "item0_99999999999");
+		List<List<BedRecord>> all = bigBed.find("name", names);
+		assertEquals(all.size(), names.size());
+		for(int i = 0; i < names.size(); i++) {
+			boolean present = !names.get(i).equals("nothing") && names.get(i).length() < 12;
+			assertEquals(all.get(i).size(), present ? 1 : 0, names.get(i));
+			if(present) {
+				assertEquals(all.get(i).get(0).name(), names.get(i));
+			}
+		}
+		bigBed.close();
+	}
+
+	@Test
+	public void testFindRepeatedName() throws IOException {
+		// the shared name is on 80 records in 32 blocks, its index items spanning many
+		// B+ tree leaves and nodes, with other names sorting on either side of it.
+		TestBigBedFiles spec = new TestBigBedFiles();
+		spec.sharedNameEvery = 25;
+		BigBed bigBed = new BigBed(TestBigwigFiles.write(spec));
+
+		List<BedRecord> found = bigBed.find("name", TestBigBedFiles.SHARED_NAME);
+		assertEquals(found.size(), spec.chromCount * spec.itemsPerChrom / spec.sharedNameEvery);
+		Set<String> seen = new HashSet<String>();
+		for(BedRecord record : found) {
+			assertEquals(record.name(), TestBigBedFiles.SHARED_NAME);
+			assertEquals(record.start % (spec.step * spec.sharedNameEvery), 0);
+			assertTrue(seen.add(record.chromId + ":" + record.start), record.toString());
+		}
+
+		List<List<BedRecord>> all = bigBed.find("name", Arrays.asList(TestBigBedFiles.name(0, 999),
+				TestBigBedFiles.SHARED_NAME, TestBigBedFiles.name(1, 1), TestBigBedFiles.SHARED_NAME));
+		assertEquals(all.get(0).size(), 1);
+		assertEquals(all.get(1).size(), found.size());
+		assertEquals(all.get(2).size(), 1);
+		assertEquals(all.get(3).size(), found.size());
+		bigBed.close();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testFindWithoutIndex() throws IOException {
+		TestBigBedFiles spec = new TestBigBedFiles();
+		spec.nameIndex = false;
+		BigBed bigBed = new BigBed(TestBigwigFiles.write(spec));
+		assertTrue(bigBed.getExtraIndexFields().isEmpty());
+		bigBed.find("name", "item0_1");
+	}
+
+	@Test
+	public void testCustomColumnsAreNotScores() throws IOException {
+		TestBigBedFiles spec = new TestBigBedFiles();
+		spec.customColumns = true;
+		BigBed bigBed = new BigBed(TestBigwigFiles.write(spec));
+		assertEquals(bigBed.getFieldCount(), 5);
+		assertEquals(bigBed.getDefinedFieldCount(), 3);
+		assertEquals(bigBed.getAutoSql().fields.get(4).name, "note");
+
+		// column 4 is text here, and every record's value is 0.
+		BigBed.BedCursor cursor = bigBed.query("chr2", 0, spec.chromSize());
+		for(int i = 0; i < spec.itemsPerChrom; i++) {
+			assertTrue(cursor.next());
+			assertEquals(cursor.record().rest(), TestBigBedFiles.custom(1, i));
+			assertEquals(cursor.value(), 0.0f);
+		}
+		assertFalse(cursor.next());
+
+		Intervals items = bigBed.extract("chr1", 0, spec.chromSize());
+		assertEquals(items.size, spec.itemsPerChrom);
+		assertEquals(items.values[10], 0.0f);
+		assertEquals(bigBed.query(Arrays.asList(new Region("chr1", 100, 5000))).length, 1);
+
+		BigBed.BedScan scan = bigBed.scan();
+		int n = 0;
+		while(scan.next()) {
+			assertEquals(scan.value(), 0.0f);
+			n++;
+		}
+		scan.close();
+		assertEquals(n, spec.chromCount * spec.itemsPerChrom);
+
+		double[] max = new MatrixSummary(Arrays.asList(new Region("chr1", 0, 2000))).summarize(bigBed, SummaryStat.MAX);
+		assertEquals(max[0], 0.0);
+		float[] profile = new ProfileMatrix(Arrays.asList(new ProfileMatrix.Anchor("chr2", 1000)), 100, 100, 4, false).compute(bigBed, SummaryStat.MEAN, null);
+		assertEquals(profile[0], 0.0f);
+		bigBed.close();
+	}
+
+	private static BigwigOptions cached() {
+		BigwigOptions options = new BigwigOptions();
+		options.blockCache = new LruBlockCache(1 << 20);
+		return options;
+	}
+
+	private static BigwigOptions flat() {
+		BigwigOptions options = new BigwigOptions();
+		options.flatIndex = true;
+		options.coalesceGap = 1 << 16;
+		return options;
+	}
+}
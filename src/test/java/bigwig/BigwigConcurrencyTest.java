@@ -0,0 +1,88 @@
+package bigwig;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class BigwigConcurrencyTest {
+
+	private TestBigwigFiles spec;
+	private File file;
+
+	@BeforeClass
+	public void writeFile() throws IOException {
+		spec = new TestBigwigFiles();
+		spec.chromCount = 3;
+		spec.itemsPerChrom = 5000;
+		file = TestBigwigFiles.write(spec);
+	}
+
+	@DataProvider(name = "modes")
+	public Object[][] modes() {
+		return new Object[][] { { false }, { true } };
+	}
+
+	@Test(dataProvider = "modes")
+	public void testConcurrentQueries(boolean mapped) throws Exception {
+		BigwigOptions options = new BigwigOptions();
+		options.memoryMapped = mapped;
+		final Bigwig bigwig = new Bigwig(file, options);
+
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch startGate = new CountDownLatch(1);
+		final AtomicInteger queries = new AtomicInteger(0);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+		for(int t = 0; t < threads; t++) {
+			final long seed = t;
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					startGate.await();
+					Random rand = new Random(seed);
+					for(int q = 0; q < 200; q++) {
+						int chrom = rand.nextInt(spec.chromCount);
+						int start = rand.nextInt(spec.chromSize());
+						int end = start + 1 + rand.nextInt(3000);
+						checkQuery(bigwig, chrom, start, end);
+						queries.incrementAndGet();
+					}
+					return null;
+				}
+			}));
+		}
+
+		startGate.countDown();
+		for(Future<Void> f : futures) {
+			f.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		bigwig.close();
+
+		assertEquals(queries.get(), threads * 200);
+	}
+
+	private void checkQuery(Bigwig bigwig, int chrom, int start, int end) throws Exception {
+		int found = 0;
+		for(Bigwig.DataBlock block : bigwig.getIndexRoot().findOverlappingBlocks(chrom, start, end)) {
+			Bigwig.BinaryWIGSectionHeader section = bigwig.new BinaryWIGSectionHeader(block.inflate(), true);
+			assertEquals(section.chromId, chrom);
+
+			for(int k = 0; k < section.itemCount; k++) {
+				int s = section.chromStarts.get(k), e = section.chromEnds.get(k);
+				assertEquals(section.values.get(k).floatValue(), TestBigwigFiles.value(chrom, s / spec.step));
+				if(s < end && e > start) { found += 1; }
+			}
+		}
+
+		int expected = 0;
+		for(int i = 0; i < spec.itemsPerChrom; i++) {
+			if(spec.start(i) < end && spec.end(i) > start) { expected += 1; }
+		}
+		assertEquals(found, expected, String.format("%d:%d-%d", chrom, start, end));
+	}
+}
@@ -0,0 +1,128 @@
+package bigwig;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+import bigwig.io.PagedFileInput;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class BigwigOpenTest {
+
+	@Test
+	public void testLazyOpenMatchesEager() throws IOException {
+		File file = TestBigwigFiles.write();
+
+		BigwigOptions options = new BigwigOptions();
+		options.lazy = true;
+		Bigwig lazy = new Bigwig(file, options);
+		Bigwig eager = new Bigwig(file);
+
+		assertNull(lazy.zoomHeaders);
+		assertNull(lazy.chromIds);
+		assertNull(lazy.indexHeader);
+		assertNotNull(eager.chromIds);
+
+		assertEquals(lazy.getChromIds(), eager.chromIds);
+		assertEquals(lazy.getDataCount(), eager.dataCount);
+		assertEquals(lazy.getZoomHeaders().length, eager.zoomHeaders.length);
+		assertEquals(lazy.getZoomHeaders()[1].indexOffset, eager.zoomHeaders[1].indexOffset);
+		assertEquals(lazy.getTotalSummary().sumData, eager.totalSummary.sumData);
+		assertEquals(lazy.getIndexRoot().count, eager.getIndexRoot().count);
+
+		lazy.close();
+		eager.close();
+	}
+
+	@Test
+	public void testOpenWithFewZoomLevels() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.zoomReductions = new int[] { 40 };
+		Bigwig bigwig = new Bigwig(TestBigwigFiles.write(spec));
+
+		assertEquals(bigwig.zoomHeaders.length, 1);
+		assertEquals(bigwig.getZoomCounts()[0], spec.chromCount * spec.itemsPerChrom / 4);
+		assertEquals(bigwig.chromIds.get("chr2"), Integer.valueOf(1));
+		bigwig.close();
+	}
+
+	/*
+	 * A file input that counts its closes.
+	 */
+	private static class CountingInput extends PagedFileInput {
+		public int closes = 0;
+
+		public CountingInput(File f) throws IOException {
+			super(f);
+		}
+
+		public void close() throws IOException {
+			closes++;
+			super.close();
+		}
+	}
+
+	private static File write(byte[] bytes) throws IOException {
+		File f = File.createTempFile("broken", ".bw");
+		f.deleteOnExit();
+		OutputStream os = new FileOutputStream(f);
+		os.write(bytes);
+		os.close();
+		return f;
+	}
+
+	private static void assertOpenFailsAndCloses(File f, BigwigMetadata metadata) throws IOException {
+		CountingInput in = new CountingInput(f);
+		try {
+			new Bigwig(in, new BigwigOptions(), f.getPath(), metadata);
+			fail(String.format("opened %s", f));
+		} catch(IOException e) {
+			// expected.
+		} catch(RuntimeException e) {
+			// expected.
+		}
+		assertEquals(in.closes, 1);
+	}
+
+	@Test
+	public void testFailedOpensCloseTheInput() throws IOException {
+		byte[] bytes = new TestBigwigFiles().bytes();
+
+		// a truncated header.
+		assertOpenFailsAndCloses(write(Arrays.copyOf(bytes, 40)), null);
+
+		// a chromosome tree past the end of the file, found by the eager load.
+		byte[] corrupt = bytes.clone();
+		ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putLong(8, corrupt.length - 8L);
+		assertOpenFailsAndCloses(write(corrupt), null);
+
+		// a BigBed's metadata, which adopt() refuses.
+		BigBed bigBed = new BigBed(TestBigBedFiles.write());
+		BigwigMetadata metadata = bigBed.getMetadata();
+		bigBed.close();
+		assertOpenFailsAndCloses(TestBigwigFiles.write(), metadata);
+	}
+
+	@Test
+	public void testRepositoryKeepsNoBrokenReaders() throws IOException {
+		byte[] bytes = new TestBigwigFiles().bytes();
+		File broken = write(Arrays.copyOf(bytes, 40));
+		BigwigRepository repository = new BigwigRepository(2, 1 << 20);
+		for(int i = 0; i < 3; i++) {
+			try {
+				repository.acquire(broken);
+				fail("acquired a truncated file");
+			} catch(IOException e) {
+				// expected.
+			} catch(RuntimeException e) {
+				// expected.
+			}
+		}
+		assertEquals(repository.openReaders(), 0);
+		assertEquals(repository.opensTotal(), 0L);
+		repository.close();
+	}
+}
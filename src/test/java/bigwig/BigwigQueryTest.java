@@ -0,0 +1,251 @@
+package bigwig;
+
+import java.io.*;
+import java.util.*;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class BigwigQueryTest {
+
+	@DataProvider(name = "types")
+	public Object[][] types() {
+		return new Object[][] {
+				{ Bigwig.WIGTYPE_BEDGRAPH }, { Bigwig.WIGTYPE_VARSTEP }, { Bigwig.WIGTYPE_FIXEDSTEP } };
+	}
+
+	@Test(dataProvider = "types")
+	public void testQueryMatchesItems(byte type) throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.sectionType = type;
+		spec.chromCount = 3;
+		Bigwig bigwig = new Bigwig(TestBigwigFiles.write(spec));
+
+		Random rand = new Random(11L);
+		for(int q = 0; q < 200; q++) {
+			int chrom = rand.nextInt(spec.chromCount);
+			int start = rand.nextInt(spec.chromSize());
+			int end = start + 1 + rand.nextInt(2000);
+			checkQuery(bigwig, spec, chrom, start, end);
+		}
+
+		checkQuery(bigwig, spec, 1, 0, spec.chromSize());
+		bigwig.close();
+	}
+
+	private void checkQuery(Bigwig bigwig, TestBigwigFiles spec, int chrom, int start, int end) throws IOException {
+		IntervalCursor cursor = bigwig.query(TestBigwigFiles.chromName(chrom), start, end);
+
+		int i = 0;
+		while(i < spec.itemsPerChrom && spec.end(i) <= start) { i++; }
+
+		while(cursor.next()) {
+			assertTrue(i < spec.itemsPerChrom && spec.start(i) < end, String.format("extra item at %d", cursor.start()));
+			assertEquals(cursor.chromId(), chrom);
+			assertEquals(cursor.start(), spec.start(i));
+			assertEquals(cursor.end(), spec.end(i));
+			assertEquals(cursor.value(), TestBigwigFiles.value(chrom, i));
+			i++;
+		}
+		assertTrue(i >= spec.itemsPerChrom || spec.start(i) >= end, String.format("missing item %d", i));
+	}
+
+	@Test
+	public void testFlatIndexMatchesRTree() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.chromCount = 4;
+		spec.itemsPerBlock = 16;
+		BigwigOptions options = new BigwigOptions();
+		options.flatIndex = true;
+		Bigwig bigwig = new Bigwig(TestBigwigFiles.write(spec), options);
+
+		FlatRTreeIndex index = bigwig.getFlatIndex();
+		assertEquals((long)index.size, bigwig.getIndexHeader().itemCount);
+
+		Random rand = new Random(5L);
+		for(int q = 0; q < 200; q++) {
+			int chrom = rand.nextInt(spec.chromCount);
+			int start = rand.nextInt(spec.chromSize());
+			int end = start + 1 + rand.nextInt(5000);
+
+			List<Long> expected = new ArrayList<Long>();
+			for(Bigwig.DataBlock block : bigwig.getIndexRoot().findOverlappingBlocks(chrom, start, end)) {
+				expected.add(block.offset);
+			}
+			List<Long> found = new ArrayList<Long>();
+			for(int i = index.search(chrom, start, end); i != -1; i = index.next(i, chrom, start, end)) {
+				found.add(index.dataOffset[i]);
+			}
+			assertEquals(found, expected);
+
+			checkQuery(bigwig, spec, chrom, start, end);
+		}
+		bigwig.close();
+	}
+
+	@Test
+	public void testBatchMatchesSingleQueries() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.chromCount = 3;
+		spec.itemsPerBlock = 16;
+		Bigwig bigwig = new Bigwig(TestBigwigFiles.write(spec));
+
+		// unsorted and overlapping, with one on a chromosome the file doesn't have.
+		Random rand = new Random(23L);
+		List<Region> regions = new ArrayList<Region>();
+		for(int q = 0; q < 300; q++) {
+			int chrom = rand.nextInt(spec.chromCount);
+			int start = rand.nextInt(spec.chromSize());
+			regions.add(new Region(TestBigwigFiles.chromName(chrom), start, start + 1 + rand.nextInt(1000)));
+		}
+		regions.add(150, new Region("chrUn", 0, 1000));
+
+		Intervals[] results = bigwig.query(regions);
+		assertEquals(results.length, regions.size());
+		for(int r = 0; r < regions.size(); r++) {
+			Region region = regions.get(r);
+			IntervalCursor expected = bigwig.query(region.chrom, region.start, region.end);
+			IntervalCursor found = results[r].cursor();
+			while(expected.next()) {
+				assertTrue(found.next(), region.toString());
+				assertEquals(found.chromId(), expected.chromId());
+				assertEquals(found.start(), expected.start());
+				assertEquals(found.end(), expected.end());
+				assertEquals(found.value(), expected.value());
+			}
+			assertFalse(found.next(), region.toString());
+		}
+		assertEquals(results[150].size, 0);
+		bigwig.close();
+	}
+
+	@Test
+	public void testCoalescedReads() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		File file = TestBigwigFiles.write(spec);
+		int blocks = (spec.itemsPerChrom + spec.itemsPerBlock - 1) / spec.itemsPerBlock;
+
+		// the fixture writes a chromosome's blocks back to back, so one read covers them.
+		Bigwig bigwig = new Bigwig(file);
+		checkQuery(bigwig, spec, 1, 0, spec.chromSize());
+		ReadStats stats = bigwig.getReadStats();
+		assertEquals(stats.readCount(), 1L);
+		assertEquals(stats.blockCount(), (long)blocks);
+		assertEquals(stats.gapBytes(), 0L);
+		bigwig.close();
+
+		BigwigOptions options = new BigwigOptions();
+		options.maxReadSize = 1;
+		bigwig = new Bigwig(file, options);
+		checkQuery(bigwig, spec, 1, 0, spec.chromSize());
+		stats = bigwig.getReadStats();
+		assertEquals(stats.readCount(), (long)blocks);
+		List<Bigwig.DataBlock> chr2 = bigwig.findBlocks(1, 0, spec.chromSize());
+		assertEquals(chr2.size(), blocks);
+		long blockBytes = 0L;
+		for(Bigwig.DataBlock block : chr2) {
+			blockBytes += block.size;
+		}
+		assertEquals(stats.bytesRead(), blockBytes);
+		assertEquals(stats.gapBytes(), 0L);
+		bigwig.close();
+
+		// items in blocks 0 and 2 only: block 1 is a gap, read and dropped only when the
+		// gap allowed is at least its size.
+		int perBlock = spec.itemsPerBlock;
+		List<Region> apart = Arrays.asList(new Region("chr2", spec.start(1), spec.end(1)),
+				new Region("chr2", spec.start(2 * perBlock + 1), spec.end(2 * perBlock + 1)));
+		long gap = chr2.get(1).size;
+		for(int coalesceGap : new int[] { 0, (int)gap }) {
+			options = new BigwigOptions();
+			options.coalesceGap = coalesceGap;
+			bigwig = new Bigwig(file, options);
+			Intervals[] found = bigwig.query(apart);
+			assertEquals(found[0].size, 1);
+			assertEquals(found[1].size, 1);
+			stats = bigwig.getReadStats();
+			assertEquals(stats.blockCount(), 2L);
+			assertEquals(stats.readCount(), coalesceGap == 0 ? 2L : 1L);
+			assertEquals(stats.gapBytes(), coalesceGap == 0 ? 0L : gap);
+			assertEquals(stats.bytesRead(), chr2.get(0).size + chr2.get(2).size + stats.gapBytes());
+			bigwig.close();
+		}
+	}
+
+	@Test
+	public void testCoalescedZoomReads() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		File file = TestBigwigFiles.write(spec);
+
+		for(int maxReadSize : new int[] { 8 << 20, 1 }) {
+			BigwigOptions options = new BigwigOptions();
+			options.maxReadSize = maxReadSize;
+			Bigwig bigwig = new Bigwig(file, options);
+			int leaves = 0;
+			Bigwig.RTreeWalker walker = bigwig.new RTreeWalker(bigwig.rootNode(bigwig.getZoomIndexHeader(0)), 1, 0, spec.chromSize());
+			while(walker.next() != null) {
+				leaves++;
+			}
+			assertTrue(leaves > 1);
+
+			bigwig.getReadStats().reset();
+			Bigwig.ZoomCursor cursor = bigwig.new ZoomCursor(0, 1, 0, spec.chromSize());
+			int records = 0;
+			while(cursor.next()) {
+				assertEquals(cursor.chromId, 1);
+				records++;
+			}
+			assertEquals(records, spec.itemsPerChrom * spec.step / spec.zoomReductions[0]);
+
+			// a level's blocks are back to back too, so they take one read unless it's capped.
+			ReadStats stats = bigwig.getReadStats();
+			assertEquals(stats.blockCount(), (long)leaves);
+			assertEquals(stats.readCount(), maxReadSize == 1 ? (long)leaves : 1L);
+			assertEquals(stats.gapBytes(), 0L);
+			bigwig.close();
+		}
+	}
+
+	@Test
+	public void testParallelExtract() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.chromCount = 3;
+		spec.itemsPerChrom = 20000;
+		spec.itemsPerBlock = 32;
+		File file = TestBigwigFiles.write(spec);
+
+		for(boolean flat : new boolean[] { false, true }) {
+			BigwigOptions options = new BigwigOptions();
+			options.parallelism = 4;
+			options.flatIndex = flat;
+			Bigwig bigwig = new Bigwig(file, options);
+
+			Intervals all = bigwig.extract("chr2", 0, spec.chromSize());
+			assertEquals(all.size, spec.itemsPerChrom);
+			for(int i = 0; i < all.size; i++) {
+				assertEquals(all.chromIds[i], 1);
+				assertEquals(all.starts[i], spec.start(i));
+				assertEquals(all.values[i], TestBigwigFiles.value(1, i));
+			}
+
+			Intervals part = bigwig.extract("chr3", 12345, 67890);
+			IntervalCursor expected = bigwig.query("chr3", 12345, 67890);
+			for(int i = 0; i < part.size; i++) {
+				assertTrue(expected.next());
+				assertEquals(part.starts[i], expected.start());
+				assertEquals(part.ends[i], expected.end());
+			}
+			assertFalse(expected.next());
+			assertEquals(bigwig.extract("chrUn", 0, 1000).size, 0);
+			bigwig.close();
+		}
+	}
+
+	@Test
+	public void testUnknownChrom() throws IOException {
+		Bigwig bigwig = new Bigwig(TestBigwigFiles.write());
+		assertFalse(bigwig.query("chrUn", 0, 1000).next());
+		assertFalse(bigwig.query("chr1", 10000000, 10001000).next());
+		bigwig.close();
+	}
+}
@@ -0,0 +1,163 @@
+package bigwig;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class BigwigRepositoryTest {
+
+	private TestBigwigFiles spec;
+	private File[] files;
+
+	@BeforeClass
+	public void writeFiles() throws IOException {
+		spec = new TestBigwigFiles();
+		files = new File[4];
+		for(int i = 0; i < files.length; i++) {
+			files[i] = TestBigwigFiles.write(spec);
+		}
+	}
+
+	private int count(BigwigRepository.Handle handle, String chrom) throws IOException {
+		IntervalCursor cursor = handle.bigwig().query(chrom, 0, 1 << 30);
+		int n = 0;
+		while(cursor.next()) { n++; }
+		return n;
+	}
+
+	@Test
+	public void testPooledReaders() throws IOException {
+		BigwigRepository repository = new BigwigRepository(2, 1 << 20);
+
+		BigwigRepository.Handle first = repository.acquire(files[0]);
+		BigwigRepository.Handle again = repository.acquire(files[0]);
+		assertSame(again, first);
+		assertEquals(count(first, "chr1"), spec.itemsPerChrom);
+		again.close();
+		first.close();
+		assertEquals(repository.hitCount(), 1L);
+		assertEquals(repository.opensTotal(), 1L);
+
+		// four files through a pool of two: the first two are closed to make room.
+		for(File f : files) {
+			BigwigRepository.Handle handle = repository.acquire(f);
+			assertEquals(count(handle, "chr2"), spec.itemsPerChrom);
+			handle.close();
+		}
+		assertEquals(repository.openReaders(), 2);
+		assertEquals(repository.opensTotal(), 4L);
+		assertEquals(repository.closesTotal(), 2L);
+
+		// reopened from cached metadata, without re-reading the header or chromosomes.
+		BigwigRepository.Handle reopened = repository.acquire(files[0]);
+		assertEquals(repository.metadataHitCount(), 1L);
+		assertNotNull(reopened.bigwig().chromIds);
+		assertEquals(count(reopened, "chr1"), spec.itemsPerChrom);
+		assertEquals(reopened.bigwig().getZoomHeaders().length, spec.zoomReductions.length);
+		reopened.close();
+
+		// every reader shares one block cache.
+		assertTrue(repository.getBlockCache().size() > 0);
+		assertTrue(repository.getBlockCache().hitCount() > 0L);
+		repository.close();
+	}
+
+	@Test
+	public void testReaderInUseIsNotClosed() throws IOException {
+		BigwigRepository repository = new BigwigRepository(1, 1 << 20);
+		BigwigRepository.Handle held = repository.acquire(files[0]);
+		for(int i = 1; i < files.length; i++) {
+			repository.acquire(files[i]).close();
+		}
+		assertEquals(count(held, "chr1"), spec.itemsPerChrom);
+		assertEquals(repository.openReaders(), 1);
+		assertEquals(repository.closesTotal(), 3L);
+
+		held.close();
+		assertEquals(repository.openReaders(), 1);
+		assertEquals(repository.closesTotal(), 3L);
+		assertEquals(count(repository.acquire(files[0]), "chr2"), spec.itemsPerChrom);
+		assertEquals(repository.hitCount(), 1L);
+		repository.close();
+	}
+
+	@Test
+	public void testChangedFileGetsNewReader() throws IOException {
+		File f = TestBigwigFiles.write(spec);
+		BigwigRepository repository = new BigwigRepository(4, 1 << 20);
+		BigwigRepository.Handle old = repository.acquire(f);
+		assertEquals(count(old, "chr1"), spec.itemsPerChrom);
+
+		TestBigwigFiles longer = new TestBigwigFiles();
+		longer.itemsPerChrom = 1500;
+		OutputStream os = new FileOutputStream(f);
+		os.write(longer.bytes());
+		os.close();
+		f.setLastModified(f.lastModified() + 2000L);
+
+		BigwigRepository.Handle current = repository.acquire(f);
+		assertNotSame(current, old);
+		assertEquals(count(current, "chr1"), 1500);
+		current.close();
+		assertEquals(repository.openReaders(), 1);
+		assertEquals(repository.closesTotal(), 0L);
+
+		old.close();
+		assertEquals(repository.closesTotal(), 1L);
+		repository.close();
+	}
+
+	@Test
+	public void testReadersShareOnePool() throws IOException {
+		BigwigOptions options = new BigwigOptions();
+		options.parallelism = 3;
+		BigwigRepository repository = new BigwigRepository(1, 8, 1 << 20, options);
+
+		BigwigRepository.Handle first = repository.acquire(files[0]);
+		ForkJoinPool pool = first.bigwig().getPool();
+		assertNotNull(pool);
+		assertEquals(pool.getParallelism(), 3);
+		first.close();
+
+		// opening the second file closes the first reader, but not the pool.
+		BigwigRepository.Handle second = repository.acquire(files[1]);
+		assertEquals(repository.closesTotal(), 1L);
+		assertSame(second.bigwig().getPool(), pool);
+		assertFalse(pool.isShutdown());
+		assertEquals(second.bigwig().extract("chr1", 0, spec.chromSize()).size, spec.itemsPerChrom);
+		second.close();
+
+		repository.close();
+		assertTrue(pool.isShutdown());
+	}
+
+	@Test
+	public void testSuppliedPoolIsLeftRunning() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		BigwigOptions options = new BigwigOptions();
+		options.pool = pool;
+		Bigwig bigwig = new Bigwig(files[0], options);
+		assertSame(bigwig.getPool(), pool);
+		assertEquals(bigwig.extract("chr2", 0, spec.chromSize()).size, spec.itemsPerChrom);
+		bigwig.close();
+
+		BigwigRepository repository = new BigwigRepository(2, 8, 1 << 20, options);
+		BigwigRepository.Handle handle = repository.acquire(files[0]);
+		assertSame(handle.bigwig().getPool(), pool);
+		handle.close();
+		repository.close();
+		assertFalse(pool.isShutdown());
+		pool.shutdown();
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testReleasedTwice() throws IOException {
+		BigwigRepository repository = new BigwigRepository(2, 1 << 20);
+		BigwigRepository.Handle handle = repository.acquire(files[0]);
+		handle.close();
+		handle.close();
+	}
+}
@@ -0,0 +1,66 @@
+package bigwig;
+
+import java.io.*;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class BigwigSummaryTest {
+
+	private TestBigwigFiles spec;
+	private Bigwig bigwig;
+
+	@BeforeClass
+	public void open() throws IOException {
+		spec = new TestBigwigFiles();
+		bigwig = new Bigwig(TestBigwigFiles.write(spec));
+	}
+
+	@AfterClass
+	public void close() throws IOException {
+		bigwig.close();
+	}
+
+	@Test
+	public void testRawBins() throws IOException {
+		assertEquals(bigwig.bestZoomLevel(10), -1);
+
+		double[] mean = bigwig.summary("chr1", 0, spec.chromSize(), spec.itemsPerChrom, SummaryStat.MEAN);
+		double[] coverage = bigwig.summary("chr1", 0, spec.chromSize(), spec.itemsPerChrom, SummaryStat.COVERAGE);
+		double[] std = bigwig.summary("chr1", 0, spec.chromSize(), spec.itemsPerChrom, SummaryStat.STD);
+
+		for(int i = 0; i < spec.itemsPerChrom; i++) {
+			assertEquals(mean[i], (double)TestBigwigFiles.value(0, i), 1e-6);
+			assertEquals(coverage[i], 0.5, 1e-9);
+			assertEquals(std[i], 0.0, 1e-6);
+		}
+	}
+
+	@Test
+	public void testZoomMatchesRaw() throws IOException {
+		int start = 0, end = 10240, nBins = 4;
+		assertEquals(bigwig.bestZoomLevel((end - start) / nBins), 3);
+
+		SummaryBins zoomed = bigwig.summarize(1, new SummaryBins(start, end, nBins));
+		SummaryBins raw = bigwig.summarize(1, new SummaryBins(start, end, nBins), -1);
+
+		for(SummaryStat stat : SummaryStat.values()) {
+			double[] z = zoomed.values(stat), r = raw.values(stat);
+			for(int i = 0; i < nBins; i++) {
+				// zoom records store float sums, which costs STD a little precision.
+				double tolerance = Math.abs(r[i]) * (stat == SummaryStat.STD ? 1e-2 : 1e-4) + 1e-9;
+				assertEquals(z[i], r[i], tolerance, String.format("%s bin %d", stat, i));
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyBins() throws IOException {
+		double[] mean = bigwig.summary("chr2", spec.chromSize(), spec.chromSize() + 1000, 10, SummaryStat.MEAN);
+		double[] coverage = bigwig.summary("chrUn", 0, 1000, 10, SummaryStat.COVERAGE);
+		for(int i = 0; i < 10; i++) {
+			assertTrue(Double.isNaN(mean[i]));
+			assertEquals(coverage[i], 0.0);
+		}
+	}
+}
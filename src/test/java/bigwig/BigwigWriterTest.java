@@ -0,0 +1,258 @@
+package bigwig;
+
+import java.io.*;
+import java.util.*;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class BigwigWriterTest {
+
+	private static Map<String,Integer> chromSizes() {
+		Map<String,Integer> sizes = new LinkedHashMap<String,Integer>();
+		sizes.put("chr2", 200000);
+		sizes.put("chr10", 300000);
+		sizes.put("chr1", 100000);
+		return sizes;
+	}
+
+	/*
+	 * chr1 is fixedStep-shaped, chr10 varStep-shaped and chr2 bedGraph-shaped.
+	 */
+	private static Intervals items(Map<String,Integer> ids) {
+		Intervals items = new Intervals();
+		for(int i = 0; i < 9000; i++) {
+			items.add(ids.get("chr1"), i * 10, i * 10 + 10, (float)(i % 50));
+		}
+		for(int i = 0, start = 0; i < 6000; i++, start += 25 + (i % 7)) {
+			items.add(ids.get("chr10"), start, start + 20, (float)(i % 13) - 6.0f);
+		}
+		for(int i = 0, start = 5; i < 7000; i++, start += 5 + (i % 11) * 2) {
+			items.add(ids.get("chr2"), start, start + 3 + (i % 3), 0.25f * (i % 40));
+		}
+		return items;
+	}
+
+	private File write(Intervals items, BigwigWriter writer, File f) throws IOException {
+		String[] names = new String[3];
+		for(Map.Entry<String,Integer> e : writer.getChromIds().entrySet()) {
+			names[e.getValue()] = e.getKey();
+		}
+		for(int i = 0; i < items.size; i++) {
+			writer.add(names[items.chromIds[i]], items.starts[i], items.ends[i], items.values[i]);
+		}
+		writer.close();
+		return f;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File f = File.createTempFile("writer", ".bw");
+		f.deleteOnExit();
+		BigwigWriter writer = new BigwigWriter(f, chromSizes());
+		writer.itemsPerSlot = 128;
+		writer.blockSize = 4;
+
+		// ids follow name order: chr1, chr10, chr2.
+		Map<String,Integer> ids = writer.getChromIds();
+		assertEquals((int)ids.get("chr1"), 0);
+		assertEquals((int)ids.get("chr10"), 1);
+		assertEquals((int)ids.get("chr2"), 2);
+
+		Intervals items = items(ids);
+		write(items, writer, f);
+
+		Bigwig bigwig = new Bigwig(f);
+		assertEquals(bigwig.getChromIds(), ids);
+
+		int i = 0;
+		double sum = 0.0;
+		long bases = 0L;
+		for(String chrom : new String[] { "chr1", "chr10", "chr2" }) {
+			IntervalCursor cursor = bigwig.query(chrom, 0, chromSizes().get(chrom));
+			while(cursor.next()) {
+				assertEquals(cursor.chromId(), items.chromIds[i]);
+				assertEquals(cursor.start(), items.starts[i]);
+				assertEquals(cursor.end(), items.ends[i]);
+				assertEquals(cursor.value(), items.values[i]);
+				sum += (double)items.values[i] * (items.ends[i] - items.starts[i]);
+				bases += items.ends[i] - items.starts[i];
+				i++;
+			}
+		}
+		assertEquals(i, items.size);
+
+		Bigwig.TotalSummaryBlock total = bigwig.getTotalSummary();
+		assertEquals(total.basesCovered, bases);
+		assertEquals(total.sumData, sum, 1e-6);
+		assertEquals(total.minVal, -6.0, 0.0);
+		assertEquals(total.maxVal, 49.0, 0.0);
+
+		// each chromosome's shape gets the most compact section type.
+		byte[] types = new byte[3];
+		WigSection section = new WigSection();
+		for(Bigwig.DataBlock block : bigwig.getIndexRoot().findOverlappingBlocks(0, 0, Integer.MAX_VALUE)) {
+			section.decode(block.decompress(true));
+			types[section.chromId] = section.type;
+		}
+		for(int c = 1; c < 3; c++) {
+			Bigwig.DataBlock block = bigwig.getIndexRoot().findOverlappingBlocks(c, 0, Integer.MAX_VALUE).first();
+			section.decode(block.decompress(true));
+			types[c] = section.type;
+		}
+		assertEquals(types, new byte[] { Bigwig.WIGTYPE_FIXEDSTEP, Bigwig.WIGTYPE_VARSTEP, Bigwig.WIGTYPE_BEDGRAPH });
+		bigwig.close();
+	}
+
+	@Test
+	public void testZoomLevels() throws IOException {
+		File f = File.createTempFile("writer", ".bw");
+		f.deleteOnExit();
+		BigwigWriter writer = new BigwigWriter(f, chromSizes());
+		write(items(writer.getChromIds()), writer, f);
+
+		Bigwig bigwig = new Bigwig(f);
+		Bigwig.ZoomHeader[] zooms = bigwig.getZoomHeaders();
+		assertTrue(zooms.length > 0);
+		// chr1 items are 10 bases, so the first reduction is 100; each level is 4x the last.
+		for(int z = 1; z < zooms.length; z++) {
+			assertEquals(zooms[z].reductionLevel, zooms[z-1].reductionLevel * BigwigWriter.ZOOM_INCREMENT);
+		}
+
+		for(String chrom : new String[] { "chr1", "chr10", "chr2" }) {
+			// bins aligned to the zoom records, so that no record is split between bins.
+			int chromId = bigwig.getChromIds().get(chrom);
+			int width = 2 * zooms[1].reductionLevel, nBins = 10;
+			int level = bigwig.bestZoomLevel(width);
+			assertEquals(level, 1);
+
+			SummaryBins zoomed = bigwig.summarize(chromId, new SummaryBins(0, width * nBins, nBins), level);
+			SummaryBins raw = bigwig.summarize(chromId, new SummaryBins(0, width * nBins, nBins), -1);
+			for(SummaryStat stat : new SummaryStat[] { SummaryStat.MEAN, SummaryStat.MIN, SummaryStat.MAX, SummaryStat.COVERAGE }) {
+				double[] z = zoomed.values(stat), r = raw.values(stat);
+				for(int b = 0; b < nBins; b++) {
+					if(Double.isNaN(r[b])) {
+						assertTrue(Double.isNaN(z[b]), String.format("%s %s bin %d", chrom, stat, b));
+					} else {
+						assertEquals(z[b], r[b], Math.abs(r[b]) * 1e-4 + 1e-6, String.format("%s %s bin %d", chrom, stat, b));
+					}
+				}
+			}
+		}
+		bigwig.close();
+	}
+
+	@Test
+	public void testParallelCompression() throws IOException {
+		File serial = File.createTempFile("writer", ".bw"), parallel = File.createTempFile("writer", ".bw");
+		serial.deleteOnExit();
+		parallel.deleteOnExit();
+
+		BigwigWriter writer = new BigwigWriter(serial, chromSizes());
+		writer.itemsPerSlot = 64;
+		write(items(writer.getChromIds()), writer, serial);
+
+		writer = new BigwigWriter(parallel, chromSizes());
+		writer.itemsPerSlot = 64;
+		writer.compressionThreads = 4;
+		write(items(writer.getChromIds()), writer, parallel);
+
+		// blocks are compressed independently, so the files are byte for byte the same.
+		assertEquals(readAll(parallel), readAll(serial));
+	}
+
+	private static byte[] readAll(File f) throws IOException {
+		byte[] bytes = new byte[(int)f.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		try {
+			in.readFully(bytes);
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException {
+		File f = File.createTempFile("writer", ".bw");
+		f.deleteOnExit();
+		new BigwigWriter(f, chromSizes()).close();
+
+		Bigwig bigwig = new Bigwig(f);
+		assertEquals(bigwig.getChromIds().size(), 3);
+		assertEquals(bigwig.getZoomHeaders().length, 0);
+		assertFalse(bigwig.query("chr1", 0, 100000).next());
+		bigwig.close();
+	}
+
+	@Test
+	public void testManyChromosomes() throws IOException {
+		// 50 names with a fan-out of 4 need a three-level chromosome tree.
+		Map<String,Integer> sizes = new HashMap<String,Integer>();
+		for(int c = 0; c < 50; c++) {
+			sizes.put(String.format("scaffold_%d", c), 1000 + c);
+		}
+		File f = File.createTempFile("writer", ".bw");
+		f.deleteOnExit();
+		BigwigWriter writer = new BigwigWriter(f, sizes);
+		writer.blockSize = 4;
+		writer.itemsPerSlot = 3;
+		Map<String,Integer> ids = writer.getChromIds();
+		List<String> names = new ArrayList<String>(ids.keySet());
+		Collections.sort(names);
+		for(String name : names) {
+			for(int i = 0; i < 10; i++) {
+				writer.add(name, i * 100, i * 100 + 50, (float)ids.get(name));
+			}
+		}
+		writer.close();
+
+		Bigwig bigwig = new Bigwig(f);
+		assertEquals(bigwig.getChromIds(), ids);
+		for(String name : names) {
+			IntervalCursor cursor = bigwig.query(name, 0, 1000);
+			int count = 0;
+			while(cursor.next()) {
+				assertEquals(cursor.value(), (float)ids.get(name));
+				count++;
+			}
+			assertEquals(count, 10, name);
+		}
+		bigwig.close();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testUnsortedInput() throws IOException {
+		File f = File.createTempFile("writer", ".bw");
+		f.deleteOnExit();
+		BigwigWriter writer = new BigwigWriter(f, chromSizes());
+		writer.add("chr2", 0, 10, 1.0f);
+		writer.add("chr10", 0, 10, 1.0f);
+	}
+
+	@Test
+	public void testCountsMustFitSixteenBits() throws IOException {
+		File f = File.createTempFile("writer", ".bw");
+		f.deleteOnExit();
+		for(int[] sizes : new int[][] { { 0x10000, 1024 }, { 256, 0x10000 }, { 1, 1024 }, { 256, 0 } }) {
+			BigwigWriter writer = new BigwigWriter(f, chromSizes());
+			writer.blockSize = sizes[0];
+			writer.itemsPerSlot = sizes[1];
+			try {
+				writer.add("chr1", 0, 10, 1.0f);
+				fail(String.format("blockSize %d, itemsPerSlot %d", sizes[0], sizes[1]));
+			} catch(IllegalArgumentException e) {
+				// expected.
+			}
+		}
+
+		BigwigWriter writer = new BigwigWriter(f, chromSizes());
+		writer.blockSize = 0xffff;
+		writer.itemsPerSlot = 0xffff;
+		writer.add("chr1", 0, 10, 1.0f);
+		writer.close();
+		Bigwig bigwig = new Bigwig(f);
+		assertEquals(bigwig.extract("chr1", 0, 100).size, 1);
+		bigwig.close();
+	}
+}
@@ -0,0 +1,117 @@
+package bigwig;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class ChromosomeDictionaryTest {
+
+	private File file;
+	private Map<String,Integer> sizes;
+	private Map<String,Integer> ids;
+
+	/*
+	 * 60 contigs, one with a non-ASCII name, in a three-level tree.
+	 */
+	@BeforeClass
+	public void writeFile() throws IOException {
+		sizes = new HashMap<String,Integer>();
+		for(int c = 0; c < 59; c++) {
+			sizes.put(String.format("contig_%d", c), 5000 + c);
+		}
+		sizes.put("contig_é", 7777);
+		file = File.createTempFile("chroms", ".bw");
+		file.deleteOnExit();
+		BigwigWriter writer = new BigwigWriter(file, sizes);
+		writer.blockSize = 4;
+		ids = writer.getChromIds();
+		writer.add("contig_7", 0, 100, 7.0f);
+		writer.close();
+	}
+
+	private void check(ChromosomeDictionary chromosomes) throws IOException {
+		for(Map.Entry<String,Integer> e : sizes.entrySet()) {
+			int id = ids.get(e.getKey());
+			assertEquals(chromosomes.id(e.getKey()), id, e.getKey());
+			assertEquals(chromosomes.size(e.getKey()), (int)e.getValue(), e.getKey());
+			byte[] key = ("xx" + e.getKey()).getBytes(Bigwig.UTF8);
+			assertEquals(chromosomes.id(key, 2, key.length - 2), id, e.getKey());
+		}
+		assertEquals(chromosomes.id("contig_60"), -1);
+		assertEquals(chromosomes.id("contig"), -1);
+		assertEquals(chromosomes.size("chrZ"), -1);
+	}
+
+	@Test
+	public void testLoaded() throws IOException {
+		Bigwig bigwig = new Bigwig(file);
+		ChromosomeDictionary chromosomes = bigwig.getChromosomes();
+		assertTrue(chromosomes.isLoaded());
+		check(chromosomes);
+
+		assertEquals(chromosomes.count(), 60);
+		for(Map.Entry<String,Integer> e : ids.entrySet()) {
+			assertEquals(chromosomes.name(e.getValue()), e.getKey());
+			assertEquals(chromosomes.size(e.getValue()), (int)sizes.get(e.getKey()));
+		}
+		assertNull(chromosomes.name(60));
+		assertEquals(chromosomes.size(-1), -1);
+		assertEquals(chromosomes.toMap(), ids);
+		bigwig.close();
+	}
+
+	@Test
+	public void testLazy() throws IOException {
+		BigwigOptions options = new BigwigOptions();
+		options.lazyChromosomes = true;
+		Bigwig bigwig = new Bigwig(file, options);
+		assertNull(bigwig.chromIds);
+		ChromosomeDictionary chromosomes = bigwig.getChromosomes();
+
+		IntervalCursor cursor = bigwig.query("contig_7", 0, 1000);
+		assertTrue(cursor.next());
+		assertEquals(cursor.value(), 7.0f);
+		check(chromosomes);
+		assertFalse(chromosomes.isLoaded());
+
+		// reverse lookups need every name.
+		assertEquals(chromosomes.name(ids.get("contig_33")), "contig_33");
+		assertTrue(chromosomes.isLoaded());
+		check(chromosomes);
+		bigwig.close();
+	}
+
+	@Test
+	public void testLazyFromManyThreads() throws Exception {
+		BigwigOptions options = new BigwigOptions();
+		options.lazyChromosomes = true;
+		Bigwig bigwig = new Bigwig(file, options);
+		final ChromosomeDictionary chromosomes = bigwig.getChromosomes();
+
+		// lookups of the same new names race, and one thread loads the lot midway.
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		List<Future<Void>> done = new ArrayList<Future<Void>>();
+		for(int t = 0; t < 8; t++) {
+			final boolean loads = t == 5;
+			done.add(threads.submit(new Callable<Void>() {
+				public Void call() throws IOException {
+					check(chromosomes);
+					if(loads) {
+						chromosomes.count();
+					}
+					check(chromosomes);
+					return null;
+				}
+			}));
+		}
+		for(Future<Void> f : done) {
+			f.get();
+		}
+		threads.shutdown();
+		assertTrue(chromosomes.isLoaded());
+		bigwig.close();
+	}
+}
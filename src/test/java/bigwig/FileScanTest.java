@@ -0,0 +1,147 @@
+package bigwig;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class FileScanTest {
+
+	private void checkAllItems(TestBigwigFiles spec, Bigwig bigwig, FileScan scan) throws IOException {
+		int n = 0;
+		for(int c = 0; c < spec.chromCount; c++) {
+			int chromId = bigwig.getChromosomes().id(TestBigwigFiles.chromName(c));
+			for(int i = 0; i < spec.itemsPerChrom; i++) {
+				assertTrue(scan.next(), String.format("item %d of chrom %d", i, c));
+				assertEquals(scan.chromId(), chromId);
+				assertEquals(scan.start(), spec.start(i));
+				assertEquals(scan.end(), spec.end(i));
+				assertEquals(scan.value(), TestBigwigFiles.value(c, i));
+				n++;
+			}
+		}
+		assertFalse(scan.next());
+		assertFalse(scan.next());
+		assertEquals(n, spec.chromCount * spec.itemsPerChrom);
+	}
+
+	@Test
+	public void testScansEveryItemInOrder() throws Exception {
+		for(byte type = Bigwig.WIGTYPE_BEDGRAPH; type <= Bigwig.WIGTYPE_FIXEDSTEP; type++) {
+			TestBigwigFiles spec = new TestBigwigFiles();
+			spec.chromCount = 3;
+			spec.itemsPerChrom = 2500;
+			spec.itemsPerBlock = 16;
+			spec.sectionType = type;
+			Bigwig bigwig = new Bigwig(TestBigwigFiles.write(spec));
+
+			FileScan scan = bigwig.scan();
+			checkAllItems(spec, bigwig, scan);
+			scan.close();
+			assertNull(BatchQueryTest.keptFlatIndex(bigwig));
+			assertEquals(scan.blocksDecoded(), (long)scan.blockCount());
+			assertTrue(scan.bytesRead() > 0L);
+			assertTrue(scan.bytesInflated() > scan.bytesRead());
+			assertTrue(scan.megabytesPerSecond() > 0.0);
+			assertTrue(scan.blocksPerSecond() > 0.0);
+			bigwig.close();
+		}
+	}
+
+	@Test
+	public void testSmallChunksAndQueue() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.itemsPerBlock = 8;
+		Bigwig bigwig = new Bigwig(TestBigwigFiles.write(spec));
+		bigwig.getReadStats().reset();
+
+		// a chunk holds a block or two, and the reader waits on a one-block queue.
+		FileScan scan = new FileScan(bigwig, 100, 1);
+		checkAllItems(spec, bigwig, scan);
+		scan.close();
+		assertTrue(bigwig.getReadStats().readCount() > scan.blockCount() / 2);
+		assertEquals(bigwig.getReadStats().blockCount(), (long)scan.blockCount());
+		bigwig.close();
+	}
+
+	@Test
+	public void testScansBigBedRecords() throws IOException {
+		TestBigBedFiles spec = new TestBigBedFiles();
+		spec.itemsPerBlock = 16;
+		BigBed bigBed = new BigBed(TestBigBedFiles.write(spec));
+
+		// small chunks, so blocks are handed over from several reads.
+		BigBed.BedScan scan = bigBed.new BedScan(1000, 2);
+		for(int c = 0; c < spec.chromCount; c++) {
+			int chromId = bigBed.getChromosomes().id(TestBigwigFiles.chromName(c));
+			for(int i = 0; i < spec.itemsPerChrom; i++) {
+				assertTrue(scan.next(), String.format("record %d of chrom %d", i, c));
+				assertEquals(scan.chromId(), chromId);
+				assertEquals(scan.start(), spec.start(i));
+				assertEquals(scan.end(), spec.end(i));
+				assertEquals(scan.record().rest(), TestBigBedFiles.rest(c, i));
+				assertEquals(scan.value(), (float)TestBigBedFiles.score(c, i));
+			}
+		}
+		assertFalse(scan.next());
+		scan.close();
+		assertEquals(scan.blocksDecoded(), (long)scan.blockCount());
+
+		FileScan whole = bigBed.scan();
+		int n = 0;
+		while(whole.next()) {
+			n++;
+		}
+		whole.close();
+		assertEquals(n, spec.chromCount * spec.itemsPerChrom);
+		bigBed.close();
+	}
+
+	@Test
+	public void testReaderErrorReachesConsumer() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.itemsPerBlock = 8;
+		final boolean[] failing = new boolean[] { false };
+		// with a flat index the scan's constructor reads nothing, and only the reader fails.
+		BigwigOptions options = new BigwigOptions();
+		options.flatIndex = true;
+		Bigwig bigwig = new Bigwig(TestBigwigFiles.write(spec), options) {
+			public ByteBuffer readBuffer(long position, int length, boolean flip) throws IOException {
+				if(failing[0]) {
+					throw new OutOfMemoryError("test");
+				}
+				return super.readBuffer(position, length, flip);
+			}
+		};
+		failing[0] = true;
+
+		FileScan scan = new FileScan(bigwig, 4096, 2);
+		try {
+			scan.next();
+			fail("the reader's error was not rethrown");
+		} catch(IOException e) {
+			assertTrue(e.getCause() instanceof OutOfMemoryError);
+		}
+		scan.close();
+		bigwig.close();
+	}
+
+	@Test
+	public void testCloseEarly() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.itemsPerBlock = 8;
+		Bigwig bigwig = new Bigwig(TestBigwigFiles.write(spec));
+
+		FileScan scan = new FileScan(bigwig, 4096, 2);
+		for(int i = 0; i < 10; i++) {
+			assertTrue(scan.next());
+		}
+		scan.close();
+		assertTrue(scan.blocksDecoded() < scan.blockCount());
+
+		// the file is still usable once the reader thread is gone.
+		assertEquals(bigwig.extract("chr1", 0, spec.chromSize()).size, spec.itemsPerChrom);
+		bigwig.close();
+	}
+}
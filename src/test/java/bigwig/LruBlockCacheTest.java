@@ -0,0 +1,108 @@
+package bigwig;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class LruBlockCacheTest {
+
+	private static BlockCache.Loader loader(final int size, final AtomicInteger loads) {
+		return new BlockCache.Loader() {
+			public byte[] load() throws IOException {
+				loads.incrementAndGet();
+				return new byte[size];
+			}
+		};
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws IOException {
+		LruBlockCache cache = new LruBlockCache(300);
+		AtomicInteger loads = new AtomicInteger(0);
+
+		cache.get(new BlockCache.Key("a", 0L), loader(100, loads));
+		cache.get(new BlockCache.Key("a", 100L), loader(100, loads));
+		cache.get(new BlockCache.Key("a", 200L), loader(100, loads));
+		cache.get(new BlockCache.Key("a", 0L), loader(100, loads));
+		assertEquals(loads.get(), 3);
+		assertEquals(cache.hitCount(), 1L);
+
+		// pushes out the least recently used block, at offset 100.
+		cache.get(new BlockCache.Key("b", 0L), loader(100, loads));
+		assertEquals(cache.evictionCount(), 1L);
+		assertEquals(cache.bytes(), 300L);
+
+		cache.get(new BlockCache.Key("a", 0L), loader(100, loads));
+		assertEquals(loads.get(), 4);
+		cache.get(new BlockCache.Key("a", 100L), loader(100, loads));
+		assertEquals(loads.get(), 5);
+		assertEquals(cache.missCount(), 5L);
+	}
+
+	@Test
+	public void testSingleFlightLoads() throws Exception {
+		final LruBlockCache cache = new LruBlockCache(1 << 20);
+		final AtomicInteger loads = new AtomicInteger(0);
+		final CountDownLatch release = new CountDownLatch(1);
+		final BlockCache.Key key = new BlockCache.Key("f", 42L);
+
+		final BlockCache.Loader slow = new BlockCache.Loader() {
+			public byte[] load() throws IOException {
+				loads.incrementAndGet();
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					throw new IOException(e);
+				}
+				return new byte[] { 1, 2, 3 };
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(10);
+		List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+		for(int i = 0; i < 10; i++) {
+			futures.add(executor.submit(new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					return cache.get(key, slow);
+				}
+			}));
+		}
+
+		Thread.sleep(200);
+		release.countDown();
+		for(Future<byte[]> f : futures) {
+			assertEquals(f.get(10, TimeUnit.SECONDS), new byte[] { 1, 2, 3 });
+		}
+		executor.shutdown();
+
+		assertEquals(loads.get(), 1);
+		assertEquals(cache.missCount(), 1L);
+	}
+
+	@Test
+	public void testQueriesThroughCache() throws IOException {
+		LruBlockCache cache = new LruBlockCache(1 << 24);
+		BigwigOptions options = new BigwigOptions();
+		options.blockCache = cache;
+		Bigwig bigwig = new Bigwig(TestBigwigFiles.write(), options);
+
+		int first = count(bigwig.query("chr1", 0, 5000));
+		long misses = cache.missCount();
+		assertTrue(misses > 0L);
+
+		assertEquals(count(bigwig.query("chr1", 0, 5000)), first);
+		assertEquals(cache.missCount(), misses);
+		assertEquals(cache.hitCount(), misses);
+		bigwig.close();
+	}
+
+	private static int count(IntervalCursor cursor) throws IOException {
+		int n = 0;
+		while(cursor.next()) { n++; }
+		return n;
+	}
+}
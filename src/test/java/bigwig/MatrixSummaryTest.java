@@ -0,0 +1,117 @@
+package bigwig;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class MatrixSummaryTest {
+
+	private List<Bigwig> files;
+	private List<File> paths;
+	private List<Region> regions;
+
+	@BeforeClass
+	public void writeFiles() throws IOException {
+		files = new ArrayList<Bigwig>();
+		paths = new ArrayList<File>();
+		for(int i = 0; i < 3; i++) {
+			TestBigwigFiles spec = new TestBigwigFiles();
+			spec.chromCount = 2 + i;
+			spec.itemsPerChrom = 2000;
+			spec.itemsPerBlock = 16;
+			spec.step = 10 + i;
+			File f = TestBigwigFiles.write(spec);
+			paths.add(f);
+			files.add(new Bigwig(f));
+		}
+
+		// narrow regions read raw data, wide ones zoom records; some overlap.
+		Random rand = new Random(23L);
+		regions = new ArrayList<Region>();
+		for(int r = 0; r < 400; r++) {
+			String chrom = TestBigwigFiles.chromName(rand.nextInt(4));
+			int start = rand.nextInt(25000);
+			int width = r % 4 == 0 ? 2000 + rand.nextInt(20000) : 1 + rand.nextInt(300);
+			regions.add(new Region(chrom, start, start + width));
+		}
+		regions.add(new Region("chrUn", 0, 1000));
+	}
+
+	@AfterClass
+	public void close() throws IOException {
+		for(Bigwig bigwig : files) {
+			bigwig.close();
+		}
+	}
+
+	private void check(double[] matrix, SummaryStat stat) throws IOException {
+		assertEquals(matrix.length, files.size() * regions.size());
+		for(int i = 0; i < files.size(); i++) {
+			for(int j = 0; j < regions.size(); j++) {
+				Region region = regions.get(j);
+				double expected = files.get(i).summary(region.chrom, region.start, region.end, 1, stat)[0];
+				double actual = matrix[i * regions.size() + j];
+				if(Double.isNaN(expected)) {
+					assertTrue(Double.isNaN(actual), String.format("file %d %s: %f", i, region, actual));
+				} else {
+					assertEquals(actual, expected, 1e-6 * Math.max(1.0, Math.abs(expected)), String.format("file %d %s", i, region));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMatchesSummary() throws IOException {
+		MatrixSummary summary = new MatrixSummary(regions);
+		for(SummaryStat stat : SummaryStat.values()) {
+			check(summary.summarize(files, stat, null), stat);
+		}
+	}
+
+	@Test
+	public void testParallelAndOffHeap() throws IOException {
+		MatrixSummary summary = new MatrixSummary(regions);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		DoubleBuffer out = ByteBuffer.allocateDirect(8 * files.size() * regions.size()).asDoubleBuffer();
+		summary.summarize(files, SummaryStat.MEAN, pool, out);
+		pool.shutdown();
+
+		double[] matrix = new double[out.capacity()];
+		out.get(matrix);
+		check(matrix, SummaryStat.MEAN);
+	}
+
+	@Test
+	public void testBigBedScores() throws IOException {
+		// no zoom levels, so every region is summarized from the records themselves.
+		BigBed bigBed = new BigBed(TestBigBedFiles.write());
+		List<Region> some = regions.subList(0, 100);
+		for(SummaryStat stat : SummaryStat.values()) {
+			double[] matrix = new MatrixSummary(some).summarize(bigBed, stat);
+			for(int j = 0; j < some.size(); j++) {
+				Region region = some.get(j);
+				double expected = bigBed.summary(region.chrom, region.start, region.end, 1, stat)[0];
+				if(Double.isNaN(expected)) {
+					assertTrue(Double.isNaN(matrix[j]), String.format("%s: %f", region, matrix[j]));
+				} else {
+					assertEquals(matrix[j], expected, 1e-6 * Math.max(1.0, Math.abs(expected)), region.toString());
+				}
+			}
+		}
+		bigBed.close();
+	}
+
+	@Test
+	public void testThroughRepository() throws IOException {
+		BigwigRepository repository = new BigwigRepository(1, 1 << 20);
+		double[] matrix = new MatrixSummary(regions).summarize(repository, paths, SummaryStat.MAX, null);
+		check(matrix, SummaryStat.MAX);
+		assertEquals(repository.openReaders(), 1);
+		repository.close();
+	}
+}
@@ -0,0 +1,103 @@
+package bigwig;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class ProfileMatrixTest {
+
+	private Bigwig bigwig;
+	private List<ProfileMatrix.Anchor> anchors;
+
+	@BeforeClass
+	public void writeFile() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.chromCount = 3;
+		spec.itemsPerChrom = 3000;
+		spec.itemsPerBlock = 16;
+		bigwig = new Bigwig(TestBigwigFiles.write(spec));
+
+		// overlapping windows on both strands, some running off either end of a chromosome.
+		Random rand = new Random(31L);
+		anchors = new ArrayList<ProfileMatrix.Anchor>();
+		for(int a = 0; a < 300; a++) {
+			String chrom = TestBigwigFiles.chromName(rand.nextInt(3));
+			char strand = a % 3 == 0 ? '-' : a % 3 == 1 ? '+' : '.';
+			anchors.add(new ProfileMatrix.Anchor(chrom, rand.nextInt(spec.chromSize() + 2000), strand));
+		}
+		anchors.add(new ProfileMatrix.Anchor("chr1", 100, '-'));
+		anchors.add(new ProfileMatrix.Anchor("chrUn", 1000));
+	}
+
+	@AfterClass
+	public void close() throws IOException {
+		bigwig.close();
+	}
+
+	private void check(float[] matrix, int up, int down, int nBins, boolean strandAware, SummaryStat stat) throws IOException {
+		check(bigwig, matrix, up, down, nBins, strandAware, stat);
+	}
+
+	private void check(Bigwig bigwig, float[] matrix, int up, int down, int nBins, boolean strandAware, SummaryStat stat) throws IOException {
+		assertEquals(matrix.length, anchors.size() * nBins);
+		for(int a = 0; a < anchors.size(); a++) {
+			ProfileMatrix.Anchor anchor = anchors.get(a);
+			boolean minus = strandAware && anchor.strand == '-';
+			int start = anchor.position - (minus ? down : up);
+			double[] expected = bigwig.summary(anchor.chrom, start, start + up + down, nBins, stat);
+			for(int b = 0; b < nBins; b++) {
+				double e = expected[minus ? nBins - 1 - b : b];
+				float actual = matrix[a * nBins + b];
+				if(Double.isNaN(e)) {
+					assertTrue(Float.isNaN(actual), String.format("%s bin %d: %f", anchor, b, actual));
+				} else {
+					assertEquals(actual, e, 1e-5 * Math.max(1.0, Math.abs(e)), String.format("%s bin %d", anchor, b));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRawBins() throws IOException {
+		ProfileMatrix profile = new ProfileMatrix(anchors, 300, 200, 50, true);
+		for(SummaryStat stat : SummaryStat.values()) {
+			check(profile.compute(bigwig, stat, null), 300, 200, 50, true, stat);
+		}
+	}
+
+	@Test
+	public void testZoomBins() throws IOException {
+		ProfileMatrix profile = new ProfileMatrix(anchors, 4000, 6000, 20, true);
+		assertTrue(bigwig.bestZoomLevel(10000 / 20) >= 0);
+		for(SummaryStat stat : SummaryStat.values()) {
+			check(profile.compute(bigwig, stat, null), 4000, 6000, 20, true, stat);
+		}
+	}
+
+	@Test
+	public void testUnstrandedAndParallel() throws IOException {
+		ProfileMatrix profile = new ProfileMatrix(anchors, 1000, 500, 30, false);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		float[] matrix = profile.compute(bigwig, SummaryStat.MEAN, pool);
+		pool.shutdown();
+		check(matrix, 1000, 500, 30, false, SummaryStat.MEAN);
+	}
+
+	@Test
+	public void testBigBedScores() throws IOException {
+		BigBed bigBed = new BigBed(TestBigBedFiles.write());
+		ProfileMatrix profile = new ProfileMatrix(anchors, 500, 500, 25, true);
+		for(SummaryStat stat : SummaryStat.values()) {
+			check(bigBed, profile.compute(bigBed, stat, null), 500, 500, 25, true, stat);
+		}
+		bigBed.close();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testNoBins() {
+		new ProfileMatrix(anchors, 100, 100, 0, false);
+	}
+}
@@ -0,0 +1,221 @@
+package bigwig;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Writes small, deterministic BigBed files for tests: chromosome c holds
+ * itemsPerChrom BED6 records, record i covering [start(i), end(i)) with the fields
+ * returned by rest(c, i).  Records are packed itemsPerBlock to a compressed block and
+ * indexed by the same R-tree as TestBigwigFiles; there are no zoom levels.  With
+ * nameIndex set, an extra B+ tree index (of blockSize fan-out) on the name field is
+ * written too.  With sharedNameEvery set, every sharedNameEvery'th record is named
+ * SHARED_NAME instead, so that name is in the index many times over.  With
+ * customColumns set, records are bed3+2 instead: two text columns (a label and a
+ * note, see custom()) follow the coordinates, so there is no score column.
+ */
+public class TestBigBedFiles extends TestBigwigFiles {
+
+	public boolean nameIndex = true;
+	public int sharedNameEvery = 0;
+	public boolean customColumns = false;
+
+	/*
+	 * Sorts between the item0_ and item1_ names.
+	 */
+	public static final String SHARED_NAME = "item0_zzz";
+
+	public static final String AUTOSQL =
+		"table bed6\n" +
+		"\"Browser extensible data\"\n" +
+		"    (\n" +
+		"    string chrom;       \"Reference sequence chromosome or scaffold\"\n" +
+		"    uint   chromStart;  \"Start position in chromosome\"\n" +
+		"    uint   chromEnd;    \"End position in chromosome\"\n" +
+		"    string name;        \"Name of item\"\n" +
+		"    uint   score;       \"Score from 0-1000\"\n" +
+		"    char[1] strand;     \"+ or -\"\n" +
+		"    )\n";
+
+	public static final String CUSTOM_AUTOSQL =
+		"table bed3Plus2\n" +
+		"\"Coordinates and two text columns\"\n" +
+		"    (\n" +
+		"    string chrom;       \"Reference sequence chromosome or scaffold\"\n" +
+		"    uint   chromStart;  \"Start position in chromosome\"\n" +
+		"    uint   chromEnd;    \"End position in chromosome\"\n" +
+		"    string label;       \"Label of item\"\n" +
+		"    string note;        \"Free text\"\n" +
+		"    )\n";
+
+	/*
+	 * The two custom columns of bed3+2 record i; the note, in column 4, is not a number.
+	 */
+	public static String custom(int chrom, int i) {
+		return String.format("%s\tnote%c%d", name(chrom, i), (char)('a' + i % 26), chrom);
+	}
+
+	public static String name(int chrom, int i) {
+		return String.format("item%d_%d", chrom, i);
+	}
+
+	public static int score(int chrom, int i) {
+		return (chrom * 100 + i) % 1000;
+	}
+
+	public static char strand(int i) {
+		return i % 2 == 0 ? '+' : '-';
+	}
+
+	public static String rest(int chrom, int i) {
+		return String.format("%s\t%d\t%c", name(chrom, i), score(chrom, i), strand(i));
+	}
+
+	/*
+	 * The name and the rest of record i of chrom c, allowing for sharedNameEvery.
+	 */
+	public String nameOf(int chrom, int i) {
+		return sharedNameEvery > 0 && i % sharedNameEvery == 0 ? SHARED_NAME : name(chrom, i);
+	}
+
+	public String restOf(int chrom, int i) {
+		if(customColumns) {
+			return custom(chrom, i);
+		}
+		return String.format("%s\t%d\t%c", nameOf(chrom, i), score(chrom, i), strand(i));
+	}
+
+	public static File write() throws IOException {
+		return write(new TestBigBedFiles());
+	}
+
+	public byte[] bytes() throws IOException {
+		ByteArrayOutputStream outs = new ByteArrayOutputStream();
+
+		// header is patched at the end.
+		outs.write(new byte[64]);
+		long autoSqlOffset = outs.size();
+		outs.write((customColumns ? CUSTOM_AUTOSQL : AUTOSQL).getBytes(UTF8));
+		outs.write(0);
+
+		long chromTreeOffset = outs.size();
+		writeChromTree(outs);
+
+		long dataOffset = outs.size();
+		outs.write(little(8).putLong((long)chromCount * itemsPerChrom).array());
+
+		List<Entry> leaves = new ArrayList<Entry>();
+		SortedMap<String,List<byte[]>> names = new TreeMap<String,List<byte[]>>();
+		for(int c = 0; c < chromCount; c++) {
+			for(int first = 0; first < itemsPerChrom; first += itemsPerBlock) {
+				int n = Math.min(itemsPerBlock, itemsPerChrom - first);
+				ByteArrayOutputStream block = new ByteArrayOutputStream();
+				for(int i = first; i < first + n; i++) {
+					block.write(little(12).putInt(c).putInt(start(i)).putInt(end(i)).array());
+					block.write(restOf(c, i).getBytes(UTF8));
+					block.write(0);
+				}
+				Entry e = new Entry(c, start(first), c, end(first + n - 1));
+				writeBlock(outs, e, block.toByteArray());
+				leaves.add(e);
+				for(int i = first; i < first + n; i++) {
+					if(!names.containsKey(nameOf(c, i))) {
+						names.put(nameOf(c, i), new ArrayList<byte[]>());
+					}
+					names.get(nameOf(c, i)).add(little(16).putLong(e.offset).putLong(e.size).array());
+				}
+			}
+		}
+
+		long indexOffset = outs.size();
+		writeRTree(outs, leaves, itemsPerBlock);
+
+		long extensionOffset = 0L;
+		if(nameIndex) {
+			long treeOffset = outs.size();
+			writeBPlusTree(outs, names, 16);
+
+			extensionOffset = outs.size();
+			outs.write(little(64).putShort((short)64).putShort((short)1).putLong(extensionOffset + 64).array());
+			// one single-field B+ tree index, on field 3 (name).
+			outs.write(little(20).putShort((short)0).putShort((short)1).putLong(treeOffset).putInt(0).putShort((short)3).putShort((short)0).array());
+		}
+
+		byte[] bytes = outs.toByteArray();
+		ByteBuffer head = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		head.putInt(Bigwig.BIGBED_MAGIC).putShort((short)4).putShort((short)0);
+		head.putLong(chromTreeOffset).putLong(dataOffset).putLong(indexOffset);
+		if(customColumns) {
+			head.putShort((short)5).putShort((short)3).putLong(autoSqlOffset);
+		} else {
+			head.putShort((short)6).putShort((short)6).putLong(autoSqlOffset);
+		}
+		head.putLong(0L);
+		head.putInt(maxUncompressed);
+		head.putLong(extensionOffset);
+		return bytes;
+	}
+
+	/*
+	 * A B+ tree of the (ASCII) keys, one item per value, blockSize items to a node,
+	 * written root first.
+	 */
+	private void writeBPlusTree(ByteArrayOutputStream outs, SortedMap<String,List<byte[]>> items, int valSize) throws IOException {
+		List<byte[]> keys = new ArrayList<byte[]>();
+		List<byte[]> values = new ArrayList<byte[]>();
+		int keySize = 1;
+		for(Map.Entry<String,List<byte[]>> item : items.entrySet()) {
+			for(byte[] value : item.getValue()) {
+				keys.add(item.getKey().getBytes(UTF8));
+				values.add(value);
+			}
+			keySize = Math.max(keySize, item.getKey().length());
+		}
+
+		// levels.get(l) holds the first key of each item at level l, leaves first.
+		List<List<byte[]>> levels = new ArrayList<List<byte[]>>();
+		levels.add(keys);
+		while(levels.get(levels.size() - 1).size() > blockSize) {
+			List<byte[]> below = levels.get(levels.size() - 1), above = new ArrayList<byte[]>();
+			for(int i = 0; i < below.size(); i += blockSize) {
+				above.add(below.get(i));
+			}
+			levels.add(above);
+		}
+
+		long offset = outs.size() + 32;
+		long[] levelOffsets = new long[levels.size()];
+		for(int l = levels.size() - 1; l >= 0; l--) {
+			levelOffsets[l] = offset;
+			int n = levels.get(l).size();
+			offset += 4L * ((n + blockSize - 1) / blockSize) + (long)n * (keySize + (l == 0 ? valSize : 8));
+		}
+
+		ByteBuffer header = little(32);
+		header.putInt(Bigwig.BTREE_MAGIC).putInt(blockSize).putInt(keySize).putInt(valSize);
+		header.putLong(keys.size()).putLong(0L);
+		outs.write(header.array());
+
+		for(int l = levels.size() - 1; l >= 0; l--) {
+			List<byte[]> level = levels.get(l);
+			int itemSize = keySize + (l == 0 ? valSize : 8), childItemSize = keySize + (l == 1 ? valSize : 8);
+			for(int first = 0; first < level.size(); first += blockSize) {
+				int n = Math.min(blockSize, level.size() - first);
+				ByteBuffer node = little(4 + n * itemSize);
+				node.put((byte)(l == 0 ? 1 : 0)).put((byte)0).putShort((short)n);
+				for(int i = first; i < first + n; i++) {
+					node.put(Arrays.copyOf(level.get(i), keySize));
+					if(l == 0) {
+						node.put(values.get(i));
+					} else {
+						// item i of this level is node i of the level below, which are all full before it.
+						node.putLong(levelOffsets[l - 1] + (long)i * (4 + blockSize * childItemSize));
+					}
+				}
+				outs.write(node.array());
+			}
+		}
+	}
+}
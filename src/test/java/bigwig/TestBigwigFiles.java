@@ -0,0 +1,293 @@
+package bigwig;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Writes small, deterministic bigWig files for tests that can't rely on downloading
+ * real data.
+ *
+ * Chromosome c (named "chr" + (c+1)) holds itemsPerChrom items, item i covering
+ * [i*step, i*step+span) with value value(c, i), written as bedGraph, varStep or
+ * fixedStep sections.  Items are packed itemsPerBlock to a section, one section per
+ * compressed data block, and the R-tree is built with
+ * blockSize children per node so that larger files get non-leaf levels.
+ */
+public class TestBigwigFiles {
+
+	public static final Charset UTF8 = Charset.forName("UTF-8");
+
+	public int chromCount = 2;
+	public int itemsPerChrom = 1000;
+	public int step = 10;
+	public int span = 5;
+	public int itemsPerBlock = 64;
+	public int blockSize = 4;
+	public byte sectionType = Bigwig.WIGTYPE_BEDGRAPH;
+	public int[] zoomReductions = { 20, 80, 320, 1280 };
+
+	public static float value(int chrom, int i) {
+		return (float)((chrom + 1) * 1000 + (i % 97));
+	}
+
+	public int start(int i) { return i * step; }
+	public int end(int i) { return i * step + span; }
+	public int chromSize() { return itemsPerChrom * step; }
+
+	public static String chromName(int chrom) {
+		return "chr" + (chrom + 1);
+	}
+
+	public static File write(TestBigwigFiles spec) throws IOException {
+		File f = File.createTempFile("test", ".bw");
+		f.deleteOnExit();
+		OutputStream os = new FileOutputStream(f);
+		os.write(spec.bytes());
+		os.close();
+		return f;
+	}
+
+	public static File write() throws IOException {
+		return write(new TestBigwigFiles());
+	}
+
+	/*
+	 * Index entries: { startChrom, startBase, endChrom, endBase, offset, size }
+	 */
+	protected static class Entry {
+		int startChrom, startBase, endChrom, endBase;
+		long offset, size;
+
+		Entry(int sc, int sb, int ec, int eb) {
+			startChrom = sc; startBase = sb; endChrom = ec; endBase = eb;
+		}
+	}
+
+	protected static ByteBuffer little(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	protected static byte[] deflate(byte[] bytes) {
+		Deflater deflater = new Deflater();
+		deflater.setInput(bytes);
+		deflater.finish();
+		ByteArrayOutputStream outs = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		while(!deflater.finished()) {
+			int n = deflater.deflate(buffer);
+			outs.write(buffer, 0, n);
+		}
+		deflater.end();
+		return outs.toByteArray();
+	}
+
+	protected int maxUncompressed = 0;
+
+	protected void writeBlock(ByteArrayOutputStream outs, Entry e, byte[] uncompressed) throws IOException {
+		byte[] compressed = deflate(uncompressed);
+		maxUncompressed = Math.max(maxUncompressed, uncompressed.length);
+		e.offset = outs.size();
+		e.size = compressed.length;
+		outs.write(compressed);
+	}
+
+	public byte[] bytes() throws IOException {
+		ByteArrayOutputStream outs = new ByteArrayOutputStream();
+		int zoomCount = zoomReductions.length;
+
+		// header, zoom headers and total summary are patched at the end.
+		outs.write(new byte[64 + 24 * zoomCount + 40]);
+
+		long chromTreeOffset = outs.size();
+		writeChromTree(outs);
+
+		long dataOffset = outs.size();
+		outs.write(little(8).putLong(0L).array());
+
+		long basesCovered = 0L;
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, sum = 0.0, sumSquares = 0.0;
+		int sections = 0;
+
+		List<Entry> leaves = new ArrayList<Entry>();
+		for(int c = 0; c < chromCount; c++) {
+			for(int first = 0; first < itemsPerChrom; first += itemsPerBlock) {
+				int n = Math.min(itemsPerBlock, itemsPerChrom - first);
+				int itemSize = sectionType == Bigwig.WIGTYPE_BEDGRAPH ? 12 : sectionType == Bigwig.WIGTYPE_VARSTEP ? 8 : 4;
+				ByteBuffer section = little(24 + n * itemSize);
+				section.putInt(c).putInt(start(first)).putInt(end(first + n - 1));
+				section.putInt(step).putInt(span).put(sectionType).put((byte)0).putShort((short)n);
+				for(int i = first; i < first + n; i++) {
+					float v = value(c, i);
+					if(sectionType < Bigwig.WIGTYPE_FIXEDSTEP) { section.putInt(start(i)); }
+					if(sectionType < Bigwig.WIGTYPE_VARSTEP) { section.putInt(end(i)); }
+					section.putFloat(v);
+					basesCovered += span;
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+					sum += (double)v * span;
+					sumSquares += (double)v * v * span;
+				}
+				Entry e = new Entry(c, start(first), c, end(first + n - 1));
+				writeBlock(outs, e, section.array());
+				leaves.add(e);
+				sections += 1;
+			}
+		}
+
+		long indexOffset = outs.size();
+		writeRTree(outs, leaves, itemsPerBlock);
+
+		long[][] zoomOffsets = new long[zoomCount][2];
+		for(int z = 0; z < zoomCount; z++) {
+			int reduction = zoomReductions[z];
+			zoomOffsets[z][0] = outs.size();
+
+			List<float[]> records = new ArrayList<float[]>();
+			List<int[]> bounds = new ArrayList<int[]>();
+			for(int c = 0; c < chromCount; c++) {
+				int i = 0;
+				while(i < itemsPerChrom) {
+					int bin = start(i) / reduction;
+					int valid = 0;
+					float zmin = Float.POSITIVE_INFINITY, zmax = Float.NEGATIVE_INFINITY;
+					double zsum = 0.0, zsq = 0.0;
+					int first = i;
+					while(i < itemsPerChrom && start(i) / reduction == bin) {
+						float v = value(c, i);
+						valid += span;
+						zmin = Math.min(zmin, v);
+						zmax = Math.max(zmax, v);
+						zsum += (double)v * span;
+						zsq += (double)v * v * span;
+						i++;
+					}
+					bounds.add(new int[] { c, start(first), end(i - 1), valid });
+					records.add(new float[] { zmin, zmax, (float)zsum, (float)zsq });
+				}
+			}
+
+			outs.write(little(4).putInt(records.size()).array());
+			List<Entry> zoomLeaves = new ArrayList<Entry>();
+			for(int first = 0; first < records.size(); first += itemsPerBlock) {
+				int n = Math.min(itemsPerBlock, records.size() - first);
+				ByteBuffer block = little(n * 32);
+				for(int k = first; k < first + n; k++) {
+					int[] b = bounds.get(k);
+					float[] r = records.get(k);
+					block.putInt(b[0]).putInt(b[1]).putInt(b[2]).putInt(b[3]);
+					block.putFloat(r[0]).putFloat(r[1]).putFloat(r[2]).putFloat(r[3]);
+				}
+				int[] fb = bounds.get(first), lb = bounds.get(first + n - 1);
+				Entry e = new Entry(fb[0], fb[1], lb[0], lb[2]);
+				writeBlock(outs, e, block.array());
+				zoomLeaves.add(e);
+			}
+
+			zoomOffsets[z][1] = outs.size();
+			writeRTree(outs, zoomLeaves, itemsPerBlock);
+		}
+
+		byte[] bytes = outs.toByteArray();
+		ByteBuffer head = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		head.putInt(Bigwig.BIGWIG_MAGIC).putShort((short)4).putShort((short)zoomCount);
+		head.putLong(chromTreeOffset).putLong(dataOffset).putLong(indexOffset);
+		head.putShort((short)0).putShort((short)0).putLong(0L);
+		head.putLong(64 + 24 * zoomCount);
+		head.putInt(Math.max(maxUncompressed, itemsPerBlock * 32));
+		head.putLong(0L);
+		for(int z = 0; z < zoomCount; z++) {
+			head.putInt(zoomReductions[z]).putInt(0).putLong(zoomOffsets[z][0]).putLong(zoomOffsets[z][1]);
+		}
+		head.putLong(basesCovered).putDouble(min).putDouble(max).putDouble(sum).putDouble(sumSquares);
+
+		ByteBuffer.wrap(bytes, (int)dataOffset, 8).order(ByteOrder.LITTLE_ENDIAN).putLong(sections);
+		return bytes;
+	}
+
+	/*
+	 * A single-leaf chromosome B+ tree.
+	 */
+	protected void writeChromTree(ByteArrayOutputStream outs) throws IOException {
+		int keySize = 0;
+		for(int c = 0; c < chromCount; c++) {
+			keySize = Math.max(keySize, chromName(c).getBytes(UTF8).length);
+		}
+		ByteBuffer bt = little(32 + 4 + chromCount * (keySize + 8));
+		bt.putInt(Bigwig.BTREE_MAGIC).putInt(chromCount).putInt(keySize).putInt(8);
+		bt.putLong(chromCount).putLong(0L);
+		bt.put((byte)1).put((byte)0).putShort((short)chromCount);
+		for(int c = 0; c < chromCount; c++) {
+			byte[] key = Arrays.copyOf(chromName(c).getBytes(UTF8), keySize);
+			bt.put(key).putInt(c).putInt(chromSize());
+		}
+		outs.write(bt.array());
+	}
+
+	/*
+	 * Bottom-up R-tree: each level groups the entries below it into nodes of at most
+	 * blockSize children, until a single root node remains.  Nodes are then written
+	 * root first.
+	 */
+	protected void writeRTree(ByteArrayOutputStream outs, List<Entry> leaves, int itemsPerSlot) throws IOException {
+		long indexOffset = outs.size();
+
+		List<List<Entry>> levels = new ArrayList<List<Entry>>();
+		levels.add(leaves);
+		while(levels.get(levels.size() - 1).size() > blockSize) {
+			List<Entry> below = levels.get(levels.size() - 1);
+			List<Entry> above = new ArrayList<Entry>();
+			for(int i = 0; i < below.size(); i += blockSize) {
+				Entry first = below.get(i), last = below.get(Math.min(i + blockSize, below.size()) - 1);
+				above.add(new Entry(first.startChrom, first.startBase, last.endChrom, last.endBase));
+			}
+			levels.add(above);
+		}
+
+		// node offsets, root level first
+		long offset = indexOffset + 48;
+		long[][] nodeOffsets = new long[levels.size()][];
+		for(int l = levels.size() - 1; l >= 0; l--) {
+			int entries = levels.get(l).size();
+			int nodes = (entries + blockSize - 1) / blockSize;
+			nodeOffsets[l] = new long[nodes];
+			for(int k = 0; k < nodes; k++) {
+				nodeOffsets[l][k] = offset;
+				int count = Math.min(blockSize, entries - k * blockSize);
+				offset += 4 + count * (l == 0 ? 32 : 24);
+			}
+		}
+		for(int l = 1; l < levels.size(); l++) {
+			List<Entry> entries = levels.get(l);
+			for(int k = 0; k < entries.size(); k++) {
+				entries.get(k).offset = nodeOffsets[l - 1][k];
+			}
+		}
+
+		Entry first = leaves.get(0), last = leaves.get(leaves.size() - 1);
+		ByteBuffer header = little(48);
+		header.putInt(Bigwig.RTREE_MAGIC).putInt(blockSize).putLong(leaves.size());
+		header.putInt(first.startChrom).putInt(first.startBase).putInt(last.endChrom).putInt(last.endBase);
+		header.putLong(indexOffset).putInt(itemsPerSlot).putInt(0);
+		outs.write(header.array());
+
+		for(int l = levels.size() - 1; l >= 0; l--) {
+			List<Entry> entries = levels.get(l);
+			for(int i = 0; i < entries.size(); i += blockSize) {
+				int count = Math.min(blockSize, entries.size() - i);
+				ByteBuffer node = little(4 + count * (l == 0 ? 32 : 24));
+				node.put((byte)(l == 0 ? 1 : 0)).put((byte)0).putShort((short)count);
+				for(int k = i; k < i + count; k++) {
+					Entry e = entries.get(k);
+					node.putInt(e.startChrom).putInt(e.startBase).putInt(e.endChrom).putInt(e.endBase);
+					node.putLong(e.offset);
+					if(l == 0) { node.putLong(e.size); }
+				}
+				outs.write(node.array());
+			}
+		}
+	}
+}
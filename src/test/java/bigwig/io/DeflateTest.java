@@ -59,4 +59,34 @@ public class DeflateTest {
 			e.printStackTrace(System.err);
 		}
 	}
+
+	@Test(groups={ "functional" })
+	public void testFlushThenClose() throws IOException { 
+		ByteArrayOutputStream outs = new ByteArrayOutputStream();
+		OutputStreamDeflater def = new OutputStreamDeflater(outs);
+		byte[] first = value.getBytes("UTF-8");
+		def.write(first);
+		def.flush();
+		
+		// a flush makes everything so far inflatable without ending the stream.
+		byte[] flushed = outs.toByteArray();
+		InputStream inf = new InputStreamInflater(new ByteArrayInputStream(flushed));
+		byte[] read = new byte[first.length];
+		new DataInputStream(inf).readFully(read);
+		assertEquals(read, first);
+		
+		for(int i = 0; i < 1000; i++) { 
+			def.write(first, i % first.length, 1);
+		}
+		def.close();
+		assertTrue(outs.size() > flushed.length);
+		
+		inf = new InputStreamInflater(new ByteArrayInputStream(outs.toByteArray()));
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		int b;
+		while((b = inf.read()) != -1) { 
+			all.write(b);
+		}
+		assertEquals(all.size(), first.length + 1000);
+	}
 }
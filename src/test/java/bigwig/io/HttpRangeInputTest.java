@@ -0,0 +1,166 @@
+package bigwig.io;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+import bigwig.Bigwig;
+import bigwig.BigwigOptions;
+import bigwig.IntervalCursor;
+import bigwig.TestBigwigFiles;
+
+public class HttpRangeInputTest {
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+	private HttpServer server;
+	private byte[] bytes;
+	private File file;
+	private AtomicInteger served;
+
+	@BeforeClass
+	public void startServer() throws IOException {
+		TestBigwigFiles spec = new TestBigwigFiles();
+		spec.chromCount = 3;
+		bytes = spec.bytes();
+		file = TestBigwigFiles.write(spec);
+		served = new AtomicInteger(0);
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/test.bw", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				served.incrementAndGet();
+				String range = exchange.getRequestHeaders().getFirst("Range");
+				Matcher m = range != null ? RANGE.matcher(range) : null;
+				if(m == null || !m.matches()) {
+					exchange.sendResponseHeaders(200, bytes.length);
+					exchange.getResponseBody().write(bytes);
+				} else {
+					int first = Integer.parseInt(m.group(1));
+					int last = Math.min(bytes.length - 1, Integer.parseInt(m.group(2)));
+					exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", first, last, bytes.length));
+					exchange.sendResponseHeaders(206, last - first + 1);
+					exchange.getResponseBody().write(bytes, first, last - first + 1);
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	@AfterClass
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private URL url() throws IOException {
+		return new URL(String.format("http://127.0.0.1:%d/test.bw", server.getAddress().getPort()));
+	}
+
+	@Test
+	public void testReads() throws IOException {
+		HttpRangeInput input = new HttpRangeInput(url(), 256, 8);
+		assertEquals(input.length(), (long)bytes.length);
+
+		Random rand = new Random(5L);
+		for(int i = 0; i < 200; i++) {
+			int pos = rand.nextInt(bytes.length - 1);
+			int len = 1 + rand.nextInt(Math.min(2000, bytes.length - pos));
+			ByteBuffer buffer = input.readBuffer(pos, len);
+			assertEquals(buffer.remaining(), len);
+			for(int k = 0; k < len; k++) {
+				assertEquals(buffer.get(), bytes[pos + k]);
+			}
+		}
+
+		input.seek(0L);
+		assertEquals(input.readInt(), ByteBuffer.wrap(bytes).getInt());
+		input.close();
+	}
+
+	@Test
+	public void testMissingBlocksFetchedTogether() throws IOException {
+		HttpRangeInput input = new HttpRangeInput(url(), 256, 64);
+		input.resetCounters();
+
+		// blocks 4 and 8 first, so that 3..9 is missing three runs: 3, 5..7 and 9.
+		input.readBuffer(4 * 256, 10);
+		input.readBuffer(8 * 256, 10);
+		assertEquals(input.requestCount(), 2L);
+		input.readBuffer(3 * 256 + 100, 6 * 256);
+		assertEquals(input.requestCount(), 5L);
+		assertEquals(input.bytesFetched(), 7L * 256);
+
+		input.readBuffer(3 * 256, 7 * 256);
+		assertEquals(input.requestCount(), 5L);
+		input.close();
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		HttpRangeInput input = new HttpRangeInput(url(), 256, 2);
+		input.resetCounters();
+		input.readBuffer(0L, 10);
+		input.readBuffer(256L, 10);
+		input.readBuffer(512L, 10);
+		input.readBuffer(0L, 10);
+		assertEquals(input.requestCount(), 4L);
+		assertEquals(input.blockMisses(), 4L);
+		input.close();
+	}
+
+	@Test
+	public void testQueriesMatchLocalFile() throws IOException {
+		BigwigOptions options = new BigwigOptions();
+		options.remoteBlockSize = 1024;
+		Bigwig remote = new Bigwig(url(), options);
+		Bigwig local = new Bigwig(file);
+
+		Random rand = new Random(11L);
+		for(int q = 0; q < 50; q++) {
+			String chrom = TestBigwigFiles.chromName(rand.nextInt(3));
+			int start = rand.nextInt(9000);
+			int end = start + 1 + rand.nextInt(2000);
+			IntervalCursor expected = local.query(chrom, start, end), actual = remote.query(chrom, start, end);
+			while(expected.next()) {
+				assertTrue(actual.next());
+				assertEquals(actual.start(), expected.start());
+				assertEquals(actual.end(), expected.end());
+				assertEquals(actual.value(), expected.value());
+			}
+			assertFalse(actual.next());
+		}
+
+		// the second time, every block comes from the cache.
+		assertEquals(count(remote.query("chr2", 0, 10000)), 1000);
+		int before = served.get();
+		assertEquals(count(remote.query("chr2", 0, 10000)), 1000);
+		assertEquals(served.get(), before);
+
+		remote.close();
+		local.close();
+	}
+
+	private static int count(IntervalCursor cursor) throws IOException {
+		int count = 0;
+		while(cursor.next()) { count++; }
+		return count;
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testNotFound() throws IOException {
+		new HttpRangeInput(new URL(String.format("http://127.0.0.1:%d/missing.bw", server.getAddress().getPort())));
+	}
+}
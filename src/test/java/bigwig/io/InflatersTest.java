@@ -0,0 +1,68 @@
+package bigwig.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class InflatersTest {
+
+	private static byte[] deflate(byte[] bytes) {
+		Deflater deflater = new Deflater();
+		deflater.setInput(bytes);
+		deflater.finish();
+		byte[] buffer = new byte[bytes.length + 64];
+		int n = deflater.deflate(buffer);
+		deflater.end();
+		return Arrays.copyOf(buffer, n);
+	}
+
+	private static byte[] bytes(int n, long seed) {
+		byte[] bytes = new byte[n];
+		Random rand = new Random(seed);
+		for(int i = 0; i < n; i++) { bytes[i] = (byte)rand.nextInt(16); }
+		return bytes;
+	}
+
+	@Test
+	public void testExactLength() throws DataFormatException {
+		long before = Inflaters.createdCount();
+		for(int i = 0; i < 100; i++) {
+			byte[] original = bytes(1000 + i * 37, i);
+			byte[] compressed = deflate(original);
+
+			// a short size hint has to grow, a long one has to be trimmed.
+			assertEquals(Inflaters.inflate(ByteBuffer.wrap(compressed), 10), original);
+			assertEquals(Inflaters.inflate(ByteBuffer.wrap(compressed), 100000), original);
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(compressed.length);
+			direct.put(compressed).flip();
+			byte[] output = new byte[original.length];
+			assertEquals(Inflaters.inflate(direct, output), original.length);
+			assertEquals(output, original);
+		}
+		// one Inflater for this thread, reused for every block.
+		assertTrue(Inflaters.createdCount() - before <= 1L);
+	}
+
+	@Test
+	public void testSlicedInput() throws DataFormatException {
+		byte[] original = bytes(5000, 7L);
+		byte[] compressed = deflate(original);
+		byte[] padded = new byte[compressed.length + 20];
+		System.arraycopy(compressed, 0, padded, 10, compressed.length);
+
+		ByteBuffer slice = ByteBuffer.wrap(padded, 10, compressed.length).slice();
+		assertEquals(Inflaters.inflate(slice, original.length), original);
+	}
+
+	@Test(expectedExceptions = DataFormatException.class)
+	public void testOutputTooSmall() throws DataFormatException {
+		byte[] original = bytes(5000, 3L);
+		Inflaters.inflate(ByteBuffer.wrap(deflate(original)), new byte[4000]);
+	}
+}
@@ -0,0 +1,63 @@
+package bigwig.io;
+
+import java.io.*;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class MappedFileInputTest {
+
+	private File file;
+
+	@BeforeClass
+	public void writeFile() throws IOException {
+		file = File.createTempFile("mapped", ".bin");
+		file.deleteOnExit();
+
+		byte[] bytes = new byte[1000];
+		new Random(17L).nextBytes(bytes);
+		OutputStream os = new FileOutputStream(file);
+		os.write(bytes);
+		os.close();
+	}
+
+	@Test
+	public void testMatchesRandomAccessFile() throws IOException {
+		// 16-byte segments, so that many reads straddle a segment boundary.
+		MappedFileInput mapped = new MappedFileInput(file, 4);
+		RandomAccessFileInput raf = new RandomAccessFileInput(file);
+
+		assertEquals(mapped.length(), raf.length());
+
+		Random rand = new Random(3L);
+		for(int i = 0; i < 500; i++) {
+			long pos = rand.nextInt(980);
+			mapped.seek(pos);
+			raf.seek(pos);
+
+			switch(i % 5) {
+			case 0: assertEquals(mapped.readInt(), raf.readInt()); break;
+			case 1: assertEquals(mapped.readLong(), raf.readLong()); break;
+			case 2: assertEquals(mapped.readShort(), raf.readShort()); break;
+			case 3: assertEquals(mapped.readByte(), raf.readByte()); break;
+			default:
+				byte[] a = new byte[19], b = new byte[19];
+				mapped.readFully(a);
+				raf.readFully(b);
+				assertEquals(a, b);
+			}
+			assertEquals(mapped.getFilePointer(), raf.getFilePointer());
+		}
+
+		mapped.close();
+		raf.close();
+	}
+
+	@Test(expectedExceptions = EOFException.class)
+	public void testReadPastEnd() throws IOException {
+		MappedFileInput mapped = new MappedFileInput(file, 4);
+		mapped.seek(998);
+		mapped.readInt();
+	}
+}
@@ -0,0 +1,127 @@
+package bigwig.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.*;
+
+public class PagedFileInputTest {
+
+	private File file;
+	private byte[] bytes;
+
+	@BeforeClass
+	public void writeFile() throws IOException {
+		file = File.createTempFile("paged", ".bin");
+		file.deleteOnExit();
+
+		bytes = new byte[5000];
+		new Random(19L).nextBytes(bytes);
+		OutputStream os = new FileOutputStream(file);
+		os.write(bytes);
+		os.close();
+	}
+
+	@Test
+	public void testMatchesRandomAccessFile() throws IOException {
+		// 64-byte pages, so that reads often straddle or exceed a page.
+		PagedFileInput paged = new PagedFileInput(file, 64);
+		RandomAccessFileInput raf = new RandomAccessFileInput(file);
+		assertEquals(paged.length(), raf.length());
+
+		Random rand = new Random(3L);
+		for(int i = 0; i < 1000; i++) {
+			if(rand.nextInt(4) == 0) {
+				long pos = rand.nextInt(4800);
+				paged.seek(pos);
+				raf.seek(pos);
+			}
+
+			switch(i % 6) {
+			case 0: assertEquals(paged.readInt(), raf.readInt()); break;
+			case 1: assertEquals(paged.readLong(), raf.readLong()); break;
+			case 2: assertEquals(paged.readShort(), raf.readShort()); break;
+			case 3: assertEquals(paged.readByte(), raf.readByte()); break;
+			case 4:
+				ByteBuffer buffer = ByteBuffer.allocateDirect(1 + rand.nextInt(150));
+				byte[] expected = new byte[buffer.capacity()];
+				assertEquals(paged.read(buffer), buffer.capacity());
+				raf.readFully(expected);
+				buffer.flip();
+				assertEquals(buffer, ByteBuffer.wrap(expected));
+				break;
+			default:
+				int n = 1 + rand.nextInt(150);
+				byte[] a = new byte[n], b = new byte[n];
+				paged.readFully(a);
+				raf.readFully(b);
+				assertEquals(a, b);
+			}
+			assertEquals(paged.getFilePointer(), raf.getFilePointer());
+			if(paged.getFilePointer() > 4800) {
+				paged.seek(0L);
+				raf.seek(0L);
+			}
+		}
+
+		byte[] positional = new byte[100];
+		long pointer = paged.getFilePointer();
+		assertEquals(paged.read(4950L, positional, 0, 100), 50);
+		assertEquals(Arrays.copyOf(positional, 50), Arrays.copyOfRange(bytes, 4950, 5000));
+		assertEquals(paged.read(5000L, positional, 0, 100), -1);
+		assertEquals(paged.getFilePointer(), pointer);
+
+		paged.close();
+		raf.close();
+	}
+
+	@Test
+	public void testBulkStreamRead() throws IOException {
+		RandomInputStream is = new RandomInputStream(new PagedFileInput(file, 64));
+		ByteArrayOutputStream outs = new ByteArrayOutputStream();
+		byte[] buffer = new byte[777];
+		int n;
+		while((n = is.read(buffer)) != -1) {
+			assertTrue(n > 0);
+			outs.write(buffer, 0, n);
+		}
+		assertEquals(is.read(), -1);
+		is.close();
+		assertEquals(outs.toByteArray(), bytes);
+	}
+
+	@Test
+	public void testDataInflater() throws IOException {
+		Deflater deflater = new Deflater();
+		deflater.setInput(bytes);
+		deflater.finish();
+		byte[] compressed = new byte[bytes.length * 2];
+		int length = deflater.deflate(compressed);
+		deflater.end();
+
+		File f = File.createTempFile("paged", ".z");
+		f.deleteOnExit();
+		OutputStream os = new FileOutputStream(f);
+		os.write(compressed, 0, length);
+		os.close();
+
+		// single bytes (which must come back unsigned) and then bulk reads.
+		InputStreamDataInflater inflater = new InputStreamDataInflater(new PagedFileInput(f, 64));
+		byte[] inflated = new byte[bytes.length];
+		for(int i = 0; i < 100; i++) {
+			inflated[i] = (byte)inflater.read();
+			assertEquals((int)inflated[i] & 0xff, bytes[i] & 0xff);
+		}
+		int offset = 100, n;
+		while(offset < inflated.length && (n = inflater.read(inflated, offset, inflated.length - offset)) != -1) {
+			offset += n;
+		}
+		assertEquals(inflated, bytes);
+		assertEquals(inflater.read(), -1);
+		inflater.close();
+	}
+}